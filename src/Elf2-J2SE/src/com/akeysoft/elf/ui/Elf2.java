@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.net.URL;
 
 import javax.swing.AbstractButton;
+import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -22,21 +23,42 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JToggleButton;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import com.akeysoft.elf.core.Cpu;
+import com.akeysoft.elf.core.DmaListener;
+import com.akeysoft.elf.core.Engine;
 import com.akeysoft.elf.core.InputDevice;
+import com.akeysoft.elf.core.MappedRam;
+import com.akeysoft.elf.core.MemoryBus;
 import com.akeysoft.elf.core.OutputDevice;
 import com.akeysoft.elf.core.OutputListener;
+import com.akeysoft.elf.core.ProfilingEngine;
 import com.akeysoft.elf.core.Ram;
+import com.akeysoft.elf.core.RunControlListener;
+import com.akeysoft.elf.core.RunController;
+import com.akeysoft.elf.core.UnknownOpcodeException;
 
-public class Elf2 extends JFrame implements ActionListener, OutputListener {
+public class Elf2 extends JFrame implements ActionListener, OutputListener, RunControlListener, DmaListener {
 
 	private static final long serialVersionUID = 6278492777863190203L;
 
-	private JMenu jMenuFile, jMenuHelp;
+	private JMenu jMenuFile, jMenuEngine, jMenuSpeed, jMenuHelp;
 	private JMenuItem jMenuItemExit, jMenuItemOpen, jMenuItemSave, jMenuItemAbout;
+	private JRadioButtonMenuItem[] jMenuItemEngines;
+	private Engine[] engines;
+	private JRadioButtonMenuItem[] jMenuItemSpeeds;
+	private JRadioButtonMenuItem jMenuItemTurbo;
+	private JRadioButtonMenuItem jMenuItemClock179, jMenuItemClock358, jMenuItemClockCustom;
+	
+	private static final double[] SPEEDS = { 0.5, 1.0, 2.0, 5.0, 10.0, 100.0 };
+	
+	// Memory from the last session, in the user's home.
+	private static final String RAM_FILE = ".elf2-ram";
 	
 	private JButton[] numberButtons;
 	private JToggleButton runButton;
@@ -47,18 +69,20 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 	private JLabel hexHi;
 	private JLabel hexLo;
 	private JLabel q;
+	private JLabel status;
+	private Timer statusTimer;
 	
 	private ImageIcon[] numberIcons;
 	private ImageIcon qon;
 	private ImageIcon qoff;
 
-	private Ram ram;
+	private MemoryBus ram;
 
 	private Cpu cpu;
+	private RunController controller;
 	
 	private boolean isLoad, isMp, isRun;
 	
-	private int inputOffset;
 	private byte inputValue;
 	
 	private File currentFile;
@@ -68,7 +92,6 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		this.isMp = false;
 		this.isRun = false;
 		
-		this.inputOffset = 0;
 		this.inputValue = 0;
 		
 		// Core
@@ -136,6 +159,68 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		
 		jMenuFile.add(jMenuItemExit);
 		
+		// Engine menu
+		jMenuEngine = new JMenu("Engine");
+		jMenuEngine.setMnemonic(KeyEvent.VK_E);
+		
+		// DISPATCH_TRANSLATED only makes sense for translated programs.
+		engines = new Engine[] {
+			Cpu.getDispatchEngine(Cpu.DISPATCH_SWITCH),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TABLE),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_PREDECODED),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_BLOCKS),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_REGIONS),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_FUSED),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TIERED),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TRACED),
+			new ProfilingEngine()
+		};
+		
+		ButtonGroup engineGroup = new ButtonGroup();
+		jMenuItemEngines = new JRadioButtonMenuItem[engines.length];
+		for (int i = 0; i < engines.length; i ++) {
+			jMenuItemEngines[i] = new JRadioButtonMenuItem(engines[i].getName());
+			jMenuItemEngines[i].setSelected(engines[i] == cpu.getEngine());
+			jMenuItemEngines[i].addActionListener(this);
+			
+			engineGroup.add(jMenuItemEngines[i]);
+			jMenuEngine.add(jMenuItemEngines[i]);
+		}
+		
+		// Speed menu
+		jMenuSpeed = new JMenu("Speed");
+		jMenuSpeed.setMnemonic(KeyEvent.VK_P);
+		
+		ButtonGroup speedGroup = new ButtonGroup();
+		jMenuItemSpeeds = new JRadioButtonMenuItem[SPEEDS.length];
+		for (int i = 0; i < SPEEDS.length; i ++) {
+			jMenuItemSpeeds[i] = new JRadioButtonMenuItem(speedText(SPEEDS[i]));
+			jMenuItemSpeeds[i].setSelected(SPEEDS[i] == cpu.getSpeed());
+			jMenuItemSpeeds[i].addActionListener(this);
+			
+			speedGroup.add(jMenuItemSpeeds[i]);
+			jMenuSpeed.add(jMenuItemSpeeds[i]);
+		}
+		
+		jMenuItemTurbo = new JRadioButtonMenuItem("Turbo");
+		jMenuItemTurbo.addActionListener(this);
+		speedGroup.add(jMenuItemTurbo);
+		jMenuSpeed.add(jMenuItemTurbo);
+		
+		jMenuSpeed.addSeparator();
+		
+		ButtonGroup clockGroup = new ButtonGroup();
+		jMenuItemClock179 = new JRadioButtonMenuItem("1.79 MHz");
+		jMenuItemClock179.setSelected(true);
+		jMenuItemClock358 = new JRadioButtonMenuItem("3.58 MHz");
+		jMenuItemClockCustom = new JRadioButtonMenuItem("Custom clock...");
+		JRadioButtonMenuItem[] clocks = { jMenuItemClock179, jMenuItemClock358, jMenuItemClockCustom };
+		for (int i = 0; i < clocks.length; i ++) {
+			clocks[i].addActionListener(this);
+			clockGroup.add(clocks[i]);
+			jMenuSpeed.add(clocks[i]);
+		}
+		
 		// Help menu
 		jMenuHelp = new JMenu("Help");
 		jMenuHelp.setMnemonic(KeyEvent.VK_H);
@@ -152,6 +237,8 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		// Build menu bar
 		JMenuBar mb = new JMenuBar();
 		mb.add(jMenuFile);
+		mb.add(jMenuEngine);
+		mb.add(jMenuSpeed);
 		mb.add(jMenuHelp);
 		
 		this.setJMenuBar(mb);
@@ -184,17 +271,28 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		this.iButton = this.createButton("I");
 		this.setButtonBounds(this.iButton, 3, 4);
 		
+		// Engine and speed
+		status = new JLabel();
+		status.setBounds(16, 344, 264, 16);
+		this.add(status);
+		
+		this.updateStatus();
+		
+		statusTimer = new Timer(500, this);
+		statusTimer.start();
+		
 		// Other properties
 		this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
-		this.setSize(300, 400);
+		this.setSize(300, 420);
 		this.setResizable(false);
 		this.setLocationByPlatform(true);
 		
 		// Events
 		this.addWindowListener(new WindowAdapter() {
 			public void windowClosed(WindowEvent e) {
-				if (!cpu.isStop())
-					cpu.stop();
+				statusTimer.stop();
+				controller.shutdown();
+				closeRam();
 			}
 		});
 	}
@@ -262,10 +360,36 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		OutputDevice outputDevice = new OutputDevice();
 		outputDevice.setOutputListener(this);
 		
-		ram = new Ram(65536);
+		ram = this.openRam();
 		cpu = new Cpu(ram, inputDevice, outputDevice);
+		cpu.getDma().setDmaListener(this);
 		
 		cpu.reset();
+		
+		controller = new RunController(cpu);
+		controller.setListener(this);
+	}
+	
+	// The machine comes back with memory as it was left; plain RAM if
+	// the file cannot be mapped.
+	private MemoryBus openRam() {
+		File file = new File(System.getProperty("user.home"), RAM_FILE);
+		try {
+			return MappedRam.open(file, 65536);
+		} catch (IOException e) {
+			return new Ram(65536);
+		}
+	}
+	
+	private void closeRam() {
+		if (!(ram instanceof MappedRam))
+			return;
+		
+		try {
+			((MappedRam) ram).close();
+		} catch (IOException e) {
+			// Nothing more to do on the way out.
+		}
 	}
 	
 	/**
@@ -277,7 +401,28 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 	}
 
 	public void actionPerformed(ActionEvent e) {
-		if (e.getSource() == jMenuItemExit) {
+		if (e.getSource() == statusTimer) {
+			this.updateStatus();
+		} else if (e.getSource() == jMenuItemTurbo) {
+			cpu.setPacing(false);
+			this.updateStatus();
+		} else if (e.getSource() == jMenuItemClock179) {
+			cpu.setClockFrequency(Cpu.CLOCK_1_79_MHZ);
+		} else if (e.getSource() == jMenuItemClock358) {
+			cpu.setClockFrequency(Cpu.CLOCK_3_58_MHZ);
+		} else if (e.getSource() == jMenuItemClockCustom) {
+			String mhz = JOptionPane.showInputDialog(this, "Clock frequency in MHz:",
+					Double.toString(cpu.getClockFrequency() / 1000000.0));
+			try {
+				if (mhz != null)
+					cpu.setClockFrequency((long) (Double.parseDouble(mhz) * 1000000.0));
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this,
+						"Not a clock frequency: " + mhz,
+						"Speed",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		} else if (e.getSource() == jMenuItemExit) {
 			this.dispose();
 		} else if (e.getSource() == jMenuItemAbout) {
 			JOptionPane.showMessageDialog(this,
@@ -287,15 +432,14 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		} else if (e.getSource() == runButton) {
 			isRun = runButton.isSelected();
 			isLoad = false;
+			cpu.getDma().setInstant(false);
 			
 			updateButtons();
 			
-			if (isRun && cpu.isStop()) {
-				cpu.reset();
-				(new Thread(new CpuRunner(cpu, this))).start();
-			} else if ((!isRun) && (!cpu.isStop())) {
-				cpu.stop();
-			}
+			if (isRun)
+				controller.start();
+			else
+				controller.stop();
 		} else if (e.getSource() == mpButton) {
 			isMp = mpButton.isSelected();
 			
@@ -308,23 +452,16 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 			
 			updateButtons();
 			
-			if (!cpu.isStop())
-				cpu.stop();
-			
-			if (isLoad && mpButton.isSelected())
-				cpu.reset();
-			
+			// Load mode starts from reset, with R0 at 0000 for DMA-in.
+			// Bytes go in at once, without machine cycles.
+			cpu.getDma().setInstant(isLoad);
 			if (isLoad)
-				this.inputOffset = 0;
+				controller.reset();
+			else
+				controller.stop();
 		} else if (e.getSource() == iButton) {
-			if (isLoad) {
-				ram.setByte(this.inputOffset, this.inputValue);
-				byte currentByte = ram.getByte(this.inputOffset);
-				this.inputOffset ++;
-				this.inputOffset &= 0x00FFFF;
-				
-				this.setHex(currentByte);
-			}
+			if (isLoad)
+				cpu.getDma().post(new byte[] { this.inputValue });
 		} else if (e.getSource() == jMenuItemOpen) {
 			JFileChooser chooser = new JFileChooser();
 			chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
@@ -346,6 +483,22 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 				this.saveFileFromRam(chooser.getSelectedFile());
 			}
 		} else {
+			for (int i = 0; i < this.jMenuItemSpeeds.length; i ++) {
+				if (e.getSource() == this.jMenuItemSpeeds[i]) {
+					cpu.setSpeed(SPEEDS[i]);
+					cpu.setPacing(true);
+					this.updateStatus();
+				}
+			}
+			
+			for (int i = 0; i < this.jMenuItemEngines.length; i ++) {
+				if (e.getSource() == this.jMenuItemEngines[i]) {
+					// Takes over at the next step if the cpu is running.
+					cpu.setEngine(this.engines[i]);
+					this.updateStatus();
+				}
+			}
+			
 			for (int i = 0; i < this.numberButtons.length; i ++) {
 				JButton btn = this.numberButtons[i];
 				
@@ -413,6 +566,22 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		
 	}
 
+	private void updateStatus() {
+		String text = cpu.getEngine().getName() + ", " +
+				(cpu.isPacing() ? speedText(cpu.getSpeed()) : "turbo");
+		if (controller.getState() == RunController.RUNNING)
+			text += ", " + (cpu.getCyclesPerSecond() / 1000L) + "k cycles/s";
+		
+		this.status.setText(text);
+	}
+	
+	private static String speedText(double speed) {
+		if (speed == Math.floor(speed))
+			return (long) speed + "x";
+		
+		return speed + "x";
+	}
+	
 	private void updateButtons() {
 		this.runButton.setSelected(this.isRun);
 		this.loadButton.setSelected(this.isLoad);
@@ -429,8 +598,34 @@ public class Elf2 extends JFrame implements ActionListener, OutputListener {
 		this.setQLed(isOn);
 	}
 
-	public void stopped() {
-		this.runButton.setSelected(false);
+	public void bytesIn(int beginAddress, int length) {
+		// With MP on, what is in memory rather than what was keyed in.
+		final byte currentByte = ram.getByte((beginAddress + length - 1) & 0xFFFF);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				setHex(currentByte);
+			}
+		});
+	}
+
+	public void stateChanged(final int state) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (state == RunController.STOPPED)
+					runButton.setSelected(false);
+			}
+		});
+	}
+	
+	public void unknownOpcode(final UnknownOpcodeException e) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JOptionPane.showMessageDialog(Elf2.this,
+						"Unknown opcode: " + e.getMessage(),
+						"Exception",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 
 }
@@ -0,0 +1,57 @@
+package com.akeysoft.elf.core;
+
+// A straight-line run of instructions, compiled once into closures.
+//
+// Execution enters at the first instruction and leaves after the last,
+// which is a branch, a skip, SEP, RET, DIS or IDL unless the block hit the
+// size limit. The cycle cost is known up front, so the Cpu adds it in one
+// go instead of instruction by instruction, except before instructions
+// that talk to a device, which see the cycle counter as it would be there.
+final class Block {
+
+	// Store next[i] into R(P) before running the closure. Only needed
+	// when the instruction looks at the program counter, directly or
+	// through R(X).
+	static final int SET_PC = 1;
+
+	// The instruction may move the program counter or overwrite code, so
+	// check after it whether the rest of the block still applies.
+	static final int GUARD = 2;
+
+	// The instruction calls the input or output device, which may read
+	// the cycle counter, so bring it up to date before running it.
+	static final int DEVICE = 4;
+
+	final int address;
+	// Value of P the block was compiled for.
+	final int p;
+	// Number of code bytes covered.
+	final int length;
+
+	final Closure[] closures;
+	// Address following each instruction.
+	final int[] next;
+	final int[] flags;
+	// Cycles used up to and including each instruction.
+	final int[] cycles;
+	final int totalCycles;
+
+	// Cleared when code inside the block is overwritten.
+	boolean valid;
+
+	// Times the Cpu entered the block while counting for compilation.
+	int entries;
+
+	Block(int address, int p, int length, Closure[] closures, int[] next, int[] flags, int[] cycles) {
+		this.address = address;
+		this.p = p;
+		this.length = length;
+		this.closures = closures;
+		this.next = next;
+		this.flags = flags;
+		this.cycles = cycles;
+		this.totalCycles = cycles[cycles.length - 1];
+		this.valid = true;
+		this.entries = 0;
+	}
+}
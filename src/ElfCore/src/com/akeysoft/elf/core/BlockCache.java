@@ -0,0 +1,88 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+
+// Compiled blocks by entry address. Writes through the MemoryBus drop
+// every block covering a written byte.
+final class BlockCache implements RamListener {
+
+	private static final int SIZE = 0x10000;
+
+	private MemoryBus ram;
+	private CodePages codePages;
+
+	final Block[] blocks;
+
+	// Bytes that belong to a compiled block. Flags are not cleared when
+	// a block goes away; a stale flag only costs a useless search.
+	private final boolean[] code;
+
+	// Entries into each address while it has no block, counted by
+	// DISPATCH_TIERED. Dropping a block starts its count over.
+	final int[] counts;
+
+	// Blocks dropped because of writes.
+	long dropped;
+
+	BlockCache(MemoryBus ram, CodePages codePages) {
+		this.ram = ram;
+		this.codePages = codePages;
+		this.blocks = new Block[SIZE];
+		this.code = new boolean[SIZE];
+		this.counts = new int[SIZE];
+		this.dropped = 0L;
+	}
+
+	Block compile(int address, int p) {
+		Block block = BlockCompiler.compile(this.ram, address, p);
+		if (block == null)
+			return null;
+
+		this.blocks[address] = block;
+		for (int i = 0; i < block.length; i ++) {
+			this.code[(address + i) & 0xFFFF] = true;
+			this.codePages.mark(address + i, 1);
+		}
+
+		return block;
+	}
+
+	void clear() {
+		for (int i = 0; i < SIZE; i ++) {
+			if (this.blocks[i] != null) {
+				this.blocks[i].valid = false;
+				this.blocks[i] = null;
+				this.dropped ++;
+			}
+		}
+
+		Arrays.fill(this.code, false);
+		Arrays.fill(this.counts, 0);
+	}
+
+	public void bytesWritten(int beginAddress, int length) {
+		if (length >= SIZE) {
+			this.clear();
+			return;
+		}
+
+		for (int i = 0; i < length; i ++) {
+			int address = (beginAddress + i) & 0xFFFF;
+			if (this.code[address])
+				this.invalidate(address);
+		}
+	}
+
+	private void invalidate(int address) {
+		for (int i = 0; i < BlockCompiler.MAX_LENGTH; i ++) {
+			int start = (address - i) & 0xFFFF;
+			Block block = this.blocks[start];
+			if (block != null && i < block.length) {
+				block.valid = false;
+				this.blocks[start] = null;
+				this.counts[start] = 0;
+				this.dropped ++;
+			}
+		}
+	}
+}
@@ -0,0 +1,688 @@
+package com.akeysoft.elf.core;
+
+// Finds the basic block starting at an address and turns each of its
+// instructions into a Closure.
+final class BlockCompiler {
+
+	static final int MAX_INSTRUCTIONS = 32;
+	static final int MAX_LENGTH = MAX_INSTRUCTIONS * 3;
+
+	private BlockCompiler() {
+	}
+
+	// Returns null if there is nothing to compile, i.e. the first opcode
+	// is unknown.
+	static Block compile(MemoryBus ram, int address, int p) {
+		Closure[] closures = new Closure[MAX_INSTRUCTIONS];
+		int[] next = new int[MAX_INSTRUCTIONS];
+		int[] flags = new int[MAX_INSTRUCTIONS];
+		int[] cycles = new int[MAX_INSTRUCTIONS];
+
+		int count = 0;
+		int pc = address;
+		int totalCycles = 0;
+
+		while (count < MAX_INSTRUCTIONS) {
+			int entry = Opcode.TABLE[ram.getUnsignedByte(pc)];
+			int handler = Opcode.handler(entry);
+
+			// Leave unknown opcodes to the interpreter, which reports them.
+			if (handler == Opcode.UNKNOWN)
+				break;
+
+			int operand = Opcode.operand(ram, pc, entry);
+			pc = (pc + Opcode.length(entry)) & 0xFFFF;
+			totalCycles += Opcode.cycles(entry);
+
+			closures[count] = closure(entry, operand);
+			next[count] = pc;
+			flags[count] = flags(handler, Opcode.n(entry), p);
+			cycles[count] = totalCycles;
+			count ++;
+
+			if (endsBlock(handler))
+				break;
+		}
+
+		if (count == 0)
+			return null;
+
+		// Whatever the last instruction is, R(P) has to be right after it,
+		// and there is nothing left to guard.
+		flags[count - 1] = Block.SET_PC | (flags[count - 1] & Block.DEVICE);
+
+		return new Block(address, p, (pc - address) & 0xFFFF,
+				trim(closures, count), trim(next, count), trim(flags, count), trim(cycles, count));
+	}
+
+	private static boolean endsBlock(int handler) {
+		switch (handler) {
+		case Opcode.IDL:
+		case Opcode.BR:
+		case Opcode.BQ:
+		case Opcode.BZ:
+		case Opcode.BDF:
+		case Opcode.B:
+		case Opcode.SKP:
+		case Opcode.BNQ:
+		case Opcode.BNZ:
+		case Opcode.BNF:
+		case Opcode.BN:
+		case Opcode.RET:
+		case Opcode.DIS:
+		case Opcode.LBR:
+		case Opcode.LBQ:
+		case Opcode.LBZ:
+		case Opcode.LBDF:
+		case Opcode.LSNQ:
+		case Opcode.LSNZ:
+		case Opcode.LSNF:
+		case Opcode.LSKP:
+		case Opcode.LBNQ:
+		case Opcode.LBNZ:
+		case Opcode.LBNF:
+		case Opcode.LSIE:
+		case Opcode.LSQ:
+		case Opcode.LSZ:
+		case Opcode.LSDF:
+		case Opcode.SEP:
+			return true;
+			
+		default:
+			return false;
+		}
+	}
+
+	private static int flags(int handler, int n, int p) {
+		switch (handler) {
+		// Read R(n).
+		case Opcode.LDN:
+		case Opcode.GLO:
+		case Opcode.GHI:
+			return (n == p) ? Block.SET_PC : 0;
+			
+		// Write R(n).
+		case Opcode.INC:
+		case Opcode.DEC:
+		case Opcode.LDA:
+		case Opcode.PLO:
+		case Opcode.PHI:
+			return (n == p) ? Block.SET_PC | Block.GUARD : 0;
+			
+		// Write memory through R(n).
+		case Opcode.STR:
+			return Block.SET_PC | Block.GUARD;
+			
+		// Read R(X), which may be R(P).
+		case Opcode.LDX:
+		case Opcode.OR:
+		case Opcode.AND:
+		case Opcode.XOR:
+		case Opcode.ADD:
+		case Opcode.SD:
+		case Opcode.SM:
+		case Opcode.ADC:
+		case Opcode.SDB:
+		case Opcode.SMB:
+			return Block.SET_PC;
+			
+		// Write R(X) or memory.
+		case Opcode.LDXA:
+		case Opcode.STXD:
+		case Opcode.IRX:
+		case Opcode.SAV:
+			return Block.SET_PC | Block.GUARD;
+			
+		// Call a device, and write R(X) or memory.
+		case Opcode.OUT:
+		case Opcode.INP:
+			return Block.SET_PC | Block.GUARD | Block.DEVICE;
+			
+		// Call the output device.
+		case Opcode.REQ:
+		case Opcode.SEQ:
+			return Block.DEVICE;
+			
+		// Writes memory through R2.
+		case Opcode.MARK:
+			return Block.SET_PC | Block.GUARD;
+			
+		default:
+			return 0;
+		}
+	}
+
+	private static Closure closure(int entry, int operand) {
+		return closure(Opcode.handler(entry), Opcode.n(entry), operand);
+	}
+
+	private static Closure closure(int handler, final int n, final int operand) {
+		switch (handler) {
+		case Opcode.IDL:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execIDL();
+				}
+			};
+			
+		case Opcode.LDN:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLDNn(n);
+				}
+			};
+			
+		case Opcode.INC:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execINCn(n);
+				}
+			};
+			
+		case Opcode.DEC:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execDECn(n);
+				}
+			};
+			
+		case Opcode.BR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBR(operand);
+				}
+			};
+			
+		case Opcode.BQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBQ(operand);
+				}
+			};
+			
+		case Opcode.BZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBZ(operand);
+				}
+			};
+			
+		case Opcode.BDF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBDF(operand);
+				}
+			};
+			
+		case Opcode.B:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBn(n, operand);
+				}
+			};
+			
+		case Opcode.SKP:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSKP();
+				}
+			};
+			
+		case Opcode.BNQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBNQ(operand);
+				}
+			};
+			
+		case Opcode.BNZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBNZ(operand);
+				}
+			};
+			
+		case Opcode.BNF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBNF(operand);
+				}
+			};
+			
+		case Opcode.BN:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execBNn(n, operand);
+				}
+			};
+			
+		case Opcode.LDA:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLDAn(n);
+				}
+			};
+			
+		case Opcode.STR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSTRn(n);
+				}
+			};
+			
+		case Opcode.IRX:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execIRX();
+				}
+			};
+			
+		case Opcode.OUT:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execOUTn(n);
+				}
+			};
+			
+		case Opcode.INP:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execINPn(n);
+				}
+			};
+			
+		case Opcode.RET:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execRET();
+				}
+			};
+			
+		case Opcode.DIS:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execDIS();
+				}
+			};
+			
+		case Opcode.LDXA:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLDXA();
+				}
+			};
+			
+		case Opcode.STXD:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSTXD();
+				}
+			};
+			
+		case Opcode.ADC:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execADC();
+				}
+			};
+			
+		case Opcode.SDB:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSDB();
+				}
+			};
+			
+		case Opcode.SHRC:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSHRC();
+				}
+			};
+			
+		case Opcode.SMB:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSMB();
+				}
+			};
+			
+		case Opcode.SAV:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSAV();
+				}
+			};
+			
+		case Opcode.MARK:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execMARK();
+				}
+			};
+			
+		case Opcode.REQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execREQ();
+				}
+			};
+			
+		case Opcode.SEQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSEQ();
+				}
+			};
+			
+		case Opcode.ADCI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execADCI(operand);
+				}
+			};
+			
+		case Opcode.SDBI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSDBI(operand);
+				}
+			};
+			
+		case Opcode.SHLC:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSHLC();
+				}
+			};
+			
+		case Opcode.SMBI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSMBI(operand);
+				}
+			};
+			
+		case Opcode.GLO:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execGLOn(n);
+				}
+			};
+			
+		case Opcode.GHI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execGHIn(n);
+				}
+			};
+			
+		case Opcode.PLO:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execPLOn(n);
+				}
+			};
+			
+		case Opcode.PHI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execPHIn(n);
+				}
+			};
+			
+		case Opcode.LBR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBR(operand);
+				}
+			};
+			
+		case Opcode.LBQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBQ(operand);
+				}
+			};
+			
+		case Opcode.LBZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBZ(operand);
+				}
+			};
+			
+		case Opcode.LBDF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBDF(operand);
+				}
+			};
+			
+		case Opcode.NOP:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execNOP();
+				}
+			};
+			
+		case Opcode.LSNQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSNQ();
+				}
+			};
+			
+		case Opcode.LSNZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSNZ();
+				}
+			};
+			
+		case Opcode.LSNF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSNF();
+				}
+			};
+			
+		case Opcode.LSKP:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSKP();
+				}
+			};
+			
+		case Opcode.LBNQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBNQ(operand);
+				}
+			};
+			
+		case Opcode.LBNZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBNZ(operand);
+				}
+			};
+			
+		case Opcode.LBNF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLBNF(operand);
+				}
+			};
+			
+		case Opcode.LSIE:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSIE();
+				}
+			};
+			
+		case Opcode.LSQ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSQ();
+				}
+			};
+			
+		case Opcode.LSZ:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSZ();
+				}
+			};
+			
+		case Opcode.LSDF:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLSDF();
+				}
+			};
+			
+		case Opcode.SEP:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSEPn(n);
+				}
+			};
+			
+		case Opcode.SEX:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSEXn(n);
+				}
+			};
+			
+		case Opcode.LDX:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLDX();
+				}
+			};
+			
+		case Opcode.OR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execOR();
+				}
+			};
+			
+		case Opcode.AND:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execAND();
+				}
+			};
+			
+		case Opcode.XOR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execXOR();
+				}
+			};
+			
+		case Opcode.ADD:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execADD();
+				}
+			};
+			
+		case Opcode.SD:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSD();
+				}
+			};
+			
+		case Opcode.SHR:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSHR();
+				}
+			};
+			
+		case Opcode.SM:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSM();
+				}
+			};
+			
+		case Opcode.LDI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execLDI(operand);
+				}
+			};
+			
+		case Opcode.ORI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execORI(operand);
+				}
+			};
+			
+		case Opcode.ANI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execANI(operand);
+				}
+			};
+			
+		case Opcode.XRI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execXRI(operand);
+				}
+			};
+			
+		case Opcode.ADI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execADI(operand);
+				}
+			};
+			
+		case Opcode.SDI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSDI(operand);
+				}
+			};
+			
+		case Opcode.SHL:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSHL();
+				}
+			};
+			
+		case Opcode.SMI:
+			return new Closure() {
+				void run(Cpu cpu) {
+					cpu.execSMI(operand);
+				}
+			};
+			
+		default:
+			throw new IllegalArgumentException("handler " + handler);
+		}
+	}
+
+	private static Closure[] trim(Closure[] values, int count) {
+		Closure[] result = new Closure[count];
+		System.arraycopy(values, 0, result, 0, count);
+		return result;
+	}
+
+	private static int[] trim(int[] values, int count) {
+		int[] result = new int[count];
+		System.arraycopy(values, 0, result, 0, count);
+		return result;
+	}
+}
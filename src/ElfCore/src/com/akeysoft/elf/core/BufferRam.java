@@ -0,0 +1,126 @@
+package com.akeysoft.elf.core;
+
+import java.nio.ByteBuffer;
+
+// A MemoryBus over a ByteBuffer. With a direct buffer the memory lives
+// outside the Java heap, where the collector never scans or moves it and
+// native code can reach it without a copy.
+//
+// Single bytes go through the buffer's absolute get and put, which check
+// the index each time; setBytes, getBytes and copy check their range once
+// and move the bytes in one call, and fill works in place. The position
+// and limit of the buffer are left alone, so others may share it.
+public class BufferRam extends MemoryBus {
+
+	private final ByteBuffer buffer;
+	private final int size;
+
+	public BufferRam(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.size = buffer.capacity();
+	}
+
+	// size bytes of zeros off the heap.
+	public static BufferRam allocateDirect(int size) {
+		return new BufferRam(ByteBuffer.allocateDirect(size));
+	}
+
+	public ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public final byte getByte(int address) {
+		return this.buffer.get(address);
+	}
+
+	public final int getUnsignedByte(int address) {
+		return this.buffer.get(address) & 0xFF;
+	}
+
+	public final void setByte(int address, byte value) {
+		if (this.mp) return;
+		if (this.buffer.get(address) == value) return;
+
+		this.buffer.put(address, value);
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(address, 1);
+		}
+	}
+
+	// Writes length bytes of values from offset, as far as the memory goes.
+	public void setBytes(int beginAddress, byte[] values, int offset, int length) {
+		if (this.mp) return;
+
+		int len = Math.min(length, this.size - beginAddress);
+		if (len <= 0) return;
+
+		ByteBuffer view = this.buffer.duplicate();
+		view.position(beginAddress);
+		view.put(values, offset, len);
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(beginAddress, len);
+		}
+	}
+
+	public void getBytes(int beginAddress, byte[] values, int offset, int length) {
+		ByteBuffer view = this.buffer.duplicate();
+		view.position(beginAddress);
+		view.get(values, offset, length);
+	}
+
+	// Like setByte on length bytes from address, one after the other.
+	public void fill(int address, int length, byte value) {
+		if (this.mp) return;
+
+		int first = address;
+		int end = address + length;
+		while (first < end && this.buffer.get(first) == value) {
+			first ++;
+		}
+		if (first == end) return;
+
+		// In place, so that nothing is allocated on the heap.
+		for (int i = first; i < end; i ++) {
+			this.buffer.put(i, value);
+		}
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(first, end - first);
+		}
+	}
+
+	// Like setByte(to + i, getByte(from + i)) for i from 0 up to length,
+	// so where to is just above from the bytes repeat.
+	public void copy(int from, int to, int length) {
+		if (this.mp) return;
+
+		int first = 0;
+		while (first < length && this.buffer.get(to + first) == this.buffer.get(from + first)) {
+			first ++;
+		}
+		if (first == length) return;
+
+		if (to > from && to < from + length) {
+			for (int i = first; i < length; i ++) {
+				this.buffer.put(to + i, this.buffer.get(from + i));
+			}
+		} else {
+			ByteBuffer source = this.buffer.duplicate();
+			source.position(from + first);
+			source.limit(from + length);
+			ByteBuffer target = this.buffer.duplicate();
+			target.position(to + first);
+			target.put(source);
+		}
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(to + first, length - first);
+		}
+	}
+}
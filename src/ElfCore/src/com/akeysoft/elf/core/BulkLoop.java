@@ -0,0 +1,115 @@
+package com.akeysoft.elf.core;
+
+// Loops that copy or fill memory a byte per turn, counting down the low
+// byte of a register:
+//
+//   COPY       L:  LDA s / STR d / INC d / DEC c / GLO c / BNZ L
+//   FILL       L:  LDI v / STR d / INC d / DEC c / GLO c / BNZ L
+//   FILL_DOWN  L:  LDI v / STXD / DEC c / GLO c / BNZ L
+//
+// Cpu runs as many turns of one as it can at once through MemoryBus.copy
+// and MemoryBus.fill. A loop is described by an int: the pattern in bits
+// 0-3, s, d and c in bits 4-15 and v in bits 16-23.
+final class BulkLoop {
+
+	static final int COPY = 0;
+	static final int FILL = 1;
+	static final int FILL_DOWN = 2;
+
+	static final int NONE = -1;
+
+	private static final int[] LENGTHS = { 7, 8, 7 };
+	private static final int[] CYCLES = { 12, 12, 10 };
+
+	private BulkLoop() {
+	}
+
+	static int pattern(int loop) {
+		return loop & 0x0F;
+	}
+
+	static int source(int loop) {
+		return (loop >> 4) & 0x0F;
+	}
+
+	static int dest(int loop) {
+		return (loop >> 8) & 0x0F;
+	}
+
+	static int counter(int loop) {
+		return (loop >> 12) & 0x0F;
+	}
+
+	static int value(int loop) {
+		return (loop >> 16) & 0xFF;
+	}
+
+	static int length(int loop) {
+		return LENGTHS[pattern(loop)];
+	}
+
+	// Cycles of one turn.
+	static int cycles(int loop) {
+		return CYCLES[pattern(loop)];
+	}
+
+	// Returns the loop starting at address, or NONE. The BNZ has to go
+	// back to address the way Cpu runs short branches.
+	static int match(MemoryBus ram, int address) {
+		int first = at(ram, address);
+
+		switch (Opcode.handler(first)) {
+		case Opcode.LDA:
+			int s = Opcode.n(first);
+			int d = storeAndInc(ram, address + 1);
+			int c = countdown(ram, address + 3, address);
+			if (d < 0 || c < 0 || s == d || s == c || d == c)
+				return NONE;
+			return COPY | (s << 4) | (d << 8) | (c << 12);
+
+		case Opcode.LDI:
+			int v = ram.getUnsignedByte((address + 1) & 0xFFFF);
+			if (Opcode.handler(at(ram, address + 2)) == Opcode.STXD) {
+				c = countdown(ram, address + 3, address);
+				if (c < 0)
+					return NONE;
+				return FILL_DOWN | (c << 12) | (v << 16);
+			}
+
+			d = storeAndInc(ram, address + 2);
+			c = countdown(ram, address + 4, address);
+			if (d < 0 || c < 0 || d == c)
+				return NONE;
+			return FILL | (d << 8) | (c << 12) | (v << 16);
+		}
+
+		return NONE;
+	}
+
+	// STR d / INC d; returns d or -1.
+	private static int storeAndInc(MemoryBus ram, int address) {
+		int str = at(ram, address);
+		if (Opcode.handler(str) != Opcode.STR ||
+				at(ram, address + 1) != Opcode.TABLE[0x10 | Opcode.n(str)])
+			return -1;
+
+		return Opcode.n(str);
+	}
+
+	// DEC c / GLO c / BNZ start; returns c or -1.
+	private static int countdown(MemoryBus ram, int address, int start) {
+		int dec = at(ram, address);
+		int c = Opcode.n(dec);
+		if (Opcode.handler(dec) != Opcode.DEC ||
+				at(ram, address + 1) != Opcode.TABLE[0x80 | c] ||
+				Opcode.handler(at(ram, address + 2)) != Opcode.BNZ ||
+				ram.getUnsignedByte((address + 3) & 0xFFFF) != start)
+			return -1;
+
+		return c;
+	}
+
+	private static int at(MemoryBus ram, int address) {
+		return Opcode.TABLE[ram.getUnsignedByte(address & 0xFFFF)];
+	}
+}
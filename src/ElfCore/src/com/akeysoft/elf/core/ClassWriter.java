@@ -0,0 +1,376 @@
+package com.akeysoft.elf.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Writes a class file with a default constructor and one method, using
+// only the constants and instructions RegionCompiler needs. The class
+// file version is 49 (Java 5), which the JVM verifies without stack map
+// frames, so the code needs none.
+//
+// Jumps go to labels, which are small integers handed out by newLabel
+// and placed with mark. Their offsets are filled in by endMethod.
+final class ClassWriter {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+	static final int ACC_PROTECTED = 0x0004;
+
+	// Instructions.
+	static final int ICONST_0 = 3;
+	static final int BIPUSH = 16;
+	static final int SIPUSH = 17;
+	static final int LDC = 18;
+	static final int LDC_W = 19;
+	static final int ILOAD = 21;
+	static final int LLOAD = 22;
+	static final int ALOAD = 25;
+	static final int ISTORE = 54;
+	static final int LSTORE = 55;
+	static final int IALOAD = 46;
+	static final int IASTORE = 79;
+	static final int IADD = 96;
+	static final int LADD = 97;
+	static final int ISUB = 100;
+	static final int LSUB = 101;
+	static final int ISHL = 120;
+	static final int ISHR = 122;
+	static final int IAND = 126;
+	static final int IOR = 128;
+	static final int IXOR = 130;
+	static final int IINC = 132;
+	static final int I2L = 133;
+	static final int I2B = 145;
+	static final int I2C = 146;
+	static final int IFEQ = 153;
+	static final int IFNE = 154;
+	static final int IF_ICMPLT = 161;
+	static final int GOTO = 167;
+	static final int RETURN = 177;
+	static final int GETFIELD = 180;
+	static final int INVOKEVIRTUAL = 182;
+	static final int INVOKESPECIAL = 183;
+	static final int INVOKESTATIC = 184;
+	static final int WIDE = 196;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final ByteArrayOutputStream poolBytes;
+	private final DataOutputStream pool;
+	private final Map<String, Integer> constants;
+	private int constantCount;
+
+	private final int thisClass;
+	private final int superClass;
+
+	private final ByteArrayOutputStream methodBytes;
+	private final DataOutputStream methods;
+	private int methodCount;
+
+	private final ByteArrayOutputStream codeBytes;
+	private final DataOutputStream code;
+
+	// Code offset of each label, -1 until marked.
+	private int[] labels;
+	private int labelCount;
+	// Jumps to fill in: where the instruction starts and the label.
+	private int[] jumps;
+	private int jumpCount;
+
+	// name and superName are internal names, like java/lang/Object.
+	ClassWriter(String name, String superName) {
+		this.poolBytes = new ByteArrayOutputStream();
+		this.pool = new DataOutputStream(this.poolBytes);
+		this.constants = new HashMap<String, Integer>();
+		this.constantCount = 1;
+
+		this.thisClass = this.classConstant(name);
+		this.superClass = this.classConstant(superName);
+
+		this.methodBytes = new ByteArrayOutputStream();
+		this.methods = new DataOutputStream(this.methodBytes);
+		this.methodCount = 0;
+
+		this.codeBytes = new ByteArrayOutputStream();
+		this.code = new DataOutputStream(this.codeBytes);
+
+		this.labels = new int[64];
+		this.jumps = new int[128];
+	}
+
+	// Adds the constructor that only calls the one of the superclass.
+	void defaultConstructor(String superName) {
+		this.beginMethod(ACC_PUBLIC, "<init>", "()V");
+		this.var(ALOAD, 0);
+		this.invoke(INVOKESPECIAL, superName, "<init>", "()V");
+		this.op(RETURN);
+		this.endMethod(1, 1);
+	}
+
+	void beginMethod(int access, String name, String descriptor) {
+		this.codeBytes.reset();
+		this.labelCount = 0;
+		this.jumpCount = 0;
+
+		try {
+			this.methods.writeShort(access);
+			this.methods.writeShort(this.utf8(name));
+			this.methods.writeShort(this.utf8(descriptor));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	void endMethod(int maxStack, int maxLocals) {
+		byte[] bytes = this.codeBytes.toByteArray();
+		for (int i = 0; i < this.jumpCount; i ++) {
+			int at = this.jumps[i * 2];
+			int offset = this.labels[this.jumps[i * 2 + 1]] - at;
+			bytes[at + 1] = (byte) (offset >> 8);
+			bytes[at + 2] = (byte) offset;
+		}
+
+		try {
+			// One attribute, Code.
+			this.methods.writeShort(1);
+			this.methods.writeShort(this.utf8("Code"));
+			this.methods.writeInt(12 + bytes.length);
+			this.methods.writeShort(maxStack);
+			this.methods.writeShort(maxLocals);
+			this.methods.writeInt(bytes.length);
+			this.methods.write(bytes);
+			// No exception table and no attributes.
+			this.methods.writeShort(0);
+			this.methods.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		this.methodCount ++;
+	}
+
+	// Bytes of code in the current method so far.
+	int codeLength() {
+		return this.codeBytes.size();
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(this.constantCount);
+			out.write(this.poolBytes.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(this.thisClass);
+			out.writeShort(this.superClass);
+			// No interfaces and no fields.
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(this.methodCount);
+			out.write(this.methodBytes.toByteArray());
+			// No attributes.
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	int newLabel() {
+		if (this.labelCount == this.labels.length) {
+			int[] labels = new int[this.labels.length * 2];
+			System.arraycopy(this.labels, 0, labels, 0, this.labelCount);
+			this.labels = labels;
+		}
+
+		this.labels[this.labelCount] = -1;
+		return this.labelCount ++;
+	}
+
+	void mark(int label) {
+		this.labels[label] = this.codeBytes.size();
+	}
+
+	// A GOTO or conditional jump to label.
+	void jump(int opcode, int label) {
+		if (this.jumpCount * 2 == this.jumps.length) {
+			int[] jumps = new int[this.jumps.length * 2];
+			System.arraycopy(this.jumps, 0, jumps, 0, this.jumpCount * 2);
+			this.jumps = jumps;
+		}
+
+		this.jumps[this.jumpCount * 2] = this.codeBytes.size();
+		this.jumps[this.jumpCount * 2 + 1] = label;
+		this.jumpCount ++;
+
+		this.op(opcode);
+		this.write(2, 0);
+	}
+
+	void op(int opcode) {
+		this.write(1, opcode);
+	}
+
+	// ILOAD, LLOAD, ALOAD, ISTORE or LSTORE of a local.
+	void var(int opcode, int index) {
+		if (index > 0xFF) {
+			this.op(WIDE);
+			this.op(opcode);
+			this.write(2, index);
+		} else {
+			this.op(opcode);
+			this.write(1, index);
+		}
+	}
+
+	void iinc(int index, int increment) {
+		if (index > 0xFF || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+			this.op(WIDE);
+			this.op(IINC);
+			this.write(2, index);
+			this.write(2, increment);
+		} else {
+			this.op(IINC);
+			this.write(1, index);
+			this.write(1, increment);
+		}
+	}
+
+	// Pushes an int in the shortest way.
+	void push(int value) {
+		if (value >= -1 && value <= 5) {
+			this.op(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			this.op(BIPUSH);
+			this.write(1, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			this.op(SIPUSH);
+			this.write(2, value);
+		} else {
+			int index = this.intConstant(value);
+			if (index > 0xFF) {
+				this.op(LDC_W);
+				this.write(2, index);
+			} else {
+				this.op(LDC);
+				this.write(1, index);
+			}
+		}
+	}
+
+	void invoke(int opcode, String owner, String name, String descriptor) {
+		this.op(opcode);
+		this.write(2, this.memberConstant(CONSTANT_METHODREF, owner, name, descriptor));
+	}
+
+	void getField(String owner, String name, String descriptor) {
+		this.op(GETFIELD);
+		this.write(2, this.memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+	}
+
+	private void write(int size, int value) {
+		try {
+			if (size == 1)
+				this.code.writeByte(value);
+			else
+				this.code.writeShort(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private int utf8(String value) {
+		Integer index = this.constants.get("U" + value);
+		if (index != null)
+			return index;
+
+		try {
+			this.pool.writeByte(CONSTANT_UTF8);
+			this.pool.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this.add("U" + value);
+	}
+
+	private int intConstant(int value) {
+		Integer index = this.constants.get("I" + value);
+		if (index != null)
+			return index;
+
+		try {
+			this.pool.writeByte(CONSTANT_INTEGER);
+			this.pool.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this.add("I" + value);
+	}
+
+	private int classConstant(String name) {
+		Integer index = this.constants.get("C" + name);
+		if (index != null)
+			return index;
+
+		int utf8 = this.utf8(name);
+		try {
+			this.pool.writeByte(CONSTANT_CLASS);
+			this.pool.writeShort(utf8);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this.add("C" + name);
+	}
+
+	private int memberConstant(int tag, String owner, String name, String descriptor) {
+		String key = tag + owner + "." + name + descriptor;
+		Integer index = this.constants.get(key);
+		if (index != null)
+			return index;
+
+		int ownerIndex = this.classConstant(owner);
+		int nameIndex = this.utf8(name);
+		int descriptorIndex = this.utf8(descriptor);
+
+		String nameAndTypeKey = "N" + name + descriptor;
+		Integer nameAndType = this.constants.get(nameAndTypeKey);
+		try {
+			if (nameAndType == null) {
+				this.pool.writeByte(CONSTANT_NAME_AND_TYPE);
+				this.pool.writeShort(nameIndex);
+				this.pool.writeShort(descriptorIndex);
+				nameAndType = this.add(nameAndTypeKey);
+			}
+
+			this.pool.writeByte(tag);
+			this.pool.writeShort(ownerIndex);
+			this.pool.writeShort(nameAndType);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this.add(key);
+	}
+
+	private int add(String key) {
+		this.constants.put(key, this.constantCount);
+		return this.constantCount ++;
+	}
+}
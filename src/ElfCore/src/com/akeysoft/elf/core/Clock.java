@@ -0,0 +1,19 @@
+package com.akeysoft.elf.core;
+
+// Time as run() and devices see it. SystemClock is the host's time;
+// VirtualClock moves only as the Cpu runs cycles, which makes a run
+// independent of the host and as fast as the host allows.
+public interface Clock {
+
+	// Nanoseconds since some fixed point, like System.nanoTime.
+	long nanoTime();
+
+	// Returns once nanoTime() has reached time, or right away if that
+	// cannot happen while the caller waits.
+	void waitUntil(long time);
+
+	// Like waitUntil, but also returns when the thread is unparked, or
+	// for no reason, like LockSupport.parkNanos. Returns false, and right
+	// away, if time does not pass while the caller waits.
+	boolean parkUntil(long time);
+}
@@ -0,0 +1,8 @@
+package com.akeysoft.elf.core;
+
+// One instruction of a compiled block, with its operands bound in.
+abstract class Closure {
+
+	abstract void run(Cpu cpu);
+
+}
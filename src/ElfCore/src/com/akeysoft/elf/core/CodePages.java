@@ -0,0 +1,24 @@
+package com.akeysoft.elf.core;
+
+// The 256-byte pages that hold bytes of code a cache has decoded or
+// compiled. Cpu hands writes to the caches only for these pages, and
+// looks only at these among the pages a write is seen at. Like the code
+// flags of the caches, a page is not unmarked when its code goes away.
+final class CodePages {
+
+	private final boolean[] pages;
+
+	CodePages() {
+		this.pages = new boolean[0x100];
+	}
+
+	// Marks the pages of length bytes from address, length at most 256.
+	void mark(int address, int length) {
+		this.pages[(address >> 8) & 0xFF] = true;
+		this.pages[((address + length - 1) >> 8) & 0xFF] = true;
+	}
+
+	boolean contains(int page) {
+		return this.pages[page];
+	}
+}
@@ -0,0 +1,822 @@
+package com.akeysoft.elf.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+// Translates a .cos memory image into the Java source of a Cpu subclass
+// that runs the image's code without interpreting it.
+//
+// The image is run in the interpreter for a while first, to find out
+// which code runs with which P. Every instruction seen there, and all
+// code reachable from it without changing P, becomes a case of a switch
+// on (P << 16) | address, and straight-line code falls through from case
+// to case. Jumps only known at run time (SEP, RET, DIS, writes to R(P))
+// go back through the switch; code that was not translated, and all of
+// it once the image in memory has been changed, is interpreted.
+//
+// Usage: CosTranslator image.cos ClassName [outputDirectory [profileCycles]]
+public class CosTranslator {
+
+	public static final long DEFAULT_PROFILE_CYCLES = 10000000L;
+
+	// Instructions per generated method. HotSpot does not compile methods
+	// of more than 8000 bytes of bytecode.
+	static final int CHUNK_SIZE = 48;
+
+	private static final String[] NAMES = {
+		"IDL", "LDN", "INC", "DEC", "BR", "BQ", "BZ", "BDF", "B", "SKP", "BNQ", "BNZ", "BNF", "BN",
+		"LDA", "STR", "IRX", "OUT", "INP", "RET", "DIS", "LDXA", "STXD", "ADC", "SDB", "SHRC", "SMB",
+		"SAV", "MARK", "REQ", "SEQ", "ADCI", "SDBI", "SHLC", "SMBI", "GLO", "GHI", "PLO", "PHI",
+		"LBR", "LBQ", "LBZ", "LBDF", "NOP", "LSNQ", "LSNZ", "LSNF", "LSKP", "LBNQ", "LBNZ", "LBNF",
+		"LSIE", "LSQ", "LSZ", "LSDF", "SEP", "SEX", "LDX", "OR", "AND", "XOR", "ADD", "SD", "SHR", "SM",
+		"LDI", "ORI", "ANI", "XRI", "ADI", "SDI", "SHL", "SMI", "UNKNOWN"
+	};
+
+	private byte[] image;
+	private StringBuffer out;
+
+	private CosTranslator(byte[] image) {
+		this.image = image;
+		this.out = new StringBuffer();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: CosTranslator image.cos ClassName [outputDirectory [profileCycles]]");
+			System.exit(1);
+		}
+
+		File imageFile = new File(args[0]);
+		File directory = new File(args.length > 2 ? args[2] : ".");
+		long profileCycles = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_PROFILE_CYCLES;
+
+		String source = translate(read(imageFile), args[1], imageFile.getName(), profileCycles);
+
+		OutputStream os = new FileOutputStream(new File(directory, args[1] + ".java"));
+		try {
+			os.write(source.getBytes("UTF-8"));
+		} finally {
+			os.close();
+		}
+	}
+
+	public static String translate(byte[] image, String className, String imageName, long profileCycles) {
+		CosTranslator translator = new CosTranslator(image);
+		translator.generate(className, imageName, translator.discover(profileCycles));
+
+		return translator.out.toString();
+	}
+
+	static byte[] read(File file) throws IOException {
+		byte[] result = new byte[(int) file.length()];
+
+		InputStream is = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < result.length) {
+				int count = is.read(result, offset, result.length - offset);
+				if (count < 0)
+					break;
+				offset += count;
+			}
+		} finally {
+			is.close();
+		}
+
+		return result;
+	}
+
+	// Returns (P << 16) | address of every instruction to translate.
+	private SortedSet<Integer> discover(long profileCycles) {
+		MemoryBus ram = new Ram(0x10000);
+		ram.setBytes(0, this.image);
+		Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+
+		boolean[][] seen = new boolean[16][0x10000];
+		try {
+			while (cpu.getCycles() < profileCycles && !cpu.isIdle()) {
+				seen[cpu.getP()][cpu.getR(cpu.getP())] = true;
+				cpu.step();
+			}
+		} catch (UnknownOpcodeException e) {
+			// The interpreter reports it when the translated code gets there.
+		}
+
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int p = 0; p < 16; p ++) {
+			for (int address = 0; address < 0x10000; address ++) {
+				if (seen[p][address])
+					pending.add((p << 16) | address);
+			}
+		}
+
+		SortedSet<Integer> keys = new TreeSet<Integer>();
+		while (!pending.isEmpty()) {
+			int key = pending.remove(pending.size() - 1);
+			if (keys.contains(key) || !this.translatable(key & 0xFFFF))
+				continue;
+
+			keys.add(key);
+
+			int p = key >> 16;
+			int address = key & 0xFFFF;
+			int entry = this.entry(address);
+			int next = (address + Opcode.length(entry)) & 0xFFFF;
+
+			switch (Opcode.handler(entry)) {
+			case Opcode.BR:
+			case Opcode.LBR:
+				pending.add((p << 16) | this.operand(address, entry));
+				break;
+
+			case Opcode.SKP:
+				pending.add((p << 16) | ((next + 1) & 0xFFFF));
+				break;
+
+			case Opcode.LSKP:
+				pending.add((p << 16) | ((next + 2) & 0xFFFF));
+				break;
+
+			case Opcode.BQ:
+			case Opcode.BZ:
+			case Opcode.BDF:
+			case Opcode.B:
+			case Opcode.BNQ:
+			case Opcode.BNZ:
+			case Opcode.BNF:
+			case Opcode.BN:
+			case Opcode.LBQ:
+			case Opcode.LBZ:
+			case Opcode.LBDF:
+			case Opcode.LBNQ:
+			case Opcode.LBNZ:
+			case Opcode.LBNF:
+				pending.add((p << 16) | next);
+				pending.add((p << 16) | this.operand(address, entry));
+				break;
+
+			case Opcode.LSNQ:
+			case Opcode.LSNZ:
+			case Opcode.LSNF:
+			case Opcode.LSIE:
+			case Opcode.LSQ:
+			case Opcode.LSZ:
+			case Opcode.LSDF:
+				pending.add((p << 16) | next);
+				pending.add((p << 16) | ((next + 2) & 0xFFFF));
+				break;
+
+			case Opcode.SEP:
+			case Opcode.RET:
+			case Opcode.DIS:
+				break;
+
+			default:
+				pending.add((p << 16) | next);
+				break;
+			}
+		}
+
+		return keys;
+	}
+
+	// IDL and unknown opcodes are left to the interpreter, and so is
+	// anything not entirely inside the image.
+	private boolean translatable(int address) {
+		if (address >= this.image.length)
+			return false;
+
+		int entry = this.entry(address);
+		int handler = Opcode.handler(entry);
+
+		return handler != Opcode.IDL && handler != Opcode.UNKNOWN &&
+				address + Opcode.length(entry) <= this.image.length;
+	}
+
+	private int entry(int address) {
+		return Opcode.TABLE[this.image[address] & 0xFF];
+	}
+
+	private int operand(int address, int entry) {
+		switch (Opcode.length(entry)) {
+		case 2:
+			return this.image[address + 1] & 0xFF;
+		case 3:
+			return (this.image[address + 1] & 0xFF) * 0x100 + (this.image[address + 2] & 0xFF);
+		default:
+			return 0;
+		}
+	}
+
+	private void generate(String className, String imageName, SortedSet<Integer> keySet) {
+		int[] keys = new int[keySet.size()];
+		Iterator<Integer> iterator = keySet.iterator();
+		for (int i = 0; i < keys.length; i ++) {
+			keys[i] = iterator.next();
+		}
+
+		int chunkCount = (keys.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		line(0, "package com.akeysoft.elf.core;");
+		line(0, "");
+		line(0, "// Generated by CosTranslator from " + imageName + ". Do not edit.");
+		line(0, "public class " + className + " extends Cpu {");
+		line(0, "");
+
+		line(1, "static final byte[] IMAGE = new byte[] {");
+		for (int i = 0; i < this.image.length; i += 8) {
+			StringBuffer bytes = new StringBuffer();
+			for (int j = i; j < i + 8 && j < this.image.length; j ++) {
+				bytes.append("(byte) 0x").append(hex(this.image[j] & 0xFF, 2));
+				if (j < this.image.length - 1)
+					bytes.append(j < i + 7 ? ", " : ",");
+			}
+			line(2, bytes.toString());
+		}
+		line(1, "};");
+		line(0, "");
+
+		line(1, "private static final int[] KEYS = new int[] {");
+		for (int i = 0; i < keys.length; i += 8) {
+			StringBuffer values = new StringBuffer();
+			for (int j = i; j < i + 8 && j < keys.length; j ++) {
+				values.append(key(keys[j]));
+				if (j < keys.length - 1)
+					values.append(j < i + 7 ? ", " : ",");
+			}
+			line(2, values.toString());
+		}
+		line(1, "};");
+		line(0, "");
+
+		StringBuffer starts = new StringBuffer();
+		for (int chunk = 0; chunk < chunkCount; chunk ++) {
+			if (chunk > 0)
+				starts.append(", ");
+			starts.append(chunk * CHUNK_SIZE);
+		}
+		line(1, "private static final int[] CHUNK_STARTS = new int[] { " + starts + " };");
+		line(0, "");
+
+		line(1, "public " + className + "(MemoryBus ram, InputDevice inputDevice, OutputDevice outputDevice) {");
+		line(2, "super(ram, inputDevice, outputDevice);");
+		line(2, "this.setTranslation(IMAGE, KEYS, CHUNK_STARTS);");
+		line(1, "}");
+		line(0, "");
+
+		line(1, "boolean runTranslatedChunk(int chunk, long cycleLimit) {");
+		line(2, "switch (chunk) {");
+		for (int chunk = 0; chunk < chunkCount; chunk ++) {
+			line(2, "case " + chunk + ":");
+			line(3, "return this.chunk" + chunk + "(cycleLimit);");
+		}
+		line(2, "default:");
+		line(3, "return false;");
+		line(2, "}");
+		line(1, "}");
+
+		for (int chunk = 0; chunk < chunkCount; chunk ++) {
+			line(0, "");
+			this.generateChunk(chunk, keys, chunk * CHUNK_SIZE, Math.min(keys.length, (chunk + 1) * CHUNK_SIZE));
+		}
+
+		line(0, "}");
+	}
+
+	private void generateChunk(int chunk, int[] keys, int begin, int end) {
+		// Falling through is the point, so lint is told so.
+		line(1, "@SuppressWarnings(\"fallthrough\")");
+		line(1, "private boolean chunk" + chunk + "(long cycleLimit) {");
+		line(2, "MemoryBus ram = this.ram;");
+		line(2, "Translation translation = this.translation;");
+		line(2, "int[] r = this.r;");
+		line(2, "int p = this.p;");
+		line(2, "int x = this.x;");
+		line(2, "int d = this.d;");
+		line(2, "int df = this.df;");
+		line(2, "long cycles = this.cycles;");
+		line(2, "long start = cycles;");
+		line(2, "int pc = r[p];");
+		line(2, "int sum;");
+		line(2, "");
+		line(2, "run:");
+		line(2, "while (true) {");
+		line(3, "switch ((p << 16) | pc) {");
+
+		for (int i = begin; i < end; i ++) {
+			int following = (i + 1 < end) ? keys[i + 1] : -1;
+			this.generateInstruction(keys[i], following);
+			line(4, "");
+		}
+
+		line(3, "default:");
+		line(4, "break run;");
+		line(3, "}");
+		line(2, "}");
+		line(2, "");
+		line(2, "r[p] = pc;");
+		line(2, "this.p = p;");
+		line(2, "this.x = x;");
+		line(2, "this.d = d;");
+		line(2, "this.df = df;");
+		line(2, "this.cycles = cycles;");
+		line(2, "");
+		line(2, "return cycles != start;");
+		line(1, "}");
+	}
+
+	// following is the key of the case after this one, which straight-line
+	// code can fall through to.
+	private void generateInstruction(int key, int following) {
+		int p = key >> 16;
+		int address = key & 0xFFFF;
+		int entry = this.entry(address);
+		int handler = Opcode.handler(entry);
+		int n = Opcode.n(entry);
+		int length = Opcode.length(entry);
+		int cycles = Opcode.cycles(entry);
+		int operand = this.operand(address, entry);
+		int next = (address + length) & 0xFFFF;
+
+		String pc = "0x" + hex(next, 4);
+		String target = "0x" + hex(operand, 4);
+		String skip = "0x" + hex((next + 2) & 0xFFFF, 4);
+
+		StringBuffer comment = new StringBuffer();
+		for (int i = 0; i < length; i ++) {
+			comment.append(hex(this.image[address + i] & 0xFF, 2)).append(' ');
+		}
+		comment.append(NAMES[handler]);
+		if (handler == Opcode.LDN || handler == Opcode.INC || handler == Opcode.DEC ||
+				handler == Opcode.LDA || handler == Opcode.STR || handler == Opcode.GLO ||
+				handler == Opcode.GHI || handler == Opcode.PLO || handler == Opcode.PHI ||
+				handler == Opcode.SEP || handler == Opcode.SEX)
+			comment.append(' ').append(Integer.toHexString(n).toUpperCase());
+		else if (handler == Opcode.B || handler == Opcode.BN)
+			comment.append(n + 1);
+		else if (handler == Opcode.OUT || handler == Opcode.INP)
+			comment.append(' ').append(n + 1);
+		if (length > 1)
+			comment.append(' ').append(hex(operand, length == 2 ? 2 : 4));
+
+		line(3, "case " + key(key) + ": // " + hex(address, 4) + ": " + comment);
+		line(4, "if (cycles + " + cycles + " > cycleLimit) {");
+		line(5, "pc = 0x" + hex(address, 4) + ";");
+		line(5, "break run;");
+		line(4, "}");
+		line(4, "cycles += " + cycles + ";");
+
+		// The instruction reads R(P) itself, or possibly through R(X).
+		if (readsPc(handler, n, p))
+			line(4, "r[" + p + "] = " + pc + ";");
+
+		String condition = null;
+		boolean jumps = false;
+
+		switch (handler) {
+		case Opcode.LDN:
+			line(4, "d = ram.getUnsignedByte(r[" + n + "]);");
+			break;
+
+		case Opcode.INC:
+			line(4, "r[" + n + "] = (r[" + n + "] + 1) & 0xFFFF;");
+			break;
+
+		case Opcode.DEC:
+			line(4, "r[" + n + "] = (r[" + n + "] - 1) & 0xFFFF;");
+			break;
+
+		case Opcode.BR:
+		case Opcode.LBR:
+			line(4, "pc = " + target + ";");
+			line(4, "continue run;");
+			return;
+
+		case Opcode.SKP:
+			line(4, "pc = 0x" + hex((next + 1) & 0xFFFF, 4) + ";");
+			line(4, "continue run;");
+			return;
+
+		case Opcode.LSKP:
+			line(4, "pc = " + skip + ";");
+			line(4, "continue run;");
+			return;
+
+		case Opcode.NOP:
+			break;
+
+		case Opcode.BQ:
+		case Opcode.LBQ:
+			condition = "this.outputDevice.isQOn()";
+			jumps = true;
+			break;
+
+		case Opcode.BZ:
+		case Opcode.LBZ:
+			condition = "d == 0";
+			jumps = true;
+			break;
+
+		case Opcode.BDF:
+		case Opcode.LBDF:
+			condition = "df != 0";
+			jumps = true;
+			break;
+
+		case Opcode.B:
+			condition = "this.ef[" + n + "]";
+			jumps = true;
+			break;
+
+		case Opcode.BNQ:
+		case Opcode.LBNQ:
+			condition = "!this.outputDevice.isQOn()";
+			jumps = true;
+			break;
+
+		case Opcode.BNZ:
+		case Opcode.LBNZ:
+			condition = "d != 0";
+			jumps = true;
+			break;
+
+		case Opcode.BNF:
+		case Opcode.LBNF:
+			condition = "df == 0";
+			jumps = true;
+			break;
+
+		case Opcode.BN:
+			condition = "!this.ef[" + n + "]";
+			jumps = true;
+			break;
+
+		case Opcode.LSQ:
+			condition = "this.outputDevice.isQOn()";
+			break;
+
+		case Opcode.LSZ:
+			condition = "d == 0";
+			break;
+
+		case Opcode.LSDF:
+			condition = "df != 0";
+			break;
+
+		case Opcode.LSNQ:
+			condition = "!this.outputDevice.isQOn()";
+			break;
+
+		case Opcode.LSNZ:
+			condition = "d != 0";
+			break;
+
+		case Opcode.LSNF:
+			condition = "df == 0";
+			break;
+
+		case Opcode.LSIE:
+			condition = "this.ie != 0";
+			break;
+
+		case Opcode.LDA:
+			line(4, "d = ram.getUnsignedByte(r[" + n + "]);");
+			line(4, "r[" + n + "] = (r[" + n + "] + 1) & 0xFFFF;");
+			break;
+
+		case Opcode.STR:
+			line(4, "ram.setByte(r[" + n + "], (byte) d);");
+			break;
+
+		case Opcode.IRX:
+			line(4, "r[x] = (r[x] + 1) & 0xFFFF;");
+			break;
+
+		case Opcode.OUT:
+			line(4, "this.outputDevice.setPort(" + n + ", ram.getByte(r[x]));");
+			line(4, "r[x] = (r[x] + 1) & 0xFFFF;");
+			break;
+
+		case Opcode.INP:
+			line(4, "sum = this.inputDevice.getPort(" + n + ");");
+			line(4, "ram.setByte(r[x], (byte) sum);");
+			line(4, "d = sum & 0xFF;");
+			break;
+
+		case Opcode.RET:
+		case Opcode.DIS:
+			line(4, "sum = ram.getUnsignedByte(r[x]);");
+			line(4, "r[x] = (r[x] + 1) & 0xFFFF;");
+			line(4, "p = sum & 0x0F;");
+			line(4, "x = sum >> 4;");
+			line(4, "this.ie = " + ((handler == Opcode.DIS) ? 0 : 1) + ";");
+			line(4, "pc = r[p];");
+			line(4, "continue run;");
+			return;
+
+		case Opcode.LDXA:
+			line(4, "d = ram.getUnsignedByte(r[x]);");
+			line(4, "r[x] = (r[x] + 1) & 0xFFFF;");
+			break;
+
+		case Opcode.STXD:
+			line(4, "ram.setByte(r[x], (byte) d);");
+			line(4, "r[x] = (r[x] - 1) & 0xFFFF;");
+			break;
+
+		case Opcode.ADC:
+			add("d", "ram.getUnsignedByte(r[x])", "df");
+			break;
+
+		case Opcode.SDB:
+			subtract("(~d)", "ram.getUnsignedByte(r[x])", "df");
+			break;
+
+		case Opcode.SHRC:
+			line(4, "sum = d | (df << 8);");
+			line(4, "df = d & 0x01;");
+			line(4, "d = sum >> 1;");
+			break;
+
+		case Opcode.SMB:
+			subtract("d", "(~ram.getUnsignedByte(r[x]))", "df");
+			break;
+
+		case Opcode.SAV:
+			line(4, "ram.setByte(r[x], (byte) this.t);");
+			break;
+
+		case Opcode.MARK:
+			line(4, "this.t = ((x << 4) & 0xF0) | " + p + ";");
+			line(4, "ram.setByte(r[2], (byte) this.t);");
+			line(4, "x = " + p + ";");
+			break;
+
+		case Opcode.REQ:
+			line(4, "this.outputDevice.setQ(false);");
+			break;
+
+		case Opcode.SEQ:
+			line(4, "this.outputDevice.setQ(true);");
+			break;
+
+		case Opcode.ADCI:
+			add("d", "0x" + hex(operand, 2), "df");
+			break;
+
+		case Opcode.SDBI:
+			subtract("(~d)", "0x" + hex(operand, 2), "df");
+			break;
+
+		case Opcode.SHLC:
+			line(4, "sum = (d << 1) | df;");
+			line(4, "d = sum & 0xFF;");
+			line(4, "df = sum >> 8;");
+			break;
+
+		case Opcode.SMBI:
+			subtract("d", "(~0x" + hex(operand, 2) + ")", "df");
+			break;
+
+		case Opcode.GLO:
+			line(4, "d = r[" + n + "] & 0xFF;");
+			break;
+
+		case Opcode.GHI:
+			line(4, "d = (r[" + n + "] >> 8) & 0xFF;");
+			break;
+
+		case Opcode.PLO:
+			line(4, "r[" + n + "] = (r[" + n + "] & 0xFF00) | d;");
+			break;
+
+		case Opcode.PHI:
+			line(4, "r[" + n + "] = (r[" + n + "] & 0x00FF) | (d << 8);");
+			break;
+
+		case Opcode.SEP:
+			line(4, "p = " + n + ";");
+			line(4, "pc = r[" + n + "];");
+			line(4, "continue run;");
+			return;
+
+		case Opcode.SEX:
+			line(4, "x = " + n + ";");
+			break;
+
+		case Opcode.LDX:
+			line(4, "d = ram.getUnsignedByte(r[x]);");
+			break;
+
+		case Opcode.OR:
+			line(4, "d |= ram.getUnsignedByte(r[x]);");
+			break;
+
+		case Opcode.AND:
+			line(4, "d &= ram.getUnsignedByte(r[x]);");
+			break;
+
+		case Opcode.XOR:
+			line(4, "d ^= ram.getUnsignedByte(r[x]);");
+			break;
+
+		case Opcode.ADD:
+			add("d", "ram.getUnsignedByte(r[x])", null);
+			break;
+
+		case Opcode.SD:
+			subtract("(~d)", "ram.getUnsignedByte(r[x])", "1");
+			break;
+
+		case Opcode.SHR:
+			line(4, "df = d & 0x01;");
+			line(4, "d = d >> 1;");
+			break;
+
+		case Opcode.SM:
+			subtract("d", "(~ram.getUnsignedByte(r[x]))", "1");
+			break;
+
+		case Opcode.LDI:
+			line(4, "d = 0x" + hex(operand, 2) + ";");
+			break;
+
+		case Opcode.ORI:
+			line(4, "d |= 0x" + hex(operand, 2) + ";");
+			break;
+
+		case Opcode.ANI:
+			line(4, "d &= 0x" + hex(operand, 2) + ";");
+			break;
+
+		case Opcode.XRI:
+			line(4, "d ^= 0x" + hex(operand, 2) + ";");
+			break;
+
+		case Opcode.ADI:
+			add("d", "0x" + hex(operand, 2), null);
+			break;
+
+		case Opcode.SDI:
+			subtract("(~d)", "0x" + hex(operand, 2), "1");
+			break;
+
+		case Opcode.SHL:
+			line(4, "sum = d << 1;");
+			line(4, "d = sum & 0xFF;");
+			line(4, "df = sum >> 8;");
+			break;
+
+		case Opcode.SMI:
+			subtract("d", "(~0x" + hex(operand, 2) + ")", "1");
+			break;
+		}
+
+		if (condition != null) {
+			line(4, "if (" + condition + ") {");
+			line(5, "pc = " + (jumps ? target : skip) + ";");
+			line(5, "continue run;");
+			line(4, "}");
+		}
+
+		if (writesMemory(handler)) {
+			line(4, "if (!translation.isIntact()) {");
+			line(5, "pc = " + (readsPc(handler, n, p) ? "r[" + p + "]" : pc) + ";");
+			line(5, "break run;");
+			line(4, "}");
+		}
+
+		if (writesPc(handler, n, p)) {
+			line(4, "if (r[" + p + "] != " + pc + ") {");
+			line(5, "pc = r[" + p + "];");
+			line(5, "continue run;");
+			line(4, "}");
+		}
+
+		if (following != ((p << 16) | next)) {
+			line(4, "pc = " + pc + ";");
+			line(4, "continue run;");
+		}
+	}
+
+	private void add(String a, String b, String carry) {
+		line(4, "sum = " + a + " + " + b + (carry != null ? " + " + carry : "") + ";");
+		line(4, "d = sum & 0xFF;");
+		line(4, "df = sum >> 8;");
+	}
+
+	// DF comes out of sum the same way as in the exec methods of Cpu.
+	private void subtract(String a, String b, String carry) {
+		line(4, "sum = " + a + " + " + b + " + " + carry + ";");
+		line(4, "d = sum & 0xFF;");
+		line(4, "df = (sum & 0xFF00) != 0 ? 1 : 0;");
+	}
+
+	// Whether R(P) has to hold the address of the next instruction when
+	// the instruction runs.
+	private static boolean readsPc(int handler, int n, int p) {
+		switch (handler) {
+		case Opcode.LDN:
+		case Opcode.INC:
+		case Opcode.DEC:
+		case Opcode.LDA:
+		case Opcode.STR:
+		case Opcode.GLO:
+		case Opcode.GHI:
+		case Opcode.PLO:
+		case Opcode.PHI:
+			return n == p;
+
+		case Opcode.MARK:
+			return p == 2;
+
+		case Opcode.IRX:
+		case Opcode.OUT:
+		case Opcode.INP:
+		case Opcode.RET:
+		case Opcode.DIS:
+		case Opcode.LDXA:
+		case Opcode.STXD:
+		case Opcode.ADC:
+		case Opcode.SDB:
+		case Opcode.SMB:
+		case Opcode.SAV:
+		case Opcode.SEP:
+		case Opcode.LDX:
+		case Opcode.OR:
+		case Opcode.AND:
+		case Opcode.XOR:
+		case Opcode.ADD:
+		case Opcode.SD:
+		case Opcode.SM:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	// Whether the instruction may have moved R(P).
+	private static boolean writesPc(int handler, int n, int p) {
+		switch (handler) {
+		case Opcode.INC:
+		case Opcode.DEC:
+		case Opcode.LDA:
+		case Opcode.PLO:
+		case Opcode.PHI:
+			return n == p;
+
+		case Opcode.IRX:
+		case Opcode.OUT:
+		case Opcode.LDXA:
+		case Opcode.STXD:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	private static boolean writesMemory(int handler) {
+		switch (handler) {
+		case Opcode.STR:
+		case Opcode.INP:
+		case Opcode.STXD:
+		case Opcode.SAV:
+		case Opcode.MARK:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	private void line(int indent, String text) {
+		for (int i = 0; i < indent; i ++) {
+			this.out.append('\t');
+		}
+		this.out.append(text).append('\n');
+	}
+
+	private static String key(int key) {
+		return "0x" + hex(key, 5);
+	}
+
+	private static String hex(int value, int width) {
+		String result = Integer.toHexString(value);
+		while (result.length() < width) {
+			result = "0" + result;
+		}
+
+		return result;
+	}
+}
@@ -1,64 +1,559 @@
 package com.akeysoft.elf.core;
 
-import java.util.Date;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 // ref: http://www.cosmacelf.com/shortcourse.htm
 // ref: http://www.ittybittycomputers.com/IttyBitty/ShortCor.htm
 // ref: http://homepage.mac.com/ruske/tinyelf/tinyelfhelp/tinyelfhelp.html
-public class Cpu {
-
-	public Cpu(Ram ram, InputDevice inputDevice, OutputDevice outputDevice) {
+public class Cpu implements CpuState {
+
+	public Cpu(MemoryBus ram, InputDevice inputDevice, OutputDevice outputDevice) {
+		this.dispatchMode = DISPATCH_PREDECODED;
+		this.engine = DispatchEngine.ENGINES[DISPATCH_PREDECODED];
+		this.nextEngine = this.engine;
+		this.cyclesPerSecond = 0L;
+		this.compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+		this.tierEntries = new long[TIERS];
+		this.tierCycles = new long[TIERS];
+		this.tierNanos = new long[TIERS];
+		this.tier = -1;
+		this.tierTimed = false;
+		this.tierSample = 1;
+		this.fusedCounts = new long[Fusion.PATTERNS];
+		this.skippedCycles = 0L;
+		this.tracedCycles = 0L;
 		this.stepMode = false;
+		this.pacing = true;
+		this.clockFrequency = CLOCK_1_79_MHZ;
+		this.speed = 1.0;
+		this.clock = new SystemClock();
+		this.pacer = new Pacer();
 		this.pauseAfterCycles = 0L;
-		this.lastPauseCycles = 0L;
 		this.stopAfterCycles = 0L;
+		this.breakpoints = null;
+		this.breakpointCount = 0;
+		this.trapUnknownOpcodes = false;
+		
+		this.scheduler = new Scheduler();
+		this.pacerEvent = new ScheduledEvent() {
+			public void fire(long cycles) {
+				pace();
+			}
+		};
+		this.stopPoint = new ScheduledEvent() {
+			public void fire(long cycles) {
+				stopReached = true;
+			}
+		};
+		this.poll = new ScheduledEvent() {
+			public void fire(long cycles) {
+				if (stopRequested) {
+					stop = true;
+				} else {
+					takeEngine();
+					waitPeriod = inputWaitPeriod();
+					scheduler.schedule(cycles + POLL_CYCLES, poll);
+				}
+			}
+		};
+		this.slice = new ScheduledEvent() {
+			public void fire(long cycles) {
+				measureThroughput(THROUGHPUT_WINDOW_NS);
+				if (pacingChanged)
+					startPacing();
+				scheduler.schedule(cycles + SLICE_CYCLES, slice);
+			}
+		};
+		this.ownEvents = new ScheduledEvent[] { this.pacerEvent, this.poll, this.slice };
+		this.runEvents = new ScheduledEvent[] { this.pacerEvent, this.poll, this.slice, this.stopPoint };
+		this.waitPeriod = 0;
+		this.waitLatch = -1;
 		
 		this.r = new int[16];
 		this.ef = new boolean[4];
 		
 		this.ram = ram;
+		this.codePages = new CodePages();
+		this.decodeCache = null;
+		this.blockCache = null;
+		this.regionCache = null;
+		this.traceCache = null;
+		this.translation = null;
+		this.ram.setRamListener(new RamListener() {
+			public void bytesWritten(int beginAddress, int length) {
+				written(beginAddress, length);
+			}
+		});
 		this.inputDevice = inputDevice;
 		this.outputDevice = outputDevice;
+		this.dma = new Dma(this);
 		
 		this.stop = true;
 
 		this.reset();
 	}
 
-	// Clock: 1.79M
-	// 1790 / 8
-	private static long CYCLES_PER_MS = 224;
+	// Opcode dispatch: a 256-entry table of pre-decoded handlers, or the
+	// classic switch on the opcode byte.
+	public static final int DISPATCH_TABLE = 0;
+	public static final int DISPATCH_SWITCH = 1;
+	// Table dispatch through a per-address cache of decoded instructions.
+	public static final int DISPATCH_PREDECODED = 2;
+	// Whole basic blocks compiled into closures while running; single
+	// steps go through the predecoded path. This is not a speedup: a
+	// virtual call per instruction costs more than the predecoded loop
+	// (about 197 against 231 M cycles/s on the Tom Pittman clock).
+	public static final int DISPATCH_BLOCKS = 3;
+	// Predecoded, and addresses the interpreter stops at compileThreshold
+	// times are compiled together with the code reachable from them into
+	// a JVM class, see RegionCompiler. About 1200 against 380 M cycles/s
+	// on the Tom Pittman clock. Where classes cannot be defined, as on
+	// Android, this is DISPATCH_PREDECODED.
+	public static final int DISPATCH_REGIONS = 4;
+	// Code translated ahead of time by CosTranslator, interpreting
+	// whatever it does not cover.
+	public static final int DISPATCH_TRANSLATED = 5;
+	// Predecoded, and delay loops fast-forwarded, see getFusedCounts.
+	public static final int DISPATCH_FUSED = 6;
+	// DISPATCH_REGIONS, counting what runs interpreted and what in
+	// compiled regions, the fastest engine here. Writes into compiled code
+	// drop it back to the interpreter. See getTierEntries.
+	public static final int DISPATCH_TIERED = 7;
+	// Predecoded, and from addresses entered compileThreshold times the
+	// path that actually runs is recorded, across SEP calls and returns,
+	// and run again as a trace while it keeps going the same way.
+	public static final int DISPATCH_TRACED = 8;
+	public static final int DISPATCH_MODES = 9;
+	
+	// Tiers of DISPATCH_TIERED.
+	public static final int TIER_INTERPRETED = 0;
+	public static final int TIER_REGIONS = 1;
+	public static final int TIERS = 2;
 	
+	// One in this many stretches of running in a tier is timed.
+	private static final int TIER_SAMPLING = 16;
+	
+	public static final int DEFAULT_COMPILE_THRESHOLD = 50;
+	
+	// Clock frequencies in Hz. A machine cycle is eight clock cycles.
+	public static final long CLOCK_1_79_MHZ = 1790000L;
+	public static final long CLOCK_3_58_MHZ = 3580000L;
+	static final int CLOCKS_PER_CYCLE = 8;
+	
+	// Cycles between throughput measurements.
+	private static final long SLICE_CYCLES = 1L << 16;
+	
+	// Cycles between two looks at stopRequested: 18 ms of the real
+	// machine, much less without pacing.
+	static final long POLL_CYCLES = 4096L;
+	
+	// Longest a paced input wait parks for without an event to wait for.
+	private static final long MAX_PARK_NS = 100000000L;
+	
+	// Throughput is measured over windows of at least this long.
+	private static final long THROUGHPUT_WINDOW_NS = 500000000L;
+	
+	private int dispatchMode;
+	// The engine run() uses, and the one setEngine asks for, which may be
+	// written by other threads, e.g. a user interface. run() takes it at
+	// the start and at every poll, so the loop reads no volatile for it.
+	private Engine engine;
+	private volatile Engine nextEngine;
+	private long cyclesPerSecond;
+	private long windowStartNs;
+	private long windowStartCycles;
+	private int compileThreshold;
+	private long[] tierEntries;
+	private long[] tierCycles;
+	private long[] tierNanos;
+	// Tier running, -1 for none, and if it is being timed, since when, as
+	// of System.nanoTime.
+	private int tier;
+	private boolean tierTimed;
+	private long tierSince;
+	private int tierSample;
+	private long[] fusedCounts;
+	private long skippedCycles;
+	private long tracedCycles;
 	private boolean stepMode;
-	private long cycles;
+	// Pacing settings may be changed while run() runs, from any thread.
+	private volatile boolean pacing;
+	private volatile long clockFrequency;
+	private volatile double speed;
+	private volatile boolean pacingChanged;
+	private volatile Clock clock;
+	private Pacer pacer;
+	long cycles;
 	private long pauseAfterCycles;
-	private long lastPauseCycles;
 	private long stopAfterCycles;
-	private long lastPauseAtMs;
 	
-	private int d; // 8-bit
-	private int[] r; // 16-bit each
-	private int p, x; // 4-bit each
-	private int t; // 8-bit
-	private int df; // 1-bit
-	private int ie; // 1-bit
+	// Pacing, stopAfterCycles and throughput measurement are events of
+	// run(), next to whatever devices schedule.
+	private Scheduler scheduler;
+	private ScheduledEvent pacerEvent;
+	private ScheduledEvent stopPoint;
+	private ScheduledEvent poll;
+	// The events above that keep run() going, as opposed to those that
+	// stop it or that devices schedule.
+	private ScheduledEvent[] ownEvents;
+	// All of them.
+	private ScheduledEvent[] runEvents;
+	
+	// Cycles one turn of the input-wait loop at R(P) takes, as found by
+	// poll; 0 for none.
+	private int waitPeriod;
+	// The byte each turn of the loop found by inputWaitPeriod latches in
+	// D and M(R(X)); -1 for EF loops.
+	private int waitLatch;
+	private ScheduledEvent slice;
+	private boolean stopReached;
 	
-	private boolean[] ef;
+	// The machine state is package-private for the classes generated by
+	// CosTranslator.
+	int d; // 8-bit
+	int[] r; // 16-bit each
+	int p, x; // 4-bit each
+	int t; // 8-bit
+	int df; // 1-bit
+	int ie; // 1-bit
 	
-	private Ram ram;
-	private OutputDevice outputDevice;
-	private InputDevice inputDevice;
+	boolean[] ef;
+	
+	MemoryBus ram;
+	private CodePages codePages;
+	// Each 64K entries or more, so made the first time a dispatch mode
+	// asks for them.
+	private DecodeCache decodeCache;
+	private BlockCache blockCache;
+	private RegionCache regionCache;
+	private TraceCache traceCache;
+	Translation translation;
+	OutputDevice outputDevice;
+	InputDevice inputDevice;
+	private Dma dma;
 	
 	boolean idle;
 	
+	// Only the thread running the Cpu writes stop, so the loops may keep
+	// it in a register. stop() may be called from any thread and sets
+	// stopRequested, which run() polls every POLL_CYCLES.
 	boolean stop;
+	volatile boolean stopRequested;
 	
 	public void stop() {
-		this.stop = true;
+		this.stopRequested = true;
+		this.inputDevice.wake();
+	}
+	
+	// Memory reports a write once, at the first address that shows the
+	// bytes; code may have been decoded at any of the others.
+	private void written(int beginAddress, int length) {
+		if (length >= 0x10000) {
+			this.codeWritten(beginAddress, length);
+			return;
+		}
+		
+		int end = beginAddress + length;
+		while (beginAddress < end) {
+			int page = (beginAddress >> 8) & 0xFF;
+			int offset = beginAddress & 0xFF;
+			int count = Math.min(end - beginAddress, 0x100 - offset);
+			
+			int[] aliases = this.ram.getAliases(page);
+			if (aliases == null) {
+				if (this.codePages.contains(page))
+					this.codeWritten(beginAddress, count);
+			} else {
+				for (int i = 0; i < aliases.length; i ++) {
+					if (this.codePages.contains(aliases[i]))
+						this.codeWritten((aliases[i] << 8) | offset, count);
+				}
+			}
+			
+			beginAddress += count;
+		}
+	}
+	
+	private void codeWritten(int beginAddress, int length) {
+		if (this.decodeCache != null)
+			this.decodeCache.bytesWritten(beginAddress, length);
+		if (this.blockCache != null)
+			this.blockCache.bytesWritten(beginAddress, length);
+		if (this.regionCache != null)
+			this.regionCache.bytesWritten(beginAddress, length);
+		if (this.traceCache != null)
+			this.traceCache.bytesWritten(beginAddress, length);
+		if (this.translation != null)
+			this.translation.bytesWritten(beginAddress, length);
 	}
 	
 	public boolean isStop() {
-		return this.stop;
+		return this.stop || this.stopRequested;
+	}
+	
+	// Requests from outside between instructions: the INT input, that is
+	// a level held by setInterrupt and a request that requestInterrupt
+	// leaves until the interrupt is taken, and bytes posted to the Dma.
+	// Any thread may make them. The Cpu looks between the steps of run()
+	// and runFor, so a request made by an event is served right after it,
+	// one made by another thread within POLL_CYCLES, and an interrupt that
+	// waits for IE right after the RET that sets it.
+	private static final int INTERRUPT_LEVEL = 1;
+	private static final int INTERRUPT_REQUEST = 2;
+	private static final int DMA_REQUEST = 4;
+	private static final AtomicIntegerFieldUpdater<Cpu> REQUESTS =
+		AtomicIntegerFieldUpdater.newUpdater(Cpu.class, "requests");
+	private volatile int requests;
+	// Whether anything drives INT, so that IDL with IE set may end.
+	private volatile boolean interruptConnected;
+	
+	public void setInterrupt(boolean asserted) {
+		this.change(INTERRUPT_LEVEL, asserted);
+	}
+	
+	public void requestInterrupt() {
+		this.change(INTERRUPT_REQUEST, true);
+	}
+	
+	public boolean isInterrupt() {
+		return (this.requests & (INTERRUPT_LEVEL | INTERRUPT_REQUEST)) != 0;
+	}
+	
+	void requestDma() {
+		this.change(DMA_REQUEST, true);
+	}
+	
+	private void change(int bit, boolean set) {
+		int requests;
+		do {
+			requests = this.requests;
+		} while (!REQUESTS.compareAndSet(this, requests, set ? requests | bit : requests & ~bit));
+		
+		// Wakes the Cpu in IDL.
+		if (set)
+			this.inputDevice.changed();
+	}
+	
+	// Without an interrupt source, or an event, run() returns at IDL as if
+	// IE was clear; with one, it parks until the interrupt.
+	public void setInterruptConnected(boolean connected) {
+		this.interruptConnected = connected;
+	}
+	
+	public boolean isInterruptConnected() {
+		return this.interruptConnected;
+	}
+	
+	public Dma getDma() {
+		return this.dma;
+	}
+	
+	// Whether there is a request to serve now: DMA, or an interrupt with
+	// IE set.
+	private boolean hasRequest() {
+		int requests = this.requests;
+		return (requests & DMA_REQUEST) != 0 || (requests != 0 && this.ie != 0);
+	}
+	
+	// DMA first, as on the 1802, then the interrupt.
+	private void serveRequests() {
+		if ((this.requests & DMA_REQUEST) != 0)
+			this.serveDma();
+		
+		if ((this.requests & (INTERRUPT_LEVEL | INTERRUPT_REQUEST)) != 0 && this.ie != 0)
+			this.takeInterrupt();
+	}
+	
+	boolean isDmaRequested() {
+		return (this.requests & DMA_REQUEST) != 0;
+	}
+	
+	// Also for RunController while the Cpu is stopped.
+	void serveDma() {
+		this.change(DMA_REQUEST, false);
+		// With P = 0, DMA moves the program counter.
+		this.endRecording();
+		this.dma.drain();
+	}
+	
+	// The interrupt cycle of the 1802: X and P go to T, R2 becomes X and
+	// R1 P, and IE is cleared. Ends IDL.
+	private void takeInterrupt() {
+		if ((this.requests & INTERRUPT_REQUEST) != 0)
+			this.change(INTERRUPT_REQUEST, false);
+		
+		this.endRecording();
+		
+		this.t = ((this.x << 4) & 0xF0) | (this.p & 0x0F);
+		this.x = 2;
+		this.p = 1;
+		this.ie = 0;
+		this.idle = false;
+		this.cycles ++;
+	}
+	
+	// A trace being recorded ends where the Cpu leaves the path.
+	private void endRecording() {
+		if (this.traceCache == null)
+			return;
+		
+		TraceRecorder recorder = this.traceCache.recorder;
+		if (recorder.isRecording()) {
+			Trace recorded = recorder.finish(this.p, this.r[this.p]);
+			if (recorded != null)
+				this.traceCache.add(recorded);
+		}
+	}
+	
+	// Addresses where runFor stops before running the instruction; null
+	// until the first is set.
+	private boolean[] breakpoints;
+	private int breakpointCount;
+	
+	// Set by runFor: an unknown opcode stops the Cpu with stopReason
+	// instead of throwing.
+	private boolean trapUnknownOpcodes;
+	private int stopReason;
+	
+	// Also makes the engine of that mode the one run() uses. Not while
+	// run() runs; see setEngine.
+	public void setDispatchMode(int dispatchMode) {
+		this.dispatchMode = dispatchMode;
+		this.engine = DispatchEngine.ENGINES[dispatchMode];
+		this.nextEngine = this.engine;
+	}
+	
+	public int getDispatchMode() {
+		return this.dispatchMode;
+	}
+	
+	public void setCompileThreshold(int compileThreshold) {
+		this.compileThreshold = compileThreshold;
+	}
+	
+	public int getCompileThreshold() {
+		return this.compileThreshold;
+	}
+	
+	// The built-in engine of a dispatch mode.
+	public static Engine getDispatchEngine(int dispatchMode) {
+		return DispatchEngine.ENGINES[dispatchMode];
+	}
+	
+	// Replaces the engine run() uses; may be called while it runs, from
+	// any thread, and takes effect at the next poll. The dispatch mode
+	// stays for step(), unless engine is the one of another dispatch
+	// mode.
+	public void setEngine(Engine engine) {
+		this.nextEngine = engine;
+	}
+	
+	public Engine getEngine() {
+		return this.nextEngine;
+	}
+	
+	private void takeEngine() {
+		Engine engine = this.nextEngine;
+		if (engine instanceof DispatchEngine)
+			this.dispatchMode = ((DispatchEngine) engine).dispatchMode;
+		this.engine = engine;
+	}
+	
+	// Cycles run per second of wall time by the current or last run(),
+	// measured over the last half second or so; 0 until there is a
+	// measurement. Like the tier times, this is about the host, and so
+	// goes by System.nanoTime whatever the clock.
+	public long getCyclesPerSecond() {
+		return this.cyclesPerSecond;
+	}
+	
+	// How many times DISPATCH_TIERED has dispatched into each tier, by
+	// TIER_* index; a tier's share of the total is its hit rate. Tier 0
+	// counts runs of the interpreter loop, TIER_REGIONS regions entered.
+	public long[] getTierEntries() {
+		return this.tierEntries.clone();
+	}
+	
+	// Cycles run in each tier.
+	public long[] getTierCycles() {
+		return this.tierCycles.clone();
+	}
+	
+	// Wall time spent in each tier, in nanoseconds, estimated from a
+	// sample of the stretches run in it. Pauses of run() are left out.
+	public long[] getTierNanos() {
+		if (!this.tierTimed)
+			return this.tierNanos.clone();
+		
+		long[] nanos = this.tierNanos.clone();
+		nanos[this.tier] += (System.nanoTime() - this.tierSince) * TIER_SAMPLING;
+		return nanos;
+	}
+	
+	// Blocks and regions dropped because something was written over them.
+	public long getDemotionCount() {
+		long dropped = 0L;
+		if (this.blockCache != null)
+			dropped += this.blockCache.dropped;
+		if (this.regionCache != null)
+			dropped += this.regionCache.dropped;
+		return dropped;
+	}
+	
+	public int getCompiledRegionCount() {
+		return (this.regionCache == null) ? 0 : this.regionCache.size();
+	}
+	
+	public int getTraceCount() {
+		return (this.traceCache == null) ? 0 : this.traceCache.size();
+	}
+	
+	private DecodeCache decodeCache() {
+		if (this.decodeCache == null)
+			this.decodeCache = new DecodeCache(this.ram, this.codePages);
+		return this.decodeCache;
+	}
+	
+	private BlockCache blockCache() {
+		if (this.blockCache == null)
+			this.blockCache = new BlockCache(this.ram, this.codePages);
+		return this.blockCache;
+	}
+	
+	private RegionCache regionCache() {
+		if (this.regionCache == null)
+			this.regionCache = new RegionCache(this.ram, this.codePages, this.decodeCache());
+		return this.regionCache;
+	}
+	
+	private TraceCache traceCache() {
+		if (this.traceCache == null)
+			this.traceCache = new TraceCache(this.ram, this.codePages);
+		return this.traceCache;
+	}
+	
+	// Cycles DISPATCH_TRACED spent in traces.
+	public long getTracedCycles() {
+		return this.tracedCycles;
+	}
+	
+	// Names of the sequences of a delay loop DISPATCH_FUSED fast-forwards,
+	// in the order of getFusedCounts.
+	public static String[] getFusedPatterns() {
+		return Fusion.NAMES.clone();
+	}
+	
+	// How many times each sequence has been run as one step or skipped.
+	public long[] getFusedCounts() {
+		return this.fusedCounts.clone();
+	}
+	
+	// Cycles DISPATCH_FUSED spent in delay loops, any engine in
+	// input-wait loops, and DISPATCH_PREDECODED and DISPATCH_TRACED in
+	// memory copy and fill loops, without running them.
+	public long getSkippedCycles() {
+		return this.skippedCycles;
 	}
 	
 	public void setStepMode(boolean stepMode) {
@@ -69,23 +564,78 @@ public class Cpu {
 		return this.stepMode;
 	}
 	
+	// Without pacing (turbo), run() goes as fast as it can instead of
+	// keeping to the clock frequency times the speed.
+	public void setPacing(boolean pacing) {
+		this.pacing = pacing;
+		this.pacingChanged = true;
+	}
+	
+	public boolean isPacing() {
+		return this.pacing;
+	}
+	
+	// In Hz, CLOCK_1_79_MHZ by default.
+	public void setClockFrequency(long clockFrequency) {
+		if (clockFrequency <= 0L)
+			throw new IllegalArgumentException("clockFrequency: " + clockFrequency);
+		
+		this.clockFrequency = clockFrequency;
+		this.pacingChanged = true;
+	}
+	
+	public long getClockFrequency() {
+		return this.clockFrequency;
+	}
+	
+	// Multiplier on the clock frequency, e.g. 0.5 for half speed.
+	public void setSpeed(double speed) {
+		if (!(speed > 0.0))
+			throw new IllegalArgumentException("speed: " + speed);
+		
+		this.speed = speed;
+		this.pacingChanged = true;
+	}
+	
+	public double getSpeed() {
+		return this.speed;
+	}
+	
+	// The time pacing keeps to, and devices should go by. A SystemClock
+	// by default; a VirtualClock makes runs reproducible and unpaced in
+	// effect.
+	public void setClock(Clock clock) {
+		this.clock = clock;
+		this.pacingChanged = true;
+	}
+	
+	public Clock getClock() {
+		return this.clock;
+	}
+	
 	public long getCycles() {
 		return this.cycles;
 	}
 	
-	private void setPauseAfterCycles(long cycles) {
-		this.lastPauseCycles = this.cycles; 
-		this.pauseAfterCycles = cycles;
+	public void addCycles(long cycles) {
+		this.cycles += cycles;
 	}
 	
 	public void setStopAfterCycles(long cycles) {
 		this.stopAfterCycles = cycles;
 	}
 	
+	// Cycles between two pacing checks of run(); 0 without pacing.
 	public long getPauseAfterCycles() {
 		return this.pauseAfterCycles;
 	}
 	
+	// For devices and run control to post events keyed by the cycle
+	// counter. They fire while run() runs.
+	public Scheduler getScheduler() {
+		return this.scheduler;
+	}
+	
 	public void reset() {
 		this.cycles = 0;
 		
@@ -96,41 +646,79 @@ public class Cpu {
 		this.r[0] = 0;
 		
 		this.idle = false;
+		this.change(INTERRUPT_REQUEST, false);
 	}
 	
 	// index: 0-3, maps EF1 - EF4.
 	public void setEf(int index, boolean value) {
 		this.ef[index] = value;
+		this.inputDevice.changed();
+	}
+	
+	public boolean getEf(int index) {
+		return this.ef[index];
 	}
 	
 	public int getD() {
 		return this.d;
 	}
 	
+	public void setD(int d) {
+		this.d = d & 0xFF;
+	}
+	
 	public int getDF() {
 		return this.df;
 	}
 	
+	public void setDF(int df) {
+		this.df = df & 1;
+	}
+	
 	public int getX() {
 		return this.x;
 	}
 	
+	public void setX(int x) {
+		this.x = x & 0xF;
+	}
+	
 	public int getP() {
 		return this.p;
 	}
 	
+	public void setP(int p) {
+		this.p = p & 0xF;
+	}
+	
 	public int getR(int index) {
 		return this.r[index] & 0xFFFF;
 	}
 	
+	public void setR(int index, int value) {
+		this.r[index] = value & 0xFFFF;
+	}
+	
 	public int getIE() {
 		return this.ie;
 	}
 	
+	public void setIE(int ie) {
+		this.ie = ie & 1;
+	}
+	
 	public int getT() {
 		return this.t;
 	}
 	
+	public void setT(int t) {
+		this.t = t & 0xFF;
+	}
+	
+	public MemoryBus getRam() {
+		return this.ram;
+	}
+	
 	public boolean isIdle() {
 		return this.idle;
 	}
@@ -145,38 +733,1618 @@ public class Cpu {
 	}
 	
 	public void run() throws UnknownOpcodeException {
+		this.stopRequested = false;
+		this.execute();
+	}
+	
+	// run() without forgetting an earlier stop(). RunController clears
+	// stopRequested before it looks for commands, so that one sent in
+	// between still stops the run.
+	void execute() throws UnknownOpcodeException {
+		Scheduler scheduler = this.scheduler;
+		
+		this.stop = false;
+		this.stopReached = false;
+		
+		this.startPacing();
+		
+		// Due once the cycle counter is past stopAfterCycles.
+		if (this.stopAfterCycles > 0L)
+			scheduler.schedule(this.stopAfterCycles + 1, this.stopPoint);
+		
+		this.cyclesPerSecond = 0L;
+		this.windowStartNs = System.nanoTime();
+		this.windowStartCycles = this.cycles;
+		scheduler.schedule(this.cycles + SLICE_CYCLES, this.slice);
+		scheduler.schedule(this.cycles + POLL_CYCLES, this.poll);
+		this.takeEngine();
+		
+		try {
+			while (true) {
+				if (this.cycles >= scheduler.next())
+					scheduler.fireDue(this.cycles);
+				
+				int requests = this.requests;
+				if (requests != 0) {
+					this.serveRequests();
+					requests = this.requests;
+				}
+				
+				if (this.stop || this.stopReached)
+					break;
+				
+				if (this.idle) {
+					if (this.stepMode || !this.mayInterrupt())
+						break;
+					
+					// IDL runs one cycle at a time until the interrupt.
+					this.waitForWakeUp(this.inputDevice.changes, Long.MAX_VALUE, this.pacing, 1);
+					continue;
+				}
+				
+				if (this.stepMode) {
+					step();
+					break;
+				}
+				
+				if (this.waitPeriod != 0) {
+					if (!this.skipInputWait(Long.MAX_VALUE, this.pacing))
+						// Nothing to skip: the engine runs the loop until
+						// poll looks again.
+						this.waitPeriod = 0;
+					continue;
+				}
+				
+				// The engine stops short of the next event. An interrupt
+				// that waits for IE is looked at after every instruction.
+				if (requests == 0)
+					this.engine.step(this, scheduler.next() - 1);
+				else
+					this.step();
+			}
+		} finally {
+			scheduler.cancel(this.pacerEvent);
+			scheduler.cancel(this.stopPoint);
+			scheduler.cancel(this.slice);
+			scheduler.cancel(this.poll);
+		}
+		
+		this.enterTier(-1);
+		// A short run gets whatever it has measured.
+		this.measureThroughput(this.cyclesPerSecond == 0L ? 1L : THROUGHPUT_WINDOW_NS / 10);
+	}
+	
+	// Starts pacing over with the current settings, or stops it.
+	private void startPacing() {
+		this.pacingChanged = false;
+		this.scheduler.cancel(this.pacerEvent);
+		
+		if (this.pacing) {
+			this.pacer.start(this.clock, this.cycles, this.speed * this.clockFrequency / CLOCKS_PER_CYCLE);
+			this.pauseAfterCycles = this.pacer.getCheckCycles();
+			this.scheduler.schedule(this.cycles + this.pauseAfterCycles, this.pacerEvent);
+		} else {
+			this.pauseAfterCycles = 0L;
+		}
+	}
+	
+	// Keeps run() to the clock frequency times the speed.
+	private void pace() {
+		if (this.pacingChanged) {
+			this.startPacing();
+			return;
+		}
+		
+		this.enterTier(-1);
+		this.scheduler.schedule(this.pacer.pace(this.cycles), this.pacerEvent);
+	}
+	
+	// Returns the cycles one turn takes of the loop at R(P), if all the
+	// loop does is wait for an EF line or an input port, and the input is
+	// such that it goes on waiting; 0 otherwise. The loops are
+	//
+	//   L:  B n L / BN n L
+	//
+	// and, with X other than P,
+	//
+	//   L:  INP p
+	//       BZ L / BNZ L
+	//
+	// whose INP stores the same byte in each turn; that byte is left in
+	// waitLatch.
+	private int inputWaitPeriod() {
+		int pc = this.r[this.p];
+		int entry = Opcode.TABLE[this.ram.getUnsignedByte(pc)];
+		int n = Opcode.n(entry);
+		
+		this.waitLatch = -1;
+		switch (Opcode.handler(entry)) {
+		case Opcode.B:
+			return (Opcode.operand(this.ram, pc, entry) == pc && this.ef[n]) ? 2 : 0;
+			
+		case Opcode.BN:
+			return (Opcode.operand(this.ram, pc, entry) == pc && !this.ef[n]) ? 2 : 0;
+			
+		case Opcode.INP:
+			this.waitLatch = this.inputDevice.getPort(n) & 0xFF;
+			return this.isInputLoop(n, pc, (pc + 1) & 0xFFFF) ? 4 : 0;
+			
+		case Opcode.BZ:
+		case Opcode.BNZ:
+			// Halfway through the loop: D and M(R(X)) must be what INP
+			// is about to read again.
+			int inp = Opcode.TABLE[this.ram.getUnsignedByte((pc - 1) & 0xFFFF)];
+			if (Opcode.handler(inp) != Opcode.INP)
+				return 0;
+			
+			int value = this.inputDevice.getPort(Opcode.n(inp)) & 0xFF;
+			if (this.d != value || this.ram.getUnsignedByte(this.r[this.x]) != value)
+				return 0;
+			
+			this.waitLatch = value;
+			return this.isInputLoop(Opcode.n(inp), (pc - 1) & 0xFFFF, pc) ? 4 : 0;
+		}
+		
+		return 0;
+	}
+	
+	private boolean isInputLoop(int port, int inp, int branch) {
+		if (this.x == this.p)
+			return false;
+		
+		int entry = Opcode.TABLE[this.ram.getUnsignedByte(branch)];
+		if (Opcode.operand(this.ram, branch, entry) != inp)
+			return false;
+		
+		int value = this.inputDevice.getPort(port);
+		switch (Opcode.handler(entry)) {
+		case Opcode.BZ:
+			return value == 0;
+		case Opcode.BNZ:
+			return value != 0;
+		default:
+			return false;
+		}
+	}
+	
+	// Skips turns of the input-wait loop at R(P), if it is one, and
+	// returns whether it did. The loop may just have been entered, so D
+	// and M(R(X)) are set as the INP of the last turn skipped would have
+	// left them. The input is read before the loop is checked, so that a
+	// change in between ends the wait at once.
+	private boolean skipInputWait(long end, boolean paced) {
+		int changes = this.inputDevice.changes;
+		this.waitPeriod = this.inputWaitPeriod();
+		if (this.waitPeriod == 0)
+			return false;
+		
+		int latch = this.waitLatch;
+		if (!this.waitForWakeUp(changes, end, paced, this.waitPeriod))
+			return false;
+		
+		if (latch >= 0) {
+			this.d = latch;
+			this.ram.setByte(this.r[this.x], (byte) latch);
+		}
+		return true;
+	}
+	
+	// Whether anything may still end IDL: an interrupt source, or an event
+	// of a device that may raise one.
+	private boolean mayInterrupt() {
+		return this.ie != 0 && (this.interruptConnected ||
+			this.scheduler.nextExcept(this.runEvents) != Long.MAX_VALUE);
+	}
+	
+	// Stands in for turns of period cycles of IDL or the input-wait loop
+	// at R(P): parks until the input or INT changes, stop() is called or
+	// an event other than ownEvents is due, and adds the whole turns that
+	// fit in the time waited. Paced, that is the time the host waited;
+	// otherwise the Cpu skips straight to the event, or waits no time at
+	// all once the input changes from changes. Returns whether it added
+	// any.
+	private boolean waitForWakeUp(int changes, long end, boolean paced, int period) {
+		InputDevice inputDevice = this.inputDevice;
+		long limit = Math.min(end, this.scheduler.nextExcept(this.ownEvents));
+		long target = this.cycles;
+		boolean timePasses = paced;
+		
+		if (paced && this.pacingChanged)
+			this.startPacing();
+		this.enterTier(-1);
+		
+		inputDevice.waiter = Thread.currentThread();
+		try {
+			// The request may have come before changes was read.
+			while (inputDevice.changes == changes && !this.stopRequested && !this.hasRequest()) {
+				if (timePasses) {
+					long now = this.clock.nanoTime();
+					if (this.pacer.cyclesAt(now) >= limit)
+						break;
+					
+					long until = (limit == Long.MAX_VALUE) ? now + MAX_PARK_NS : this.pacer.timeOf(limit);
+					timePasses = this.clock.parkUntil(until);
+				} else if (limit != Long.MAX_VALUE) {
+					target = limit;
+					break;
+				} else {
+					LockSupport.park(this);
+				}
+			}
+		} finally {
+			inputDevice.waiter = null;
+		}
+		
+		if (timePasses)
+			target = this.pacer.cyclesAt(this.clock.nanoTime());
+		
+		if (this.stopRequested)
+			this.stop = true;
+		
+		long turns = (Math.min(target, limit) - this.cycles) / period;
+		if (turns <= 0)
+			return false;
+		
+		this.cycles += turns * period;
+		this.skippedCycles += turns * period;
+		return true;
+	}
+	
+	// Updates cyclesPerSecond and starts a new window if the current one
+	// is at least minimumNs long.
+	private void measureThroughput(long minimumNs) {
+		long now = System.nanoTime();
+		long elapsed = now - this.windowStartNs;
+		if (elapsed < minimumNs)
+			return;
+		
+		this.cyclesPerSecond = (this.cycles - this.windowStartCycles) * 1000000000L / elapsed;
+		this.windowStartNs = now;
+		this.windowStartCycles = this.cycles;
+	}
+	
+	// One step of a built-in engine.
+	void dispatch(int dispatchMode, long cycleLimit) throws UnknownOpcodeException {
+		switch (dispatchMode) {
+		case DISPATCH_PREDECODED:
+			this.runUntil((cycleLimit == Long.MAX_VALUE) ? cycleLimit : cycleLimit + 1);
+			break;
+			
+		case DISPATCH_BLOCKS:
+			this.stepBlock(cycleLimit);
+			break;
+			
+		case DISPATCH_REGIONS:
+			this.stepRegions(cycleLimit);
+			break;
+			
+		case DISPATCH_TRANSLATED:
+			this.stepTranslated(cycleLimit);
+			break;
+			
+		case DISPATCH_FUSED:
+			this.stepFused(cycleLimit);
+			break;
+			
+		case DISPATCH_TIERED:
+			this.stepTiered(cycleLimit);
+			break;
+			
+		case DISPATCH_TRACED:
+			this.stepTraced(cycleLimit);
+			break;
+			
+		default:
+			this.step();
+			break;
+		}
+	}
+
+	// Runs until at least budget more cycles have passed, the Cpu idles or
+	// stop() is called, without pacing, breakpoints or step mode. The
+	// inner loop keeps the registers it works on in locals, see runUntil.
+	public void runCycles(long budget) throws UnknownOpcodeException {
 		this.stop = false;
+		this.stopRequested = false;
 		
-		this.lastPauseAtMs = (new Date()).getTime();
-		this.setPauseAfterCycles(CYCLES_PER_MS);
+		long end = (budget > Long.MAX_VALUE - this.cycles) ? Long.MAX_VALUE : this.cycles + budget;
+		while (true) {
+			if (this.requests != 0)
+				this.serveRequests();
+			if (this.cycles >= end || this.idle || this.stop)
+				break;
+			
+			this.runUntil(Math.min(end, this.cycles + POLL_CYCLES));
+			if (this.stopRequested)
+				this.stop = true;
+		}
+	}
+	
+	// Runs until at least budget more cycles have passed, or something
+	// else stops the Cpu, and returns why as a StopReason. Devices'
+	// events fire as in run(), but there is no pacing or step mode. Does
+	// not allocate and does not throw; an unknown opcode is left at R(P).
+	// While breakpoints are set, or an interrupt waits for IE, runs one
+	// instruction at a time.
+	public int runFor(long budget) {
+		Scheduler scheduler = this.scheduler;
+		long end = (budget > Long.MAX_VALUE - this.cycles) ? Long.MAX_VALUE : this.cycles + budget;
+		// A breakpoint where the Cpu is does not stop it again.
+		boolean started = false;
 		
-		while ((!this.idle) && (!this.stop)) {
-			step();
+		this.stop = false;
+		this.stopRequested = false;
+		this.stopReason = StopReason.STOP_REQUEST;
+		this.trapUnknownOpcodes = true;
+		scheduler.schedule(this.cycles + POLL_CYCLES, this.poll);
+		this.takeEngine();
+		
+		try {
+			while (true) {
+				if (this.cycles >= scheduler.next())
+					scheduler.fireDue(this.cycles);
+				
+				int requests = this.requests;
+				if (requests != 0) {
+					this.serveRequests();
+					requests = this.requests;
+				}
+				
+				if (this.idle)
+					return StopReason.IDLE;
+				if (this.stop)
+					return this.stopReason;
+				if (this.cycles >= end)
+					return StopReason.BUDGET;
+				
+				if (this.waitPeriod != 0 && this.breakpointCount == 0) {
+					if (!this.skipInputWait(end, false))
+						this.waitPeriod = 0;
+				} else if (this.breakpointCount == 0 && requests == 0) {
+					this.engine.step(this, Math.min(end, scheduler.next()) - 1);
+				} else {
+					int pc = this.r[this.p];
+					if (started && this.breakpointCount != 0 && this.breakpoints[pc])
+						return StopReason.at(StopReason.BREAKPOINT, pc);
+					this.step();
+				}
+				started = true;
+			}
+		} catch (UnknownOpcodeException e) {
+			// Only from an Engine that runs instructions itself.
+			return StopReason.unknownOpcode(this.r[this.p], 0);
+		} finally {
+			this.trapUnknownOpcodes = false;
+			scheduler.cancel(this.poll);
+		}
+	}
+	
+	public void setBreakpoint(int address, boolean set) {
+		address &= 0xFFFF;
+		if (this.breakpoints == null) {
+			if (!set)
+				return;
+			this.breakpoints = new boolean[0x10000];
+		}
+		if (this.breakpoints[address] != set)
+			this.breakpointCount += set ? 1 : -1;
+		this.breakpoints[address] = set;
+	}
+	
+	public boolean isBreakpoint(int address) {
+		return this.breakpoints != null && this.breakpoints[address & 0xFFFF];
+	}
+	
+	// Runs one instruction the way the dispatch mode does, with no
+	// blocks, regions or traces; what an Engine falls back to.
+	public void step() throws UnknownOpcodeException {
+		switch (this.dispatchMode) {
+		case DISPATCH_PREDECODED:
+		case DISPATCH_BLOCKS:
+		case DISPATCH_REGIONS:
+		case DISPATCH_TRANSLATED:
+		case DISPATCH_FUSED:
+		case DISPATCH_TIERED:
+		case DISPATCH_TRACED:
+			this.stepPredecoded();
+			break;
+			
+		case DISPATCH_SWITCH:
+			this.stepSwitch();
+			break;
+			
+		default:
+			this.stepTable();
+			break;
+		}
+	}
+	
+	// Runs the block at the program counter if the cycle counter stays
+	// within cycleLimit, otherwise a single instruction.
+	void stepBlock(long cycleLimit) throws UnknownOpcodeException {
+		BlockCache blockCache = this.blockCache();
+		int pc = this.r[this.p];
+		Block block = blockCache.blocks[pc];
+		if (block == null || block.p != this.p)
+			block = blockCache.compile(pc, this.p);
+		
+		if (block != null && this.cycles + block.totalCycles <= cycleLimit)
+			this.runBlock(block);
+		else
+			this.stepPredecoded();
+	}
+	
+	private void runBlock(Block block) {
+		Closure[] closures = block.closures;
+		int[] next = block.next;
+		int[] flags = block.flags;
+		long start = this.cycles;
+		
+		for (int i = 0; i < closures.length; i ++) {
+			int flag = flags[i];
+			if (flag != 0) {
+				this.r[this.p] = next[i];
+				// Devices see the cycles up to the instruction, as they do
+				// when it runs on its own.
+				if ((flag & Block.DEVICE) != 0 && i > 0)
+					this.cycles = start + block.cycles[i - 1];
+			}
+			
+			closures[i].run(this);
+			
+			if ((flag & Block.GUARD) != 0 && (this.r[this.p] != next[i] || !block.valid)) {
+				this.cycles = start + block.cycles[i];
+				return;
+			}
+		}
+		
+		this.cycles = start + block.totalCycles;
+	}
+	
+	// Interprets like stepRegions, and if the step starts in a delay loop,
+	// which is where it is most of the time while the program waits, gets
+	// to its DEC, runs a turn as one step and fast-forwards the rest.
+	void stepFused(long cycleLimit) throws UnknownOpcodeException {
+		DecodeCache decodeCache = this.decodeCache();
+		long end = (cycleLimit == Long.MAX_VALUE) ? cycleLimit : cycleLimit + 1;
+		long start = this.cycles;
+		
+		int dec = this.delayLoop(decodeCache);
+		if (dec >= 0) {
+			// At most two instructions from anywhere in the loop, each
+			// cheaper than a turn.
+			for (int i = 0; i < 2 && this.r[this.p] != dec; i ++) {
+				if (this.cycles + Opcode.cycles(decodeCache.fused(dec)) > cycleLimit)
+					break;
+				this.stepPredecoded();
+			}
+			
+			int fused = decodeCache.fused(dec);
+			int n = Opcode.n(fused);
+			int cost = Opcode.cycles(fused);
+			if (this.r[this.p] == dec && this.cycles + cost <= cycleLimit) {
+				this.skipCountdown(n, dec, cycleLimit - this.cycles - cost);
+				
+				this.r[n] = (this.r[n] - 1) & 0xFFFF;
+				this.d = (this.r[n] >> 8) & 0x00FF;
+				if (this.d == 0)
+					this.r[this.p] = (dec + Opcode.length(fused)) & 0xFFFF;
+				this.cycles += cost;
+				this.fusedCounts[Fusion.DEC_GHI_BNZ] ++;
+			}
+		}
+		
+		while (!this.idle) {
+			this.interpret(end, true, null);
+			
+			int pc = this.r[this.p];
+			int entry = decodeCache.entries[pc];
+			if (entry == 0)
+				entry = decodeCache.decode(pc);
+			
+			if (this.cycles + Opcode.cycles(entry) > cycleLimit) {
+				if (this.cycles == start)
+					this.stepPredecoded();
+				return;
+			}
+			
+			if ((entry & Opcode.LOOP_HEAD) == 0 || !this.runBulkLoop(end))
+				this.stepPredecoded();
+			if (this.stop)
+				return;
+		}
+	}
+	
+	// Address of the DEC of the delay loop the program counter is in, or
+	// -1: on the DEC, GHI or BNZ, or on the GLO or BNZ of a loop that goes
+	// on with them, see skipCountdown. The loop must branch back to the
+	// DEC, and not count on R(P).
+	private int delayLoop(DecodeCache decodeCache) {
+		int pc = this.r[this.p];
+		for (int back = 0; back <= 5; back ++) {
+			int dec = (pc - back) & 0xFFFF;
+			int fused = decodeCache.fused(dec);
+			if (back == 3 || Opcode.handler(fused) != Fusion.DEC_GHI_BNZ ||
+					Opcode.n(fused) == this.p || decodeCache.fusedOperands[dec] != dec)
+				continue;
+			
+			if (back < 3)
+				return dec;
+			
+			int glo = (dec + 4) & 0xFFFF;
+			int next = decodeCache.fused(glo);
+			if (Opcode.handler(next) == Fusion.GLO_BNZ && Opcode.n(next) == Opcode.n(fused) &&
+					decodeCache.fusedOperands[glo] == dec)
+				return dec;
+		}
+		
+		return -1;
+	}
+	
+	// Fast-forwards the delay loop
+	//
+	//   L:  DEC r
+	//       GHI r
+	//       BNZ L
+	//      [GLO r
+	//       BNZ L]
+	//
+	// by working out where it will be after as many turns as fit in
+	// cycles, leaving the last turn, which falls out of the loop, to be
+	// run. Nothing but R(r), D and the cycle counter changes on the way.
+	private void skipCountdown(int n, int pc, long cycles) {
+		int value = this.r[n];
+		
+		// Turns in which R(r) still has a high byte after DEC; 6 cycles each.
+		int turns = (value == 0) ? 0xFF00 : value - 0x100;
+		if (turns > 0) {
+			long count = Math.min(turns, cycles / 6);
+			
+			this.r[n] = (int) ((value - count) & 0xFFFF);
+			this.d = (this.r[n] >> 8) & 0x00FF;
+			this.cycles += count * 6;
+			this.skippedCycles += count * 6;
+			this.fusedCounts[Fusion.DEC_GHI_BNZ] += count;
+			return;
+		}
+		
+		// Turns through the GLO, while the low byte stays non-zero; 10
+		// cycles each.
+		int glo = (pc + 4) & 0xFFFF;
+		DecodeCache decodeCache = this.decodeCache();
+		int fused = decodeCache.fused(glo);
+		
+		if (Opcode.handler(fused) != Fusion.GLO_BNZ || Opcode.n(fused) != n ||
+				decodeCache.fusedOperands[glo] != pc)
+			return;
+		
+		turns = value - 1;
+		if (turns > 0) {
+			long count = Math.min(turns, cycles / 10);
+			
+			this.r[n] = (int) (value - count);
+			this.d = this.r[n] & 0x00FF;
+			this.cycles += count * 10;
+			this.skippedCycles += count * 10;
+			this.fusedCounts[Fusion.DEC_GHI_BNZ] += count;
+			this.fusedCounts[Fusion.GLO_BNZ] += count;
+		}
+	}
+	
+	// Runs the BulkLoop at R(P) for as many whole turns as end leaves
+	// room for, the way its instructions would. Returns false, having
+	// done nothing, if there is no such loop any more, not even one turn
+	// fits, or it cannot be done in bulk: registers overlapping P or X,
+	// addresses wrapping around, or the loop writing over itself.
+	private boolean runBulkLoop(long end) {
+		int pc = this.r[this.p];
+		int loop = BulkLoop.match(this.ram, pc);
+		if (loop == BulkLoop.NONE)
+			return false;
+		
+		int pattern = BulkLoop.pattern(loop);
+		int c = BulkLoop.counter(loop);
+		int d = (pattern == BulkLoop.FILL_DOWN) ? this.x : BulkLoop.dest(loop);
+		int length = BulkLoop.length(loop);
+		int turnCycles = BulkLoop.cycles(loop);
+		if (c == this.p || d == this.p || d == c ||
+				(pattern == BulkLoop.COPY && BulkLoop.source(loop) == this.p) ||
+				pc + length > 0x10000)
+			return false;
+		
+		// The loop ends once DEC has taken the low byte of R(c) to 0.
+		int left = (this.r[c] & 0xFF) == 0 ? 0x100 : this.r[c] & 0xFF;
+		int turns = (int) Math.min(left, (end - this.cycles) / turnCycles);
+		if (turns <= 0)
+			return false;
+		
+		// The bytes written, from the lowest up.
+		int dest = this.r[d];
+		if (pattern == BulkLoop.FILL_DOWN)
+			dest -= turns - 1;
+		if (dest < 0 || dest + turns > this.ram.getSize() ||
+				(dest < pc + length && pc < dest + turns))
+			return false;
+		
+		switch (pattern) {
+		case BulkLoop.COPY:
+			int s = BulkLoop.source(loop);
+			if (this.r[s] + turns > this.ram.getSize())
+				return false;
+			this.ram.copy(this.r[s], dest, turns);
+			this.r[s] = (this.r[s] + turns) & 0xFFFF;
+			this.r[d] = (this.r[d] + turns) & 0xFFFF;
+			break;
+			
+		case BulkLoop.FILL:
+			this.ram.fill(dest, turns, (byte) BulkLoop.value(loop));
+			this.r[d] = (this.r[d] + turns) & 0xFFFF;
+			break;
+			
+		case BulkLoop.FILL_DOWN:
+			this.ram.fill(dest, turns, (byte) BulkLoop.value(loop));
+			this.r[d] = (this.r[d] - turns) & 0xFFFF;
+			break;
+		}
+		
+		this.r[c] = (this.r[c] - turns) & 0xFFFF;
+		this.d = this.r[c] & 0xFF;
+		if (turns == left)
+			this.r[this.p] = (pc + length) & 0xFFFF;
+		
+		this.cycles += (long) turns * turnCycles;
+		this.skippedCycles += (long) turns * turnCycles;
+		
+		return true;
+	}
+	
+	// Called by the constructor of a class generated by CosTranslator.
+	void setTranslation(byte[] image, int[] keys, int[] chunkStarts) {
+		this.translation = new Translation(this.ram, this.codePages, image, keys, chunkStarts);
+		this.dispatchMode = DISPATCH_TRANSLATED;
+	}
+	
+	// Overridden by classes generated by CosTranslator. Runs one chunk of
+	// translated code from the program counter until control leaves it, or
+	// until the next instruction would take the cycle counter past
+	// cycleLimit. Returns false if not even the first instruction fit.
+	boolean runTranslatedChunk(int chunk, long cycleLimit) {
+		return false;
+	}
+	
+	// Runs translated code for as long as there is some for the program
+	// counter, otherwise a single instruction.
+	void stepTranslated(long cycleLimit) throws UnknownOpcodeException {
+		boolean progress = false;
+		
+		if (this.translation != null) {
+			int chunk;
+			while (this.translation.isIntact() &&
+					(chunk = this.translation.chunk(this.p, this.r[this.p])) >= 0 &&
+					this.runTranslatedChunk(chunk, cycleLimit))
+				progress = true;
+		}
+		
+		if (!progress)
+			this.stepPredecoded();
+	}
+	
+	// Interprets like runUntil, but runs the compiled region where the
+	// interpreter loop stops at one, and counts the address where it
+	// stops for the cycle limit towards compiling a region there: those
+	// addresses are where the time goes. Instructions start only if they
+	// end within cycleLimit; if not even one does, runs a single
+	// instruction.
+	void stepRegions(long cycleLimit) throws UnknownOpcodeException {
+		this.stepCompiled(cycleLimit, false);
+	}
+	
+	// One step of DISPATCH_TIERED: stepRegions, keeping count of what runs
+	// in which tier.
+	void stepTiered(long cycleLimit) throws UnknownOpcodeException {
+		this.stepCompiled(cycleLimit, true);
+	}
+	
+	private void stepCompiled(long cycleLimit, boolean tiers) throws UnknownOpcodeException {
+		RegionCache regionCache = this.regionCache();
+		DecodeCache decodeCache = this.decodeCache();
+		long end = (cycleLimit == Long.MAX_VALUE) ? cycleLimit : cycleLimit + 1;
+		long start = this.cycles;
+		
+		while (!this.idle) {
+			long cycles = this.cycles;
+			if (tiers)
+				this.enterTier(TIER_INTERPRETED);
+			this.interpret(end, true, null);
+			if (tiers)
+				this.countTier(TIER_INTERPRETED, cycles);
+			
+			int pc = this.r[this.p];
+			Region region = regionCache.regions[pc];
+			if (region != null && (region.p != this.p || region.x != this.x))
+				region = null;
+			if (region != null) {
+				cycles = this.cycles;
+				if (tiers)
+					this.enterTier(TIER_REGIONS);
+				if (this.runRegion(region, cycleLimit)) {
+					if (tiers)
+						this.countTier(TIER_REGIONS, cycles);
+					continue;
+				}
+			}
+			
+			int entry = decodeCache.entries[pc];
+			if (entry == 0)
+				entry = decodeCache.decode(pc);
+			
+			cycles = this.cycles;
+			boolean full = cycles + Opcode.cycles(entry) > cycleLimit;
+			if (full) {
+				if (region == null && ++ regionCache.counts[pc] >= this.compileThreshold) {
+					regionCache.counts[pc] = 0;
+					regionCache.compile(pc, this.p, this.x);
+				}
+				if (cycles == start)
+					this.stepPredecoded();
+			} else if ((entry & Opcode.LOOP_HEAD) == 0 || !this.runBulkLoop(end)) {
+				this.stepPredecoded();
+			}
+			
+			if (tiers) {
+				this.enterTier(TIER_INTERPRETED);
+				this.countTier(TIER_INTERPRETED, cycles);
+			}
+			if (full || this.stop)
+				return;
+		}
+	}
+	
+	private void countTier(int tier, long since) {
+		this.tierEntries[tier] ++;
+		this.tierCycles[tier] += this.cycles - since;
+	}
+	
+	// Charges the time since the last tier change to the tier that was
+	// running, if that stretch was timed. -1 stops the clock. Reading it
+	// at every change costs more than short regions save, so a random one
+	// in TIER_SAMPLING stretches is timed and counted that many times.
+	private void enterTier(int tier) {
+		if (tier == this.tier)
+			return;
+		
+		if (this.tierTimed) {
+			this.tierNanos[this.tier] += (System.nanoTime() - this.tierSince) * TIER_SAMPLING;
+			this.tierTimed = false;
+		}
+		
+		this.tier = tier;
+		this.tierSample = this.tierSample * 1103515245 + 12345;
+		if (tier >= 0 && (this.tierSample >>> 16) % TIER_SAMPLING == 0) {
+			this.tierTimed = true;
+			this.tierSince = System.nanoTime();
+		}
+	}
+	
+	// Runs a region until control leaves it, or until its next block would
+	// take the cycle counter past cycleLimit. Returns false if not even
+	// the first block fit.
+	private boolean runRegion(Region region, long cycleLimit) {
+		long cycles = this.cycles;
+		region.run(this, this.r, this.ram, cycleLimit);
+		
+		return this.cycles != cycles;
+	}
+	
+	// One step of DISPATCH_TRACED: the trace starting at the program
+	// counter, or a single instruction, which may be recorded or start a
+	// recording.
+	void stepTraced(long cycleLimit) throws UnknownOpcodeException {
+		TraceCache traceCache = this.traceCache();
+		DecodeCache decodeCache = this.decodeCache();
+		int pc = this.r[this.p];
+		Trace trace = traceCache.traces[pc];
+		TraceRecorder recorder = traceCache.recorder;
+		
+		int entry = decodeCache.entries[pc];
+		if (entry == 0)
+			entry = decodeCache.decode(pc);
+		int operand = decodeCache.operands[pc];
+		
+		if (recorder.isRecording()) {
+			if (recorder.record(this.p, this.x, pc, entry, operand, trace)) {
+				this.stepPredecoded();
+				return;
+			}
+			
+			Trace recorded = recorder.finish(this.p, pc);
+			if (recorded != null) {
+				traceCache.add(recorded);
+				if (recorded.getAddress() == pc)
+					trace = recorded;
+			}
+		}
+		
+		if (trace != null && trace.getP() == this.p) {
+			if (this.runTrace(trace, cycleLimit))
+				return;
+		} else if (++ traceCache.counts[pc] >= this.compileThreshold &&
+				TraceRecorder.isTraceable(entry, this.p, this.x)) {
+			traceCache.counts[pc] = 0;
+			recorder.start(this.p, pc, entry, operand);
+		}
+		
+		if ((entry & Opcode.LOOP_HEAD) == 0 ||
+				!this.runBulkLoop(cycleLimit == Long.MAX_VALUE ? cycleLimit : cycleLimit + 1))
+			this.stepPredecoded();
+	}
+	
+	// Runs a trace for as long as execution goes the way it was recorded,
+	// or until the next instruction would take the cycle counter past
+	// cycleLimit. Where execution leaves a trace for the start of another
+	// one, that one takes over. Returns false if not even the first
+	// instruction fit.
+	private boolean runTrace(Trace trace, long cycleLimit) {
+		long cycles = this.cycles;
+		this.interpret((cycleLimit == Long.MAX_VALUE) ? cycleLimit : cycleLimit + 1, true, trace);
+		this.tracedCycles += this.cycles - cycles;
+		
+		return this.cycles != cycles;
+	}
+	
+	// The interpreter loop of runCycles. Runs instructions while the cycle
+	// counter is below end, and the ones interpret leaves to the Cpu
+	// through stepPredecoded or a bulk loop. Checks idle and stop between
+	// those.
+	private void runUntil(long end) throws UnknownOpcodeException {
+		int[] entries = this.decodeCache().entries;
+		
+		while (this.cycles < end && !this.idle) {
+			this.interpret(end, false, null);
+			
+			if (this.cycles < end &&
+					((entries[this.r[this.p]] & Opcode.LOOP_HEAD) == 0 || !this.runBulkLoop(end)))
+				this.stepPredecoded();
+			
+			if (this.stop)
+				break;
+		}
+	}
+	
+	// Runs instructions with P, X, D, DF and the program counter in
+	// locals, which are written back when it stops. It stops before an
+	// instruction that needs the Cpu itself: I/O, IDL, MARK, unknown
+	// opcodes, and instructions working on R(P) as a register.
+	//
+	// Without a trace, instructions come from the decode cache. With a
+	// trace, they come from it for as long as execution goes the way it
+	// was recorded, or chains into the trace recorded at the address it
+	// left for. An instruction starts while the cycle counter is below
+	// end, or with fit, only if it ends below end.
+	private void interpret(long end, boolean fit, Trace trace) {
+		DecodeCache decodeCache = this.decodeCache();
+		Trace[] traces = null;
+		int[] entries = decodeCache.entries;
+		int[] operands = decodeCache.operands;
+		int[] ps = null;
+		int[] addresses = null;
+		int count = 0;
+		
+		MemoryBus ram = this.ram;
+		int[] r = this.r;
+		int p = this.p;
+		int x = this.x;
+		int d = this.d;
+		int df = this.df;
+		int pc = r[p];
+		long cycles = this.cycles;
+		
+		// Slot of the next instruction: its address, or its index in the
+		// trace.
+		int i = pc;
+		if (trace != null) {
+			traces = this.traceCache.traces;
+			entries = trace.entries;
+			operands = trace.operands;
+			ps = trace.ps;
+			addresses = trace.addresses;
+			count = trace.count;
+			i = 0;
+		}
+		
+		while (true) {
+			int entry = entries[i];
+			if (entry == 0)
+				entry = decodeCache.decode(i);
+			
+			int n = Opcode.n(entry);
+			// R(X) may be R(P) now even if it was not when the trace was
+			// recorded.
+			if (cycles + (fit ? Opcode.cycles(entry) : 0) >= end ||
+					(entry & Opcode.NEEDS_CPU) != 0 ||
+					((entry & Opcode.USES_N) != 0 && n == p) ||
+					((entry & Opcode.USES_X) != 0 && x == p))
+				break;
+			
+			int operand = operands[i];
+			pc = operand >>> 16;
+			operand &= 0xFFFF;
+			cycles += Opcode.cycles(entry);
+			// DF comes out of sum the same way as in the exec methods.
+			int sum;
+			
+			switch (Opcode.handler(entry)) {
+			case Opcode.LDN:
+				d = ram.getUnsignedByte(r[n]);
+				break;
+				
+			case Opcode.INC:
+				r[n] = (r[n] + 1) & 0xFFFF;
+				break;
+				
+			case Opcode.DEC:
+				r[n] = (r[n] - 1) & 0xFFFF;
+				break;
+				
+			case Opcode.BR:
+			case Opcode.LBR:
+				pc = operand;
+				break;
+				
+			case Opcode.BQ:
+			case Opcode.LBQ:
+				if (this.outputDevice.isQOn())
+					pc = operand;
+				break;
+				
+			case Opcode.BZ:
+			case Opcode.LBZ:
+				if (d == 0)
+					pc = operand;
+				break;
+				
+			case Opcode.BDF:
+			case Opcode.LBDF:
+				if (df != 0)
+					pc = operand;
+				break;
+				
+			case Opcode.B:
+				if (this.ef[n])
+					pc = operand;
+				break;
+				
+			case Opcode.SKP:
+				pc = (pc + 1) & 0xFFFF;
+				break;
+				
+			case Opcode.BNQ:
+			case Opcode.LBNQ:
+				if (!this.outputDevice.isQOn())
+					pc = operand;
+				break;
+				
+			case Opcode.BNZ:
+			case Opcode.LBNZ:
+				if (d != 0)
+					pc = operand;
+				break;
+				
+			case Opcode.BNF:
+			case Opcode.LBNF:
+				if (df == 0)
+					pc = operand;
+				break;
+				
+			case Opcode.BN:
+				if (!this.ef[n])
+					pc = operand;
+				break;
+				
+			case Opcode.LDA:
+				d = ram.getUnsignedByte(r[n]);
+				r[n] = (r[n] + 1) & 0xFFFF;
+				break;
+				
+			case Opcode.STR:
+				ram.setByte(r[n], (byte) d);
+				break;
+				
+			case Opcode.IRX:
+				r[x] = (r[x] + 1) & 0xFFFF;
+				break;
+				
+			case Opcode.RET:
+			case Opcode.DIS:
+				r[p] = pc;
+				sum = ram.getUnsignedByte(r[x]);
+				r[x] = (r[x] + 1) & 0xFFFF;
+				p = sum & 0x0F;
+				x = (sum >> 4) & 0x0F;
+				pc = r[p];
+				this.ie = (Opcode.handler(entry) == Opcode.DIS) ? 0 : 1;
+				break;
+				
+			case Opcode.LDXA:
+				d = ram.getUnsignedByte(r[x]);
+				r[x] = (r[x] + 1) & 0xFFFF;
+				break;
+				
+			case Opcode.STXD:
+				ram.setByte(r[x], (byte) d);
+				r[x] = (r[x] - 1) & 0xFFFF;
+				break;
+				
+			case Opcode.ADC:
+				sum = d + ram.getUnsignedByte(r[x]) + df;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SDB:
+				sum = (~d) + ram.getUnsignedByte(r[x]) + df;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.SHRC:
+				sum = d | (df << 8);
+				df = d & 0x01;
+				d = sum >> 1;
+				break;
+				
+			case Opcode.SMB:
+				sum = d + (~ram.getUnsignedByte(r[x])) + df;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.SAV:
+				ram.setByte(r[x], (byte) this.t);
+				break;
+				
+			case Opcode.REQ:
+				// The output device may read the cycle counter.
+				this.cycles = cycles - Opcode.cycles(entry);
+				this.outputDevice.setQ(false);
+				break;
+				
+			case Opcode.SEQ:
+				this.cycles = cycles - Opcode.cycles(entry);
+				this.outputDevice.setQ(true);
+				break;
+				
+			case Opcode.ADCI:
+				sum = d + operand + df;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SDBI:
+				sum = (~d) + operand + df;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.SHLC:
+				sum = (d << 1) | df;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SMBI:
+				sum = d + (~operand) + df;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.GLO:
+				d = r[n] & 0xFF;
+				break;
+				
+			case Opcode.GHI:
+				d = (r[n] >> 8) & 0xFF;
+				break;
+				
+			case Opcode.PLO:
+				r[n] = (r[n] & 0xFF00) | d;
+				break;
+				
+			case Opcode.PHI:
+				r[n] = (r[n] & 0x00FF) | (d << 8);
+				break;
+				
+			case Opcode.NOP:
+				break;
+				
+			case Opcode.LSNQ:
+				if (!this.outputDevice.isQOn())
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSNZ:
+				if (d != 0)
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSNF:
+				if (df == 0)
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSKP:
+				pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSIE:
+				if (this.ie != 0)
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSQ:
+				if (this.outputDevice.isQOn())
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSZ:
+				if (d == 0)
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.LSDF:
+				if (df != 0)
+					pc = (pc + 2) & 0xFFFF;
+				break;
+				
+			case Opcode.SEP:
+				r[p] = pc;
+				p = n;
+				pc = r[p];
+				break;
+				
+			case Opcode.SEX:
+				x = n;
+				break;
+				
+			case Opcode.LDX:
+				d = ram.getUnsignedByte(r[x]);
+				break;
+				
+			case Opcode.OR:
+				d |= ram.getUnsignedByte(r[x]);
+				break;
+				
+			case Opcode.AND:
+				d &= ram.getUnsignedByte(r[x]);
+				break;
+				
+			case Opcode.XOR:
+				d ^= ram.getUnsignedByte(r[x]);
+				break;
+				
+			case Opcode.ADD:
+				sum = d + ram.getUnsignedByte(r[x]);
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SD:
+				sum = (~d) + ram.getUnsignedByte(r[x]) + 1;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.SHR:
+				df = d & 0x01;
+				d = d >> 1;
+				break;
+				
+			case Opcode.SM:
+				sum = d + (~ram.getUnsignedByte(r[x])) + 1;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.LDI:
+				d = operand;
+				break;
+				
+			case Opcode.ORI:
+				d |= operand;
+				break;
+				
+			case Opcode.ANI:
+				d &= operand;
+				break;
+				
+			case Opcode.XRI:
+				d ^= operand;
+				break;
+				
+			case Opcode.ADI:
+				sum = d + operand;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SDI:
+				sum = (~d) + operand + 1;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+				
+			case Opcode.SHL:
+				sum = d << 1;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				break;
+				
+			case Opcode.SMI:
+				sum = d + (~operand) + 1;
+				d = sum & 0xFF;
+				df = (sum & 0xFF00) != 0 ? 1 : 0;
+				break;
+			}
+			
+			if (trace == null) {
+				i = pc;
+				continue;
+			}
+			
+			i ++;
+			if (((entry & Trace.GUARD) != 0 && (pc != addresses[i] || p != ps[i])) ||
+					((entry & Trace.STORE) != 0 && !trace.valid) ||
+					(i == count && !trace.loops)) {
+				trace = traces[pc];
+				if (trace == null || trace.getP() != p)
+					break;
+				
+				entries = trace.entries;
+				operands = trace.operands;
+				ps = trace.ps;
+				addresses = trace.addresses;
+				count = trace.count;
+				i = 0;
+			} else if (i == count) {
+				i = 0;
+			}
+		}
+		
+		r[p] = pc;
+		this.p = p;
+		this.x = x;
+		this.d = d;
+		this.df = df;
+		this.cycles = cycles;
+	}
+	
+	private void stepTable() throws UnknownOpcodeException {
+		int pc = this.r[this.p];
+		int entry = Opcode.TABLE[this.ram.getUnsignedByte(pc)];
+		int operand = Opcode.operand(this.ram, pc, entry);
+		this.r[this.p] = (pc + Opcode.length(entry)) & 0xFFFF;
+		
+		this.execute(entry, operand);
+	}
+	
+	private void stepPredecoded() throws UnknownOpcodeException {
+		DecodeCache decodeCache = this.decodeCache();
+		int pc = this.r[this.p];
+		int entry = decodeCache.entries[pc];
+		if (entry == 0)
+			entry = decodeCache.decode(pc);
+		
+		int operand = decodeCache.operands[pc];
+		this.r[this.p] = operand >>> 16;
+		
+		this.execute(entry, operand & 0xFFFF);
+	}
+	
+	// Runs a decoded instruction. The program counter already points past
+	// it, and operand holds its immediate byte or branch address.
+	private void execute(int entry, int operand) throws UnknownOpcodeException {
+		int n = Opcode.n(entry);
+		switch (Opcode.handler(entry)) {
+		case Opcode.IDL:
+			this.execIDL();
+			break;
+			
+		case Opcode.LDN:
+			this.execLDNn(n);
+			break;
+			
+		case Opcode.INC:
+			this.execINCn(n);
+			break;
+			
+		case Opcode.DEC:
+			this.execDECn(n);
+			break;
+			
+		case Opcode.BR:
+			this.execBR(operand);
+			break;
+			
+		case Opcode.BQ:
+			this.execBQ(operand);
+			break;
+			
+		case Opcode.BZ:
+			this.execBZ(operand);
+			break;
+			
+		case Opcode.BDF:
+			this.execBDF(operand);
+			break;
+			
+		case Opcode.B:
+			this.execBn(n, operand);
+			break;
+			
+		case Opcode.SKP:
+			this.execSKP();
+			break;
+			
+		case Opcode.BNQ:
+			this.execBNQ(operand);
+			break;
+			
+		case Opcode.BNZ:
+			this.execBNZ(operand);
+			break;
+			
+		case Opcode.BNF:
+			this.execBNF(operand);
+			break;
+			
+		case Opcode.BN:
+			this.execBNn(n, operand);
+			break;
+			
+		case Opcode.LDA:
+			this.execLDAn(n);
+			break;
+			
+		case Opcode.STR:
+			this.execSTRn(n);
+			break;
+			
+		case Opcode.IRX:
+			this.execIRX();
+			break;
 			
-			if (this.stepMode)
-				break;
+		case Opcode.OUT:
+			this.execOUTn(n);
+			break;
 			
-			long cyclesSinceLastPause = this.cycles - this.lastPauseCycles;
-			if (this.pauseAfterCycles > 0L && cyclesSinceLastPause > this.pauseAfterCycles) {
-				long currentInMs = (new Date()).getTime();
-				while (currentInMs - this.lastPauseAtMs == 0) {
-					try {
-						Thread.sleep(1L);
-						currentInMs = (new Date()).getTime();
-					} catch (InterruptedException e) {
-					}
-				}
-				
-				this.setPauseAfterCycles(CYCLES_PER_MS * (currentInMs - this.lastPauseAtMs));
-				this.lastPauseAtMs = currentInMs;
-			}
+		case Opcode.INP:
+			this.execINPn(n);
+			break;
 			
-			if (this.stopAfterCycles > 0L && this.cycles > this.stopAfterCycles)
-				break;
+		case Opcode.RET:
+			this.execRET();
+			break;
+			
+		case Opcode.DIS:
+			this.execDIS();
+			break;
+			
+		case Opcode.LDXA:
+			this.execLDXA();
+			break;
+			
+		case Opcode.STXD:
+			this.execSTXD();
+			break;
+			
+		case Opcode.ADC:
+			this.execADC();
+			break;
+			
+		case Opcode.SDB:
+			this.execSDB();
+			break;
+			
+		case Opcode.SHRC:
+			this.execSHRC();
+			break;
+			
+		case Opcode.SMB:
+			this.execSMB();
+			break;
+			
+		case Opcode.SAV:
+			this.execSAV();
+			break;
+			
+		case Opcode.MARK:
+			this.execMARK();
+			break;
+			
+		case Opcode.REQ:
+			this.execREQ();
+			break;
+			
+		case Opcode.SEQ:
+			this.execSEQ();
+			break;
+			
+		case Opcode.ADCI:
+			this.execADCI(operand);
+			break;
+			
+		case Opcode.SDBI:
+			this.execSDBI(operand);
+			break;
+			
+		case Opcode.SHLC:
+			this.execSHLC();
+			break;
+			
+		case Opcode.SMBI:
+			this.execSMBI(operand);
+			break;
+			
+		case Opcode.GLO:
+			this.execGLOn(n);
+			break;
+			
+		case Opcode.GHI:
+			this.execGHIn(n);
+			break;
+			
+		case Opcode.PLO:
+			this.execPLOn(n);
+			break;
+			
+		case Opcode.PHI:
+			this.execPHIn(n);
+			break;
+			
+		case Opcode.LBR:
+			this.execLBR(operand);
+			break;
+			
+		case Opcode.LBQ:
+			this.execLBQ(operand);
+			break;
+			
+		case Opcode.LBZ:
+			this.execLBZ(operand);
+			break;
+			
+		case Opcode.LBDF:
+			this.execLBDF(operand);
+			break;
+			
+		case Opcode.NOP:
+			this.execNOP();
+			break;
+			
+		case Opcode.LSNQ:
+			this.execLSNQ();
+			break;
+			
+		case Opcode.LSNZ:
+			this.execLSNZ();
+			break;
+			
+		case Opcode.LSNF:
+			this.execLSNF();
+			break;
+			
+		case Opcode.LSKP:
+			this.execLSKP();
+			break;
+			
+		case Opcode.LBNQ:
+			this.execLBNQ(operand);
+			break;
+			
+		case Opcode.LBNZ:
+			this.execLBNZ(operand);
+			break;
+			
+		case Opcode.LBNF:
+			this.execLBNF(operand);
+			break;
+			
+		case Opcode.LSIE:
+			this.execLSIE();
+			break;
+			
+		case Opcode.LSQ:
+			this.execLSQ();
+			break;
+			
+		case Opcode.LSZ:
+			this.execLSZ();
+			break;
+			
+		case Opcode.LSDF:
+			this.execLSDF();
+			break;
+			
+		case Opcode.SEP:
+			this.execSEPn(n);
+			break;
+			
+		case Opcode.SEX:
+			this.execSEXn(n);
+			break;
+			
+		case Opcode.LDX:
+			this.execLDX();
+			break;
+			
+		case Opcode.OR:
+			this.execOR();
+			break;
+			
+		case Opcode.AND:
+			this.execAND();
+			break;
+			
+		case Opcode.XOR:
+			this.execXOR();
+			break;
+			
+		case Opcode.ADD:
+			this.execADD();
+			break;
+			
+		case Opcode.SD:
+			this.execSD();
+			break;
+			
+		case Opcode.SHR:
+			this.execSHR();
+			break;
+			
+		case Opcode.SM:
+			this.execSM();
+			break;
+			
+		case Opcode.LDI:
+			this.execLDI(operand);
+			break;
+			
+		case Opcode.ORI:
+			this.execORI(operand);
+			break;
+			
+		case Opcode.ANI:
+			this.execANI(operand);
+			break;
+			
+		case Opcode.XRI:
+			this.execXRI(operand);
+			break;
+			
+		case Opcode.ADI:
+			this.execADI(operand);
+			break;
+			
+		case Opcode.SDI:
+			this.execSDI(operand);
+			break;
+			
+		case Opcode.SHL:
+			this.execSHL();
+			break;
+			
+		case Opcode.SMI:
+			this.execSMI(operand);
+			break;
+			
+		default:
+			this.execUnknown(n);
 		}
+		
+		this.cycles += Opcode.cycles(entry);
 	}
-
-	private void step() throws UnknownOpcodeException {
+	
+	private void stepSwitch() throws UnknownOpcodeException {
 		int pc = this.r[this.p] & 0xFFFF;
 		byte opcode = this.ram.getByte(pc);
 		this.r[this.p] ++;
@@ -184,7 +2352,8 @@ public class Cpu {
 		
 		switch (opcode) {
 		case 0x00:
-			this.execIDL(opcode);
+			this.execIDL();
+			this.cycles += 2;
 			break;
 		
 		case 0x01:
@@ -202,7 +2371,8 @@ public class Cpu {
 		case 0x0d:
 		case 0x0e:
 		case 0x0f:
-			this.execLDNn(opcode);
+			this.execLDNn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case 0x10:
@@ -221,7 +2391,8 @@ public class Cpu {
 		case 0x1d:
 		case 0x1e:
 		case 0x1f:
-			this.execINCn(opcode);
+			this.execINCn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case 0x20:
@@ -240,53 +2411,64 @@ public class Cpu {
 		case 0x2d:
 		case 0x2e:
 		case 0x2f:
-			this.execDECn(opcode);
+			this.execDECn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case 0x30:
-			this.execBR(opcode);
+			this.execBR(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x31:
-			this.execBQ(opcode);
+			this.execBQ(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x32:
-			this.execBZ(opcode);
+			this.execBZ(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x33:
-			this.execBDF(opcode);
+			this.execBDF(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x34:
 		case 0x35:
 		case 0x36:
 		case 0x37:
-			this.execBn(opcode);
+			this.execBn(opcode & 0x03, this.fetchByte());
+			this.cycles += 2;
 			break;
 		
 		case 0x38:
-			this.execSKP(opcode);
+			this.execSKP();
+			this.cycles += 2;
 			break;
 			
 		case 0x39:
-			this.execBNQ(opcode);
+			this.execBNQ(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x3a:
-			this.execBNZ(opcode);
+			this.execBNZ(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x3b:
-			this.execBNF(opcode);
+			this.execBNF(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x3c:
 		case 0x3d:
 		case 0x3e:
 		case 0x3f:
-			this.execBNn(opcode);
+			this.execBNn(opcode & 0x03, this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0x40:
@@ -305,7 +2487,8 @@ public class Cpu {
 		case (byte) 0x4d:
 		case (byte) 0x4e:
 		case (byte) 0x4f:
-			this.execLDAn(opcode);
+			this.execLDAn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case 0x50:
@@ -324,11 +2507,13 @@ public class Cpu {
 		case 0x5d:
 		case 0x5e:
 		case 0x5f:
-			this.execSTRn(opcode);
+			this.execSTRn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case 0x60:
-			this.execIRX(opcode);
+			this.execIRX();
+			this.cycles += 2;
 			break;
 			
 		case 0x61:
@@ -338,7 +2523,8 @@ public class Cpu {
 		case 0x65:
 		case 0x66:
 		case 0x67:
-			this.execOUTn(opcode);
+			this.execOUTn((opcode & 0xFF) - 0x61);
+			this.cycles += 2;
 			break;
 			
 		case 0x69:
@@ -348,71 +2534,88 @@ public class Cpu {
 		case 0x6d:
 		case 0x6e:
 		case 0x6f:
-			this.execINPn(opcode);
+			this.execINPn((opcode & 0xFF) - 0x69);
+			this.cycles += 2;
 			break;
 			
 		case 0x70:
-			this.execRET(opcode);
+			this.execRET();
+			this.cycles += 2;
 			break;
 			
 		case 0x71:
-			this.execDIS(opcode);
+			this.execDIS();
+			this.cycles += 2;
 			break;
 			
 		case 0x72:
-			this.execLDXA(opcode);
+			this.execLDXA();
+			this.cycles += 2;
 			break;
 			
 		case 0x73:
-			this.execSTXD(opcode);
+			this.execSTXD();
+			this.cycles += 2;
 			break;
 			
 		case 0x74:
-			this.execADC(opcode);
+			this.execADC();
+			this.cycles += 2;
 			break;
 			
 		case 0x75:
-			this.execSDB(opcode);
+			this.execSDB();
+			this.cycles += 2;
 			break;
 			
 		case 0x76:
-			this.execSHRC(opcode);
+			this.execSHRC();
+			this.cycles += 2;
 			break;
 			
 		case 0x77:
-			this.execSMB(opcode);
+			this.execSMB();
+			this.cycles += 2;
 			break;
 			
 		case 0x78:
-			this.execSAV(opcode);
+			this.execSAV();
+			this.cycles += 2;
 			break;
 			
 		case 0x79:
-			this.execMARK(opcode);
+			this.execMARK();
+			this.cycles += 2;
 			break;
 			
 		case 0x7a:
-			this.execREQ(opcode);
+			this.execREQ();
+			this.cycles += 2;
 			break;
 		
 		case 0x7b:
-			this.execSEQ(opcode);
+			this.execSEQ();
+			this.cycles += 2;
 			break;
 			
 		case 0x7c:
-			this.execADCI(opcode);
+			this.execADCI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x7d:
-			this.execSDBI(opcode);
+			this.execSDBI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case 0x7e:
-			this.execSHLC(opcode);
+			this.execSHLC();
+			this.cycles += 2;
 			break;
 			
 		case 0x7f:
-			this.execSMBI(opcode);
+			this.execSMBI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0x80:
@@ -431,7 +2634,8 @@ public class Cpu {
 		case (byte) 0x8d:
 		case (byte) 0x8e:
 		case (byte) 0x8f:
-			this.execGLOn(opcode);
+			this.execGLOn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0x90:
@@ -450,7 +2654,8 @@ public class Cpu {
 		case (byte) 0x9d:
 		case (byte) 0x9e:
 		case (byte) 0x9f:
-			this.execGHIn(opcode);
+			this.execGHIn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xa0:
@@ -469,7 +2674,8 @@ public class Cpu {
 		case (byte) 0xad:
 		case (byte) 0xae:
 		case (byte) 0xaf:
-			this.execPLOn(opcode);
+			this.execPLOn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xb0:
@@ -488,71 +2694,88 @@ public class Cpu {
 		case (byte) 0xbd:
 		case (byte) 0xbe:
 		case (byte) 0xbf:
-			this.execPHIn(opcode);
+			this.execPHIn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xc0:
-			this.execLBR(opcode);
+			this.execLBR(this.fetchWord());
+			this.cycles += 3;
 			break;
 		
 		case (byte) 0xc1:
-			this.execLBQ(opcode);
+			this.execLBQ(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc2:
-			this.execLBZ(opcode);
+			this.execLBZ(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc3:
-			this.execLBDF(opcode);
+			this.execLBDF(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc4:
-			this.execNOP(opcode);
+			this.execNOP();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc5:
-			this.execLSNQ(opcode);
+			this.execLSNQ();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc6:
-			this.execLSNZ(opcode);
+			this.execLSNZ();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc7:
-			this.execLSNF(opcode);
+			this.execLSNF();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc8:
-			this.execLSKP(opcode);
+			this.execLSKP();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xc9:
-			this.execLBNQ(opcode);
+			this.execLBNQ(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xca:
-			this.execLBNZ(opcode);
+			this.execLBNZ(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xcb:
-			this.execLBNF(opcode);
+			this.execLBNF(this.fetchWord());
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xcc:
-			this.execLSIE(opcode);
+			this.execLSIE();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xcd:
-			this.execLSQ(opcode);
+			this.execLSQ();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xce:
-			this.execLSZ(opcode);
+			this.execLSZ();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xcf:
-			this.execLSDF(opcode);
+			this.execLSDF();
+			this.cycles += 3;
 			break;
 			
 		case (byte) 0xd0:
@@ -571,7 +2794,8 @@ public class Cpu {
 		case (byte) 0xdd:
 		case (byte) 0xde:
 		case (byte) 0xdf:
-			this.execSEPn(opcode);
+			this.execSEPn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xe0:
@@ -590,79 +2814,120 @@ public class Cpu {
 		case (byte) 0xed:
 		case (byte) 0xee:
 		case (byte) 0xef:
-			this.execSEXn(opcode);
+			this.execSEXn(opcode & 0x0F);
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf0:
-			this.execLDX(opcode);
+			this.execLDX();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf1:
-			this.execOR(opcode);
+			this.execOR();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf2:
-			this.execAND(opcode);
+			this.execAND();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf3:
-			this.execXOR(opcode);
+			this.execXOR();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf4:
-			this.execADD(opcode);
+			this.execADD();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf5:
-			this.execSD(opcode);
+			this.execSD();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf6:
-			this.execSHR(opcode);
+			this.execSHR();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf7:
-			this.execSM(opcode);
+			this.execSM();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf8:
-			this.execLDI(opcode);
+			this.execLDI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xf9:
-			this.execORI(opcode);
+			this.execORI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xfa:
-			this.execANI(opcode);
+			this.execANI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xfb:
-			this.execXRI(opcode);
+			this.execXRI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xfc:
-			this.execADI(opcode);
+			this.execADI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xfd:
-			this.execSDI(opcode);
+			this.execSDI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xfe:
-			this.execSHL(opcode);
+			this.execSHL();
+			this.cycles += 2;
 			break;
 			
 		case (byte) 0xff:
-			this.execSMI(opcode);
+			this.execSMI(this.fetchByte());
+			this.cycles += 2;
 			break;
 			
 		default:
-			throw new UnknownOpcodeException(toHex(opcode & 0xff, 2));
+			this.execUnknown(opcode & 0xFF);
 		}
 	}
 	
-	private void execSAV(byte opcode) {
+	private int fetchByte() {
+		int value = this.ram.getUnsignedByte(this.r[this.p]);
+		this.r[this.p] ++;
+		this.r[this.p] &= 0xFFFF;
+		
+		return value;
+	}
+	
+	private int fetchWord() {
+		int hi = this.fetchByte();
+		return hi * 0x100 + this.fetchByte();
+	}
+	
+	void execUnknown(int opcode) throws UnknownOpcodeException {
+		if (!this.trapUnknownOpcodes)
+			throw new UnknownOpcodeException(toHex(opcode, 2));
+		
+		// Back to the opcode, which is one byte long.
+		int address = (this.r[this.p] - 1) & 0xFFFF;
+		this.r[this.p] = address;
+		this.stopReason = StopReason.unknownOpcode(address, opcode);
+		this.stop = true;
+	}
+	
+	void execSAV() {
 		/*
 		SAV     SAVe T                                             78
 		-------------------------------------------------------------
@@ -670,11 +2935,9 @@ public class Cpu {
 		pointed to by the address register pointed to by X.
 		*/
 		this.ram.setByte(this.r[this.x] & 0x00FFFF, (byte) this.t);
-		
-		this.cycles += 2;
 	}
 	
-	private void execMARK(byte opcode) {
+	void execMARK() {
 		/*
 		MARK    Save X and P in T                                  79
 		-------------------------------------------------------------
@@ -684,11 +2947,9 @@ public class Cpu {
 		this.t = ((this.x << 4) & 0xF0) | (this.p & 0x0F);
 		this.ram.setByte(this.r[2] & 0x00FFFF, (byte) this.t);
 		this.x = this.p;
-		
-		this.cycles += 2;
 	}
 
-	private void execLSIE(byte opcode) {
+	void execLSIE() {
 		/*
 		LSIE    Long Skip if Interrupts are Enabled                CC
 		-------------------------------------------------------------
@@ -700,11 +2961,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0x00FFFF; 
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execDIS(byte opcode) {
+	void execDIS() {
 		/*
 		DIS     Return and DISable interrupts                      71
 		-------------------------------------------------------------
@@ -721,23 +2980,19 @@ public class Cpu {
 		this.x = ((data & 0x00F0) >> 4) & 0x0F;
 		
 		this.ie = 0;
-		
-		this.cycles += 2;		
 	}
 
-	private void execSEPn(byte opcode) {
+	void execSEPn(int rIndex) {
 		/*
 		SEP r   SEt P                                              Dr
 		-------------------------------------------------------------
 		Copy r (the low four bits of the instruction) into P, making
 		the designated address register the new Program Counter.
 		*/
-		this.p = (opcode & 0x0F);
-		
-		this.cycles += 2;
+		this.p = rIndex;
 	}
 
-	private void execSHRC(byte opcode) {
+	void execSHRC() {
 		/*
 		SHR     SHift D Right                                      F6
 		SHRC    SHift D Right with Carry                           76
@@ -756,11 +3011,9 @@ public class Cpu {
 			this.d |= 0x80;
 		
 		this.d &= 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSHR(byte opcode) {
+	void execSHR() {
 		/*
 		SHR     SHift D Right                                      F6
 		SHRC    SHift D Right with Carry                           76
@@ -772,11 +3025,9 @@ public class Cpu {
 		*/
 		this.df = ((this.d & 0x01) == 0) ? 0: 1;
 		this.d = (this.d >> 1) & 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSMBI(byte opcode) {
+	void execSMBI(int value) {
 		/*
 		SM      Subtract Memory byte from D                        F7
 		SMI b   Subtract Memory from D, Immediate               FF bb
@@ -791,21 +3042,16 @@ public class Cpu {
 		byte from D, with or without consideration of a borrow
 		incurred by a previous subtraction.
 		*/
-		int sum = this.d + (~(this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF));
+		int sum = this.d + (~value);
 		
 		if (this.df != 0)
 			sum += 1;
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSMB(byte opcode) {
+	void execSMB() {
 		/*
 		SM      Subtract Memory byte from D                        F7
 		SMI b   Subtract Memory from D, Immediate               FF bb
@@ -827,11 +3073,9 @@ public class Cpu {
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-
-		this.cycles += 2;
 	}
 
-	private void execSMI(byte opcode) {
+	void execSMI(int value) {
 		/*
 		SM      Subtract Memory byte from D                        F7
 		SMI b   Subtract Memory from D, Immediate               FF bb
@@ -846,18 +3090,13 @@ public class Cpu {
 		byte from D, with or without consideration of a borrow
 		incurred by a previous subtraction.
 		*/
-		int sum = this.d + (~(this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF)) + 1;
+		int sum = this.d + (~value) + 1;
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSM(byte opcode) {
+	void execSM() {
 		/*
 		SM      Subtract Memory byte from D                        F7
 		SMI b   Subtract Memory from D, Immediate               FF bb
@@ -876,11 +3115,9 @@ public class Cpu {
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-
-		this.cycles += 2;
 	}
 
-	private void execSDB(byte opcode) {
+	void execSDB() {
 		/*
 		SDBI b  Subtract D w.Borrow from memory Immediate byte  7D bb
 		SDB     Subtract D with Borrow from memory                 75
@@ -898,11 +3135,9 @@ public class Cpu {
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.cycles += 2;
 	}
 
-	private void execSDBI(byte opcode) {
+	void execSDBI(int value) {
 		/*
 		SDBI b  Subtract D w.Borrow from memory Immediate byte  7D bb
 		SDB     Subtract D with Borrow from memory                 75
@@ -914,20 +3149,15 @@ public class Cpu {
 		sum back into DF. This instruction is used to extend a borrow
 		from a previous SD or SDB (or SDI or SDBI).
 		*/
-		int sum = (~this.d) + (this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF);
+		int sum = (~this.d) + value;
 		if (this.df != 0)
 			sum += 1;
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSDI(byte opcode) {
+	void execSDI(int value) {
 		/*
 		SDI b   Subtract D from Immediate byte                  FD bb
 		-------------------------------------------------------------
@@ -935,17 +3165,12 @@ public class Cpu {
 		byte of the instruction. The sum is put back into the
 		accumulator, and the carry out is placed into DF.
 		*/
-		int sum = (~this.d) + (this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF) + 1;
+		int sum = (~this.d) + value + 1;
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSD(byte opcode) {
+	void execSD() {
 		/*
 		SD      Subtract D from memory                             F5
 		-------------------------------------------------------------
@@ -958,11 +3183,9 @@ public class Cpu {
 		int sum = (~this.d) + (this.ram.getByte(this.r[this.x] & 0x00FFFF) & 0x00FF) + 1;
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.cycles += 2;
 	}
 
-	private void execADC(byte opcode) {
+	void execADC() {
 		/*
 		ADC     ADd with Carry                                     74
 		ADCI b  ADd with Carry Immediate                        7C bb
@@ -979,11 +3202,9 @@ public class Cpu {
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.cycles += 2;
 	}
 
-	private void execLSNF(byte opcode) {
+	void execLSNF() {
 		/*
 		LSNF    Long Skip if DF is 0                               C7
 		-------------------------------------------------------------
@@ -993,11 +3214,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0x00FFFF; 
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLSDF(byte opcode) {
+	void execLSDF() {
 		/*
 		LSDF    Long Skip if DF is 1                               CF
 		-------------------------------------------------------------
@@ -1006,11 +3225,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0x00FFFF; 
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLBDF(byte opcode) {
+	void execLBDF(int address) {
 		/*
 		BDF a   Branch if DF is 1                               33 aa
 		LBDF aa Long Branch if DF is 1                        C3 aaaa
@@ -1019,18 +3236,11 @@ public class Cpu {
 		(or second and third bytes) of the instruction if DF=1.
 		*/
 		if (this.df != 0) {
-			this.r[this.p] =
-				this.ram.getUnsignedByte(this.r[this.p]) * 0x0100 +
-				this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0x00FFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execBDF(byte opcode) {
+	void execBDF(int address) {
 		/*
 		BDF a   Branch if DF is 1                               33 aa
 		LBDF aa Long Branch if DF is 1                        C3 aaaa
@@ -1039,48 +3249,33 @@ public class Cpu {
 		(or second and third bytes) of the instruction if DF=1.
 		*/
 		if (this.df != 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]); 
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0x00FFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execANI(byte opcode) {
+	void execANI(int value) {
 		/*
 		ANI b   ANd Immediate                                   FA bb
 		-------------------------------------------------------------
 		All the bits in D corresponding to zeros in the second byte
 		of the instruction are set to zeros.
 		*/
-		this.d &= (this.ram.getByte(this.r[this.p]) & 0x00FF);
+		this.d &= value;
 		this.d &= 0x00FF;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execORI(byte opcode) {
+	void execORI(int value) {
 		/*
 		ORI b   OR Immediate                                    F9 bb
 		-------------------------------------------------------------
 		All the bits in D corresponding to ones in the second byte
 		of the instruction are set to ones.
 		*/
-		this.d |= (this.ram.getByte(this.r[this.p]) & 0x00FF);
+		this.d |= value;
 		this.d &= 0x00FF;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execXOR(byte opcode) {
+	void execXOR() {
 		/*
 		XOR     eXclusive OR                                       F3
 		-------------------------------------------------------------
@@ -1090,11 +3285,9 @@ public class Cpu {
 		*/
 		this.d ^= this.ram.getUnsignedByte(this.r[this.x]);
 		this.d &= 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execAND(byte opcode) {
+	void execAND() {
 		/*
 		AND     Logical AND                                        F2
 		-------------------------------------------------------------
@@ -1104,11 +3297,9 @@ public class Cpu {
 		*/
 		this.d &= this.ram.getUnsignedByte(this.r[this.x]);
 		this.d &= 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execOR(byte opcode) {
+	void execOR() {
 		/*
 		OR      Logical OR                                         F1
 		-------------------------------------------------------------
@@ -1118,11 +3309,9 @@ public class Cpu {
 		*/
 		this.d |= this.ram.getUnsignedByte(this.r[this.x]);
 		this.d &= 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execLDXA(byte opcode) {
+	void execLDXA() {
 		/*
 		LDXA    Load D via R(X) and Advance                        72
 		-------------------------------------------------------------
@@ -1134,11 +3323,9 @@ public class Cpu {
 		
 		this.r[this.x] ++;
 		this.r[this.x] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execLDX(byte opcode) {
+	void execLDX() {
 		/*
 		LDX     Load D via R(X)                                    F0
 		-------------------------------------------------------------
@@ -1146,24 +3333,19 @@ public class Cpu {
 		address register pointed to by X.
 		*/
 		this.d = this.ram.getUnsignedByte(this.r[this.x]);
-		
-		this.cycles += 2;
 	}
 
-	private void execLDNn(byte opcode) {
+	void execLDNn(int rIndex) {
 		/*
 		LDN r   Load D via N (r = 1 to F)                          0r
 		-------------------------------------------------------------
 		Copy the memory byte pointed to by the specified address
 		register r into the Accumulator.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.d = this.ram.getUnsignedByte(this.r[rIndex] & 0x00FFFF);
-		
-		this.cycles += 2;
 	}
 
-	private void execLDAn(byte opcode) {
+	void execLDAn(int rIndex) {
 		/*
 		LDA r   Load D and Advance                                 4r
 		-------------------------------------------------------------
@@ -1171,15 +3353,12 @@ public class Cpu {
 		specified address register r into the Accumulator, and
 		increment the register.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.d = this.ram.getUnsignedByte(this.r[rIndex] & 0x00FFFF);
 		this.r[rIndex] ++;
 		this.r[rIndex] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSTXD(byte opcode) {
+	void execSTXD() {
 		/*
 		STXD    STore D via R(X) and Decrement R(X)                73
 		-------------------------------------------------------------
@@ -1190,11 +3369,9 @@ public class Cpu {
 		this.ram.setByte(this.r[this.x], (byte) this.d);
 		this.r[this.x] --;
 		this.r[this.x] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSHL(byte opcode) {
+	void execSHL() {
 		/*
 		SHL     SHift D Left                                       FE
 		SHLC    SHift D Left with Carry                            7E
@@ -1207,11 +3384,9 @@ public class Cpu {
 		int v = this.d << 1;
 		this.df = ((v & 0x0100) == 0) ? 0 : 1;
 		this.d = v & 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execSHLC(byte opcode) {
+	void execSHLC() {
 		/*
 		SHL     SHift D Left                                       FE
 		SHLC    SHift D Left with Carry                            7E
@@ -1227,11 +3402,9 @@ public class Cpu {
 		
 		this.df = ((v & 0x0100) == 0) ? 0 : 1;
 		this.d = v & 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execADCI(byte opcode) {
+	void execADCI(int value) {
 		/*
 		ADC     ADd with Carry                                     74
 		ADCI b  ADd with Carry Immediate                        7C bb
@@ -1242,20 +3415,15 @@ public class Cpu {
 		result in the accumulator, and put the carry out of the sum
 		back into DF.
 		*/
-		int sum = this.d + (this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF);
+		int sum = this.d + value;
 		if (this.df != 0)
 			sum += 1;
 		
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execIRX(byte opcode) {
+	void execIRX() {
 		/*
 		IRX     Increment R(X)                                     60
 		-------------------------------------------------------------
@@ -1263,11 +3431,9 @@ public class Cpu {
 		*/
 		this.r[this.x] ++;
 		this.r[this.x] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execBNF(byte opcode) {
+	void execBNF(int address) {
 		/*
 		BNF a   Branch if DF is 0                               3B aa
 		LBNF aa Long Branch if DF is 0                        CB aaaa
@@ -1276,16 +3442,11 @@ public class Cpu {
 		(or second and third bytes) of the instruction if DF=0.
 		*/
 		if (this.df == 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]); 
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0x00FFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execLBNF(byte opcode) {
+	void execLBNF(int address) {
 		/*
 		BNF a   Branch if DF is 0                               3B aa
 		LBNF aa Long Branch if DF is 0                        CB aaaa
@@ -1294,18 +3455,11 @@ public class Cpu {
 		(or second and third bytes) of the instruction if DF=0.
 		*/
 		if (this.df == 0) {
-			this.r[this.p] =
-				this.ram.getUnsignedByte(this.r[this.p]) * 0x0100 +
-				this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0x00FFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execRET(byte opcode) {
+	void execRET() {
 		/*
 		RET     RETurn                                             70
 		-------------------------------------------------------------
@@ -1321,10 +3475,10 @@ public class Cpu {
 		this.p = data & 0x0F;
 		this.x = ((data & 0x00F0) >> 4) & 0x0F;
 		
-		this.cycles += 2;
+		this.ie = 1;
 	}
 
-	private void execADI(byte opcode) {
+	void execADI(int value) {
 		/*
 		ADI b   ADd Immediate                                   FC bb
 		-------------------------------------------------------------
@@ -1332,17 +3486,12 @@ public class Cpu {
 		accumulator, and put the sum back into the accumulator. Put
 		the carry out bit in the DF register.
 		*/
-		int sum = this.d + (this.ram.getByte(this.r[this.p] & 0x00FFFF) & 0x00FF);
+		int sum = this.d + value;
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0x00FFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execADD(byte opcode) {
+	void execADD() {
 		/*
 		ADD     Add                                                F4
 		-------------------------------------------------------------
@@ -1353,133 +3502,103 @@ public class Cpu {
 		int sum = this.d + (this.ram.getByte(this.r[this.x] & 0x00FFFF) & 0x00FF);
 		this.d = sum & 0x00FF;
 		this.df = (sum & 0xFF00) != 0 ? 1 : 0;
-		
-		this.cycles += 2;
 	}
 
-	private void execSEXn(byte opcode) {
+	void execSEXn(int rIndex) {
 		/*
 		SEX r   Set X                                              Er
 		-------------------------------------------------------------
 		Set register X to point to the specified register r.
 		*/
-		this.x = (opcode & 0x0F);
-		
-		this.cycles += 2;
+		this.x = rIndex;
 	}
 
-	private void execSTRn(byte opcode) {
+	void execSTRn(int rIndex) {
 		/*
 		STR r   SToRe D into memory                                5r
 		-------------------------------------------------------------
 		Using the specified address register, store (copy the
 		contents of) the accumulator into memory.
 		*/
-		int rIndex = opcode & 0x0F;
 		int address = this.r[rIndex] & 0x00FFFF;
 		this.ram.setByte(address, (byte) (this.d & 0x00FF));
-		
-		this.cycles += 2;
 	}
 
-	private void execXRI(byte opcode) {
+	void execXRI(int value) {
 		/*
 		XRI b   eXclusive oR Immediate                          FB bb
 		-------------------------------------------------------------
 		All the bits in D corresponding to ones in the second byte
 		of the instruction are complemented.
 		*/
-		this.d ^= (this.ram.getByte(this.r[this.p]) & 0x00FF);
+		this.d ^= value;
 		this.d &= 0x00FF;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execPHIn(byte opcode) {
+	void execPHIn(int rIndex) {
 		/*
 		PHI r   Put D into High byte of register                   Br
 		-------------------------------------------------------------
 		Copy D into the most significant eight bits of the specified
 		register.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.r[rIndex] &= 0x00FF;
 		this.r[rIndex] |= ((this.d & 0x00FF) << 8);
-		
-		this.cycles += 2;
 	}
 
-	private void execPLOn(byte opcode) {
+	void execPLOn(int rIndex) {
 		/*
 		PLO r   Put D into Low byte of register                    Ar
 		-------------------------------------------------------------
 		Copy D into the least significant eight bits of the specified
 		register.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.r[rIndex] &= 0xFF00;
 		this.r[rIndex] |= (this.d & 0x00FF);
-		
-		this.cycles += 2;
 	}
 
-	private void execGHIn(byte opcode) {
+	void execGHIn(int rIndex) {
 		/*
 		GHI r   Get HIgh byte of register                          9r
 		-------------------------------------------------------------
 		Copy the most significant eight bits of the specified
 		register into D.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.d = (this.r[rIndex] >> 8) & 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execGLOn(byte opcode) {
+	void execGLOn(int rIndex) {
 		/*
 		GLO r   Get LOw byte of register                           8r
 		-------------------------------------------------------------
 		Copy the least significant eight bits of the specified
 		register into D.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.d = this.r[rIndex] & 0x00FF;
-		
-		this.cycles += 2;
 	}
 
-	private void execDECn(byte opcode) {
+	void execDECn(int rIndex) {
 		/*
 		DEC r   DECrement register                                 2r
 		-------------------------------------------------------------
 		Decrement (subtract one from) the specified register.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.r[rIndex] --;
 		this.r[rIndex] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execINCn(byte opcode) {
+	void execINCn(int rIndex) {
 		/*
 		INC r   Increment register                                 1r
 		-------------------------------------------------------------
 		Increment (add one to) the address register specified in the
 		right digit of the instruction.
 		*/
-		int rIndex = opcode & 0x0F;
 		this.r[rIndex] ++;
 		this.r[rIndex] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execLSNQ(byte opcode) {
+	void execLSNQ() {
 		/*
 		LSNQ    Long Skip if Q is off                              C5
 		-------------------------------------------------------------
@@ -1490,11 +3609,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0xFFFF; 
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLSQ(byte opcode) {
+	void execLSQ() {
 		/*
 		LSQ     Long Skip if Q is on                               CD
 		-------------------------------------------------------------
@@ -1505,11 +3622,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0xFFFF;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execBNQ(byte opcode) {
+	void execBNQ(int address) {
 		/*
 		BNQ a   Branch if Q is off                              39 aa
 		-------------------------------------------------------------
@@ -1518,16 +3633,11 @@ public class Cpu {
 		next instruction in sequence.
 		*/
 		if (!this.outputDevice.isQOn()) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]);
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execBQ(byte opcode) {
+	void execBQ(int address) {
 		/*
 		BQ a    Branch If Q is on                               31 aa
 		-------------------------------------------------------------
@@ -1536,16 +3646,11 @@ public class Cpu {
 		next instruction in sequence.
 		*/
 		if (this.outputDevice.isQOn()) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]);
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execLBNQ(byte opcode) {
+	void execLBNQ(int address) {
 		/*
 		LBNQ aa Long Branch if Q is off                       C9 aaaa
 		-------------------------------------------------------------
@@ -1554,16 +3659,11 @@ public class Cpu {
 		next instruction in sequence otherwise.
 		*/
 		if (!this.outputDevice.isQOn()) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]) * 0x100 + this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLBQ(byte opcode) {
+	void execLBQ(int address) {
 		/*
 		LBQ aa  Long Branch if Q is on                        C1 aaaa
 		-------------------------------------------------------------
@@ -1572,16 +3672,11 @@ public class Cpu {
 		next instruction in sequence.
 		*/
 		if (this.outputDevice.isQOn()) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]) * 0x100 + this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLSNZ(byte opcode) {
+	void execLSNZ() {
 		/*
 		LSNZ    Long Skip if Not Zero                              C6
 		-------------------------------------------------------------
@@ -1592,11 +3687,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0xFFFF;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLSZ(byte opcode) {
+	void execLSZ() {
 		/*
 		LSZ     Long Skip if Zero                                  CE
 		-------------------------------------------------------------
@@ -1607,11 +3700,9 @@ public class Cpu {
 			this.r[this.p] += 2;
 			this.r[this.p] &= 0xFFFF;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLBNZ(byte opcode) {
+	void execLBNZ(int address) {
 		/*
 		LBNZ aa Long Branch if Not Zero                       CA aaaa
 		-------------------------------------------------------------
@@ -1621,16 +3712,11 @@ public class Cpu {
 		instruction in sequence.
 		*/
 		if (this.d != 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]) * 0x100 + this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLBZ(byte opcode) {
+	void execLBZ(int address) {
 		/*
 		LBZ aa  Long Branch if Zero                           C2 aaaa
 		-------------------------------------------------------------
@@ -1640,30 +3726,20 @@ public class Cpu {
 		sequence.
 		*/
 		if (this.d == 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]) * 0x100 + this.ram.getUnsignedByte(this.r[this.p] + 1);
-		} else {
-			this.r[this.p] += 2;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 3;
 	}
 
-	private void execLDI(byte opcode) {
+	void execLDI(int value) {
 		/*
 		LDI b   Load D Immediate                                F8 bb
 		-------------------------------------------------------------
 		Copy the second byte of the instruction into the D register.
 		*/
-		this.d = this.ram.getByte(this.r[this.p]) & 0xFF;
-		
-		this.r[this.p] ++;
-		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 2;
+		this.d = value;
 	}
 
-	private void execBNZ(byte opcode) {
+	void execBNZ(int address) {
 		/*
 		BNZ a   Branch on Not Zero                              3A aa
 		-------------------------------------------------------------
@@ -1671,16 +3747,11 @@ public class Cpu {
 		instruction in sequence (after the branch address).
 		*/
 		if (this.d != 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]); 
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execBZ(byte opcode) {
+	void execBZ(int address) {
 		/*
 		BZ a    Branch on Zero                                  32 aa
 		-------------------------------------------------------------
@@ -1688,26 +3759,20 @@ public class Cpu {
 		in sequence (after the branch address).
 		*/
 		if (this.d == 0) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]); 
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execNOP(byte opcode) {
+	void execNOP() {
 		/*
 		NOP     No Operation                                       C4
 		-------------------------------------------------------------
 		This instruction does nothing, except take three major cycles
 		to execute.
 		*/
-		this.cycles += 3;
 	}
 
-	private void execLSKP(byte opcode) {
+	void execLSKP() {
 		/*
 		LSKP    Long Skip                                          C8
 		-------------------------------------------------------------
@@ -1715,11 +3780,9 @@ public class Cpu {
 		*/
 		this.r[this.p] += 2;
 		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 3;
 	}
 
-	private void execSKP(byte opcode) {
+	void execSKP() {
 		/*
 		SKP     Skip one byte                                      38
 		-------------------------------------------------------------
@@ -1728,11 +3791,9 @@ public class Cpu {
 
 		this.r[this.p] ++;
 		this.r[this.p] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execINPn(byte opcode) {
+	void execINPn(int portIndex) {
 		/*
 		INP p   Input to memory and D (p = 9 to F)                 6p
 		-------------------------------------------------------------
@@ -1740,15 +3801,12 @@ public class Cpu {
 		location pointed to by the address register pointed to by X,
 		and also place the byte into D.
 		*/
-		int portIndex = (((int) opcode) & 0xFF) - 0x69;
 		byte portValue = this.inputDevice.getPort(portIndex);
 		this.ram.setByte(this.r[this.x], portValue);
 		this.d = ((int) portValue) & 0x00FF;
-		
-		this.cycles += 2;
 	}
 	
-	private void execOUTn(byte opcode) {
+	void execOUTn(int portIndex) {
 		/*
 		OUT p   Output from memory (p = 1 to 7)                    6p
 		-------------------------------------------------------------
@@ -1756,41 +3814,34 @@ public class Cpu {
 		address register pointed to by X, then increment the address
 		register.
 		*/
-		int portIndex = (((int) opcode) & 0xFF) - 0x61;
 		byte portValue = this.ram.getByte(this.r[this.x]);
 		this.outputDevice.setPort(portIndex, portValue);
 		
 		this.r[this.x] ++;
 		this.r[this.x] &= 0xFFFF;
-		
-		this.cycles += 2;
 	}
 
-	private void execLBR(byte opcode) {
+	void execLBR(int address) {
 		/*
 		LBR aa  Long Branch unconditionally                   C0 aaaa
 		-------------------------------------------------------------
 		Take as the next instruction, the one whose address is the
 		second and third bytes of the LBR instruction.
 		*/
-		this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]) * 0x100 + this.ram.getUnsignedByte(this.r[this.p] + 1);
-		
-		this.cycles += 3;
+		this.r[this.p] = address;
 	}
 
-	private void execBR(byte opcode) {
+	void execBR(int address) {
 		/*
 		BR a    Branch unconditionally                          30 aa
 		-------------------------------------------------------------
 		Take as the next instruction, the one whose address is the
 		second byte of the BR instruction.
 		*/
-		this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]);
-		
-		this.cycles += 2;
+		this.r[this.p] = address;
 	}
 
-	private void execBNn(byte opcode) {
+	void execBNn(int efIndex, int address) {
 		/*
 		BN1 a   Branch on Not External Flag 1                   3C aa
 		BN2 a   Branch on Not External Flag 2                   3D aa
@@ -1804,18 +3855,12 @@ public class Cpu {
 		instruction in sequence and ignore the address in the second
 		byte of this instruction.
 		*/
-		int efIndex = opcode & 0x03;
 		if (!this.ef[efIndex]) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]);
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execBn(byte opcode) {
+	void execBn(int efIndex, int address) {
 		/*
 		B1 a    Branch on External Flag 1                       34 aa
 		B2 a    Branch on External Flag 2                       35 aa
@@ -1829,18 +3874,12 @@ public class Cpu {
 		instruction in sequence and ignore the address in the second
 		byte of this instruction.
 		*/
-		int efIndex = opcode & 0x03;
 		if (this.ef[efIndex]) {
-			this.r[this.p] = this.ram.getUnsignedByte(this.r[this.p]);
-		} else {
-			this.r[this.p] ++;
-			this.r[this.p] &= 0xFFFF;
+			this.r[this.p] = address;
 		}
-		
-		this.cycles += 2;
 	}
 
-	private void execSEQ(byte opcode) {
+	void execSEQ() {
 		/*
 		SEQ	Set Q						   7B
 		-------------------------------------------------------------
@@ -1848,11 +3887,9 @@ public class Cpu {
 		high.
 		*/
 		outputDevice.setQ(true);
-		
-		this.cycles += 2;
 	}
 
-	private void execREQ(byte opcode) {
+	void execREQ() {
 		/*
 		REQ	Reset Q						   7A
 		-------------------------------------------------------------
@@ -1860,11 +3897,9 @@ public class Cpu {
 		pin low.
 		*/
 		outputDevice.setQ(false);
-		
-		this.cycles += 2;
 	}
 
-	private void execIDL(byte opcode) {
+	void execIDL() {
 		/*
 		IDL	Idle						   00
 		-------------------------------------------------------------
@@ -1873,7 +3908,5 @@ public class Cpu {
 		*/
 		
 		this.idle = true;
-		
-		this.cycles += 2;
 	}
 }
@@ -0,0 +1,42 @@
+package com.akeysoft.elf.core;
+
+// The architectural state of the 1802, as an Engine sees it: the
+// registers, the EF lines, the cycle counter and memory. Setters keep
+// the width of the register, e.g. setR keeps 16 bits.
+public interface CpuState {
+
+	int getD();
+	void setD(int d);
+
+	int getDF();
+	void setDF(int df);
+
+	int getX();
+	void setX(int x);
+
+	int getP();
+	void setP(int p);
+
+	int getR(int index);
+	void setR(int index, int value);
+
+	int getT();
+	void setT(int t);
+
+	int getIE();
+	void setIE(int ie);
+
+	// index: 0-3, maps EF1 - EF4.
+	boolean getEf(int index);
+
+	long getCycles();
+	void addCycles(long cycles);
+
+	MemoryBus getRam();
+
+	boolean isIdle();
+
+	// Runs the instruction at R(P) the way the Cpu does, devices and all,
+	// for an engine that does not run it itself.
+	void step() throws UnknownOpcodeException;
+}
@@ -0,0 +1,119 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+
+// Remembers the decoded instruction at every address, so code that runs
+// again and again is decoded only once. Any write through the MemoryBus
+// drops the entries of the instructions covering the written bytes,
+// which keeps self-modifying programs correct.
+//
+// Only the fused modes use the Fusion tables, so they are made on the
+// first fuse.
+final class DecodeCache implements RamListener {
+
+	private static final int SIZE = 0x10000;
+
+	// The longest instruction is three bytes, so a written byte can belong
+	// to an instruction starting up to two bytes before it.
+	private static final int MAX_LENGTH = 3;
+
+	private MemoryBus ram;
+	private CodePages codePages;
+
+	// Opcode.TABLE entry of the instruction at each address; 0 if the
+	// address has not been decoded yet. Real entries are never 0.
+	final int[] entries;
+
+	// Operand in the low 16 bits, address of the next instruction in the
+	// high 16 bits.
+	final int[] operands;
+
+	// Addresses the interpreter loop stops at, see setStop; null until
+	// the first stop.
+	private boolean[] stops;
+
+	// Fusion entry of the sequence starting at each address, 0 if not
+	// looked at yet, and its operand; null until the first fuse.
+	private int[] fused;
+	int[] fusedOperands;
+
+	DecodeCache(MemoryBus ram, CodePages codePages) {
+		this.ram = ram;
+		this.codePages = codePages;
+		this.entries = new int[SIZE];
+		this.operands = new int[SIZE];
+		this.stops = null;
+		this.fused = null;
+		this.fusedOperands = null;
+	}
+
+	int decode(int address) {
+		int entry = Opcode.TABLE[this.ram.getUnsignedByte(address)];
+		int next = (address + Opcode.length(entry)) & 0xFFFF;
+		this.codePages.mark(address, Opcode.length(entry));
+
+		this.operands[address] = Opcode.operand(this.ram, address, entry) | (next << 16);
+		// Writes further into the loop do not clear this, so Cpu checks
+		// the loop again before running it.
+		if ((Opcode.handler(entry) == Opcode.LDA || Opcode.handler(entry) == Opcode.LDI) &&
+				BulkLoop.match(this.ram, address) != BulkLoop.NONE)
+			entry |= Opcode.NEEDS_CPU | Opcode.LOOP_HEAD;
+		if (this.stops != null && this.stops[address])
+			entry |= Opcode.NEEDS_CPU;
+		this.entries[address] = entry;
+
+		return entry;
+	}
+
+	// Makes the instruction at address one that needs the Cpu, so that the
+	// interpreter loop hands control back there, e.g. to run a region.
+	void setStop(int address, boolean stop) {
+		if (this.stops == null)
+			this.stops = new boolean[SIZE];
+		this.stops[address] = stop;
+		this.entries[address] = 0;
+	}
+
+	// Fusion entry of the sequence at address, which leaves its operand
+	// in fusedOperands.
+	int fused(int address) {
+		if (this.fused == null) {
+			this.fused = new int[SIZE];
+			this.fusedOperands = new int[SIZE];
+		}
+
+		int entry = this.fused[address];
+		return (entry != 0) ? entry : this.fuse(address);
+	}
+
+	private int fuse(int address) {
+		int entry = Fusion.fuse(this.ram, address, this.fusedOperands);
+		this.codePages.mark(address, Fusion.MAX_LENGTH);
+		this.fused[address] = entry;
+
+		return entry;
+	}
+
+	void clear() {
+		Arrays.fill(this.entries, 0);
+		if (this.fused != null)
+			Arrays.fill(this.fused, 0);
+	}
+
+	public void bytesWritten(int beginAddress, int length) {
+		if (length >= SIZE) {
+			this.clear();
+			return;
+		}
+
+		int end = beginAddress + length;
+		for (int address = beginAddress - (MAX_LENGTH - 1); address < end; address ++) {
+			this.entries[address & 0xFFFF] = 0;
+		}
+		if (this.fused == null)
+			return;
+		for (int address = beginAddress - (Fusion.MAX_LENGTH - 1); address < end; address ++) {
+			this.fused[address & 0xFFFF] = 0;
+		}
+	}
+}
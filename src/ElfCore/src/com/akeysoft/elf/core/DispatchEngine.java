@@ -0,0 +1,33 @@
+package com.akeysoft.elf.core;
+
+// The engines built into Cpu, one for each dispatch mode. They run on the
+// Cpu's caches, so the state they are given must be a Cpu.
+final class DispatchEngine implements Engine {
+
+	private static final String[] NAMES = {
+		"table", "switch", "predecoded", "blocks", "regions", "translated", "fused", "tiered", "traced"
+	};
+
+	static final DispatchEngine[] ENGINES;
+
+	static {
+		ENGINES = new DispatchEngine[NAMES.length];
+		for (int i = 0; i < ENGINES.length; i ++) {
+			ENGINES[i] = new DispatchEngine(i);
+		}
+	}
+
+	final int dispatchMode;
+
+	private DispatchEngine(int dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+
+	public String getName() {
+		return NAMES[this.dispatchMode];
+	}
+
+	public void step(CpuState state, long cycleLimit) throws UnknownOpcodeException {
+		((Cpu) state).dispatch(this.dispatchMode, cycleLimit);
+	}
+}
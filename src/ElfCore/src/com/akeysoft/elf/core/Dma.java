@@ -0,0 +1,115 @@
+package com.akeysoft.elf.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// The DMA channel of the 1802. Every byte goes to or comes from M(R0),
+// R0 counting up, and takes one machine cycle stolen between two
+// instructions.
+//
+// Devices move whole runs of bytes per call: in() and out() on the
+// thread of the Cpu, that is from a ScheduledEvent, which fires at the
+// instruction boundary the transfer belongs to. Other threads post()
+// bytes, which go in at the next boundary the Cpu looks at, as for
+// Cpu.requestInterrupt; while the Cpu is stopped, RunController moves
+// them. A transfer ends IDL.
+public final class Dma {
+
+	private Cpu cpu;
+	private final Queue<byte[]> posted;
+	private DmaListener listener;
+	// Transfers take no cycles, for loading programs.
+	private volatile boolean instant;
+	private long stolenCycles;
+	// RunController's thread while it waits with the Cpu stopped.
+	volatile Thread waiter;
+
+	Dma(Cpu cpu) {
+		this.cpu = cpu;
+		this.posted = new ConcurrentLinkedQueue<byte[]>();
+		this.listener = null;
+		this.instant = false;
+		this.stolenCycles = 0L;
+		this.waiter = null;
+	}
+
+	public void setDmaListener(DmaListener listener) {
+		this.listener = listener;
+	}
+
+	public void setInstant(boolean instant) {
+		this.instant = instant;
+	}
+
+	public boolean isInstant() {
+		return this.instant;
+	}
+
+	public long getStolenCycles() {
+		return this.stolenCycles;
+	}
+
+	// DMA-in of length bytes of data from offset. Returns the cycles it
+	// took.
+	public int in(byte[] data, int offset, int length) {
+		MemoryBus ram = this.cpu.ram;
+		int address = this.cpu.r[0];
+		int first = Math.min(length, 0x10000 - address);
+
+		ram.setBytes(address, data, offset, first);
+		if (first < length)
+			ram.setBytes(0, data, offset + first, length - first);
+
+		return this.transferred(length);
+	}
+
+	// DMA-out of length bytes into data from offset. Returns the cycles
+	// it took.
+	public int out(byte[] data, int offset, int length) {
+		MemoryBus ram = this.cpu.ram;
+		int address = this.cpu.r[0];
+		int first = Math.min(length, 0x10000 - address);
+
+		ram.getBytes(address, data, offset, first);
+		if (first < length)
+			ram.getBytes(0, data, offset + first, length - first);
+
+		return this.transferred(length);
+	}
+
+	// DMA-in of data from any thread. data must not change afterwards.
+	public void post(byte[] data) {
+		this.posted.offer(data);
+		this.cpu.requestDma();
+
+		Thread waiter = this.waiter;
+		if (waiter != null)
+			LockSupport.unpark(waiter);
+	}
+
+	// Moves the posted bytes in, on the thread of the Cpu.
+	void drain() {
+		byte[] data;
+		while ((data = this.posted.poll()) != null) {
+			int address = this.cpu.r[0];
+			this.in(data, 0, data.length);
+			if (this.listener != null && data.length > 0)
+				this.listener.bytesIn(address, data.length);
+		}
+	}
+
+	private int transferred(int length) {
+		Cpu cpu = this.cpu;
+		cpu.r[0] = (cpu.r[0] + length) & 0xFFFF;
+		if (length > 0)
+			cpu.idle = false;
+
+		if (this.instant)
+			return 0;
+
+		cpu.cycles += length;
+		this.stolenCycles += length;
+		return length;
+	}
+}
@@ -0,0 +1,9 @@
+package com.akeysoft.elf.core;
+
+public interface DmaListener {
+
+	// Called on the thread of the Cpu after length posted bytes have gone
+	// in at beginAddress.
+	void bytesIn(int beginAddress, int length);
+
+}
@@ -0,0 +1,19 @@
+package com.akeysoft.elf.core;
+
+// An execution strategy for a Cpu. The machine state and the caches built
+// from memory all live in the Cpu, so the engine of a running Cpu can be
+// replaced between two steps without losing anything, see Cpu.setEngine.
+//
+// An engine works on the state through CpuState only, and leaves any
+// instruction it does not run itself, e.g. the I/O ones, to
+// CpuState.step(). The built-in engines, see Cpu.getDispatchEngine, need
+// the Cpu itself.
+public interface Engine {
+
+	String getName();
+
+	// Runs at least one instruction, and none that would start with the
+	// cycle counter past cycleLimit. May return early, e.g. when the Cpu
+	// goes idle.
+	void step(CpuState state, long cycleLimit) throws UnknownOpcodeException;
+}
@@ -0,0 +1,69 @@
+package com.akeysoft.elf.core;
+
+// The sequences of a delay loop, which DISPATCH_FUSED runs as one step
+// and fast-forwards. Other sequences were tried, e.g. loading a register
+// with LDI / PHI / LDI / PLO, but save less than the interpreter loop
+// they interrupt costs.
+//
+// A fused entry has the layout of an Opcode entry, with one of the
+// patterns below in place of the handler, the register the sequence works
+// on as n, and the length and cycles of the whole sequence.
+final class Fusion {
+
+	// GLO r, BNZ a
+	static final int GLO_BNZ = 0;
+	// DEC r, GHI r, BNZ a
+	static final int DEC_GHI_BNZ = 1;
+
+	static final int PATTERNS = 2;
+
+	static final String[] NAMES = {
+		"GLO r / BNZ a",
+		"DEC r / GHI r / BNZ a"
+	};
+
+	// Entry of an address where no sequence starts. Like Opcode entries it
+	// is never 0.
+	static final int NONE = 0xFF;
+
+	// DEC_GHI_BNZ is the longest sequence.
+	static final int MAX_LENGTH = 4;
+
+	private Fusion() {
+	}
+
+	// Returns the fused entry for the sequence starting at address, or
+	// NONE. The branch address goes into operands[address].
+	static int fuse(MemoryBus ram, int address, int[] operands) {
+		int first = at(ram, address);
+		int second = at(ram, address + 1);
+		int n = Opcode.n(first);
+
+		switch (Opcode.handler(first)) {
+		case Opcode.GLO:
+			if (Opcode.handler(second) == Opcode.BNZ) {
+				operands[address] = ram.getUnsignedByte((address + 2) & 0xFFFF);
+				return entry(GLO_BNZ, n, 3, 4);
+			}
+			break;
+
+		case Opcode.DEC:
+			if (second == Opcode.TABLE[0x90 | n] &&
+					Opcode.handler(at(ram, address + 2)) == Opcode.BNZ) {
+				operands[address] = ram.getUnsignedByte((address + 3) & 0xFFFF);
+				return entry(DEC_GHI_BNZ, n, 4, 6);
+			}
+			break;
+		}
+
+		return NONE;
+	}
+
+	private static int at(MemoryBus ram, int address) {
+		return Opcode.TABLE[ram.getUnsignedByte(address & 0xFFFF)];
+	}
+
+	private static int entry(int pattern, int n, int length, int cycles) {
+		return pattern | (n << 8) | (length << 16) | (cycles << 20);
+	}
+}
@@ -0,0 +1,120 @@
+package com.akeysoft.elf.core;
+
+import java.io.File;
+import java.io.IOException;
+
+// Runs a .cos image without a user interface and without pacing, on a
+// VirtualClock so that runs are reproducible, and reports the engine it
+// ran on and how fast it went.
+//
+// With "all" for the memory, runs the image on each MemoryBus in turn,
+// twice over, so that the second round goes by code the JIT has already
+// compiled; a benchmark of the memories under the same program.
+//
+// Usage: Headless image.cos [cycles [engine [memory | all]]]
+public class Headless {
+
+	public static final long DEFAULT_CYCLES = 100000000L;
+
+	private static final String[] MEMORIES = { "ram", "map", "stock", "sparse", "direct" };
+	private static final int ROUNDS = 2;
+
+	public static void main(String[] args) throws IOException, UnknownOpcodeException {
+		if (args.length < 1) {
+			System.err.println("Usage: Headless image.cos [cycles [engine [memory | all]]]");
+			System.exit(1);
+		}
+
+		byte[] image = CosTranslator.read(new File(args[0]));
+		long cycles = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_CYCLES;
+
+		Engine engine = null;
+		if (args.length > 2) {
+			engine = findEngine(args[2]);
+			if (engine == null) {
+				System.err.println("Unknown engine: " + args[2]);
+				System.exit(1);
+			}
+		}
+
+		String memory = args.length > 3 ? args[3] : "ram";
+		if (memory.equals("all")) {
+			for (int round = 1; round <= ROUNDS; round ++) {
+				for (int i = 0; i < MEMORIES.length; i ++) {
+					System.out.println("round " + round + ", " + MEMORIES[i] + ": " +
+							run(image, cycles, engine, createMemory(MEMORIES[i])));
+				}
+			}
+			return;
+		}
+
+		MemoryBus ram = createMemory(memory);
+		if (ram == null) {
+			System.err.println("Unknown memory: " + memory);
+			System.exit(1);
+		}
+		System.out.println(run(image, cycles, engine, ram));
+	}
+
+	// Runs image in ram for cycles on engine, or the default one if null,
+	// and returns the report.
+	private static String run(byte[] image, long cycles, Engine engine, MemoryBus ram)
+			throws UnknownOpcodeException {
+		ram.setBytes(0, image);
+		Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		if (engine != null)
+			cpu.setEngine(engine);
+
+		cpu.setPacing(false);
+		cpu.setClock(new VirtualClock(cpu));
+		cpu.setStopAfterCycles(cycles);
+
+		long start = System.currentTimeMillis();
+		cpu.run();
+		long elapsed = System.currentTimeMillis() - start;
+
+		return cpu.getEngine().getName() + ": " + cpu.getCycles() + " cycles in " +
+				elapsed + " ms, " + cpu.getCyclesPerSecond() / 1000000L + "M cycles/s" +
+				(cpu.isIdle() ? ", idle" : "");
+	}
+
+	// A built-in engine, or "profiling".
+	public static Engine findEngine(String name) {
+		for (int i = 0; i < Cpu.DISPATCH_MODES; i ++) {
+			Engine engine = Cpu.getDispatchEngine(i);
+			if (engine.getName().equals(name))
+				return engine;
+		}
+
+		if (name.equals("profiling"))
+			return new ProfilingEngine();
+
+		return null;
+	}
+
+	// "ram", 64 KB in one array; "map", 64 KB of RAM pages in a
+	// MemoryMap; "stock", one page of RAM mirrored as in a stock ELF II;
+	// "sparse", 64 KB allocated a page at a time; "direct", 64 KB in a
+	// direct ByteBuffer.
+	public static MemoryBus createMemory(String name) {
+		if (name.equals("ram"))
+			return new Ram(0x10000);
+
+		if (name.equals("map")) {
+			MemoryMap map = new MemoryMap();
+			map.mapRam(0, MemoryMap.PAGES);
+			return map;
+		}
+
+		if (name.equals("stock"))
+			return MemoryMap.stockElf2();
+
+		if (name.equals("sparse"))
+			return new SparseRam(0x10000);
+
+		if (name.equals("direct"))
+			return BufferRam.allocateDirect(0x10000);
+
+		return null;
+	}
+}
@@ -1,14 +1,41 @@
 package com.akeysoft.elf.core;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
 public class InputDevice {
 
 	private byte[] ports;
+	
+	// Bumped whenever a port or an EF line is set, and the thread of a
+	// Cpu parked in an input-wait loop, if any. Any thread may set them,
+	// so the count goes up atomically: a lost bump could leave the Cpu
+	// parked after the change it waits for.
+	private static final AtomicIntegerFieldUpdater<InputDevice> CHANGES =
+		AtomicIntegerFieldUpdater.newUpdater(InputDevice.class, "changes");
+	volatile int changes;
+	volatile Thread waiter;
+	
 	public InputDevice() {
 		this.ports = new byte[7];
+		this.changes = 0;
+		this.waiter = null;
 	}
 	
 	public void setPort(int index, byte value) {
 		this.ports[index] = value;
+		this.changed();
+	}
+	
+	void changed() {
+		CHANGES.incrementAndGet(this);
+		this.wake();
+	}
+	
+	void wake() {
+		Thread waiter = this.waiter;
+		if (waiter != null)
+			LockSupport.unpark(waiter);
 	}
 	
 	public byte getPort(int index) {
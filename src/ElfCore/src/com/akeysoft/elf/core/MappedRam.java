@@ -0,0 +1,112 @@
+package com.akeysoft.elf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+// A BufferRam mapped from a file, so memory outlives the program: open
+// the same file again and it is as it was left. Other programs that map
+// the file see the bytes as they are written and may change them; the
+// Cpu sees such changes to code it has decoded only after changed().
+//
+// Writes never wait for the disk. A thread of its own forces the mapping
+// out every FLUSH_MILLIS while anything has been written since the last
+// time; the system writes back only the pages that are dirty.
+public final class MappedRam extends BufferRam {
+
+	public static final long FLUSH_MILLIS = 1000;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer mapped;
+	private final Thread flusher;
+	private RamListener next;
+	private volatile boolean dirty;
+	private volatile boolean closed;
+
+	private MappedRam(RandomAccessFile file, MappedByteBuffer mapped) {
+		super(mapped);
+		this.file = file;
+		this.mapped = mapped;
+		this.next = null;
+		this.dirty = false;
+		this.closed = false;
+
+		// Sees every write first, then hands it on.
+		super.setRamListener(new RamListener() {
+			public void bytesWritten(int beginAddress, int length) {
+				if (!dirty)
+					dirty = true;
+				if (next != null)
+					next.bytesWritten(beginAddress, length);
+			}
+		});
+
+		this.flusher = new Thread(new Runnable() {
+			public void run() {
+				flushLoop();
+			}
+		}, "Elf RAM flush");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	// Maps size bytes of file, made longer with zeros if it is shorter.
+	public static MappedRam open(File file, int size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < size)
+				raf.setLength(size);
+			MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			return new MappedRam(raf, mapped);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public void setRamListener(RamListener listener) {
+		this.next = listener;
+	}
+
+	// Tells the Cpu that length bytes from beginAddress were changed
+	// behind its back, through the file or getBuffer().
+	public void changed(int beginAddress, int length) {
+		this.listener.bytesWritten(beginAddress, length);
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	// Writes the memory out now, on the calling thread.
+	public void flush() {
+		this.dirty = false;
+		this.mapped.force();
+	}
+
+	// Flushes for the last time and closes the file. The mapping stays
+	// readable until it is collected, but is no longer written out.
+	public void close() throws IOException {
+		this.closed = true;
+		LockSupport.unpark(this.flusher);
+		try {
+			this.flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		this.flush();
+		this.file.close();
+	}
+
+	private void flushLoop() {
+		while (!this.closed) {
+			LockSupport.parkNanos(FLUSH_MILLIS * 1000000L);
+			if (this.dirty && !this.closed)
+				this.flush();
+		}
+	}
+}
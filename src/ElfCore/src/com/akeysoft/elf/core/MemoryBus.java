@@ -0,0 +1,86 @@
+package com.akeysoft.elf.core;
+
+// What the Cpu, its caches and Dma read and write memory through. Ram is
+// the plain backend, one byte array; others may page, map or watch the
+// memory behind the same calls.
+//
+// The Cpu keeps its bus in a single field and never wraps it, so as long
+// as a program runs with one backend every call site sees one class and
+// HotSpot inlines the access: with Ram, down to the array load or store.
+//
+// Writes are dropped while MP (memory protect) is on, and every write
+// that changes memory is reported to the RamListener. The bulk methods
+// work a byte at a time here; backends override them to do better.
+public abstract class MemoryBus {
+
+	boolean mp;
+
+	RamListener listener;
+
+	protected MemoryBus() {
+		this.mp = false;
+		this.listener = null;
+	}
+
+	public void setRamListener(RamListener listener) {
+		this.listener = listener;
+	}
+
+	public void setMp(boolean mp) {
+		this.mp = mp;
+	}
+
+	public boolean isMp() {
+		return this.mp;
+	}
+
+	public abstract int getSize();
+
+	public abstract byte getByte(int address);
+
+	public abstract int getUnsignedByte(int address);
+
+	public abstract void setByte(int address, byte value);
+
+	// The 256-byte pages that show the same bytes as page, in order and
+	// page included, or null if page is seen only at itself. A write is
+	// reported once, at the first of them; listeners that care where else
+	// the bytes are seen look here. The array must not be changed.
+	public int[] getAliases(int page) {
+		return null;
+	}
+
+	public void setBytes(int beginAddress, byte[] values) {
+		this.setBytes(beginAddress, values, 0, values.length);
+	}
+
+	// Writes length bytes of values from offset, as far as the memory goes.
+	public void setBytes(int beginAddress, byte[] values, int offset, int length) {
+		int len = Math.min(length, this.getSize() - beginAddress);
+		for (int i = 0; i < len; i ++) {
+			this.setByte(beginAddress + i, values[offset + i]);
+		}
+	}
+
+	// Reads length bytes from beginAddress into values from offset.
+	public void getBytes(int beginAddress, byte[] values, int offset, int length) {
+		for (int i = 0; i < length; i ++) {
+			values[offset + i] = this.getByte(beginAddress + i);
+		}
+	}
+
+	// Like setByte on length bytes from address, one after the other.
+	public void fill(int address, int length, byte value) {
+		for (int i = 0; i < length; i ++) {
+			this.setByte(address + i, value);
+		}
+	}
+
+	// Like setByte(to + i, getByte(from + i)) for i from 0 up to length,
+	// so where to is just above from the bytes repeat.
+	public void copy(int from, int to, int length) {
+		for (int i = 0; i < length; i ++) {
+			this.setByte(to + i, this.getByte(from + i));
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.akeysoft.elf.core;
+
+// Memory-mapped I/O behind the device pages of a MemoryMap. address is
+// the full 16-bit address the Cpu used.
+public interface MemoryDevice {
+
+	int read(int address);
+
+	void write(int address, byte value);
+
+}
@@ -0,0 +1,278 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+
+// A MemoryBus made of 256 pages of 256 bytes, each of them RAM, ROM, a
+// mirror of other pages, a MemoryDevice or nothing. Only what is mapped
+// takes memory: a stock ELF II is one page of RAM seen at every page.
+//
+// RAM and ROM pages are byte arrays the accessors index directly, so
+// reads of either and writes to RAM are an array access and a check for
+// null. Devices and unmapped pages, which read as FF, take the slow path.
+// MP protects the RAM pages only.
+//
+// A write to a page is reported to the RamListener once, at the first
+// page that shows the same bytes; getAliases gives the others. The Cpu's
+// caches do not see devices change, so code must not run from device
+// pages.
+public final class MemoryMap extends MemoryBus {
+
+	public static final int PAGE_SIZE = 0x100;
+	public static final int PAGES = 0x100;
+
+	// Page kinds.
+	public static final int UNMAPPED = 0;
+	public static final int RAM = 1;
+	public static final int ROM = 2;
+	public static final int DEVICE = 3;
+
+	// Backing arrays for reads, RAM and ROM, and for writes, RAM only;
+	// mirrors share the array of the page they mirror.
+	private final byte[][] readPages;
+	private final byte[][] writePages;
+	private final MemoryDevice[] devices;
+	private final int[] kinds;
+	// The pages seen through the same array as each RAM page, itself
+	// included.
+	private final int[][] aliases;
+
+	public MemoryMap() {
+		this.readPages = new byte[PAGES][];
+		this.writePages = new byte[PAGES][];
+		this.devices = new MemoryDevice[PAGES];
+		this.kinds = new int[PAGES];
+		this.aliases = new int[PAGES][];
+	}
+
+	// One page of RAM at 0000, mirrored across the address space.
+	public static MemoryMap stockElf2() {
+		MemoryMap map = new MemoryMap();
+		map.mapRam(0, 1);
+		map.mirror(1, PAGES - 1, 0, 1);
+		return map;
+	}
+
+	public void mapRam(int firstPage, int count) {
+		for (int i = 0; i < count; i ++) {
+			this.set(firstPage + i, RAM, new byte[PAGE_SIZE], null);
+		}
+		this.remapped(firstPage, count);
+	}
+
+	// image is cut or padded with zeros to whole pages.
+	public void mapRom(int firstPage, byte[] image) {
+		int count = (image.length + PAGE_SIZE - 1) / PAGE_SIZE;
+		for (int i = 0; i < count; i ++) {
+			byte[] page = new byte[PAGE_SIZE];
+			int length = Math.min(PAGE_SIZE, image.length - i * PAGE_SIZE);
+			System.arraycopy(image, i * PAGE_SIZE, page, 0, length);
+			this.set(firstPage + i, ROM, page, null);
+		}
+		this.remapped(firstPage, count);
+	}
+
+	// Shows sourceCount pages from sourcePage again and again over count
+	// pages from firstPage.
+	public void mirror(int firstPage, int count, int sourcePage, int sourceCount) {
+		for (int i = 0; i < count; i ++) {
+			int source = sourcePage + i % sourceCount;
+			this.set(firstPage + i, this.kinds[source], this.readPages[source], this.devices[source]);
+		}
+		this.remapped(firstPage, count);
+	}
+
+	public void mapDevice(int firstPage, int count, MemoryDevice device) {
+		for (int i = 0; i < count; i ++) {
+			this.set(firstPage + i, DEVICE, null, device);
+		}
+		this.remapped(firstPage, count);
+	}
+
+	public void unmap(int firstPage, int count) {
+		for (int i = 0; i < count; i ++) {
+			this.set(firstPage + i, UNMAPPED, null, null);
+		}
+		this.remapped(firstPage, count);
+	}
+
+	public int[] getAliases(int page) {
+		int[] aliases = this.aliases[page];
+		return (aliases == null || aliases.length == 1) ? null : aliases;
+	}
+
+	public int getKind(int page) {
+		return this.kinds[page];
+	}
+
+	// Bytes of RAM and ROM behind the map, mirrors counted once.
+	public int getMappedBytes() {
+		int bytes = 0;
+		for (int page = 0; page < PAGES; page ++) {
+			if (this.readPages[page] != null && this.firstAlias(page) == page)
+				bytes += PAGE_SIZE;
+		}
+		return bytes;
+	}
+
+	private void set(int page, int kind, byte[] memory, MemoryDevice device) {
+		this.kinds[page] = kind;
+		this.readPages[page] = memory;
+		this.writePages[page] = (kind == RAM) ? memory : null;
+		this.devices[page] = device;
+	}
+
+	private int firstAlias(int page) {
+		for (int i = 0; i < PAGES; i ++) {
+			if (this.readPages[i] == this.readPages[page])
+				return i;
+		}
+		return page;
+	}
+
+	// Finds the aliases again and tells the listener that the pages have
+	// changed. Pages that show the same bytes share one alias array.
+	private void remapped(int firstPage, int count) {
+		int[] pages = new int[PAGES];
+		for (int page = 0; page < PAGES; page ++) {
+			if (this.writePages[page] == null) {
+				this.aliases[page] = null;
+				continue;
+			}
+
+			int first = 0;
+			while (this.writePages[first] != this.writePages[page])
+				first ++;
+			if (first < page) {
+				this.aliases[page] = this.aliases[first];
+				continue;
+			}
+
+			int length = 0;
+			for (int i = 0; i < PAGES; i ++) {
+				if (this.writePages[i] == this.writePages[page])
+					pages[length ++] = i;
+			}
+			this.aliases[page] = new int[length];
+			System.arraycopy(pages, 0, this.aliases[page], 0, length);
+		}
+
+		if (this.listener != null)
+			this.listener.bytesWritten(firstPage * PAGE_SIZE, count * PAGE_SIZE);
+	}
+
+	public int getSize() {
+		return PAGES * PAGE_SIZE;
+	}
+
+	public byte getByte(int address) {
+		byte[] page = this.readPages[address >> 8];
+		if (page != null)
+			return page[address & 0xFF];
+
+		return (byte) this.read(address);
+	}
+
+	public int getUnsignedByte(int address) {
+		byte[] page = this.readPages[address >> 8];
+		if (page != null)
+			return page[address & 0xFF] & 0xFF;
+
+		return this.read(address) & 0xFF;
+	}
+
+	public void setByte(int address, byte value) {
+		byte[] page = this.writePages[address >> 8];
+		if (page == null) {
+			this.write(address, value);
+			return;
+		}
+
+		if (this.mp) return;
+		int offset = address & 0xFF;
+		if (page[offset] == value) return;
+
+		page[offset] = value;
+		this.written(address >> 8, offset, 1);
+	}
+
+	public void setBytes(int beginAddress, byte[] values, int offset, int length) {
+		int end = Math.min(beginAddress + length, this.getSize());
+		while (beginAddress < end) {
+			int index = beginAddress >> 8;
+			int first = beginAddress & 0xFF;
+			int count = Math.min(end - beginAddress, PAGE_SIZE - first);
+			byte[] page = this.writePages[index];
+
+			if (page == null) {
+				for (int i = 0; i < count; i ++) {
+					this.write(beginAddress + i, values[offset + i]);
+				}
+			} else if (!this.mp) {
+				System.arraycopy(values, offset, page, first, count);
+				this.written(index, first, count);
+			}
+
+			beginAddress += count;
+			offset += count;
+		}
+	}
+
+	public void getBytes(int beginAddress, byte[] values, int offset, int length) {
+		int end = beginAddress + length;
+		while (beginAddress < end) {
+			int first = beginAddress & 0xFF;
+			int count = Math.min(end - beginAddress, PAGE_SIZE - first);
+			byte[] page = this.readPages[beginAddress >> 8];
+
+			if (page == null) {
+				for (int i = 0; i < count; i ++) {
+					values[offset + i] = (byte) this.read(beginAddress + i);
+				}
+			} else {
+				System.arraycopy(page, first, values, offset, count);
+			}
+
+			beginAddress += count;
+			offset += count;
+		}
+	}
+
+	public void fill(int address, int length, byte value) {
+		int end = address + length;
+		while (address < end) {
+			int index = address >> 8;
+			int first = address & 0xFF;
+			int count = Math.min(end - address, PAGE_SIZE - first);
+			byte[] page = this.writePages[index];
+
+			if (page == null) {
+				for (int i = 0; i < count; i ++) {
+					this.write(address + i, value);
+				}
+			} else if (!this.mp) {
+				Arrays.fill(page, first, first + count, value);
+				this.written(index, first, count);
+			}
+
+			address += count;
+		}
+	}
+
+	private int read(int address) {
+		MemoryDevice device = this.devices[address >> 8];
+		return (device == null) ? 0xFF : device.read(address);
+	}
+
+	private void write(int address, byte value) {
+		MemoryDevice device = this.devices[address >> 8];
+		if (device != null)
+			device.write(address, value);
+	}
+
+	private void written(int page, int offset, int length) {
+		if (this.listener == null)
+			return;
+
+		this.listener.bytesWritten(this.aliases[page][0] * PAGE_SIZE + offset, length);
+	}
+}
@@ -0,0 +1,295 @@
+package com.akeysoft.elf.core;
+
+// Decode table for the 256 opcode bytes.
+//
+// Each entry packs everything the dispatcher would otherwise work out
+// from the opcode byte on every step:
+//
+//   bits  0- 7  handler, one of the constants below
+//   bits  8-15  n: register, port or EF index (the opcode itself for
+//               UNKNOWN)
+//   bits 16-19  length of the instruction in bytes
+//   bits 20-23  cost in machine cycles
+//   bit  26     USES_N: works on R(n)
+//   bit  27     USES_X: works on R(X)
+//   bit  28     NEEDS_CPU: has to run with the machine state in the Cpu
+//               fields: I/O, IDL, MARK and unknown opcodes
+//
+// The handlers are dense small integers so that a switch over them
+// compiles to a jump table.
+final class Opcode {
+
+	// Handlers.
+	static final int IDL = 0;
+	static final int LDN = 1;
+	static final int INC = 2;
+	static final int DEC = 3;
+	static final int BR = 4;
+	static final int BQ = 5;
+	static final int BZ = 6;
+	static final int BDF = 7;
+	static final int B = 8;
+	static final int SKP = 9;
+	static final int BNQ = 10;
+	static final int BNZ = 11;
+	static final int BNF = 12;
+	static final int BN = 13;
+	static final int LDA = 14;
+	static final int STR = 15;
+	static final int IRX = 16;
+	static final int OUT = 17;
+	static final int INP = 18;
+	static final int RET = 19;
+	static final int DIS = 20;
+	static final int LDXA = 21;
+	static final int STXD = 22;
+	static final int ADC = 23;
+	static final int SDB = 24;
+	static final int SHRC = 25;
+	static final int SMB = 26;
+	static final int SAV = 27;
+	static final int MARK = 28;
+	static final int REQ = 29;
+	static final int SEQ = 30;
+	static final int ADCI = 31;
+	static final int SDBI = 32;
+	static final int SHLC = 33;
+	static final int SMBI = 34;
+	static final int GLO = 35;
+	static final int GHI = 36;
+	static final int PLO = 37;
+	static final int PHI = 38;
+	static final int LBR = 39;
+	static final int LBQ = 40;
+	static final int LBZ = 41;
+	static final int LBDF = 42;
+	static final int NOP = 43;
+	static final int LSNQ = 44;
+	static final int LSNZ = 45;
+	static final int LSNF = 46;
+	static final int LSKP = 47;
+	static final int LBNQ = 48;
+	static final int LBNZ = 49;
+	static final int LBNF = 50;
+	static final int LSIE = 51;
+	static final int LSQ = 52;
+	static final int LSZ = 53;
+	static final int LSDF = 54;
+	static final int SEP = 55;
+	static final int SEX = 56;
+	static final int LDX = 57;
+	static final int OR = 58;
+	static final int AND = 59;
+	static final int XOR = 60;
+	static final int ADD = 61;
+	static final int SD = 62;
+	static final int SHR = 63;
+	static final int SM = 64;
+	static final int LDI = 65;
+	static final int ORI = 66;
+	static final int ANI = 67;
+	static final int XRI = 68;
+	static final int ADI = 69;
+	static final int SDI = 70;
+	static final int SHL = 71;
+	static final int SMI = 72;
+	static final int UNKNOWN = 73;
+
+	// Flags. Bits 24 and 25 are left to Trace.
+	static final int USES_N = 1 << 26;
+	static final int USES_X = 1 << 27;
+	static final int NEEDS_CPU = 1 << 28;
+	// Set by DecodeCache, together with NEEDS_CPU, on the first
+	// instruction of a BulkLoop.
+	static final int LOOP_HEAD = 1 << 29;
+
+	// Indexed by the unsigned opcode byte.
+	static final int[] TABLE = new int[256];
+
+	private static final int[] ROW_3 = {
+		BR, BQ, BZ, BDF, B, B, B, B, SKP, BNQ, BNZ, BNF, BN, BN, BN, BN
+	};
+
+	private static final int[] ROW_7 = {
+		RET, DIS, LDXA, STXD, ADC, SDB, SHRC, SMB,
+		SAV, MARK, REQ, SEQ, ADCI, SDBI, SHLC, SMBI
+	};
+
+	private static final int[] ROW_C = {
+		LBR, LBQ, LBZ, LBDF, NOP, LSNQ, LSNZ, LSNF,
+		LSKP, LBNQ, LBNZ, LBNF, LSIE, LSQ, LSZ, LSDF
+	};
+
+	private static final int[] ROW_F = {
+		LDX, OR, AND, XOR, ADD, SD, SHR, SM,
+		LDI, ORI, ANI, XRI, ADI, SDI, SHL, SMI
+	};
+
+	static {
+		for (int code = 0; code < TABLE.length; code ++) {
+			TABLE[code] = decode(code);
+		}
+	}
+
+	private Opcode() {
+	}
+
+	static int handler(int entry) {
+		return entry & 0xFF;
+	}
+
+	static int n(int entry) {
+		return (entry >> 8) & 0xFF;
+	}
+
+	static int length(int entry) {
+		return (entry >> 16) & 0x0F;
+	}
+
+	static int cycles(int entry) {
+		return (entry >> 20) & 0x0F;
+	}
+
+	// Reads the operand of the instruction at address: the immediate
+	// byte, or the branch address for short and long branches.
+	static int operand(MemoryBus ram, int address, int entry) {
+		switch (length(entry)) {
+		case 2:
+			return ram.getUnsignedByte((address + 1) & 0xFFFF);
+		case 3:
+			return ram.getUnsignedByte((address + 1) & 0xFFFF) * 0x100 +
+				ram.getUnsignedByte((address + 2) & 0xFFFF);
+		default:
+			return 0;
+		}
+	}
+
+	private static int decode(int code) {
+		int hi = code >> 4;
+		int lo = code & 0x0F;
+
+		int handler;
+		int n = lo;
+
+		switch (hi) {
+		case 0x0:
+			handler = (lo == 0) ? IDL : LDN;
+			break;
+		case 0x1:
+			handler = INC;
+			break;
+		case 0x2:
+			handler = DEC;
+			break;
+		case 0x3:
+			handler = ROW_3[lo];
+			n = lo & 0x03;
+			break;
+		case 0x4:
+			handler = LDA;
+			break;
+		case 0x5:
+			handler = STR;
+			break;
+		case 0x6:
+			if (lo == 0x0) {
+				handler = IRX;
+			} else if (lo < 0x8) {
+				handler = OUT;
+				n = lo - 0x1;
+			} else if (lo > 0x8) {
+				handler = INP;
+				n = lo - 0x9;
+			} else {
+				handler = UNKNOWN;
+				n = code;
+			}
+			break;
+		case 0x7:
+			handler = ROW_7[lo];
+			break;
+		case 0x8:
+			handler = GLO;
+			break;
+		case 0x9:
+			handler = GHI;
+			break;
+		case 0xA:
+			handler = PLO;
+			break;
+		case 0xB:
+			handler = PHI;
+			break;
+		case 0xC:
+			handler = ROW_C[lo];
+			break;
+		case 0xD:
+			handler = SEP;
+			break;
+		case 0xE:
+			handler = SEX;
+			break;
+		default:
+			handler = ROW_F[lo];
+			break;
+		}
+
+		// Short branches and immediates carry one operand byte, long
+		// branches two. Skips do not count the bytes they skip.
+		int length = 1;
+		if (handler == LBR || handler == LBQ || handler == LBZ || handler == LBDF ||
+				handler == LBNQ || handler == LBNZ || handler == LBNF) {
+			length = 3;
+		} else if ((hi == 0x3 && handler != SKP) ||
+				(hi == 0x7 && lo >= 0xC && handler != SHLC) ||
+				(hi == 0xF && lo >= 0x8 && handler != SHL)) {
+			length = 2;
+		}
+
+		// All long branches and skips, and NOP, take three machine cycles.
+		int cycles = (hi == 0xC) ? 3 : 2;
+
+		return handler | (n << 8) | (length << 16) | (cycles << 20) | flags(handler);
+	}
+
+	private static int flags(int handler) {
+		switch (handler) {
+		case LDN:
+		case INC:
+		case DEC:
+		case LDA:
+		case STR:
+		case GLO:
+		case GHI:
+		case PLO:
+		case PHI:
+			return USES_N;
+
+		case IRX:
+		case LDXA:
+		case STXD:
+		case ADC:
+		case SDB:
+		case SMB:
+		case SAV:
+		case LDX:
+		case OR:
+		case AND:
+		case XOR:
+		case ADD:
+		case SD:
+		case SM:
+			return USES_X;
+
+		case IDL:
+		case OUT:
+		case INP:
+		case MARK:
+		case UNKNOWN:
+			return NEEDS_CPU;
+
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.akeysoft.elf.core;
+
+// Holds run() back to a given number of cycles per second of a Clock. Every
+// check waits for the time the cycle count is due at, measured from when
+// pacing started, so sleeping a little long once does not add up.
+final class Pacer {
+
+	// How often run() checks in.
+	private static final long CHECK_NS = 1000000L;
+
+	// Further behind than this, e.g. after the host was busy, the pacer
+	// starts over from where it is rather than run flat out to catch up.
+	private static final long MAX_LAG_NS = 50000000L;
+
+	private Clock clock;
+	private double nsPerCycle;
+	private long startNs;
+	private long startCycles;
+
+	// Cycles between two checks.
+	long getCheckCycles() {
+		return Math.max(1L, (long) (CHECK_NS / this.nsPerCycle));
+	}
+
+	void start(Clock clock, long cycles, double cyclesPerSecond) {
+		this.clock = clock;
+		this.nsPerCycle = 1000000000.0 / cyclesPerSecond;
+		this.startNs = clock.nanoTime();
+		this.startCycles = cycles;
+	}
+
+	// The time cycles are due at.
+	long timeOf(long cycles) {
+		return this.startNs + (long) ((cycles - this.startCycles) * this.nsPerCycle);
+	}
+
+	// The cycle count due at time.
+	long cyclesAt(long time) {
+		return this.startCycles + (long) ((time - this.startNs) / this.nsPerCycle);
+	}
+
+	// Waits until cycles are due, and returns the cycle count to check in
+	// at next.
+	long pace(long cycles) {
+		long target = this.timeOf(cycles);
+		long now = this.clock.nanoTime();
+
+		if (now - target > MAX_LAG_NS) {
+			this.startNs = now;
+			this.startCycles = cycles;
+		} else {
+			this.clock.waitUntil(target);
+		}
+
+		return cycles + this.getCheckCycles();
+	}
+}
@@ -0,0 +1,33 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+
+// Single steps through the Cpu's dispatch mode and counts how often each
+// opcode runs. Slow; meant to be switched to while looking into a
+// program, and away from again afterwards.
+public class ProfilingEngine implements Engine {
+
+	private long[] counts;
+
+	public ProfilingEngine() {
+		this.counts = new long[256];
+	}
+
+	public String getName() {
+		return "profiling";
+	}
+
+	public void step(CpuState state, long cycleLimit) throws UnknownOpcodeException {
+		this.counts[state.getRam().getUnsignedByte(state.getR(state.getP()))] ++;
+		state.step();
+	}
+
+	// Times each opcode has run, by opcode byte.
+	public long[] getCounts() {
+		return this.counts.clone();
+	}
+
+	public void reset() {
+		Arrays.fill(this.counts, 0L);
+	}
+}
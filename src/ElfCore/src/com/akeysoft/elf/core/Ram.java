@@ -1,46 +1,97 @@
 package com.akeysoft.elf.core;
 
-public class Ram {
+import java.util.Arrays;
+
+// The plain MemoryBus: one byte array, every access straight to it.
+public class Ram extends MemoryBus {
 
 	private byte[] memory;
 	
-	private boolean mp;
-	
 	public Ram(int size) {
-		mp = false;
-		
 		this.memory = new byte[size];
 	}
 	
-	public void setMp(boolean mp) {
-		this.mp = mp;
+	public final void setByte(int address, byte value) {
+		if (this.mp) return;
+		if (this.memory[address] == value) return;
+		
+		this.memory[address] = value;
+		
+		if (this.listener != null) {
+			this.listener.bytesWritten(address, 1);
+		}
 	}
 	
-	public boolean isMp() {
-		return this.mp;
+	// Writes length bytes of values from offset, as far as the memory goes.
+	public void setBytes(int beginAddress, byte[] values, int offset, int length) {
+		if (this.mp) return;
+		
+		int len = memory.length - beginAddress > length ? length : memory.length - beginAddress;
+		if (len <= 0) return;
+		
+		System.arraycopy(values, offset, this.memory, beginAddress, len);
+		
+		if (this.listener != null) {
+			this.listener.bytesWritten(beginAddress, len);
+		}
 	}
 	
-	public void setByte(int address, byte value) {
+	// Reads length bytes from beginAddress into values from offset.
+	public void getBytes(int beginAddress, byte[] values, int offset, int length) {
+		System.arraycopy(this.memory, beginAddress, values, offset, length);
+	}
+
+	// Like setByte on length bytes from address, one after the other.
+	public void fill(int address, int length, byte value) {
 		if (this.mp) return;
 		
-		this.memory[address] = value;
+		int first = address;
+		int end = address + length;
+		while (first < end && this.memory[first] == value) {
+			first ++;
+		}
+		if (first == end) return;
+		
+		Arrays.fill(this.memory, first, end, value);
+		
+		if (this.listener != null) {
+			this.listener.bytesWritten(first, end - first);
+		}
 	}
 	
-	public void setBytes(int beginAddress, byte[] values) {
+	// Like setByte(to + i, getByte(from + i)) for i from 0 up to length,
+	// so where to is just above from the bytes repeat.
+	public void copy(int from, int to, int length) {
 		if (this.mp) return;
 		
-		int len = memory.length - beginAddress > values.length ? values.length : memory.length - beginAddress;
+		int first = 0;
+		while (first < length && this.memory[to + first] == this.memory[from + first]) {
+			first ++;
+		}
+		if (first == length) return;
 		
-		for (int i = 0; i < len; i ++) {
-			this.memory[beginAddress + i] = values[i];
+		if (to > from && to < from + length) {
+			for (int i = first; i < length; i ++) {
+				this.memory[to + i] = this.memory[from + i];
+			}
+		} else {
+			System.arraycopy(this.memory, from + first, this.memory, to + first, length - first);
+		}
+		
+		if (this.listener != null) {
+			this.listener.bytesWritten(to + first, length - first);
 		}
 	}
-
-	public byte getByte(int address) {
+	
+	public final int getSize() {
+		return this.memory.length;
+	}
+	
+	public final byte getByte(int address) {
 		return this.memory[address];
 	}
 	
-	public int getUnsignedByte(int address) {
+	public final int getUnsignedByte(int address) {
 		return ((int) this.memory[address]) & 0x00FF;
 	}
 }
@@ -0,0 +1,8 @@
+package com.akeysoft.elf.core;
+
+public interface RamListener {
+
+	// Called after length bytes starting at beginAddress have changed.
+	void bytesWritten(int beginAddress, int length);
+
+}
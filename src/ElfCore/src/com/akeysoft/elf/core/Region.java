@@ -0,0 +1,102 @@
+package com.akeysoft.elf.core;
+
+// Hot code compiled into a JVM class by RegionCompiler: every instruction
+// reachable from the entry point, for one value of P and of X at the
+// entry. The generated class extends this one, and keeps the registers it
+// uses, D and DF in locals of its run method.
+//
+// The generated class lives in a class loader of its own, so it can only
+// see public and protected members here; the helpers below are its way
+// to the Cpu.
+public abstract class Region {
+
+	// Value of P and X the region was compiled for.
+	int p;
+	int x;
+
+	// Addresses and lengths of the instructions the region covers.
+	int[] addresses;
+	int[] lengths;
+
+	// Cleared when code inside the region is overwritten. Read by the
+	// generated code after every store.
+	protected boolean valid;
+
+	protected Region() {
+		this.valid = true;
+	}
+
+	// Runs the region until control leaves it or the next block would take
+	// the cycle counter past cycleLimit, with r and ram those of cpu, and
+	// leaves the state in cpu.
+	protected abstract void run(Cpu cpu, int[] r, MemoryBus ram, long cycleLimit);
+
+	final void init(int p, int x, int[] addresses, int[] lengths) {
+		this.p = p;
+		this.x = x;
+		this.addresses = addresses;
+		this.lengths = lengths;
+	}
+
+	final int getAddress() {
+		return this.addresses[0];
+	}
+
+	final boolean covers(int address) {
+		for (int i = 0; i < this.addresses.length; i ++) {
+			if (((address - this.addresses[i]) & 0xFFFF) < this.lengths[i])
+				return true;
+		}
+
+		return false;
+	}
+
+	// Cycles the region may use, at most Integer.MAX_VALUE.
+	protected static int budget(Cpu cpu, long cycleLimit) {
+		return (int) Math.min(cycleLimit - cpu.cycles, Integer.MAX_VALUE);
+	}
+
+	protected static long cycles(Cpu cpu) {
+		return cpu.cycles;
+	}
+
+	protected static int d(Cpu cpu) {
+		return cpu.d;
+	}
+
+	protected static int df(Cpu cpu) {
+		return cpu.df;
+	}
+
+	protected static int t(Cpu cpu) {
+		return cpu.t;
+	}
+
+	protected static int ie(Cpu cpu) {
+		return cpu.ie;
+	}
+
+	protected static boolean ef(Cpu cpu, int index) {
+		return cpu.ef[index];
+	}
+
+	protected static boolean q(Cpu cpu) {
+		return cpu.outputDevice.isQOn();
+	}
+
+	// The output device may read the cycle counter.
+	protected static void setQ(Cpu cpu, long cycles, boolean on) {
+		cpu.cycles = cycles;
+		cpu.outputDevice.setQ(on);
+	}
+
+	// exit holds the address to go on at in the low 16 bits, and X there
+	// above them.
+	protected static void leave(Cpu cpu, int exit, int d, int df, long cycles) {
+		cpu.r[cpu.p] = exit & 0xFFFF;
+		cpu.x = exit >>> 16;
+		cpu.d = d;
+		cpu.df = df;
+		cpu.cycles = cycles;
+	}
+}
@@ -0,0 +1,117 @@
+package com.akeysoft.elf.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compiled regions by entry address. Writes through the MemoryBus drop
+// every region covering a written byte.
+//
+// The interpreter loop stops at the entry of every region, see
+// DecodeCache.setStop, so that the Cpu can run the region from there.
+final class RegionCache implements RamListener {
+
+	private static final int SIZE = 0x10000;
+
+	private MemoryBus ram;
+	private CodePages codePages;
+	private DecodeCache decodeCache;
+
+	final Region[] regions;
+
+	// Times the interpreter loop stopped for the cycle limit at each
+	// address, towards compiling a region there.
+	final int[] counts;
+
+	private final List<Region> compiled;
+
+	// Bytes that belong to a compiled region. Like in BlockCache, flags
+	// are not cleared when a region goes away.
+	private final boolean[] code;
+
+	// Regions dropped because of writes.
+	long dropped;
+
+	RegionCache(MemoryBus ram, CodePages codePages, DecodeCache decodeCache) {
+		this.ram = ram;
+		this.codePages = codePages;
+		this.decodeCache = decodeCache;
+		this.regions = new Region[SIZE];
+		this.counts = new int[SIZE];
+		this.compiled = new ArrayList<Region>();
+		this.code = new boolean[SIZE];
+		this.dropped = 0L;
+	}
+
+	Region compile(int address, int p, int x) {
+		Region region = RegionCompiler.compile(this.ram, address, p, x);
+		if (region == null)
+			return null;
+
+		Region old = this.regions[address];
+		if (old != null)
+			this.remove(old);
+
+		this.regions[address] = region;
+		this.compiled.add(region);
+		this.decodeCache.setStop(address, true);
+		for (int i = 0; i < region.addresses.length; i ++) {
+			int length = region.lengths[i];
+			this.codePages.mark(region.addresses[i], length);
+			for (int j = 0; j < length; j ++) {
+				this.code[(region.addresses[i] + j) & 0xFFFF] = true;
+			}
+		}
+
+		return region;
+	}
+
+	int size() {
+		return this.compiled.size();
+	}
+
+	void clear() {
+		for (int i = 0; i < this.compiled.size(); i ++) {
+			Region region = this.compiled.get(i);
+			region.valid = false;
+			this.regions[region.getAddress()] = null;
+			this.decodeCache.setStop(region.getAddress(), false);
+		}
+
+		this.dropped += this.compiled.size();
+		this.compiled.clear();
+		Arrays.fill(this.code, false);
+	}
+
+	public void bytesWritten(int beginAddress, int length) {
+		if (length >= SIZE) {
+			this.clear();
+			return;
+		}
+
+		for (int i = 0; i < length; i ++) {
+			int address = (beginAddress + i) & 0xFFFF;
+			if (this.code[address])
+				this.invalidate(address);
+		}
+	}
+
+	private void invalidate(int address) {
+		for (int i = this.compiled.size() - 1; i >= 0; i --) {
+			Region region = this.compiled.get(i);
+			if (region.covers(address)) {
+				this.remove(region);
+				this.dropped ++;
+			}
+		}
+	}
+
+	private void remove(Region region) {
+		region.valid = false;
+		this.compiled.remove(region);
+		if (this.regions[region.getAddress()] == region) {
+			this.regions[region.getAddress()] = null;
+			this.decodeCache.setStop(region.getAddress(), false);
+		}
+	}
+}
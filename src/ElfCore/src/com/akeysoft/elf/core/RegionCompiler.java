@@ -0,0 +1,997 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Compiles the code reachable from a hot entry point into a JVM class, a
+// subclass of Region, that HotSpot then compiles like any other.
+//
+// The compiler follows both ways out of every branch and skip until it
+// runs out of room, so a loop and the code around it end up in one
+// method and jump straight to their own instructions. X is known at
+// every instruction: it is X at the entry, or the register of the last
+// SEX, and where different values of X meet, the code is compiled once
+// for each. So are P and the program counter. That leaves the registers
+// the code uses, D and DF, which live in locals of the method.
+//
+// What the region cannot run becomes an exit back to the interpreter:
+// I/O, SEP, RET, DIS, IDL, MARK, unknown opcodes, and anything that works
+// on R(P) as a register, be it R(n) or R(X). The region also leaves after
+// a store that overwrote its own code, and at a block that does not fit
+// in the cycles left.
+//
+// Platforms that cannot load JVM classes at run time, like Android, get
+// no regions at all; compile returns null there.
+final class RegionCompiler {
+
+	static final int MAX_INSTRUCTIONS = 256;
+
+	// HotSpot leaves methods longer than this to the bytecode interpreter
+	// (HugeMethodLimit). A region that comes out longer is compiled again
+	// with fewer instructions.
+	private static final int MAX_CODE_LENGTH = 8000;
+
+	// Opcode entry of slots the region exits at.
+	private static final int EXIT = 0;
+
+	private static final String REGION = "com/akeysoft/elf/core/Region";
+	private static final String CPU = "Lcom/akeysoft/elf/core/Cpu;";
+	private static final String MEMORY_BUS = "com/akeysoft/elf/core/MemoryBus";
+
+	// Locals of the run method.
+	private static final int LOCAL_CPU = 1;
+	private static final int LOCAL_R = 2;
+	private static final int LOCAL_RAM = 3;
+	private static final int LOCAL_CYCLE_LIMIT = 4;
+	// Cycle counter when the budget is used up.
+	private static final int LOCAL_END = 6;
+	// Cycles left.
+	private static final int LOCAL_BUDGET = 8;
+	private static final int LOCAL_D = 9;
+	private static final int LOCAL_DF = 10;
+	// Where to go on, see Region.leave.
+	private static final int LOCAL_EXIT = 11;
+	private static final int LOCAL_SUM = 12;
+	// R0 to R15.
+	private static final int LOCAL_REGISTERS = 13;
+	private static final int MAX_LOCALS = LOCAL_REGISTERS + 16;
+	private static final int MAX_STACK = 8;
+
+	// Cleared when a class cannot be defined.
+	private static boolean available = true;
+
+	private MemoryBus ram;
+	private int p;
+	private int maxInstructions;
+
+	// Slots by X and address, (x << 16) | address.
+	private Map<Integer, Integer> slots;
+	private int count;
+
+	private int[] entries;
+	private int[] operands;
+	private int[] addresses;
+	private int[] xs;
+	// Slot to go on with, and slot to go to when a branch or skip is taken.
+	private int[] following;
+	private int[] targets;
+
+	private ClassWriter writer;
+	private int[] labels;
+	private boolean[] leaders;
+	private boolean[] emitted;
+	// Label of the exit taken when the block at a leader does not fit,
+	// -1 for other slots.
+	private int[] full;
+	private int exitLabel;
+
+	private RegionCompiler(MemoryBus ram, int p, int maxInstructions) {
+		this.ram = ram;
+		this.p = p;
+		this.maxInstructions = maxInstructions;
+
+		// Every instruction adds at most two slots.
+		int size = maxInstructions * 2 + 1;
+		this.slots = new HashMap<Integer, Integer>();
+		this.count = 0;
+		this.entries = new int[size];
+		this.operands = new int[size];
+		this.addresses = new int[size];
+		this.xs = new int[size];
+		this.following = new int[size];
+		this.targets = new int[size];
+	}
+
+	// Returns null if the instruction at address is one the region would
+	// exit on right away, or if classes cannot be loaded.
+	static Region compile(MemoryBus ram, int address, int p, int x) {
+		if (!available)
+			return null;
+
+		for (int max = MAX_INSTRUCTIONS; max > 0; max /= 2) {
+			RegionCompiler compiler = new RegionCompiler(ram, p, max);
+			compiler.slot(address, x);
+			compiler.translate();
+
+			if (compiler.entries[0] == EXIT)
+				return null;
+
+			byte[] bytes = compiler.generate(address);
+			if (bytes == null)
+				continue;
+
+			Region region;
+			try {
+				region = Loader.load("com.akeysoft.elf.core.CompiledRegion" + Integer.toHexString(address), bytes);
+			} catch (UnsupportedOperationException e) {
+				available = false;
+				return null;
+			} catch (SecurityException e) {
+				available = false;
+				return null;
+			}
+
+			compiler.init(region, x);
+			return region;
+		}
+
+		return null;
+	}
+
+	private int slot(int address, int x) {
+		int key = (x << 16) | address;
+		Integer slot = this.slots.get(key);
+		if (slot != null)
+			return slot;
+
+		this.addresses[this.count] = address;
+		this.xs[this.count] = x;
+		this.slots.put(key, this.count);
+
+		return this.count ++;
+	}
+
+	private void translate() {
+		int translated = 0;
+
+		// Slots are handed out in the order they are found, so this walks
+		// the code breadth first.
+		for (int i = 0; i < this.count; i ++) {
+			int pc = this.addresses[i];
+			int x = this.xs[i];
+			int entry = Opcode.TABLE[this.ram.getUnsignedByte(pc)];
+			int handler = Opcode.handler(entry);
+
+			if (translated == this.maxInstructions || !translatable(entry, this.p, x)) {
+				this.entries[i] = EXIT;
+				continue;
+			}
+
+			translated ++;
+
+			int next = (pc + Opcode.length(entry)) & 0xFFFF;
+			int operand = Opcode.operand(this.ram, pc, entry);
+
+			this.entries[i] = entry;
+			this.operands[i] = operand;
+
+			switch (handler) {
+			case Opcode.BR:
+			case Opcode.LBR:
+				this.following[i] = this.slot(operand, x);
+				break;
+
+			case Opcode.SKP:
+				this.following[i] = this.slot((next + 1) & 0xFFFF, x);
+				break;
+
+			case Opcode.LSKP:
+				this.following[i] = this.slot((next + 2) & 0xFFFF, x);
+				break;
+
+			case Opcode.SEX:
+				this.following[i] = this.slot(next, Opcode.n(entry));
+				break;
+
+			default:
+				this.following[i] = this.slot(next, x);
+				if (isConditional(handler))
+					this.targets[i] = this.slot(branchTarget(handler, next, operand), x);
+				break;
+			}
+		}
+	}
+
+	private static boolean translatable(int entry, int p, int x) {
+		if ((entry & Opcode.NEEDS_CPU) != 0 ||
+				((entry & Opcode.USES_N) != 0 && Opcode.n(entry) == p) ||
+				((entry & Opcode.USES_X) != 0 && x == p))
+			return false;
+
+		switch (Opcode.handler(entry)) {
+		case Opcode.RET:
+		case Opcode.DIS:
+		case Opcode.SEP:
+			return false;
+
+		default:
+			return true;
+		}
+	}
+
+	private static boolean isConditional(int handler) {
+		switch (handler) {
+		case Opcode.BQ:
+		case Opcode.BZ:
+		case Opcode.BDF:
+		case Opcode.B:
+		case Opcode.BNQ:
+		case Opcode.BNZ:
+		case Opcode.BNF:
+		case Opcode.BN:
+		case Opcode.LBQ:
+		case Opcode.LBZ:
+		case Opcode.LBDF:
+		case Opcode.LBNQ:
+		case Opcode.LBNZ:
+		case Opcode.LBNF:
+		case Opcode.LSNQ:
+		case Opcode.LSNZ:
+		case Opcode.LSNF:
+		case Opcode.LSIE:
+		case Opcode.LSQ:
+		case Opcode.LSZ:
+		case Opcode.LSDF:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	// Where a conditional branch or skip goes when taken.
+	private static int branchTarget(int handler, int next, int operand) {
+		switch (handler) {
+		case Opcode.LSNQ:
+		case Opcode.LSNZ:
+		case Opcode.LSNF:
+		case Opcode.LSIE:
+		case Opcode.LSQ:
+		case Opcode.LSZ:
+		case Opcode.LSDF:
+			return (next + 2) & 0xFFFF;
+
+		default:
+			return operand;
+		}
+	}
+
+	private void init(Region region, int x) {
+		int translated = 0;
+		for (int i = 0; i < this.count; i ++) {
+			if (this.entries[i] != EXIT)
+				translated ++;
+		}
+
+		int[] addresses = new int[translated];
+		int[] lengths = new int[translated];
+		translated = 0;
+		for (int i = 0; i < this.count; i ++) {
+			if (this.entries[i] == EXIT)
+				continue;
+			addresses[translated] = this.addresses[i];
+			lengths[translated] = Opcode.length(this.entries[i]);
+			translated ++;
+		}
+
+		region.init(this.p, x, addresses, lengths);
+	}
+
+	// The class file, or null if its code came out too long.
+	private byte[] generate(int address) {
+		String name = "com/akeysoft/elf/core/CompiledRegion" + Integer.toHexString(address);
+		this.writer = new ClassWriter(name, REGION);
+		this.writer.defaultConstructor(REGION);
+		this.writer.beginMethod(ClassWriter.ACC_PROTECTED, "run",
+				"(" + CPU + "[IL" + MEMORY_BUS + ";J)V");
+
+		this.labels = new int[this.count];
+		for (int i = 0; i < this.count; i ++) {
+			this.labels[i] = this.writer.newLabel();
+		}
+		this.exitLabel = this.writer.newLabel();
+		this.findLeaders();
+
+		boolean[] used = new boolean[16];
+		boolean[] written = new boolean[16];
+		this.findRegisters(used, written);
+		this.prologue(used);
+
+		// Each leader starts a run of code that falls through from one
+		// instruction to the next, and on to the next leader's if that
+		// has not been placed yet.
+		this.emitted = new boolean[this.count];
+		this.full = new int[this.count];
+		Arrays.fill(this.full, -1);
+		for (int i = 0; i < this.count; i ++) {
+			if (this.leaders[i] && !this.emitted[i] && this.entries[i] != EXIT)
+				this.emitFrom(i);
+		}
+
+		// Exits, and the ways out of blocks that do not fit.
+		for (int i = 0; i < this.count; i ++) {
+			if (this.entries[i] == EXIT) {
+				this.writer.mark(this.labels[i]);
+				this.exit(this.addresses[i], this.xs[i]);
+			} else if (this.full[i] >= 0) {
+				this.writer.mark(this.full[i]);
+				this.exit(this.addresses[i], this.xs[i]);
+			}
+		}
+
+		this.epilogue(written);
+		this.writer.endMethod(MAX_STACK, MAX_LOCALS);
+
+		if (this.writer.codeLength() > MAX_CODE_LENGTH)
+			return null;
+
+		return this.writer.toByteArray();
+	}
+
+	// A leader is where a block starts: the entry, where a branch goes
+	// either way, and where paths meet.
+	private void findLeaders() {
+		int[] predecessors = new int[this.count];
+		this.leaders = new boolean[this.count];
+		this.leaders[0] = true;
+
+		for (int i = 0; i < this.count; i ++) {
+			if (this.entries[i] == EXIT)
+				continue;
+
+			predecessors[this.following[i]] ++;
+			if (isConditional(Opcode.handler(this.entries[i]))) {
+				predecessors[this.targets[i]] ++;
+				this.leaders[this.following[i]] = true;
+				this.leaders[this.targets[i]] = true;
+			}
+		}
+
+		for (int i = 0; i < this.count; i ++) {
+			if (predecessors[i] != 1)
+				this.leaders[i] = true;
+		}
+	}
+
+	private void findRegisters(boolean[] used, boolean[] written) {
+		for (int i = 0; i < this.count; i ++) {
+			int entry = this.entries[i];
+			if (entry == EXIT)
+				continue;
+
+			int n = Opcode.n(entry);
+			int x = this.xs[i];
+			if ((entry & Opcode.USES_N) != 0)
+				used[n] = true;
+			if ((entry & Opcode.USES_X) != 0)
+				used[x] = true;
+
+			switch (Opcode.handler(entry)) {
+			case Opcode.INC:
+			case Opcode.DEC:
+			case Opcode.LDA:
+			case Opcode.PLO:
+			case Opcode.PHI:
+				written[n] = true;
+				break;
+
+			case Opcode.IRX:
+			case Opcode.LDXA:
+			case Opcode.STXD:
+				written[x] = true;
+				break;
+			}
+		}
+
+		// What the epilogue stores has to have been loaded.
+		for (int i = 0; i < 16; i ++) {
+			used[i] |= written[i];
+		}
+	}
+
+	private void prologue(boolean[] used) {
+		ClassWriter w = this.writer;
+
+		w.var(ClassWriter.ALOAD, LOCAL_CPU);
+		w.var(ClassWriter.LLOAD, LOCAL_CYCLE_LIMIT);
+		w.invoke(ClassWriter.INVOKESTATIC, REGION, "budget", "(" + CPU + "J)I");
+		w.var(ClassWriter.ISTORE, LOCAL_BUDGET);
+
+		w.var(ClassWriter.ALOAD, LOCAL_CPU);
+		w.invoke(ClassWriter.INVOKESTATIC, REGION, "cycles", "(" + CPU + ")J");
+		w.var(ClassWriter.ILOAD, LOCAL_BUDGET);
+		w.op(ClassWriter.I2L);
+		w.op(ClassWriter.LADD);
+		w.var(ClassWriter.LSTORE, LOCAL_END);
+
+		w.var(ClassWriter.ALOAD, LOCAL_CPU);
+		w.invoke(ClassWriter.INVOKESTATIC, REGION, "d", "(" + CPU + ")I");
+		w.var(ClassWriter.ISTORE, LOCAL_D);
+		w.var(ClassWriter.ALOAD, LOCAL_CPU);
+		w.invoke(ClassWriter.INVOKESTATIC, REGION, "df", "(" + CPU + ")I");
+		w.var(ClassWriter.ISTORE, LOCAL_DF);
+
+		for (int i = 0; i < 16; i ++) {
+			if (!used[i])
+				continue;
+			w.var(ClassWriter.ALOAD, LOCAL_R);
+			w.push(i);
+			w.op(ClassWriter.IALOAD);
+			w.var(ClassWriter.ISTORE, LOCAL_REGISTERS + i);
+		}
+	}
+
+	private void epilogue(boolean[] written) {
+		ClassWriter w = this.writer;
+		w.mark(this.exitLabel);
+
+		for (int i = 0; i < 16; i ++) {
+			if (!written[i])
+				continue;
+			w.var(ClassWriter.ALOAD, LOCAL_R);
+			w.push(i);
+			w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + i);
+			w.op(ClassWriter.IASTORE);
+		}
+
+		w.var(ClassWriter.ALOAD, LOCAL_CPU);
+		w.var(ClassWriter.ILOAD, LOCAL_EXIT);
+		w.var(ClassWriter.ILOAD, LOCAL_D);
+		w.var(ClassWriter.ILOAD, LOCAL_DF);
+		this.cyclesNow(0);
+		w.invoke(ClassWriter.INVOKESTATIC, REGION, "leave", "(" + CPU + "IIIJ)V");
+		w.op(ClassWriter.RETURN);
+	}
+
+	// Places the block starting at the leader first, and the ones it falls
+	// through to after it.
+	private void emitFrom(int first) {
+		ClassWriter w = this.writer;
+		int slot = first;
+
+		while (true) {
+			// The block: instructions up to a conditional branch, or up to
+			// where the code goes on at a leader or an exit.
+			int cost = 0;
+			int last = slot;
+			while (true) {
+				cost += Opcode.cycles(this.entries[last]);
+				int next = this.following[last];
+				if (isConditional(Opcode.handler(this.entries[last])) ||
+						this.leaders[next] || this.entries[next] == EXIT)
+					break;
+				last = next;
+			}
+
+			w.mark(this.labels[slot]);
+			this.emitted[slot] = true;
+
+			// Leave at the leader if the block does not fit.
+			this.full[slot] = w.newLabel();
+			w.var(ClassWriter.ILOAD, LOCAL_BUDGET);
+			w.push(cost);
+			w.jump(ClassWriter.IF_ICMPLT, this.full[slot]);
+			w.iinc(LOCAL_BUDGET, -cost);
+
+			int before = cost;
+			int i = slot;
+			while (true) {
+				this.emitted[i] = true;
+				before -= this.emit(i, before);
+				if (i == last)
+					break;
+				i = this.following[i];
+			}
+
+			int next = this.following[last];
+			if (this.entries[next] != EXIT && !this.emitted[next]) {
+				// Falls through to the next block.
+				slot = next;
+				continue;
+			}
+
+			w.jump(ClassWriter.GOTO, this.labels[next]);
+			return;
+		}
+	}
+
+	private void exit(int address, int x) {
+		ClassWriter w = this.writer;
+		w.push((x << 16) | address);
+		w.var(ClassWriter.ISTORE, LOCAL_EXIT);
+		w.jump(ClassWriter.GOTO, this.exitLabel);
+	}
+
+	// Pushes the cycle counter as it is with after cycles of the block
+	// still to go.
+	private void cyclesNow(int after) {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.LLOAD, LOCAL_END);
+		w.var(ClassWriter.ILOAD, LOCAL_BUDGET);
+		if (after != 0) {
+			w.push(after);
+			w.op(ClassWriter.IADD);
+		}
+		w.op(ClassWriter.I2L);
+		w.op(ClassWriter.LSUB);
+	}
+
+	// Emits the instruction in slot i, with before cycles of its block
+	// still to go when it starts, and returns its cost.
+	private int emit(int i, int before) {
+		ClassWriter w = this.writer;
+		int entry = this.entries[i];
+		int n = Opcode.n(entry);
+		int x = this.xs[i];
+		int operand = this.operands[i];
+		int cost = Opcode.cycles(entry);
+		int target = this.targets[i];
+
+		switch (Opcode.handler(entry)) {
+		case Opcode.LDN:
+			this.load(n);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			break;
+
+		case Opcode.INC:
+			this.add(n, 1);
+			break;
+
+		case Opcode.DEC:
+			this.add(n, -1);
+			break;
+
+		case Opcode.BR:
+		case Opcode.LBR:
+		case Opcode.SKP:
+		case Opcode.LSKP:
+		case Opcode.NOP:
+		case Opcode.SEX:
+			break;
+
+		case Opcode.BQ:
+		case Opcode.LBQ:
+		case Opcode.LSQ:
+			this.q();
+			w.jump(ClassWriter.IFNE, this.labels[target]);
+			break;
+
+		case Opcode.BNQ:
+		case Opcode.LBNQ:
+		case Opcode.LSNQ:
+			this.q();
+			w.jump(ClassWriter.IFEQ, this.labels[target]);
+			break;
+
+		case Opcode.BZ:
+		case Opcode.LBZ:
+		case Opcode.LSZ:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.jump(ClassWriter.IFEQ, this.labels[target]);
+			break;
+
+		case Opcode.BNZ:
+		case Opcode.LBNZ:
+		case Opcode.LSNZ:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.jump(ClassWriter.IFNE, this.labels[target]);
+			break;
+
+		case Opcode.BDF:
+		case Opcode.LBDF:
+		case Opcode.LSDF:
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.jump(ClassWriter.IFNE, this.labels[target]);
+			break;
+
+		case Opcode.BNF:
+		case Opcode.LBNF:
+		case Opcode.LSNF:
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.jump(ClassWriter.IFEQ, this.labels[target]);
+			break;
+
+		case Opcode.B:
+			this.ef(n);
+			w.jump(ClassWriter.IFNE, this.labels[target]);
+			break;
+
+		case Opcode.BN:
+			this.ef(n);
+			w.jump(ClassWriter.IFEQ, this.labels[target]);
+			break;
+
+		case Opcode.LSIE:
+			w.var(ClassWriter.ALOAD, LOCAL_CPU);
+			w.invoke(ClassWriter.INVOKESTATIC, REGION, "ie", "(" + CPU + ")I");
+			w.jump(ClassWriter.IFNE, this.labels[target]);
+			break;
+
+		case Opcode.LDA:
+			this.load(n);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			this.add(n, 1);
+			break;
+
+		case Opcode.STR:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.store(n);
+			this.guard(i, before - cost);
+			break;
+
+		case Opcode.IRX:
+			this.add(x, 1);
+			break;
+
+		case Opcode.LDXA:
+			this.load(x);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			this.add(x, 1);
+			break;
+
+		case Opcode.STXD:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.store(x);
+			this.add(x, -1);
+			this.guard(i, before - cost);
+			break;
+
+		case Opcode.ADC:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.load(x);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SDB:
+			this.notD();
+			this.load(x);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SHRC:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.push(8);
+			w.op(ClassWriter.ISHL);
+			w.op(ClassWriter.IOR);
+			w.var(ClassWriter.ISTORE, LOCAL_SUM);
+			this.shiftRight(LOCAL_SUM);
+			break;
+
+		case Opcode.SMB:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.load(x);
+			w.push(-1);
+			w.op(ClassWriter.IXOR);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SAV:
+			w.var(ClassWriter.ALOAD, LOCAL_CPU);
+			w.invoke(ClassWriter.INVOKESTATIC, REGION, "t", "(" + CPU + ")I");
+			this.store(x);
+			this.guard(i, before - cost);
+			break;
+
+		case Opcode.REQ:
+		case Opcode.SEQ:
+			w.var(ClassWriter.ALOAD, LOCAL_CPU);
+			this.cyclesNow(before);
+			w.push((Opcode.handler(entry) == Opcode.SEQ) ? 1 : 0);
+			w.invoke(ClassWriter.INVOKESTATIC, REGION, "setQ", "(" + CPU + "JZ)V");
+			break;
+
+		case Opcode.ADCI:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(operand);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SDBI:
+			this.notD();
+			w.push(operand);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SHLC:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(1);
+			w.op(ClassWriter.ISHL);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IOR);
+			this.split();
+			break;
+
+		case Opcode.SMBI:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(~operand);
+			w.op(ClassWriter.IADD);
+			w.var(ClassWriter.ILOAD, LOCAL_DF);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.GLO:
+			w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+			w.push(0xFF);
+			w.op(ClassWriter.IAND);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			break;
+
+		case Opcode.GHI:
+			w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+			w.push(8);
+			w.op(ClassWriter.ISHR);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			break;
+
+		case Opcode.PLO:
+			w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+			w.push(0xFF00);
+			w.op(ClassWriter.IAND);
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.op(ClassWriter.IOR);
+			w.var(ClassWriter.ISTORE, LOCAL_REGISTERS + n);
+			break;
+
+		case Opcode.PHI:
+			w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+			w.push(0xFF);
+			w.op(ClassWriter.IAND);
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(8);
+			w.op(ClassWriter.ISHL);
+			w.op(ClassWriter.IOR);
+			w.var(ClassWriter.ISTORE, LOCAL_REGISTERS + n);
+			break;
+
+		case Opcode.LDX:
+			this.load(x);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			break;
+
+		case Opcode.OR:
+			this.logic(x, ClassWriter.IOR);
+			break;
+
+		case Opcode.AND:
+			this.logic(x, ClassWriter.IAND);
+			break;
+
+		case Opcode.XOR:
+			this.logic(x, ClassWriter.IXOR);
+			break;
+
+		case Opcode.ADD:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.load(x);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SD:
+			this.notD();
+			this.load(x);
+			w.op(ClassWriter.IADD);
+			w.push(1);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SHR:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.var(ClassWriter.ISTORE, LOCAL_SUM);
+			this.shiftRight(LOCAL_SUM);
+			break;
+
+		case Opcode.SM:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			this.load(x);
+			w.push(-1);
+			w.op(ClassWriter.IXOR);
+			w.op(ClassWriter.IADD);
+			w.push(1);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.LDI:
+			w.push(operand);
+			w.var(ClassWriter.ISTORE, LOCAL_D);
+			break;
+
+		case Opcode.ORI:
+			this.immediate(operand, ClassWriter.IOR);
+			break;
+
+		case Opcode.ANI:
+			this.immediate(operand, ClassWriter.IAND);
+			break;
+
+		case Opcode.XRI:
+			this.immediate(operand, ClassWriter.IXOR);
+			break;
+
+		case Opcode.ADI:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(operand);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SDI:
+			this.notD();
+			w.push(operand + 1);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+
+		case Opcode.SHL:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(1);
+			w.op(ClassWriter.ISHL);
+			this.split();
+			break;
+
+		case Opcode.SMI:
+			w.var(ClassWriter.ILOAD, LOCAL_D);
+			w.push(-operand);
+			w.op(ClassWriter.IADD);
+			this.split();
+			break;
+		}
+
+		return cost;
+	}
+
+	// Pushes M(R(n)).
+	private void load(int n) {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.ALOAD, LOCAL_RAM);
+		w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+		w.invoke(ClassWriter.INVOKEVIRTUAL, MEMORY_BUS, "getUnsignedByte", "(I)I");
+	}
+
+	// Stores the value on the stack at M(R(n)).
+	private void store(int n) {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.ISTORE, LOCAL_SUM);
+		w.var(ClassWriter.ALOAD, LOCAL_RAM);
+		w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+		w.var(ClassWriter.ILOAD, LOCAL_SUM);
+		w.op(ClassWriter.I2B);
+		w.invoke(ClassWriter.INVOKEVIRTUAL, MEMORY_BUS, "setByte", "(IB)V");
+	}
+
+	// R(n) = (R(n) + increment) & 0xFFFF.
+	private void add(int n, int increment) {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.ILOAD, LOCAL_REGISTERS + n);
+		w.push(increment);
+		w.op(ClassWriter.IADD);
+		w.op(ClassWriter.I2C);
+		w.var(ClassWriter.ISTORE, LOCAL_REGISTERS + n);
+	}
+
+	// Leaves the region after a store if the store overwrote its code,
+	// giving back the cycles of the block after the instruction in slot i.
+	private void guard(int i, int after) {
+		ClassWriter w = this.writer;
+		int intact = w.newLabel();
+		w.var(ClassWriter.ALOAD, 0);
+		w.getField(REGION, "valid", "Z");
+		w.jump(ClassWriter.IFNE, intact);
+		w.iinc(LOCAL_BUDGET, after);
+		this.exit(this.addresses[this.following[i]], this.xs[i]);
+		w.mark(intact);
+	}
+
+	private void q() {
+		this.writer.var(ClassWriter.ALOAD, LOCAL_CPU);
+		this.writer.invoke(ClassWriter.INVOKESTATIC, REGION, "q", "(" + CPU + ")Z");
+	}
+
+	private void ef(int index) {
+		this.writer.var(ClassWriter.ALOAD, LOCAL_CPU);
+		this.writer.push(index);
+		this.writer.invoke(ClassWriter.INVOKESTATIC, REGION, "ef", "(" + CPU + "I)Z");
+	}
+
+	// Pushes ~D.
+	private void notD() {
+		this.writer.var(ClassWriter.ILOAD, LOCAL_D);
+		this.writer.push(-1);
+		this.writer.op(ClassWriter.IXOR);
+	}
+
+	// D op= M(R(x)).
+	private void logic(int x, int opcode) {
+		this.writer.var(ClassWriter.ILOAD, LOCAL_D);
+		this.load(x);
+		this.writer.op(opcode);
+		this.writer.var(ClassWriter.ISTORE, LOCAL_D);
+	}
+
+	// D op= operand.
+	private void immediate(int operand, int opcode) {
+		this.writer.var(ClassWriter.ILOAD, LOCAL_D);
+		this.writer.push(operand);
+		this.writer.op(opcode);
+		this.writer.var(ClassWriter.ISTORE, LOCAL_D);
+	}
+
+	// D = sum & 0xFF and DF = bit 8 of sum, for the sum on the stack.
+	// Sums of the subtractions run from -256 to 256, and bit 8 is set for
+	// the negative ones just like the exec methods find in bits 8-15.
+	private void split() {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.ISTORE, LOCAL_SUM);
+		w.var(ClassWriter.ILOAD, LOCAL_SUM);
+		w.push(0xFF);
+		w.op(ClassWriter.IAND);
+		w.var(ClassWriter.ISTORE, LOCAL_D);
+		w.var(ClassWriter.ILOAD, LOCAL_SUM);
+		w.push(8);
+		w.op(ClassWriter.ISHR);
+		w.push(1);
+		w.op(ClassWriter.IAND);
+		w.var(ClassWriter.ISTORE, LOCAL_DF);
+	}
+
+	// DF = bit 0 of D and D = value >> 1, for the value in local.
+	private void shiftRight(int local) {
+		ClassWriter w = this.writer;
+		w.var(ClassWriter.ILOAD, LOCAL_D);
+		w.push(1);
+		w.op(ClassWriter.IAND);
+		w.var(ClassWriter.ISTORE, LOCAL_DF);
+		w.var(ClassWriter.ILOAD, local);
+		w.push(1);
+		w.op(ClassWriter.ISHR);
+		w.var(ClassWriter.ISTORE, LOCAL_D);
+	}
+
+	// Defines each region class in a loader of its own, so that the class
+	// can go away with the region.
+	private static final class Loader extends ClassLoader {
+
+		private Loader() {
+			super(Region.class.getClassLoader());
+		}
+
+		static Region load(String name, byte[] bytes) {
+			Class<?> type = new Loader().defineClass(name, bytes, 0, bytes.length);
+			try {
+				return (Region) type.getConstructor().newInstance();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.akeysoft.elf.core;
+
+// Told by a RunController, on its own thread, what the Cpu is doing.
+public interface RunControlListener {
+
+	// One of the RunController states.
+	void stateChanged(int state);
+
+	// The Cpu ran into e and stopped.
+	void unknownOpcode(UnknownOpcodeException e);
+}
@@ -0,0 +1,212 @@
+package com.akeysoft.elf.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs a Cpu on one thread that lives as long as the controller. Other
+// threads send commands, which go through a lock-free queue and take
+// effect in the order sent. A command stops a running Cpu within
+// Cpu.POLL_CYCLES.
+public final class RunController {
+
+	public static final int STOPPED = 0;
+	public static final int RUNNING = 1;
+	public static final int PAUSED = 2;
+	public static final int STEPPING = 3;
+	// Stopped by IDL.
+	public static final int IDLE = 4;
+
+	private static final int START = 0;
+	private static final int STOP = 1;
+	private static final int PAUSE = 2;
+	private static final int RESUME = 3;
+	private static final int STEP = 4;
+	private static final int RESET = 5;
+	private static final int SHUTDOWN = 6;
+
+	private Cpu cpu;
+	private RunControlListener listener;
+	private final Queue<Integer> commands;
+	private final Thread thread;
+	private volatile int state;
+
+	public RunController(Cpu cpu) {
+		this.cpu = cpu;
+		this.listener = null;
+		this.commands = new ConcurrentLinkedQueue<Integer>();
+		this.state = STOPPED;
+
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				loop();
+			}
+		}, "Elf CPU");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	// Set before the first command.
+	public void setListener(RunControlListener listener) {
+		this.listener = listener;
+	}
+
+	public int getState() {
+		return this.state;
+	}
+
+	// Resets the Cpu and runs it.
+	public void start() {
+		this.send(START);
+	}
+
+	public void stop() {
+		this.send(STOP);
+	}
+
+	// Stops the Cpu where it is, for resume() or step().
+	public void pause() {
+		this.send(PAUSE);
+	}
+
+	public void resume() {
+		this.send(RESUME);
+	}
+
+	// Runs one instruction and pauses.
+	public void step() {
+		this.send(STEP);
+	}
+
+	// Stops and resets the Cpu.
+	public void reset() {
+		this.send(RESET);
+	}
+
+	// Stops the Cpu for good and ends the thread.
+	public void shutdown() {
+		this.send(SHUTDOWN);
+	}
+
+	// Waits until the thread has ended, at most millis, 0 for ever.
+	public void join(long millis) throws InterruptedException {
+		this.thread.join(millis);
+	}
+
+	private void send(int command) {
+		// Small Integers are cached, so this does not allocate.
+		this.commands.offer(Integer.valueOf(command));
+		this.cpu.stop();
+		LockSupport.unpark(this.thread);
+	}
+
+	private void loop() {
+		while (true) {
+			// Cleared before looking at the queue: a stop() from a command
+			// sent after the look is then still there for execute().
+			this.cpu.stopRequested = false;
+			Integer command = this.commands.poll();
+
+			if (command == null) {
+				if (this.state == RUNNING)
+					this.execute();
+				else
+					this.waitForCommand();
+			} else if (command.intValue() == SHUTDOWN) {
+				this.setState(STOPPED);
+				return;
+			} else {
+				this.handle(command.intValue());
+			}
+		}
+	}
+
+	// Parks until a command comes. Meanwhile bytes posted to the Dma go
+	// in, as in the load mode of the ELF, where the Cpu does not run.
+	private void waitForCommand() {
+		Dma dma = this.cpu.getDma();
+		dma.waiter = this.thread;
+		try {
+			if (this.cpu.isDmaRequested())
+				this.cpu.serveDma();
+			else
+				LockSupport.park(this);
+		} finally {
+			dma.waiter = null;
+		}
+	}
+
+	private void handle(int command) {
+		switch (command) {
+		case START:
+			this.cpu.reset();
+			this.setState(RUNNING);
+			break;
+
+		case STOP:
+			this.setState(STOPPED);
+			break;
+
+		case PAUSE:
+			if (this.state == RUNNING)
+				this.setState(PAUSED);
+			break;
+
+		case RESUME:
+			if (this.state == PAUSED)
+				this.setState(RUNNING);
+			break;
+
+		case STEP:
+			if (this.state == RUNNING)
+				break;
+
+			this.setState(STEPPING);
+			try {
+				this.cpu.step();
+			} catch (UnknownOpcodeException e) {
+				this.failed(e);
+				break;
+			}
+			this.setState(this.cpu.isIdle() ? IDLE : PAUSED);
+			break;
+
+		case RESET:
+			this.cpu.reset();
+			this.setState(STOPPED);
+			break;
+		}
+	}
+
+	// Runs the Cpu until a command stops it, or it stops by itself.
+	private void execute() {
+		try {
+			this.cpu.execute();
+		} catch (UnknownOpcodeException e) {
+			this.failed(e);
+			return;
+		}
+
+		// A command sets the state itself, even if it came in IDL.
+		if (this.cpu.stop)
+			return;
+		
+		// Otherwise IDL, Cpu.setStopAfterCycles or step mode.
+		this.setState(this.cpu.isIdle() ? IDLE : STOPPED);
+	}
+
+	private void failed(UnknownOpcodeException e) {
+		this.setState(STOPPED);
+		if (this.listener != null)
+			this.listener.unknownOpcode(e);
+	}
+
+	private void setState(int state) {
+		if (state == this.state)
+			return;
+
+		this.state = state;
+		if (this.listener != null)
+			this.listener.stateChanged(state);
+	}
+}
@@ -0,0 +1,10 @@
+package com.akeysoft.elf.core;
+
+// Something that has to happen when the cycle counter gets to a given
+// value, see Scheduler.
+public interface ScheduledEvent {
+
+	// cycles is the cycle counter at the time, which the last instruction
+	// may have taken past the deadline.
+	void fire(long cycles);
+}
@@ -0,0 +1,153 @@
+package com.akeysoft.elf.core;
+
+// Events keyed by the cycle count they are due at, kept in a binary
+// min-heap of deadlines. Cpu.run() only looks at the earliest deadline
+// between steps, and engines never run an instruction past it, so every
+// event fires right after the instruction that reaches its deadline.
+public final class Scheduler {
+
+	private long[] deadlines;
+	private ScheduledEvent[] events;
+	private int size;
+
+	Scheduler() {
+		this.deadlines = new long[8];
+		this.events = new ScheduledEvent[8];
+		this.size = 0;
+	}
+
+	// Fires event once the cycle counter is at least cycles. An event may
+	// be scheduled more than once.
+	public void schedule(long cycles, ScheduledEvent event) {
+		if (this.size == this.deadlines.length) {
+			long[] deadlines = new long[this.size * 2];
+			ScheduledEvent[] events = new ScheduledEvent[this.size * 2];
+			System.arraycopy(this.deadlines, 0, deadlines, 0, this.size);
+			System.arraycopy(this.events, 0, events, 0, this.size);
+			this.deadlines = deadlines;
+			this.events = events;
+		}
+
+		this.deadlines[this.size] = cycles;
+		this.events[this.size] = event;
+		this.siftUp(this.size ++);
+	}
+
+	// Drops every pending firing of event. The others are packed down and
+	// heaped again, since removing entries one at a time moves those not
+	// yet looked at.
+	public void cancel(ScheduledEvent event) {
+		int kept = 0;
+		for (int i = 0; i < this.size; i ++) {
+			if (this.events[i] == event)
+				continue;
+
+			this.deadlines[kept] = this.deadlines[i];
+			this.events[kept] = this.events[i];
+			kept ++;
+		}
+		if (kept == this.size) return;
+
+		for (int i = kept; i < this.size; i ++) {
+			this.events[i] = null;
+		}
+		this.size = kept;
+		for (int i = (kept >> 1) - 1; i >= 0; i --) {
+			this.siftDown(i);
+		}
+	}
+
+	// The earliest deadline, or Long.MAX_VALUE if nothing is scheduled.
+	public long next() {
+		return (this.size == 0) ? Long.MAX_VALUE : this.deadlines[0];
+	}
+
+	// The earliest deadline of an event other than those in ignored.
+	long nextExcept(ScheduledEvent[] ignored) {
+		long next = Long.MAX_VALUE;
+		for (int i = 0; i < this.size; i ++) {
+			if (this.deadlines[i] < next && !contains(ignored, this.events[i]))
+				next = this.deadlines[i];
+		}
+		return next;
+	}
+
+	private static boolean contains(ScheduledEvent[] events, ScheduledEvent event) {
+		for (int i = 0; i < events.length; i ++) {
+			if (events[i] == event)
+				return true;
+		}
+		return false;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	// Fires the events due at cycles, earliest first. Events they schedule
+	// fire too if they are already due.
+	void fireDue(long cycles) {
+		while (this.size > 0 && this.deadlines[0] <= cycles) {
+			ScheduledEvent event = this.events[0];
+			this.removeAt(0);
+			event.fire(cycles);
+		}
+	}
+
+	private void removeAt(int i) {
+		int last = -- this.size;
+		if (i != last) {
+			this.deadlines[i] = this.deadlines[last];
+			this.events[i] = this.events[last];
+			this.events[last] = null;
+			if (!this.siftUp(i))
+				this.siftDown(i);
+		} else {
+			this.events[last] = null;
+		}
+	}
+
+	// Returns whether the entry moved.
+	private boolean siftUp(int i) {
+		long deadline = this.deadlines[i];
+		ScheduledEvent event = this.events[i];
+		int start = i;
+
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (this.deadlines[parent] <= deadline)
+				break;
+
+			this.deadlines[i] = this.deadlines[parent];
+			this.events[i] = this.events[parent];
+			i = parent;
+		}
+
+		this.deadlines[i] = deadline;
+		this.events[i] = event;
+
+		return i != start;
+	}
+
+	private void siftDown(int i) {
+		long deadline = this.deadlines[i];
+		ScheduledEvent event = this.events[i];
+
+		while (true) {
+			int child = i * 2 + 1;
+			if (child >= this.size)
+				break;
+			if (child + 1 < this.size && this.deadlines[child + 1] < this.deadlines[child])
+				child ++;
+			if (this.deadlines[child] >= deadline)
+				break;
+
+			this.deadlines[i] = this.deadlines[child];
+			this.events[i] = this.events[child];
+			i = child;
+		}
+
+		this.deadlines[i] = deadline;
+		this.events[i] = event;
+	}
+}
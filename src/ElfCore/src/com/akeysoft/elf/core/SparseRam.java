@@ -0,0 +1,134 @@
+package com.akeysoft.elf.core;
+
+import java.util.Arrays;
+
+// RAM that takes memory a 256-byte page at a time, on the first write
+// that changes the page. Pages not written yet are all one shared page of
+// zeros, so a read is two array loads and no branch, and writing a zero
+// to them allocates nothing. Most programs touch a few KB of the 64.
+public final class SparseRam extends MemoryBus {
+
+	public static final int PAGE_SIZE = 0x100;
+
+	// Never written.
+	private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+	private final byte[][] pages;
+	private int allocatedPages;
+
+	// size is rounded up to whole pages.
+	public SparseRam(int size) {
+		this.pages = new byte[(size + PAGE_SIZE - 1) / PAGE_SIZE][];
+		Arrays.fill(this.pages, ZERO_PAGE);
+		this.allocatedPages = 0;
+	}
+
+	public int getAllocatedBytes() {
+		return this.allocatedPages * PAGE_SIZE;
+	}
+
+	private byte[] allocate(int index) {
+		byte[] page = new byte[PAGE_SIZE];
+		this.pages[index] = page;
+		this.allocatedPages ++;
+		return page;
+	}
+
+	public int getSize() {
+		return this.pages.length * PAGE_SIZE;
+	}
+
+	public byte getByte(int address) {
+		return this.pages[address >> 8][address & 0xFF];
+	}
+
+	public int getUnsignedByte(int address) {
+		return this.pages[address >> 8][address & 0xFF] & 0xFF;
+	}
+
+	public void setByte(int address, byte value) {
+		if (this.mp) return;
+
+		int index = address >> 8;
+		int offset = address & 0xFF;
+		byte[] page = this.pages[index];
+		if (page[offset] == value) return;
+
+		if (page == ZERO_PAGE)
+			page = this.allocate(index);
+		page[offset] = value;
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(address, 1);
+		}
+	}
+
+	public void setBytes(int beginAddress, byte[] values, int offset, int length) {
+		if (this.mp) return;
+
+		int end = Math.min(beginAddress + length, this.getSize());
+		if (end <= beginAddress) return;
+
+		for (int address = beginAddress; address < end; ) {
+			int index = address >> 8;
+			int first = address & 0xFF;
+			int count = Math.min(end - address, PAGE_SIZE - first);
+			byte[] page = this.pages[index];
+			int from = offset + address - beginAddress;
+
+			if (page == ZERO_PAGE && !isZero(values, from, count))
+				page = this.allocate(index);
+			if (page != ZERO_PAGE)
+				System.arraycopy(values, from, page, first, count);
+
+			address += count;
+		}
+
+		if (this.listener != null) {
+			this.listener.bytesWritten(beginAddress, end - beginAddress);
+		}
+	}
+
+	public void getBytes(int beginAddress, byte[] values, int offset, int length) {
+		int end = beginAddress + length;
+		while (beginAddress < end) {
+			int first = beginAddress & 0xFF;
+			int count = Math.min(end - beginAddress, PAGE_SIZE - first);
+			System.arraycopy(this.pages[beginAddress >> 8], first, values, offset, count);
+
+			beginAddress += count;
+			offset += count;
+		}
+	}
+
+	public void fill(int address, int length, byte value) {
+		if (this.mp) return;
+
+		int end = address + length;
+		for (int next = address; next < end; ) {
+			int index = next >> 8;
+			int first = next & 0xFF;
+			int count = Math.min(end - next, PAGE_SIZE - first);
+			byte[] page = this.pages[index];
+
+			if (page == ZERO_PAGE && value != 0)
+				page = this.allocate(index);
+			if (page != ZERO_PAGE)
+				Arrays.fill(page, first, first + count, value);
+
+			next += count;
+		}
+
+		if (this.listener != null && length > 0) {
+			this.listener.bytesWritten(address, length);
+		}
+	}
+
+	private static boolean isZero(byte[] values, int offset, int length) {
+		for (int i = 0; i < length; i ++) {
+			if (values[offset + i] != 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,67 @@
+package com.akeysoft.elf.core;
+
+// Why Cpu.runFor returned. A stop reason is an int: the kind in bits 0-7,
+// and for BREAKPOINT and UNKNOWN_OPCODE the address in bits 8-23. For
+// UNKNOWN_OPCODE, bits 24-31 hold the opcode.
+public final class StopReason {
+
+	// The cycles asked for have passed.
+	public static final int BUDGET = 0;
+	// IDL.
+	public static final int IDLE = 1;
+	// R(P) reached a breakpoint.
+	public static final int BREAKPOINT = 2;
+	public static final int UNKNOWN_OPCODE = 3;
+	// Cpu.stop() was called.
+	public static final int STOP_REQUEST = 4;
+
+	private static final String[] NAMES = {
+		"budget", "idle", "breakpoint", "unknown opcode", "stop request"
+	};
+
+	private StopReason() {
+	}
+
+	public static int kind(int reason) {
+		return reason & 0xFF;
+	}
+
+	public static int address(int reason) {
+		return (reason >> 8) & 0xFFFF;
+	}
+
+	public static int opcode(int reason) {
+		return reason >>> 24;
+	}
+
+	// E.g. "unknown opcode 68 at 0012".
+	public static String toString(int reason) {
+		switch (kind(reason)) {
+		case BREAKPOINT:
+			return NAMES[BREAKPOINT] + " at " + hex(address(reason), 4);
+
+		case UNKNOWN_OPCODE:
+			return NAMES[UNKNOWN_OPCODE] + " " + hex(opcode(reason), 2) + " at " +
+					hex(address(reason), 4);
+
+		default:
+			return NAMES[kind(reason)];
+		}
+	}
+
+	static int at(int kind, int address) {
+		return kind | (address << 8);
+	}
+
+	static int unknownOpcode(int address, int opcode) {
+		return UNKNOWN_OPCODE | (address << 8) | (opcode << 24);
+	}
+
+	private static String hex(int value, int width) {
+		String result = Integer.toHexString(value);
+		while (result.length() < width) {
+			result = "0" + result;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,30 @@
+package com.akeysoft.elf.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+// The host's time. Waits park the thread and spin only for the last bit,
+// which parking cannot hit exactly.
+public final class SystemClock implements Clock {
+
+	// Parking wakes up this late or so; the rest is spun.
+	private static final long SPIN_NS = 50000L;
+
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	public void waitUntil(long time) {
+		long now = System.nanoTime();
+		if (time - now > SPIN_NS)
+			LockSupport.parkNanos(time - now - SPIN_NS);
+		while (System.nanoTime() - time < 0L) {
+		}
+	}
+
+	public boolean parkUntil(long time) {
+		long nanos = time - System.nanoTime();
+		if (nanos > 0L)
+			LockSupport.parkNanos(nanos);
+		return true;
+	}
+}
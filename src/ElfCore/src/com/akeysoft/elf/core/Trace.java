@@ -0,0 +1,60 @@
+package com.akeysoft.elf.core;
+
+// A path through hot code as it was seen running, SEP calls and returns
+// included, to be run again as one straight sequence.
+//
+// Instruction i runs with P = ps[i] at addresses[i]. Index count holds
+// where the path went on after the last instruction: the start again for
+// a trace that loops, otherwise the address the trace hands back to the
+// interpreter at.
+final class Trace {
+
+	// Where the instruction goes on depends on the machine state: a
+	// conditional branch or skip, SEP, RET or DIS. Leave the trace if it
+	// went anywhere else than when it was recorded.
+	static final int GUARD = 1 << 24;
+
+	// The instruction writes memory, maybe over the trace itself.
+	static final int STORE = 1 << 25;
+
+	// Opcode entries plus flags.
+	final int[] entries;
+	// Immediate byte or branch address, and the address following the
+	// instruction in the high 16 bits, like DecodeCache.operands.
+	final int[] operands;
+	final int[] ps;
+	final int[] addresses;
+	final int count;
+
+	final boolean loops;
+
+	// Cleared when code inside the trace is overwritten.
+	boolean valid;
+
+	Trace(int[] entries, int[] operands, int[] ps, int[] addresses, int count, boolean loops) {
+		this.entries = entries;
+		this.operands = operands;
+		this.ps = ps;
+		this.addresses = addresses;
+		this.count = count;
+		this.loops = loops;
+		this.valid = true;
+	}
+
+	int getP() {
+		return this.ps[0];
+	}
+
+	int getAddress() {
+		return this.addresses[0];
+	}
+
+	boolean covers(int address) {
+		for (int i = 0; i < this.count; i ++) {
+			if (((address - this.addresses[i]) & 0xFFFF) < Opcode.length(this.entries[i]))
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,81 @@
+package com.akeysoft.elf.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Recorded traces by the address they start at. Writes through the
+// MemoryBus drop every trace covering a written byte, and the address
+// starts counting its entries again.
+final class TraceCache implements RamListener {
+
+	private static final int SIZE = 0x10000;
+
+	final Trace[] traces;
+
+	// Entries into each address while no trace starts there.
+	final int[] counts;
+
+	private final List<Trace> recorded;
+
+	// Bytes that belong to a trace. Like in BlockCache, flags are not
+	// cleared when a trace goes away.
+	private final boolean[] code;
+
+	final TraceRecorder recorder;
+
+	private CodePages codePages;
+
+	TraceCache(MemoryBus ram, CodePages codePages) {
+		this.codePages = codePages;
+		this.traces = new Trace[SIZE];
+		this.counts = new int[SIZE];
+		this.recorded = new ArrayList<Trace>();
+		this.code = new boolean[SIZE];
+		this.recorder = new TraceRecorder(ram);
+	}
+
+	void add(Trace trace) {
+		Trace old = this.traces[trace.getAddress()];
+		if (old != null)
+			this.remove(old);
+
+		this.traces[trace.getAddress()] = trace;
+		this.recorded.add(trace);
+		for (int i = 0; i < trace.count; i ++) {
+			int length = Opcode.length(trace.entries[i]);
+			this.codePages.mark(trace.addresses[i], length);
+			for (int j = 0; j < length; j ++) {
+				this.code[(trace.addresses[i] + j) & 0xFFFF] = true;
+			}
+		}
+	}
+
+	int size() {
+		return this.recorded.size();
+	}
+
+	public void bytesWritten(int beginAddress, int length) {
+		for (int i = 0; i < length && i < SIZE; i ++) {
+			int address = (beginAddress + i) & 0xFFFF;
+			if (this.code[address])
+				this.invalidate(address);
+		}
+	}
+
+	private void invalidate(int address) {
+		for (int i = this.recorded.size() - 1; i >= 0; i --) {
+			Trace trace = this.recorded.get(i);
+			if (trace.covers(address)) {
+				this.remove(trace);
+				this.counts[trace.getAddress()] = 0;
+			}
+		}
+	}
+
+	private void remove(Trace trace) {
+		trace.valid = false;
+		this.recorded.remove(trace);
+		if (this.traces[trace.getAddress()] == trace)
+			this.traces[trace.getAddress()] = null;
+	}
+}
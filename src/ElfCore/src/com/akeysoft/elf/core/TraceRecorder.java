@@ -0,0 +1,136 @@
+package com.akeysoft.elf.core;
+
+// Writes down the instructions the interpreter runs from a hot address,
+// and turns them into a Trace once the path gets back to where it
+// started, reaches another trace, or comes to an instruction a trace
+// cannot run: I/O, IDL, MARK, unknown opcodes and instructions working on
+// R(P) as a register.
+final class TraceRecorder {
+
+	static final int MAX_INSTRUCTIONS = 512;
+
+	private MemoryBus ram;
+
+	private int[] entries;
+	private int[] operands;
+	private int[] ps;
+	private int[] addresses;
+	private int count;
+
+	TraceRecorder(MemoryBus ram) {
+		this.ram = ram;
+		this.entries = new int[MAX_INSTRUCTIONS + 1];
+		this.operands = new int[MAX_INSTRUCTIONS + 1];
+		this.ps = new int[MAX_INSTRUCTIONS + 1];
+		this.addresses = new int[MAX_INSTRUCTIONS + 1];
+		this.count = 0;
+	}
+
+	boolean isRecording() {
+		return this.count > 0;
+	}
+
+	void start(int p, int address, int entry, int operand) {
+		this.count = 0;
+		this.add(p, address, entry, operand);
+	}
+
+	// Called with the instruction the interpreter is about to run, and the
+	// trace at its address if any. Returns whether the instruction was
+	// added; if not, the recording is over and finish has to be called.
+	boolean record(int p, int x, int address, int entry, int operand, Trace trace) {
+		if (address == this.addresses[0] && p == this.ps[0])
+			return false;
+		if (trace != null && trace.getP() == p)
+			return false;
+		if (this.count == MAX_INSTRUCTIONS || !isTraceable(entry, p, x))
+			return false;
+
+		this.add(p, address, entry, operand);
+		return true;
+	}
+
+	// Returns the trace ending where the interpreter is now, or null if
+	// some of the recorded code has been overwritten meanwhile.
+	Trace finish(int p, int address) {
+		int count = this.count;
+		this.count = 0;
+
+		for (int i = 0; i < count; i ++) {
+			int entry = Opcode.TABLE[this.ram.getUnsignedByte(this.addresses[i])];
+			if (entry != (this.entries[i] & ~(Trace.GUARD | Trace.STORE)) ||
+					Opcode.operand(this.ram, this.addresses[i], entry) != (this.operands[i] & 0xFFFF))
+				return null;
+		}
+
+		this.ps[count] = p;
+		this.addresses[count] = address;
+		boolean loops = (address == this.addresses[0] && p == this.ps[0]);
+
+		return new Trace(trim(this.entries, count), trim(this.operands, count),
+				trim(this.ps, count + 1), trim(this.addresses, count + 1), count, loops);
+	}
+
+	static boolean isTraceable(int entry, int p, int x) {
+		if ((entry & Opcode.NEEDS_CPU) != 0)
+			return false;
+		if ((entry & Opcode.USES_N) != 0 && Opcode.n(entry) == p)
+			return false;
+		if ((entry & Opcode.USES_X) != 0 && x == p)
+			return false;
+
+		return true;
+	}
+
+	private void add(int p, int address, int entry, int operand) {
+		this.entries[this.count] = entry | flags(Opcode.handler(entry));
+		this.operands[this.count] = operand;
+		this.ps[this.count] = p;
+		this.addresses[this.count] = address;
+		this.count ++;
+	}
+
+	private static int flags(int handler) {
+		switch (handler) {
+		case Opcode.BQ:
+		case Opcode.BZ:
+		case Opcode.BDF:
+		case Opcode.B:
+		case Opcode.BNQ:
+		case Opcode.BNZ:
+		case Opcode.BNF:
+		case Opcode.BN:
+		case Opcode.LBQ:
+		case Opcode.LBZ:
+		case Opcode.LBDF:
+		case Opcode.LBNQ:
+		case Opcode.LBNZ:
+		case Opcode.LBNF:
+		case Opcode.LSNQ:
+		case Opcode.LSNZ:
+		case Opcode.LSNF:
+		case Opcode.LSIE:
+		case Opcode.LSQ:
+		case Opcode.LSZ:
+		case Opcode.LSDF:
+		case Opcode.SEP:
+		case Opcode.RET:
+		case Opcode.DIS:
+			return Trace.GUARD;
+
+		case Opcode.STR:
+		case Opcode.STXD:
+		case Opcode.SAV:
+			return Trace.STORE;
+
+		default:
+			return 0;
+		}
+	}
+
+	private static int[] trim(int[] values, int count) {
+		int[] result = new int[count];
+		System.arraycopy(values, 0, result, 0, count);
+		return result;
+	}
+}
@@ -0,0 +1,84 @@
+package com.akeysoft.elf.core;
+
+// Bookkeeping for code translated ahead of time by CosTranslator: which
+// chunk method covers an instruction, and whether memory still holds the
+// code that was translated.
+final class Translation implements RamListener {
+
+	private static final int SIZE = 0x10000;
+
+	private MemoryBus ram;
+	private byte[] image;
+
+	// Chunk index plus one by P and address, 0 if not translated.
+	private final short[][] chunks;
+
+	// Bytes of translated instructions, and which of them still match.
+	private final boolean[] code;
+	private final boolean[] matching;
+
+	// Number of translated bytes that no longer match the image. The
+	// translated code must not run unless this is 0.
+	int mismatches;
+
+	// keys holds (P << 16) | address of every translated instruction,
+	// ordered by chunk; chunk i starts at keys[chunkStarts[i]].
+	Translation(MemoryBus ram, CodePages codePages, byte[] image, int[] keys, int[] chunkStarts) {
+		this.ram = ram;
+		this.image = image;
+		this.chunks = new short[16][];
+		this.code = new boolean[SIZE];
+		this.matching = new boolean[SIZE];
+
+		int chunk = 0;
+		for (int i = 0; i < keys.length; i ++) {
+			while (chunk + 1 < chunkStarts.length && i >= chunkStarts[chunk + 1])
+				chunk ++;
+
+			int p = keys[i] >> 16;
+			int address = keys[i] & 0xFFFF;
+			if (this.chunks[p] == null)
+				this.chunks[p] = new short[SIZE];
+			this.chunks[p][address] = (short) (chunk + 1);
+
+			int length = Opcode.length(Opcode.TABLE[image[address] & 0xFF]);
+			codePages.mark(address, length);
+			for (int j = 0; j < length; j ++) {
+				this.code[address + j] = true;
+			}
+		}
+
+		this.mismatches = 0;
+		for (int address = 0; address < SIZE; address ++) {
+			if (this.code[address]) {
+				this.matching[address] = true;
+				this.check(address);
+			}
+		}
+	}
+
+	int chunk(int p, int address) {
+		short[] chunks = this.chunks[p];
+		return (chunks == null) ? -1 : chunks[address] - 1;
+	}
+
+	boolean isIntact() {
+		return this.mismatches == 0;
+	}
+
+	public void bytesWritten(int beginAddress, int length) {
+		for (int i = 0; i < length && i < SIZE; i ++) {
+			int address = (beginAddress + i) & 0xFFFF;
+			if (this.code[address])
+				this.check(address);
+		}
+	}
+
+	private void check(int address) {
+		boolean matches = this.ram.getByte(address) == this.image[address];
+		if (matches != this.matching[address]) {
+			this.matching[address] = matches;
+			this.mismatches += matches ? -1 : 1;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.akeysoft.elf.core;
+
+// The time of the emulated machine: the cycles a Cpu has run, at its
+// clock frequency. It does not depend on the host at all, so a run with
+// it is the same every time and never waits.
+public final class VirtualClock implements Clock {
+
+	private Cpu cpu;
+
+	public VirtualClock(Cpu cpu) {
+		this.cpu = cpu;
+	}
+
+	public long nanoTime() {
+		return (long) (this.cpu.getCycles() * Cpu.CLOCKS_PER_CYCLE * 1000000000.0 /
+				this.cpu.getClockFrequency());
+	}
+
+	// Nothing to wait for: the time moves only as the Cpu runs, and the
+	// Cpu is what is waiting.
+	public void waitUntil(long time) {
+	}
+
+	public boolean parkUntil(long time) {
+		return false;
+	}
+}
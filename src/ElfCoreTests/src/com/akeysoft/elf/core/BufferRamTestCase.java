@@ -0,0 +1,76 @@
+package com.akeysoft.elf.core;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class BufferRamTestCase extends TestCase {
+
+	public void testMatchesRam() {
+		MemoryBus[] buses = { BufferRam.allocateDirect(0x100), new Ram(0x100) };
+		final int[] written = new int[2];
+		for (int i = 0; i < buses.length; i ++) {
+			MemoryBus bus = buses[i];
+			final int index = i;
+			bus.setRamListener(new RamListener() {
+				public void bytesWritten(int beginAddress, int length) {
+					written[index] += length;
+				}
+			});
+
+			bus.setBytes(0x10, new byte[] { 1, 2, 3, 4, 5, 6 }, 1, 4);
+			bus.copy(0x10, 0x12, 6);
+			bus.copy(0x10, 0x40, 8);
+			bus.fill(0x30, 3, (byte) 9);
+			bus.fill(0x30, 5, (byte) 9);
+			bus.setByte(0x50, (byte) 0x80);
+			// Cut at the end of memory.
+			bus.setBytes(0xFE, new byte[] { 7, 7, 7, 7 });
+		}
+
+		byte[] expected = new byte[0x100];
+		byte[] actual = new byte[0x100];
+		buses[1].getBytes(0, expected, 0, expected.length);
+		buses[0].getBytes(0, actual, 0, actual.length);
+		for (int i = 0; i < expected.length; i ++) {
+			assertEquals("at " + i, expected[i], actual[i]);
+		}
+		assertEquals(written[1], written[0]);
+		assertEquals(0x80, buses[0].getUnsignedByte(0x50));
+	}
+
+	public void testSharesTheBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(0x100);
+		BufferRam ram = new BufferRam(buffer);
+		buffer.position(0x20);
+
+		ram.setBytes(0x10, new byte[] { 1, 2, 3 });
+		ram.fill(0x80, 4, (byte) 5);
+		assertEquals(2, buffer.get(0x11));
+		assertEquals(5, buffer.get(0x83));
+		assertEquals(0x20, buffer.position());
+
+		// Seen straight away when changed from outside.
+		buffer.put(0x90, (byte) 0x42);
+		assertEquals(0x42, ram.getUnsignedByte(0x90));
+
+		ram.setMp(true);
+		ram.setByte(0x10, (byte) 9);
+		assertEquals(1, buffer.get(0x10));
+	}
+
+	public void testCpuRuns() {
+		BufferRam ram = BufferRam.allocateDirect(0x10000);
+		// 0000: LDI 5A, PLO 3, SEX 3, STR 3, IDL
+		ram.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x5A, (byte) 0xA3, (byte) 0xE3, (byte) 0x53, (byte) 0x00
+		});
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			ram.setByte(0x5A, (byte) 0);
+			Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+			cpu.setDispatchMode(mode);
+			assertEquals(StopReason.IDLE, cpu.runFor(1000));
+			assertEquals(0x5A, ram.getUnsignedByte(0x5A));
+		}
+	}
+}
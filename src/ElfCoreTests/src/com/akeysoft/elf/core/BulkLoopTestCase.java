@@ -0,0 +1,145 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+// Bulk loops against the switch interpreter, which runs them a turn at
+// a time.
+public class BulkLoopTestCase extends TestCase {
+
+	// 0000: LDI 40, PLO 4, LDI 80, PLO 5, LDI 20, PLO 6
+	// 0009: LDA 4, STR 5, INC 5, DEC 6, GLO 6, BNZ 09
+	// 0010: IDL
+	private static final byte[] COPY = {
+		(byte) 0xF8, (byte) 0x40, (byte) 0xA4, (byte) 0xF8, (byte) 0x80, (byte) 0xA5,
+		(byte) 0xF8, (byte) 0x20, (byte) 0xA6,
+		(byte) 0x44, (byte) 0x55, (byte) 0x15, (byte) 0x26, (byte) 0x86, (byte) 0x3A, (byte) 0x09,
+		(byte) 0x00
+	};
+
+	// 0000: LDI 01, PHI 5, LDI 00, PLO 6
+	// 0006: LDI A5, STR 5, INC 5, DEC 6, GLO 6, BNZ 06
+	// 000E: IDL
+	private static final byte[] FILL = {
+		(byte) 0xF8, (byte) 0x01, (byte) 0xB5, (byte) 0xF8, (byte) 0x00, (byte) 0xA6,
+		(byte) 0xF8, (byte) 0xA5, (byte) 0x55, (byte) 0x15, (byte) 0x26, (byte) 0x86, (byte) 0x3A, (byte) 0x06,
+		(byte) 0x00
+	};
+
+	// 0000: LDI 01, PHI 7, LDI FF, PLO 7, SEX 7, LDI 90, PLO 6
+	// 0009: LDI 3C, STXD, DEC 6, GLO 6, BNZ 09
+	// 0010: IDL
+	private static final byte[] FILL_DOWN = {
+		(byte) 0xF8, (byte) 0x01, (byte) 0xB7, (byte) 0xF8, (byte) 0xFF, (byte) 0xA7, (byte) 0xE7,
+		(byte) 0xF8, (byte) 0x90, (byte) 0xA6,
+		(byte) 0xF8, (byte) 0x3C, (byte) 0x73, (byte) 0x26, (byte) 0x86, (byte) 0x3A, (byte) 0x0A,
+		(byte) 0x00
+	};
+
+	public void testMatch() {
+		Ram ram = new Ram(65536);
+		ram.setBytes(0, COPY);
+		int loop = BulkLoop.match(ram, 0x09);
+		assertEquals(BulkLoop.COPY, BulkLoop.pattern(loop));
+		assertEquals(4, BulkLoop.source(loop));
+		assertEquals(5, BulkLoop.dest(loop));
+		assertEquals(6, BulkLoop.counter(loop));
+		assertEquals(BulkLoop.NONE, BulkLoop.match(ram, 0x0A));
+
+		// BNZ going somewhere else.
+		ram.setByte(0x0F, (byte) 0x08);
+		assertEquals(BulkLoop.NONE, BulkLoop.match(ram, 0x09));
+
+		ram.setBytes(0, FILL_DOWN);
+		loop = BulkLoop.match(ram, 0x0A);
+		assertEquals(BulkLoop.FILL_DOWN, BulkLoop.pattern(loop));
+		assertEquals(0x3C, BulkLoop.value(loop));
+	}
+
+	public void testCopy() {
+		assertTrue(assertSameAsSwitch(COPY, false, Cpu.DISPATCH_PREDECODED).getSkippedCycles() > 0L);
+		assertTrue(assertSameAsSwitch(COPY, false, Cpu.DISPATCH_TRACED).getSkippedCycles() > 0L);
+	}
+
+	public void testFill() {
+		assertTrue(assertSameAsSwitch(FILL, false, Cpu.DISPATCH_PREDECODED).getSkippedCycles() > 0L);
+		assertTrue(assertSameAsSwitch(FILL, false, Cpu.DISPATCH_TRACED).getSkippedCycles() > 0L);
+	}
+
+	public void testFillDown() {
+		assertTrue(assertSameAsSwitch(FILL_DOWN, false, Cpu.DISPATCH_PREDECODED).getSkippedCycles() > 0L);
+		assertTrue(assertSameAsSwitch(FILL_DOWN, false, Cpu.DISPATCH_TRACED).getSkippedCycles() > 0L);
+	}
+
+	public void testWriteProtected() {
+		assertSameAsSwitch(COPY, true, Cpu.DISPATCH_PREDECODED);
+		assertSameAsSwitch(FILL, true, Cpu.DISPATCH_PREDECODED);
+	}
+
+	public void testOverlappingCopy() {
+		// Destination one above the source: the first byte repeats.
+		byte[] code = COPY.clone();
+		code[4] = (byte) 0x41;
+		assertSameAsSwitch(code, false, Cpu.DISPATCH_PREDECODED);
+	}
+
+	public void testLoopOverwritingItself() {
+		// Fills 0000-00FF, loop included.
+		byte[] code = FILL.clone();
+		code[1] = (byte) 0x00;
+		code[7] = (byte) 0x00;
+		assertSameAsSwitch(code, false, Cpu.DISPATCH_PREDECODED);
+	}
+
+	private Cpu assertSameAsSwitch(byte[] code, boolean mp, int mode) {
+		Ram ram = new Ram(65536);
+		Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		Ram switchedRam = new Ram(65536);
+		Cpu switched = new Cpu(switchedRam, new InputDevice(), new OutputDevice());
+		switched.setDispatchMode(Cpu.DISPATCH_SWITCH);
+		cpu.setDispatchMode(mode);
+
+		byte[] data = new byte[0x20];
+		for (int i = 0; i < data.length; i ++) {
+			data[i] = (byte) (i * 7 + 1);
+		}
+		ram.setBytes(0x40, data);
+		switchedRam.setBytes(0x40, data);
+		ram.setBytes(0, code);
+		switchedRam.setBytes(0, code);
+		ram.setMp(mp);
+		switchedRam.setMp(mp);
+
+		// Odd limits, so that bulk runs often have to stop in the middle
+		// of the loop.
+		for (long limit = 37; !switched.isIdle(); limit += 37) {
+			String message = "mode " + mode + ", limit " + limit;
+			try {
+				while (switched.getCycles() < limit && !switched.isIdle())
+					switched.step();
+				while (cpu.getCycles() < limit && !cpu.isIdle()) {
+					if (mode == Cpu.DISPATCH_TRACED)
+						cpu.stepTraced(limit - 1);
+					else
+						cpu.runCycles(limit - cpu.getCycles());
+				}
+			} catch (UnknownOpcodeException e) {
+				fail(message + ": " + e.getMessage());
+			}
+
+			assertEquals(message, switched.getCycles(), cpu.getCycles());
+			assertEquals(message, switched.getD(), cpu.getD());
+			assertEquals(message, switched.getDF(), cpu.getDF());
+			assertEquals(message, switched.getX(), cpu.getX());
+			for (int i = 0; i < 16; i ++) {
+				assertEquals(message, switched.getR(i), cpu.getR(i));
+			}
+		}
+
+		assertTrue(cpu.isIdle());
+		for (int address = 0; address < 0x200; address ++) {
+			assertEquals("at " + address, switchedRam.getByte(address), ram.getByte(address));
+		}
+
+		return cpu;
+	}
+}
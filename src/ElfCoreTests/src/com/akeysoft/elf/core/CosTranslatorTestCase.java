@@ -0,0 +1,96 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+// SecondsClockTomPittman is generated from elf-programs/Seconds Clock -
+// Tom Pittman.cos by CosTranslator.
+public class CosTranslatorTestCase extends TestCase {
+
+	private Ram translatedRam;
+	private OutputDevice translatedOutput;
+	private Cpu translated;
+
+	private Ram interpretedRam;
+	private OutputDevice interpretedOutput;
+	private Cpu interpreted;
+
+	protected void setUp() throws Exception {
+		translatedRam = new Ram(65536);
+		translatedOutput = new OutputDevice();
+		translated = new SecondsClockTomPittman(translatedRam, new InputDevice(), translatedOutput);
+		translatedRam.setBytes(0, SecondsClockTomPittman.IMAGE);
+
+		interpretedRam = new Ram(65536);
+		interpretedOutput = new OutputDevice();
+		interpreted = new Cpu(interpretedRam, new InputDevice(), interpretedOutput);
+		interpreted.setDispatchMode(Cpu.DISPATCH_SWITCH);
+		interpretedRam.setBytes(0, SecondsClockTomPittman.IMAGE);
+	}
+
+	public void testTranslatedCodeRuns() throws UnknownOpcodeException {
+		assertEquals(Cpu.DISPATCH_TRANSLATED, translated.getDispatchMode());
+		assertTrue(translated.translation.isIntact());
+
+		long limit = 1000000L;
+		translated.stepTranslated(limit);
+
+		// The whole clock is translated, nothing is left to interpret.
+		assertEquals(limit, translated.getCycles());
+	}
+
+	public void testSameStateAsInterpreter() throws UnknownOpcodeException {
+		assertSameStateUpTo(400000L);
+	}
+
+	public void testChangedImageIsInterpreted() throws UnknownOpcodeException {
+		// 00b2: ADCI 01 -> ADCI 02.
+		translatedRam.setByte(0xb3, (byte) 0x02);
+		assertFalse(translated.translation.isIntact());
+
+		// Putting the byte back makes the translated code usable again.
+		translatedRam.setByte(0xb3, (byte) 0x01);
+		assertTrue(translated.translation.isIntact());
+
+		translatedRam.setByte(0xb3, (byte) 0x02);
+		interpretedRam.setByte(0xb3, (byte) 0x02);
+		assertSameStateUpTo(100000L);
+	}
+
+	public void testTranslateIsRepeatable() {
+		String a = CosTranslator.translate(SecondsClockTomPittman.IMAGE, "A", "a.cos", 100000L);
+		String b = CosTranslator.translate(SecondsClockTomPittman.IMAGE, "A", "a.cos", 100000L);
+
+		assertEquals(a, b);
+		assertTrue(a.indexOf("public class A extends Cpu {") >= 0);
+		// Lint-clean: the cases fall through on purpose.
+		assertTrue(a.indexOf("@SuppressWarnings(\"fallthrough\")\n\tprivate boolean chunk0(") >= 0);
+	}
+
+	// Odd cycle limits, so that the translated code often has to stop
+	// in the middle of a loop.
+	private void assertSameStateUpTo(long cycles) throws UnknownOpcodeException {
+		for (long limit = 131; limit < cycles; limit += 131) {
+			while (translated.getCycles() < limit)
+				translated.stepTranslated(limit);
+			while (interpreted.getCycles() < limit)
+				interpreted.step();
+
+			String message = "at cycle limit " + limit;
+			assertEquals(message, interpreted.getCycles(), translated.getCycles());
+			assertEquals(message, interpreted.getD(), translated.getD());
+			assertEquals(message, interpreted.getDF(), translated.getDF());
+			assertEquals(message, interpreted.getP(), translated.getP());
+			assertEquals(message, interpreted.getX(), translated.getX());
+			for (int i = 0; i < 16; i ++) {
+				assertEquals(message, interpreted.getR(i), translated.getR(i));
+			}
+			assertEquals(message, interpretedOutput.isQOn(), translatedOutput.isQOn());
+			for (int i = 0; i < 7; i ++) {
+				assertEquals(message, interpretedOutput.getPort(i), translatedOutput.getPort(i));
+			}
+			for (int address = 0; address < 0x100; address ++) {
+				assertEquals(message, interpretedRam.getByte(address), translatedRam.getByte(address));
+			}
+		}
+	}
+}
@@ -0,0 +1,628 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class CpuDispatchTestCase extends TestCase {
+
+	private static final byte[] SECONDS_CLOCK_ON_HEX_DISPLAY = new byte[] {
+		(byte) 0x90, (byte) 0xa2, (byte) 0xb2, (byte) 0xb3, (byte) 0xf8, (byte) 0x33, (byte) 0xa3, (byte) 0x12,
+		(byte) 0x82, (byte) 0xfb, (byte) 0x0a, (byte) 0x3a, (byte) 0x1c, (byte) 0xf8, (byte) 0x00, (byte) 0xa2,
+		(byte) 0x92, (byte) 0xfc, (byte) 0x10, (byte) 0xb2, (byte) 0x92, (byte) 0xfb, (byte) 0x60, (byte) 0x3a,
+		(byte) 0x1c, (byte) 0xf8, (byte) 0x00, (byte) 0xb2, (byte) 0x82, (byte) 0x53, (byte) 0xe3, (byte) 0x92,
+		(byte) 0xf4, (byte) 0x53, (byte) 0x64, (byte) 0x23, (byte) 0xf8, (byte) 0xf6, (byte) 0xa1, (byte) 0xf8,
+		(byte) 0x90, (byte) 0xb1, (byte) 0x21, (byte) 0x91, (byte) 0x3a, (byte) 0x2a, (byte) 0x81, (byte) 0x3a,
+		(byte) 0x2a, (byte) 0x30, (byte) 0x07, (byte) 0x00
+	};
+
+	private Machine table;
+	private Machine switched;
+
+	protected void setUp() throws Exception {
+		table = new Machine(Cpu.DISPATCH_PREDECODED);
+		switched = new Machine(Cpu.DISPATCH_SWITCH);
+	}
+
+	public void testEveryOpcode() throws UnknownOpcodeException {
+		assertEveryOpcode(Cpu.DISPATCH_TABLE);
+		assertEveryOpcode(Cpu.DISPATCH_PREDECODED);
+		assertEveryOpcode(Cpu.DISPATCH_REGIONS);
+		assertEveryOpcode(Cpu.DISPATCH_TIERED);
+		assertEveryOpcode(Cpu.DISPATCH_TRACED);
+	}
+
+	public void testSecondsClockOnHexDisplay() throws UnknownOpcodeException {
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+
+		for (int i = 0; i < 200000; i ++) {
+			table.cpu.step();
+			switched.cpu.step();
+		}
+
+		assertSameState("after 200000 steps");
+	}
+
+	public void testBlocksStopAtCycleLimit() throws UnknownOpcodeException {
+		assertStopsAtCycleLimit(Cpu.DISPATCH_BLOCKS);
+	}
+
+	public void testRegionsStopAtCycleLimit() throws UnknownOpcodeException {
+		assertStopsAtCycleLimit(Cpu.DISPATCH_REGIONS);
+		assertTrue(table.cpu.getCompiledRegionCount() > 0);
+	}
+
+	// Each opcode compiled on its own, followed by IDL, where the region
+	// exits, with X = P and X != P, and both ways through the branches.
+	public void testRegionsRunEveryOpcode() throws UnknownOpcodeException {
+		int compiled = 0;
+
+		for (int code = 0; code < 256; code ++) {
+			for (int setup = 0; setup < 3; setup ++) {
+				int length = Opcode.length(Opcode.TABLE[code]);
+				byte[] program = new byte[] { (byte) code, 0x12, 0x34, 0x00 };
+				if (length < 3)
+					program[length] = 0x00;
+
+				table = new Machine(Cpu.DISPATCH_REGIONS);
+				switched = new Machine(Cpu.DISPATCH_SWITCH);
+				setUpRegisters(table, program, setup);
+				setUpRegisters(switched, program, setup);
+
+				Region region = RegionCompiler.compile(table.ram, 0, table.cpu.getP(), table.cpu.getX());
+				if (region == null)
+					continue;
+
+				// Skips land on the operands, which the region may run too.
+				region.run(table.cpu, table.cpu.r, table.ram, Long.MAX_VALUE);
+				do {
+					switched.cpu.step();
+				} while (switched.cpu.getCycles() < table.cpu.getCycles());
+				compiled ++;
+
+				assertSameState("opcode " + Integer.toHexString(code) + ", setup " + setup);
+			}
+		}
+
+		// All but I/O, IDL, MARK, SEP, RET, DIS, the unknown opcode, and
+		// R0 as R(n) or R(X).
+		assertTrue(compiled > 600);
+	}
+
+	public void testFusedStopsAtCycleLimit() throws UnknownOpcodeException {
+		assertStopsAtCycleLimit(Cpu.DISPATCH_FUSED);
+	}
+
+	public void testTieredStopsAtCycleLimit() throws UnknownOpcodeException {
+		assertStopsAtCycleLimit(Cpu.DISPATCH_TIERED);
+
+		long[] entries = table.cpu.getTierEntries();
+		long[] cycles = table.cpu.getTierCycles();
+		long total = 0;
+		for (int i = 0; i < Cpu.TIERS; i ++) {
+			assertTrue("tier " + i, entries[i] > 0);
+			total += cycles[i];
+		}
+		assertEquals(table.cpu.getCycles(), total);
+		assertTrue(cycles[Cpu.TIER_REGIONS] > cycles[Cpu.TIER_INTERPRETED]);
+		assertEquals(0, table.cpu.getDemotionCount());
+	}
+
+	public void testTracedStopsAtCycleLimit() throws UnknownOpcodeException {
+		assertStopsAtCycleLimit(Cpu.DISPATCH_TRACED);
+		assertTrue(table.cpu.getTraceCount() > 0);
+	}
+
+	public void testTraceThroughSubroutine() throws UnknownOpcodeException {
+		byte[] program = new byte[] {
+				(byte) 0xf8, 0x00,	// 00: LDI 00
+				(byte) 0xb4,		// 02: PHI 4
+				(byte) 0xf8, 0x20,	// 03: LDI 20
+				(byte) 0xa4,		// 05: PLO 4
+				(byte) 0xf8, 0x50,	// 06: LDI 50
+				(byte) 0xa5,		// 08: PLO 5
+				(byte) 0xd4,		// 09: SEP 4	<-- call
+				0x25,				// 0a: DEC 5
+				(byte) 0x85,		// 0b: GLO 5
+				0x3a, 0x09,			// 0c: BNZ 09
+				0x00,				// 0e: IDL
+				0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+				0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+				(byte) 0xd0,		// 1f: SEP 0	<-- return
+				0x16,				// 20: INC 6
+				0x30, 0x1f			// 21: BR 1f
+		};
+
+		table = new Machine(Cpu.DISPATCH_TRACED);
+		table.cpu.setCompileThreshold(2);
+		table.ram.setBytes(0, program);
+		switched.ram.setBytes(0, program);
+
+		while (!table.cpu.isIdle())
+			stepUpTo(table.cpu, Long.MAX_VALUE);
+		while (!switched.cpu.isIdle())
+			switched.cpu.step();
+
+		assertSameState("after IDL");
+		assertEquals(0x50, table.cpu.getR(6));
+		// The loop and the subroutine it calls became one trace.
+		assertEquals(1, table.cpu.getTraceCount());
+		assertTrue(table.cpu.getTracedCycles() > table.cpu.getCycles() * 9 / 10);
+	}
+
+	public void testFusedPatterns() throws UnknownOpcodeException {
+		byte[] program = new byte[] {
+				(byte) 0xf8, 0x00,	// 00: LDI 00
+				(byte) 0xb6,		// 02: PHI 6
+				(byte) 0xf8, 0x40,	// 03: LDI 40
+				(byte) 0xa6,		// 05: PLO 6
+				(byte) 0xe6,		// 06: SEX 6
+				0x64,				// 07: OUT 4
+				0x26,				// 08: DEC 6
+				(byte) 0xf8, 0x02,	// 09: LDI 02
+				(byte) 0xb7,		// 0b: PHI 7
+				(byte) 0xf8, 0x03,	// 0c: LDI 03
+				(byte) 0xa7,		// 0e: PLO 7
+				0x27,				// 0f: DEC 7
+				(byte) 0x97,		// 10: GHI 7
+				0x3a, 0x0f,			// 11: BNZ 0f
+				(byte) 0x87,		// 13: GLO 7
+				0x3a, 0x0f,			// 14: BNZ 0f
+				0x00				// 16: IDL
+		};
+
+		table = new Machine(Cpu.DISPATCH_FUSED);
+		table.ram.setBytes(0, program);
+		table.ram.setByte(0x40, (byte) 0x5a);
+		switched.ram.setBytes(0, program);
+		switched.ram.setByte(0x40, (byte) 0x5a);
+
+		// Delay loops are fast-forwarded from where a step starts, in
+		// steps as short as between two polls.
+		while (!table.cpu.isIdle())
+			stepUpTo(table.cpu, table.cpu.getCycles() + 100);
+		while (!switched.cpu.isIdle())
+			switched.cpu.step();
+
+		assertSameState("after IDL");
+		assertEquals(0x5a, table.outputDevice.getPort(3));
+
+		long[] counts = table.cpu.getFusedCounts();
+		assertEquals(Cpu.getFusedPatterns().length, counts.length);
+		assertTrue(counts[0] > 0);
+		assertTrue(counts[1] > 0);
+
+		// Most of both delay loops was fast-forwarded.
+		assertTrue(table.cpu.getSkippedCycles() > table.cpu.getCycles() / 2);
+	}
+
+	public void testRunWithoutPacing() throws UnknownOpcodeException {
+		long stopAfterCycles = 3000000L;
+
+		table = new Machine(Cpu.DISPATCH_FUSED);
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		table.cpu.setPacing(false);
+		table.cpu.setStopAfterCycles(stopAfterCycles);
+		table.cpu.run();
+
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		while (switched.cpu.getCycles() <= stopAfterCycles)
+			switched.cpu.step();
+
+		assertSameState("after run");
+		assertTrue(table.cpu.getSkippedCycles() > stopAfterCycles / 2);
+	}
+
+	public void testRunCyclesOnEveryOpcode() throws UnknownOpcodeException {
+		for (int code = 0; code < 256; code ++) {
+			// SEX 5 first, so that instructions on R(X) do not work on
+			// R(P). Those on R(0) still do.
+			byte[] program = new byte[] { (byte) 0xe5, (byte) code, 0x12, 0x34, 0x56 };
+
+			table = new Machine(Cpu.DISPATCH_PREDECODED);
+			switched = new Machine(Cpu.DISPATCH_SWITCH);
+			table.ram.setBytes(0, program);
+			switched.ram.setBytes(0, program);
+
+			if (code == 0x68) {
+				try {
+					table.cpu.runCycles(3);
+					fail("UnknownOpcodeException expected");
+				} catch (UnknownOpcodeException e) {
+					assertEquals("68", e.getMessage());
+				}
+				continue;
+			}
+
+			// Runs both instructions and stops.
+			table.cpu.runCycles(3);
+			switched.cpu.step();
+			switched.cpu.step();
+
+			assertSameState("opcode " + Integer.toHexString(code));
+		}
+	}
+
+	public void testRunCyclesStopsAfterBudget() throws UnknownOpcodeException {
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+
+		long limit = 0;
+		for (int i = 0; i < 2000; i ++) {
+			limit += 157;
+			table.cpu.runCycles(limit - table.cpu.getCycles());
+			while (switched.cpu.getCycles() < limit)
+				switched.cpu.step();
+
+			assertSameState("at cycle limit " + limit);
+		}
+
+		// run() stops where single steps would have.
+		long stopAfterCycles = limit + 3000L;
+		table.cpu.setPacing(false);
+		table.cpu.setStopAfterCycles(stopAfterCycles);
+		table.cpu.run();
+		while (switched.cpu.getCycles() <= stopAfterCycles)
+			switched.cpu.step();
+
+		assertSameState("after run");
+	}
+
+	public void testSwitchEnginesMidRun() throws UnknownOpcodeException {
+		ProfilingEngine profiling = new ProfilingEngine();
+		Engine[] engines = new Engine[] {
+			Cpu.getDispatchEngine(Cpu.DISPATCH_PREDECODED),
+			profiling,
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TABLE),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_BLOCKS),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_REGIONS),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_FUSED),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TIERED),
+			Cpu.getDispatchEngine(Cpu.DISPATCH_TRACED)
+		};
+
+		table.cpu.setCompileThreshold(2);
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+
+		long limit = 0;
+		for (int i = 0; i < 2000; i ++) {
+			Engine engine = engines[i % engines.length];
+			table.cpu.setEngine(engine);
+			assertSame(engine, table.cpu.getEngine());
+
+			limit += 157;
+			while (table.cpu.getCycles() < limit)
+				engine.step(table.cpu, limit - 1);
+			while (switched.cpu.getCycles() < limit)
+				switched.cpu.step();
+
+			assertSameState("at cycle limit " + limit + " with " + engine.getName());
+		}
+
+		long[] counts = profiling.getCounts();
+		long steps = 0;
+		for (int i = 0; i < counts.length; i ++) {
+			steps += counts[i];
+		}
+		assertTrue(steps > 0);
+
+		// run() picks up the engine too.
+		long stopAfterCycles = limit + 3000L;
+		table.cpu.setEngine(profiling);
+		table.cpu.setPacing(false);
+		table.cpu.setStopAfterCycles(stopAfterCycles);
+		table.cpu.run();
+		while (switched.cpu.getCycles() <= stopAfterCycles)
+			switched.cpu.step();
+
+		assertSameState("after run");
+		assertEquals("profiling", table.cpu.getEngine().getName());
+		assertTrue(table.cpu.getCyclesPerSecond() > 0);
+	}
+
+	public void testEngineOnCpuStateTakenAtPoll() throws UnknownOpcodeException {
+		final RegisterEngine engine = new RegisterEngine();
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+
+		// Asked for in the middle of a poll period; run() takes it at the
+		// next poll.
+		table.cpu.getScheduler().schedule(1000L, new ScheduledEvent() {
+			public void fire(long cycles) {
+				table.cpu.setEngine(engine);
+			}
+		});
+
+		long stopAfterCycles = 3 * Cpu.POLL_CYCLES;
+		table.cpu.setPacing(false);
+		table.cpu.setStopAfterCycles(stopAfterCycles);
+		table.cpu.run();
+		while (switched.cpu.getCycles() <= stopAfterCycles)
+			switched.cpu.step();
+
+		assertSameState("after run");
+		assertSame(engine, table.cpu.getEngine());
+		assertTrue(engine.firstCycles >= Cpu.POLL_CYCLES);
+		assertTrue(engine.firstCycles < Cpu.POLL_CYCLES + 3);
+		assertTrue(engine.own > 0);
+	}
+
+	public void testSelfModifyingCode() throws UnknownOpcodeException {
+		int[] modes = new int[] {
+			Cpu.DISPATCH_TABLE, Cpu.DISPATCH_SWITCH, Cpu.DISPATCH_PREDECODED,
+			Cpu.DISPATCH_BLOCKS, Cpu.DISPATCH_REGIONS, Cpu.DISPATCH_FUSED,
+			Cpu.DISPATCH_TIERED, Cpu.DISPATCH_TRACED
+		};
+
+		for (int i = 0; i < modes.length; i ++) {
+			Machine machine = new Machine(modes[i]);
+			// Compile the region around the STR before it patches it.
+			machine.cpu.setCompileThreshold(1);
+			machine.ram.setBytes(0, new byte[] {
+					(byte) 0xf8, 0x10,	// 00: LDI 10
+					(byte) 0xa1,		// 02: PLO 1
+					0x30, 0x10,			// 03: BR 10
+					(byte) 0xf8, 0x7b,	// 05: LDI 7B
+					0x51,				// 07: STR 1	<-- turns the REQ into SEQ
+					0x30, 0x10,			// 08: BR 10
+					0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+					0x7a,				// 10: REQ
+					(byte) 0x8f,		// 11: GLO F
+					0x3a, 0x18,			// 12: BNZ 18
+					0x1f,				// 14: INC F
+					0x30, 0x05,			// 15: BR 05
+					0x00,
+					0x00				// 18: IDL
+			});
+
+			// Regions are compiled where the cycle limit stops the
+			// interpreter.
+			while (!machine.cpu.isIdle())
+				stepUpTo(machine.cpu, machine.cpu.getCycles() + 8);
+
+			assertTrue("dispatch mode " + modes[i], machine.outputDevice.isQOn());
+			assertEquals("dispatch mode " + modes[i], 30, machine.cpu.getCycles());
+			if (modes[i] == Cpu.DISPATCH_TIERED || modes[i] == Cpu.DISPATCH_REGIONS)
+				assertTrue(machine.cpu.getDemotionCount() > 0);
+		}
+	}
+
+	public void testDevicesSeeCyclesAtTheirInstruction() throws UnknownOpcodeException {
+		int[] modes = new int[] {
+			Cpu.DISPATCH_TABLE, Cpu.DISPATCH_PREDECODED, Cpu.DISPATCH_BLOCKS,
+			Cpu.DISPATCH_REGIONS, Cpu.DISPATCH_FUSED, Cpu.DISPATCH_TIERED,
+			Cpu.DISPATCH_TRACED
+		};
+
+		String expected = outputCycles(Cpu.DISPATCH_SWITCH);
+		for (int i = 0; i < modes.length; i ++) {
+			assertEquals("dispatch mode " + modes[i], expected, outputCycles(modes[i]));
+		}
+	}
+
+	// Runs a loop of SEQ, OUT, SEX OUT DEC and REQ and lists the cycle
+	// counter each time the output device passes a change on.
+	private String outputCycles(int dispatchMode) throws UnknownOpcodeException {
+		final Machine machine = new Machine(dispatchMode);
+		final StringBuffer seen = new StringBuffer();
+		machine.cpu.setCompileThreshold(1);
+		machine.outputDevice.setOutputListener(new OutputListener() {
+			public void setQ(boolean isOn) {
+				seen.append(isOn ? " Q" : " q").append(machine.cpu.getCycles());
+			}
+
+			public void setPort(int index, byte value) {
+				seen.append(" P").append(machine.cpu.getCycles());
+			}
+		});
+		machine.ram.setBytes(0, new byte[] {
+				(byte) 0xf8, 0x40,	// 00: LDI 40
+				(byte) 0xa2,		// 02: PLO 2
+				(byte) 0xa3,		// 03: PLO 3
+				(byte) 0xe2,		// 04: SEX 2
+				(byte) 0x8f,		// 05: GLO F
+				0x52,				// 06: STR 2
+				0x7b,				// 07: SEQ
+				0x64,				// 08: OUT 4
+				(byte) 0xe3,		// 09: SEX 3
+				0x65,				// 0A: OUT 5
+				0x23,				// 0B: DEC 3
+				0x7a,				// 0C: REQ
+				0x1f,				// 0D: INC F
+				(byte) 0x8f,		// 0E: GLO F
+				0x3a, 0x00,			// 0F: BNZ 00
+				0x00				// 11: IDL
+		});
+
+		while (!machine.cpu.isIdle())
+			stepUpTo(machine.cpu, machine.cpu.getCycles() + 100);
+
+		return seen.toString();
+	}
+
+	private static void setUpRegisters(Machine machine, byte[] program, int setup) {
+		for (int address = 0x40; address < 0x100; address ++) {
+			machine.ram.setByte(address, (byte) (address * 37));
+		}
+		machine.ram.setBytes(0, program);
+		machine.ram.setBytes(0x12, new byte[] { 0x00, 0x00, 0x00 });
+		for (int i = 1; i < 16; i ++) {
+			machine.cpu.setR(i, 0x40 + i * 11);
+		}
+
+		machine.cpu.setX(setup == 0 ? 0 : 5);
+		machine.cpu.setD(setup == 2 ? 0x00 : 0xA5);
+		machine.cpu.setDF(setup == 2 ? 0 : 1);
+		machine.cpu.setT(0x3C);
+		machine.cpu.setIE(setup == 2 ? 0 : 1);
+		machine.cpu.setEf(1, true);
+		machine.cpu.setEf(2, setup == 2);
+		machine.outputDevice.setQ(setup == 2);
+	}
+
+	private void assertStopsAtCycleLimit(int dispatchMode) throws UnknownOpcodeException {
+		table = new Machine(dispatchMode);
+		table.cpu.setCompileThreshold(2);
+		table.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+		switched.ram.setBytes(0, SECONDS_CLOCK_ON_HEX_DISPLAY);
+
+		// An odd limit, so that some blocks have to fall back to single steps.
+		long limit = 0;
+		for (int i = 0; i < 2000; i ++) {
+			limit += 157;
+			while (table.cpu.getCycles() < limit)
+				stepUpTo(table.cpu, limit);
+			while (switched.cpu.getCycles() < limit)
+				switched.cpu.step();
+
+			assertSameState("at cycle limit " + limit);
+		}
+	}
+
+	private void stepUpTo(Cpu cpu, long cycleLimit) throws UnknownOpcodeException {
+		switch (cpu.getDispatchMode()) {
+		case Cpu.DISPATCH_BLOCKS:
+			cpu.stepBlock(cycleLimit);
+			break;
+
+		case Cpu.DISPATCH_REGIONS:
+			cpu.stepRegions(cycleLimit);
+			break;
+
+		case Cpu.DISPATCH_FUSED:
+			cpu.stepFused(cycleLimit);
+			break;
+
+		case Cpu.DISPATCH_TIERED:
+			cpu.stepTiered(cycleLimit);
+			break;
+
+		case Cpu.DISPATCH_TRACED:
+			cpu.stepTraced(cycleLimit);
+			break;
+
+		default:
+			cpu.step();
+			break;
+		}
+	}
+
+	private void assertEveryOpcode(int dispatchMode) throws UnknownOpcodeException {
+		for (int code = 0; code < 256; code ++) {
+			byte[] program = new byte[] { (byte) code, 0x12, 0x34, 0x56 };
+
+			table = new Machine(dispatchMode);
+			table.cpu.setCompileThreshold(1);
+			switched = new Machine(Cpu.DISPATCH_SWITCH);
+			table.ram.setBytes(0, program);
+			switched.ram.setBytes(0, program);
+
+			if (code == 0x68) {
+				assertUnknownOpcode(table.cpu);
+				assertUnknownOpcode(switched.cpu);
+				continue;
+			}
+
+			// No instruction takes more than three cycles, so this runs
+			// exactly one.
+			stepUpTo(table.cpu, 3);
+			switched.cpu.step();
+
+			assertSameState("opcode " + Integer.toHexString(code));
+		}
+	}
+
+	private void assertUnknownOpcode(Cpu cpu) {
+		try {
+			cpu.step();
+			fail("UnknownOpcodeException expected");
+		} catch (UnknownOpcodeException e) {
+			assertEquals("68", e.getMessage());
+		}
+	}
+
+	private void assertSameState(String message) {
+		Cpu a = table.cpu;
+		Cpu b = switched.cpu;
+
+		assertEquals(message, a.getCycles(), b.getCycles());
+		assertEquals(message, a.getD(), b.getD());
+		assertEquals(message, a.getDF(), b.getDF());
+		assertEquals(message, a.getP(), b.getP());
+		assertEquals(message, a.getX(), b.getX());
+		assertEquals(message, a.getT(), b.getT());
+		assertEquals(message, a.getIE(), b.getIE());
+		assertEquals(message, a.isIdle(), b.isIdle());
+		for (int i = 0; i < 16; i ++) {
+			assertEquals(message, a.getR(i), b.getR(i));
+		}
+
+		assertEquals(message, table.outputDevice.isQOn(), switched.outputDevice.isQOn());
+		for (int i = 0; i < 7; i ++) {
+			assertEquals(message, table.outputDevice.getPort(i), switched.outputDevice.getPort(i));
+		}
+
+		for (int address = 0; address < 0x100; address ++) {
+			assertEquals(message, table.ram.getByte(address), switched.ram.getByte(address));
+		}
+	}
+
+	// Runs INC, DEC, GLO and PLO itself through CpuState, and leaves the
+	// rest to CpuState.step().
+	private static class RegisterEngine implements Engine {
+		long firstCycles = -1L;
+		long own;
+
+		public String getName() {
+			return "registers";
+		}
+
+		public void step(CpuState state, long cycleLimit) throws UnknownOpcodeException {
+			if (this.firstCycles < 0L)
+				this.firstCycles = state.getCycles();
+
+			int pc = state.getR(state.getP());
+			int code = state.getRam().getUnsignedByte(pc);
+			int n = code & 0x0F;
+			if (n == state.getP()) {
+				state.step();
+				return;
+			}
+
+			switch (code >> 4) {
+			case 0x1:
+				state.setR(n, state.getR(n) + 1);
+				break;
+			case 0x2:
+				state.setR(n, state.getR(n) - 1);
+				break;
+			case 0x8:
+				state.setD(state.getR(n));
+				break;
+			case 0xA:
+				state.setR(n, (state.getR(n) & 0xFF00) | state.getD());
+				break;
+			default:
+				state.step();
+				return;
+			}
+
+			state.setR(state.getP(), pc + 1);
+			state.addCycles(2);
+			this.own ++;
+		}
+	}
+
+	private static class Machine {
+		final Ram ram;
+		final OutputDevice outputDevice;
+		final Cpu cpu;
+
+		Machine(int dispatchMode) {
+			this.ram = new Ram(65536);
+			this.outputDevice = new OutputDevice();
+			this.cpu = new Cpu(ram, new InputDevice(), outputDevice);
+			this.cpu.setDispatchMode(dispatchMode);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.akeysoft.elf.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class DmaTestCase extends TestCase {
+
+	// 0000: LDI 10, PLO 3, SEP 3
+	// 0010: LDI 02, PHI 0, LDI 00, PLO 0
+	// 0016: BR 16
+	private static final byte[] LOOP = {
+		(byte) 0xF8, (byte) 0x10, (byte) 0xA3, (byte) 0xD3
+	};
+	private static final byte[] SET_R0 = {
+		(byte) 0xF8, (byte) 0x02, (byte) 0xB0, (byte) 0xF8, (byte) 0x00, (byte) 0xA0,
+		(byte) 0x30, (byte) 0x16
+	};
+
+	private Ram ram;
+	private Cpu cpu;
+	private Dma dma;
+
+	protected void setUp() throws Exception {
+		ram = new Ram(65536);
+		cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		dma = cpu.getDma();
+	}
+
+	public void testIn() {
+		cpu.r[0] = 0x0100;
+		byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+		assertEquals(8, dma.in(data, 1, 8));
+
+		assertEquals(0x0108, cpu.getR(0));
+		assertEquals(8, cpu.getCycles());
+		assertEquals(8, dma.getStolenCycles());
+		for (int i = 0; i < 8; i ++) {
+			assertEquals(i + 2, ram.getByte(0x0100 + i));
+		}
+	}
+
+	public void testOutWraps() {
+		for (int i = 0; i < 4; i ++) {
+			ram.setByte(0xFFFC + i, (byte) (0x10 + i));
+			ram.setByte(i, (byte) (0x20 + i));
+		}
+
+		cpu.r[0] = 0xFFFC;
+		byte[] line = new byte[8];
+		assertEquals(8, dma.out(line, 0, 8));
+		assertEquals(0x0004, cpu.getR(0));
+		for (int i = 0; i < 4; i ++) {
+			assertEquals(0x10 + i, line[i]);
+			assertEquals(0x20 + i, line[4 + i]);
+		}
+	}
+
+	public void testInstant() {
+		dma.setInstant(true);
+		cpu.r[0] = 0x0200;
+		assertEquals(0, dma.in(new byte[256], 0, 256));
+		assertEquals(0x0300, cpu.getR(0));
+		assertEquals(0, cpu.getCycles());
+	}
+
+	public void testWriteDropsDecodedCode() {
+		// 0000: LDI 10, PLO 3, SEP 3
+		// 0010: INC 4, BR 10
+		ram.setBytes(0, LOOP);
+		ram.setBytes(0x10, new byte[] { (byte) 0x14, (byte) 0x30, (byte) 0x10 });
+		cpu.setDispatchMode(Cpu.DISPATCH_PREDECODED);
+		assertEquals(StopReason.BUDGET, cpu.runFor(100));
+
+		// INC 4 becomes INC 5.
+		cpu.r[0] = 0x10;
+		dma.in(new byte[] { (byte) 0x15 }, 0, 1);
+		int r5 = cpu.getR(5);
+		assertEquals(StopReason.BUDGET, cpu.runFor(100));
+		assertTrue(cpu.getR(5) > r5);
+	}
+
+	public void testVideoLinesFromEvents() {
+		ram.setBytes(0, LOOP);
+		ram.setBytes(0x10, SET_R0);
+		for (int i = 0; i < 0x80; i ++) {
+			ram.setByte(0x0200 + i, (byte) (i * 7));
+		}
+
+		// Sixteen lines of eight bytes, one every 14 cycles, as the 1861
+		// fetches them.
+		final byte[] frame = new byte[0x80];
+		final Scheduler scheduler = cpu.getScheduler();
+		scheduler.schedule(1000L, new ScheduledEvent() {
+			private int line = 0;
+
+			public void fire(long cycles) {
+				dma.out(frame, line * 8, 8);
+				if (++ line < 16)
+					scheduler.schedule(cycles + 14, this);
+			}
+		});
+
+		assertEquals(StopReason.BUDGET, cpu.runFor(2000));
+		assertEquals(0x0280, cpu.getR(0));
+		assertEquals(128, dma.getStolenCycles());
+		assertEquals(3, cpu.getP());
+		for (int i = 0; i < frame.length; i ++) {
+			assertEquals(ram.getByte(0x0200 + i), frame[i]);
+		}
+	}
+
+	public void testPostedBytesEndIdl() {
+		// 0016: IDL, BR 16
+		ram.setBytes(0, LOOP);
+		ram.setBytes(0x10, SET_R0);
+		ram.setBytes(0x16, new byte[] { (byte) 0x00, (byte) 0x30, (byte) 0x16 });
+		final int[] seen = new int[2];
+		dma.setDmaListener(new DmaListener() {
+			public void bytesIn(int beginAddress, int length) {
+				seen[0] = beginAddress;
+				seen[1] += length;
+			}
+		});
+
+		assertEquals(StopReason.IDLE, cpu.runFor(1000));
+		long cycles = cpu.getCycles();
+
+		dma.post(new byte[] { 1, 2, 3 });
+		assertEquals(StopReason.IDLE, cpu.runFor(1000));
+		// Three stolen, then BR and IDL again.
+		assertEquals(cycles + 3 + 4, cpu.getCycles());
+		assertEquals(0x0203, cpu.getR(0));
+		assertEquals(3, ram.getByte(0x0202));
+		assertEquals(0x0200, seen[0]);
+		assertEquals(3, seen[1]);
+	}
+
+	public void testControllerLoadsWhileStopped() throws InterruptedException {
+		RunController controller = new RunController(cpu);
+		final CountDownLatch loaded = new CountDownLatch(2);
+		dma.setDmaListener(new DmaListener() {
+			public void bytesIn(int beginAddress, int length) {
+				loaded.countDown();
+			}
+		});
+		dma.setInstant(true);
+
+		// As the ELF's load mode, from reset.
+		controller.reset();
+		dma.post(new byte[] { (byte) 0x7B });
+		dma.post(new byte[] { (byte) 0x00 });
+		assertTrue(loaded.await(1, TimeUnit.SECONDS));
+		assertEquals(RunController.STOPPED, controller.getState());
+		assertEquals(2, cpu.getR(0));
+		assertEquals(0, cpu.getCycles());
+
+		controller.shutdown();
+		controller.join(1000);
+		assertEquals(0x7B, ram.getUnsignedByte(0));
+	}
+}
@@ -0,0 +1,234 @@
+package com.akeysoft.elf.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class InputWaitTestCase extends TestCase {
+
+	private Ram ram;
+	private InputDevice inputDevice;
+	private Cpu cpu;
+
+	protected void setUp() throws Exception {
+		ram = new Ram(65536);
+		inputDevice = new InputDevice();
+		cpu = new Cpu(ram, inputDevice, new OutputDevice());
+	}
+
+	public void testEfLoopIsSkippedInEveryEngine() {
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			// 0000: BN4 00, INC 1, IDL
+			ram.setBytes(0, new byte[] { (byte) 0x3F, (byte) 0x00, (byte) 0x11, (byte) 0x00 });
+			cpu.reset();
+			cpu.setEf(3, false);
+			cpu.setDispatchMode(mode);
+
+			String message = "mode " + mode;
+			long skipped = cpu.getSkippedCycles();
+			int r1 = cpu.getR(1);
+			assertEquals(message, StopReason.BUDGET, cpu.runFor(10000000L));
+			assertEquals(message, 10000000L, cpu.getCycles());
+			assertTrue(message, cpu.getSkippedCycles() - skipped > 9900000L);
+			assertEquals(message, 0, cpu.getR(0));
+
+			cpu.setEf(3, true);
+			assertEquals(message, StopReason.IDLE, cpu.runFor(10000000L));
+			assertEquals(message, r1 + 1, cpu.getR(1));
+		}
+	}
+
+	public void testInputPortLoop() {
+		// 0000: LDI 80, PLO 2, SEX 2
+		// 0004: INP 4, BZ 04, IDL
+		ram.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x80, (byte) 0xA2, (byte) 0xE2,
+				(byte) 0x6C, (byte) 0x32, (byte) 0x04, (byte) 0x00
+		});
+
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000000L));
+		assertTrue(cpu.getSkippedCycles() > 990000L);
+
+		inputDevice.setPort(3, (byte) 0x5A);
+		assertEquals(StopReason.IDLE, cpu.runFor(1000000L));
+		assertEquals(0x5A, cpu.getD());
+		assertEquals((byte) 0x5A, ram.getByte(0x80));
+	}
+
+	public void testInputChangeInTheMiddleOfAWait() throws UnknownOpcodeException {
+		// One of the delays reaches INP right as poll first looks, before
+		// any turn of the loop has latched the input.
+		for (int delay = 0x3A0; delay < 0x3B0; delay ++) {
+			// 0000: LDI 80, PLO 2, SEX 2, SEX 2, LDI 33, STR 2
+			// 0008: LDI hi, PHI 6, LDI lo, PLO 6
+			// 000E: DEC 6, GHI 6, BNZ 0E
+			// 0012: LDI 77
+			// 0014: INP 4, BZ 14, IDL
+			byte[] code = {
+				(byte) 0xF8, (byte) 0x80, (byte) 0xA2, (byte) 0xE2, (byte) 0xE2,
+				(byte) 0xF8, (byte) 0x33, (byte) 0x52,
+				(byte) 0xF8, (byte) (delay >> 8), (byte) 0xB6, (byte) 0xF8, (byte) delay, (byte) 0xA6,
+				(byte) 0x26, (byte) 0x96, (byte) 0x3A, (byte) 0x0E,
+				(byte) 0xF8, (byte) 0x77,
+				(byte) 0x6C, (byte) 0x32, (byte) 0x14, (byte) 0x00
+			};
+			// At the start of a turn, where the skip ends.
+			long deadline = 10000L;
+
+			Ram switchedRam = new Ram(65536);
+			InputDevice switchedInput = new InputDevice();
+			Cpu switched = new Cpu(switchedRam, switchedInput, new OutputDevice());
+			switched.setDispatchMode(Cpu.DISPATCH_SWITCH);
+			switchedRam.setBytes(0, code);
+			while (switched.getCycles() < deadline)
+				switched.step();
+			long[] expected = { switched.getCycles(), switched.getD(), switchedRam.getUnsignedByte(0x80) };
+			switchedInput.setPort(3, (byte) 0x5A);
+			while (!switched.isIdle())
+				switched.step();
+
+			for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+				final Ram ram = new Ram(65536);
+				final InputDevice inputDevice = new InputDevice();
+				final Cpu cpu = new Cpu(ram, inputDevice, new OutputDevice());
+				cpu.setDispatchMode(mode);
+				ram.setBytes(0, code);
+
+				final long[] seen = new long[3];
+				cpu.getScheduler().schedule(deadline, new ScheduledEvent() {
+					public void fire(long cycles) {
+						seen[0] = cycles;
+						seen[1] = cpu.getD();
+						seen[2] = ram.getUnsignedByte(0x80);
+						inputDevice.setPort(3, (byte) 0x5A);
+					}
+				});
+				assertEquals(StopReason.IDLE, cpu.runFor(100000L));
+
+				String message = "delay " + Integer.toHexString(delay) + ", mode " + mode;
+				assertTrue(message, cpu.getSkippedCycles() > 0L);
+				for (int i = 0; i < expected.length; i ++) {
+					assertEquals(message, expected[i], seen[i]);
+				}
+				assertEquals(message, switched.getCycles(), cpu.getCycles());
+				assertEquals(message, 0x5A, cpu.getD());
+				assertEquals(message, 0x5A, ram.getUnsignedByte(0x80));
+			}
+		}
+	}
+
+	public void testLoopThatWritesItsInputIsRun() {
+		// X = P, so INP stores into the code: 0000: INP 4, BZ 00
+		ram.setBytes(0, new byte[] { (byte) 0x6C, (byte) 0x32, (byte) 0x00 });
+
+		cpu.runFor(100000L);
+		assertEquals(0L, cpu.getSkippedCycles());
+	}
+
+	public void testParksUntilEf() throws InterruptedException {
+		// 0000: BN4 00, INC 1, IDL
+		ram.setBytes(0, new byte[] { (byte) 0x3F, (byte) 0x00, (byte) 0x11, (byte) 0x00 });
+		cpu.setPacing(false);
+
+		final long[] cpuTime = new long[1];
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+				try {
+					cpu.run();
+				} catch (UnknownOpcodeException e) {
+				}
+				cpuTime[0] = threads.getCurrentThreadCpuTime();
+			}
+		});
+		thread.start();
+		Thread.sleep(500L);
+		assertTrue(thread.isAlive());
+
+		cpu.setEf(3, true);
+		thread.join(5000L);
+		assertFalse(thread.isAlive());
+		assertTrue(cpu.isIdle());
+		assertEquals(1, cpu.getR(1));
+
+		// Spinning for half a second would have taken about that long.
+		assertTrue("cpu time " + cpuTime[0] / 1000000L + " ms", cpuTime[0] < 250000000L);
+	}
+
+	public void testPostsFromTwoThreads() throws InterruptedException {
+		// 0000: LDI 80, PLO 2, SEX 2
+		// 0004: INP 4, BZ 04, IDL
+		ram.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x80, (byte) 0xA2, (byte) 0xE2,
+				(byte) 0x6C, (byte) 0x32, (byte) 0x04, (byte) 0x00
+		});
+		cpu.setPacing(false);
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					cpu.run();
+				} catch (UnknownOpcodeException e) {
+				}
+			}
+		});
+		final CountDownLatch start = new CountDownLatch(1);
+		Runnable poster = new Runnable() {
+			public void run() {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 1000000; i ++) {
+					inputDevice.setPort(3, (byte) 0x00);
+				}
+			}
+		};
+		Thread first = new Thread(poster);
+		Thread second = new Thread(poster);
+		thread.start();
+		first.start();
+		second.start();
+		start.countDown();
+		first.join(10000L);
+		second.join(10000L);
+
+		// Every post counts, so none can leave the Cpu parked.
+		assertEquals(2000000, inputDevice.changes);
+		assertTrue(thread.isAlive());
+
+		inputDevice.setPort(3, (byte) 0x5A);
+		thread.join(5000L);
+		assertFalse(thread.isAlive());
+		assertTrue(cpu.isIdle());
+		assertEquals(0x5A, cpu.getD());
+	}
+
+	public void testPacedWaitKeepsTime() throws InterruptedException {
+		// 0000: BN4 00, IDL
+		ram.setBytes(0, new byte[] { (byte) 0x3F, (byte) 0x00, (byte) 0x00 });
+		cpu.setSpeed(10.0);
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					cpu.run();
+				} catch (UnknownOpcodeException e) {
+				}
+			}
+		});
+		thread.start();
+		Thread.sleep(300L);
+		cpu.setEf(3, true);
+		thread.join(5000L);
+
+		// 300 ms at 10x are about 670000 cycles, nearly all of them skipped.
+		assertTrue(cpu.isIdle());
+		assertTrue("cycles " + cpu.getCycles(), cpu.getCycles() > 500000L);
+		assertTrue("cycles " + cpu.getCycles(), cpu.getCycles() < 1500000L);
+		assertTrue(cpu.getSkippedCycles() > cpu.getCycles() / 2);
+	}
+}
@@ -0,0 +1,161 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class InterruptTestCase extends TestCase {
+
+	// 0000: LDI 21, PLO 1, LDI FF, PLO 2
+	// 0006: INC 5, BR 06
+	//
+	// The handler counts interrupts in R6:
+	//
+	// 0020: RET
+	// 0021: DEC 2, SAV, INC 6, BR 20
+	private static final byte[] COUNTER = {
+		(byte) 0xF8, (byte) 0x21, (byte) 0xA1, (byte) 0xF8, (byte) 0xFF, (byte) 0xA2,
+		(byte) 0x15, (byte) 0x30, (byte) 0x06
+	};
+	private static final byte[] HANDLER = {
+		(byte) 0x70, (byte) 0x22, (byte) 0x78, (byte) 0x16, (byte) 0x30, (byte) 0x20
+	};
+
+	private Ram ram;
+	private Cpu cpu;
+
+	protected void setUp() throws Exception {
+		ram = new Ram(65536);
+		cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		ram.setBytes(0x20, HANDLER);
+	}
+
+	public void testEntrySequence() {
+		// 0000: SEX 3, IDL
+		ram.setBytes(0, new byte[] { (byte) 0xE3, (byte) 0x00 });
+		assertEquals(StopReason.IDLE, cpu.runFor(100));
+		assertEquals(4, cpu.getCycles());
+
+		cpu.requestInterrupt();
+		assertTrue(cpu.isInterrupt());
+		assertEquals(StopReason.BUDGET, cpu.runFor(0));
+		assertEquals(0x30, cpu.getT());
+		assertEquals(2, cpu.getX());
+		assertEquals(1, cpu.getP());
+		assertEquals(0, cpu.getIE());
+		assertFalse(cpu.isIdle());
+		assertEquals(5, cpu.getCycles());
+		// Taken, the request is gone.
+		assertFalse(cpu.isInterrupt());
+	}
+
+	public void testMaskedByIe() {
+		// 0000: SEX 0, DIS 00, IDL
+		ram.setBytes(0, new byte[] { (byte) 0xE0, (byte) 0x71, (byte) 0x00, (byte) 0x00 });
+		assertEquals(StopReason.IDLE, cpu.runFor(100));
+		assertEquals(0, cpu.getIE());
+
+		cpu.requestInterrupt();
+		assertEquals(StopReason.IDLE, cpu.runFor(100));
+		assertEquals(0, cpu.getP());
+		assertTrue(cpu.isInterrupt());
+	}
+
+	public void testHandlerReturnsInEveryEngine() {
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			ram.setBytes(0, COUNTER);
+			cpu.reset();
+			cpu.setDispatchMode(mode);
+			cpu.setCompileThreshold(2);
+			int r6 = cpu.getR(6);
+
+			String message = "mode " + mode;
+			for (int i = 1; i <= 3; i ++) {
+				assertEquals(message, StopReason.BUDGET, cpu.runFor(1000));
+				cpu.requestInterrupt();
+				assertEquals(message, StopReason.BUDGET, cpu.runFor(1000));
+				assertEquals(message, r6 + i, cpu.getR(6));
+				assertEquals(message, 0, cpu.getP());
+				assertEquals(message, 0, cpu.getX());
+				assertEquals(message, 1, cpu.getIE());
+				assertEquals(message, 0xFF, cpu.getR(2));
+			}
+
+			// A held level interrupts again after every RET.
+			cpu.setInterrupt(true);
+			assertEquals(message, StopReason.BUDGET, cpu.runFor(1000));
+			cpu.setInterrupt(false);
+			assertTrue(message, cpu.getR(6) - r6 > 50);
+		}
+	}
+
+	public void testEventWakesIdl() throws UnknownOpcodeException {
+		// The main loop is 0006: IDL, BR 06.
+		ram.setBytes(0, COUNTER);
+		ram.setBytes(6, new byte[] { (byte) 0x00, (byte) 0x30, (byte) 0x06 });
+		cpu.setPacing(false);
+		cpu.setStopAfterCycles(100000L);
+
+		final Scheduler scheduler = cpu.getScheduler();
+		scheduler.schedule(10000L, new ScheduledEvent() {
+			public void fire(long cycles) {
+				cpu.requestInterrupt();
+				scheduler.schedule(cycles + 10000L, this);
+			}
+		});
+		cpu.run();
+
+		assertTrue(cpu.getCycles() > 100000L);
+		assertTrue(cpu.getR(6) >= 9 && cpu.getR(6) <= 10);
+		// IDL was skipped, not run.
+		assertTrue(cpu.getSkippedCycles() > 99000L);
+	}
+
+	public void testThreadWakesParkedIdl() throws InterruptedException {
+		ram.setBytes(0, COUNTER);
+		ram.setBytes(6, new byte[] { (byte) 0x00, (byte) 0x30, (byte) 0x06 });
+		cpu.setPacing(false);
+		cpu.setInterruptConnected(true);
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					cpu.run();
+				} catch (UnknownOpcodeException e) {
+					fail();
+				}
+			}
+		});
+		thread.start();
+
+		// Parked in IDL, with nothing to wait for.
+		waitFor(thread, Thread.State.WAITING);
+		long cycles = cpu.getCycles();
+
+		cpu.requestInterrupt();
+		Thread.sleep(50);
+		waitFor(thread, Thread.State.WAITING);
+
+		cpu.stop();
+		thread.join(1000);
+		assertFalse(thread.isAlive());
+		assertEquals(1, cpu.getR(6));
+		assertTrue(cpu.isIdle());
+		// The handler and IDL again, no more.
+		assertTrue(cpu.getCycles() - cycles < 20);
+	}
+
+	public void testIdlWithoutSourceReturns() throws UnknownOpcodeException {
+		// 0000: IDL
+		ram.setBytes(0, new byte[] { (byte) 0x00 });
+		cpu.setPacing(false);
+		cpu.run();
+		assertTrue(cpu.isIdle());
+		assertEquals(2, cpu.getCycles());
+	}
+
+	private static void waitFor(Thread thread, Thread.State state) throws InterruptedException {
+		for (int i = 0; i < 200 && thread.getState() != state; i ++) {
+			Thread.sleep(5);
+		}
+		assertEquals(state, thread.getState());
+	}
+}
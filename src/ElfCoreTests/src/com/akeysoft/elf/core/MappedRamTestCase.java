@@ -0,0 +1,73 @@
+package com.akeysoft.elf.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+public class MappedRamTestCase extends TestCase {
+
+	private File file;
+
+	protected void setUp() throws IOException {
+		this.file = File.createTempFile("elf", ".ram");
+		this.file.deleteOnExit();
+	}
+
+	protected void tearDown() {
+		this.file.delete();
+	}
+
+	public void testSurvivesReopen() throws IOException {
+		MappedRam ram = MappedRam.open(this.file, 0x10000);
+		assertEquals(0x10000, this.file.length());
+		assertFalse(ram.isDirty());
+
+		ram.setBytes(0x1000, new byte[] { 1, 2, 3 });
+		ram.setByte(0xFFFF, (byte) 0x80);
+		assertTrue(ram.isDirty());
+		ram.close();
+
+		ram = MappedRam.open(this.file, 0x10000);
+		assertEquals(2, ram.getByte(0x1001));
+		assertEquals(0x80, ram.getUnsignedByte(0xFFFF));
+		assertFalse(ram.isDirty());
+		ram.close();
+	}
+
+	public void testFileSeesWrites() throws IOException {
+		MappedRam ram = MappedRam.open(this.file, 0x100);
+		ram.setByte(0x42, (byte) 0x5A);
+		ram.flush();
+		assertFalse(ram.isDirty());
+
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try {
+			raf.seek(0x42);
+			assertEquals(0x5A, raf.read());
+		} finally {
+			raf.close();
+		}
+		ram.close();
+	}
+
+	public void testListenerAndPatches() throws IOException {
+		MappedRam ram = MappedRam.open(this.file, 0x10000);
+		// 0000: INC 4, BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x14, (byte) 0x30, (byte) 0x00 });
+		Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		cpu.setCompileThreshold(2);
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+		assertTrue(cpu.getR(4) > 0);
+
+		// INC 4 becomes INC 5 behind the Cpu's back.
+		ram.getBuffer().put(0, (byte) 0x15);
+		ram.changed(0, 1);
+		int r4 = cpu.getR(4);
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+		assertEquals(r4, cpu.getR(4));
+		assertTrue(cpu.getR(5) > 0);
+		ram.close();
+	}
+}
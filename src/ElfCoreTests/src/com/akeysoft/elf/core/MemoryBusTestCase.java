@@ -0,0 +1,85 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class MemoryBusTestCase extends TestCase {
+
+	// A backend with nothing but the byte accessors, so that the bulk
+	// methods are those of MemoryBus.
+	private static class ByteBus extends MemoryBus {
+		private byte[] memory = new byte[0x100];
+
+		public int getSize() {
+			return this.memory.length;
+		}
+
+		public byte getByte(int address) {
+			return this.memory[address];
+		}
+
+		public int getUnsignedByte(int address) {
+			return this.memory[address] & 0xFF;
+		}
+
+		public void setByte(int address, byte value) {
+			if (this.mp || this.memory[address] == value)
+				return;
+
+			this.memory[address] = value;
+			if (this.listener != null)
+				this.listener.bytesWritten(address, 1);
+		}
+	}
+
+	public void testDefaultsMatchRam() {
+		MemoryBus[] buses = { new ByteBus(), new Ram(0x100) };
+		for (int i = 0; i < buses.length; i ++) {
+			MemoryBus bus = buses[i];
+			bus.setBytes(0x10, new byte[] { 1, 2, 3, 4, 5, 6 }, 1, 4);
+			bus.copy(0x10, 0x12, 6);
+			bus.fill(0x30, 3, (byte) 9);
+			// Cut at the end of memory.
+			bus.setBytes(0xFE, new byte[] { 7, 7, 7, 7 });
+		}
+
+		byte[] expected = new byte[0x100];
+		byte[] actual = new byte[0x100];
+		buses[1].getBytes(0, expected, 0, expected.length);
+		buses[0].getBytes(0, actual, 0, actual.length);
+		for (int i = 0; i < expected.length; i ++) {
+			assertEquals("at " + i, expected[i], actual[i]);
+		}
+		// The bytes repeat where the copy overlaps.
+		assertEquals(2, actual[0x12]);
+		assertEquals(2, actual[0x14]);
+	}
+
+	public void testMpAndListener() {
+		ByteBus bus = new ByteBus();
+		final int[] written = new int[1];
+		bus.setRamListener(new RamListener() {
+			public void bytesWritten(int beginAddress, int length) {
+				written[0] += length;
+			}
+		});
+
+		bus.fill(0, 4, (byte) 1);
+		assertEquals(4, written[0]);
+
+		bus.setMp(true);
+		bus.copy(0, 8, 4);
+		assertEquals(4, written[0]);
+		assertEquals(0, bus.getByte(8));
+	}
+
+	public void testCpuRunsOnAnyBus() {
+		ByteBus bus = new ByteBus();
+		// 0000: LDI 5A, PLO 3, SEX 3, STR 3, IDL
+		bus.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x5A, (byte) 0xA3, (byte) 0xE3, (byte) 0x53, (byte) 0x00
+		});
+		Cpu cpu = new Cpu(bus, new InputDevice(), new OutputDevice());
+		assertEquals(StopReason.IDLE, cpu.runFor(1000));
+		assertEquals(0x5A, bus.getUnsignedByte(0x5A));
+	}
+}
@@ -0,0 +1,160 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class MemoryMapTestCase extends TestCase {
+
+	public void testStockElf2Mirrors() {
+		MemoryMap map = MemoryMap.stockElf2();
+		assertEquals(MemoryMap.PAGE_SIZE, map.getMappedBytes());
+		assertEquals(0x10000, map.getSize());
+
+		map.setByte(0x0012, (byte) 0x34);
+		assertEquals(0x34, map.getUnsignedByte(0x4512));
+		map.setByte(0xFF13, (byte) 0x56);
+		assertEquals(0x56, map.getUnsignedByte(0x0013));
+		assertEquals(MemoryMap.RAM, map.getKind(0x80));
+	}
+
+	public void testRomAndUnmapped() {
+		MemoryMap map = new MemoryMap();
+		map.mapRam(0, 4);
+		map.mapRom(0x80, new byte[] { 1, 2, 3 });
+		assertEquals(5 * MemoryMap.PAGE_SIZE, map.getMappedBytes());
+
+		map.setByte(0x8001, (byte) 9);
+		assertEquals(2, map.getByte(0x8001));
+		assertEquals(0, map.getByte(0x8003));
+		// Open bus.
+		assertEquals(0xFF, map.getUnsignedByte(0x4000));
+		map.setByte(0x4000, (byte) 1);
+
+		// MP covers RAM, not what ROM already refuses.
+		map.setMp(true);
+		map.setByte(0x0010, (byte) 1);
+		assertEquals(0, map.getByte(0x0010));
+	}
+
+	public void testDevice() {
+		MemoryMap map = new MemoryMap();
+		final int[] last = new int[2];
+		map.mapDevice(0xE0, 1, new MemoryDevice() {
+			public int read(int address) {
+				return address & 0xFF;
+			}
+
+			public void write(int address, byte value) {
+				last[0] = address;
+				last[1] = value;
+			}
+		});
+
+		assertEquals(0x42, map.getUnsignedByte(0xE042));
+		map.setByte(0xE010, (byte) 7);
+		assertEquals(0xE010, last[0]);
+		assertEquals(7, last[1]);
+		// Bulk writes go through the device a byte at a time.
+		map.fill(0xE020, 4, (byte) 3);
+		assertEquals(0xE023, last[0]);
+	}
+
+	public void testBulkAcrossPages() {
+		MemoryMap map = new MemoryMap();
+		map.mapRam(0, 2);
+		map.mirror(2, 2, 0, 2);
+
+		byte[] values = new byte[0x140];
+		for (int i = 0; i < values.length; i ++) {
+			values[i] = (byte) i;
+		}
+		map.setBytes(0x0040, values, 0, values.length);
+
+		byte[] read = new byte[values.length];
+		map.getBytes(0x0240, read, 0, read.length);
+		for (int i = 0; i < values.length; i ++) {
+			assertEquals(values[i], read[i]);
+		}
+	}
+
+	public void testWriteReportedOnce() {
+		MemoryMap map = MemoryMap.stockElf2();
+		final int[] written = new int[3];
+		map.setRamListener(new RamListener() {
+			public void bytesWritten(int beginAddress, int length) {
+				written[0] ++;
+				written[1] = beginAddress;
+				written[2] = length;
+			}
+		});
+
+		// At the first page that shows the bytes.
+		map.setByte(0x4512, (byte) 1);
+		assertEquals(1, written[0]);
+		assertEquals(0x0012, written[1]);
+		map.fill(0x4580, 0x100, (byte) 2);
+		assertEquals(3, written[0]);
+		assertEquals(0x0000, written[1]);
+		assertEquals(0x80, written[2]);
+
+		int[] aliases = map.getAliases(0x45);
+		assertEquals(MemoryMap.PAGES, aliases.length);
+		assertSame(aliases, map.getAliases(0));
+		assertEquals(0x45, aliases[0x45]);
+
+		MemoryMap plain = new MemoryMap();
+		plain.mapRam(0, 2);
+		assertNull(plain.getAliases(1));
+		assertNull(new Ram(0x100).getAliases(0));
+	}
+
+	public void testWriteReachesCodeRunAtAnAlias() {
+		MemoryMap map = MemoryMap.stockElf2();
+		// 0000: LDI 45, PHI 3, LDI 10, PLO 3, SEP 3
+		// 4510: INC 4, LBR 4510
+		map.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x45, (byte) 0xB3, (byte) 0xF8, (byte) 0x10, (byte) 0xA3, (byte) 0xD3
+		});
+
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			map.setBytes(0x10, new byte[] { (byte) 0x14, (byte) 0xC0, (byte) 0x45, (byte) 0x10 });
+			Cpu cpu = new Cpu(map, new InputDevice(), new OutputDevice());
+			cpu.setDispatchMode(mode);
+			cpu.setCompileThreshold(2);
+			assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+			assertTrue(cpu.getR(4) > 0);
+			assertEquals(0x45, cpu.getR(3) >> 8);
+
+			// INC 4 becomes INC 5, written where the page is first seen.
+			map.setByte(0x0010, (byte) 0x15);
+			int r4 = cpu.getR(4);
+			assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+			String message = "mode " + mode;
+			assertEquals(message, r4, cpu.getR(4));
+			assertTrue(message, cpu.getR(5) > 0);
+		}
+	}
+
+	public void testWriteReachesCodeAtEveryAlias() {
+		MemoryMap map = MemoryMap.stockElf2();
+		// 0000: LDI 10, PLO 3, SEP 3
+		// 0010: INC 4, BR 10
+		map.setBytes(0, new byte[] { (byte) 0xF8, (byte) 0x10, (byte) 0xA3, (byte) 0xD3 });
+
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			map.setBytes(0x10, new byte[] { (byte) 0x14, (byte) 0x30, (byte) 0x10 });
+			Cpu cpu = new Cpu(map, new InputDevice(), new OutputDevice());
+			cpu.setDispatchMode(mode);
+			cpu.setCompileThreshold(2);
+			assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+			assertTrue(cpu.getR(4) > 0);
+
+			// INC 4 becomes INC 5, written at another alias.
+			map.setByte(0x4510, (byte) 0x15);
+			int r4 = cpu.getR(4);
+			assertEquals(StopReason.BUDGET, cpu.runFor(1000));
+			String message = "mode " + mode;
+			assertEquals(message, r4, cpu.getR(4));
+			assertTrue(message, cpu.getR(5) > 0);
+		}
+	}
+}
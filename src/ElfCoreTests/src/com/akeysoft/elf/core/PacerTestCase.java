@@ -0,0 +1,103 @@
+package com.akeysoft.elf.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PacerTestCase extends TestCase {
+
+	// Time that moves only when waited on, and remembers the waits.
+	private static class StepClock implements Clock {
+		long now = 5000L;
+		List<Long> waits = new ArrayList<Long>();
+
+		public long nanoTime() {
+			return this.now;
+		}
+
+		public void waitUntil(long time) {
+			this.waits.add(Long.valueOf(time));
+			if (time > this.now)
+				this.now = time;
+		}
+
+		public boolean parkUntil(long time) {
+			this.waitUntil(time);
+			return true;
+		}
+	}
+
+	public void testPaceKeepsToCyclesPerSecond() {
+		// At 10M cycles/s a check every 1 ms is every 10000 cycles, due
+		// 100 ns a cycle after the start.
+		StepClock clock = new StepClock();
+		Pacer pacer = new Pacer();
+		pacer.start(clock, 0L, 10000000.0);
+		assertEquals(10000L, pacer.getCheckCycles());
+
+		long cycles = 0L;
+		while (cycles < 1000000L)
+			cycles = pacer.pace(cycles);
+
+		assertEquals(100, clock.waits.size());
+		for (int i = 0; i < clock.waits.size(); i ++) {
+			assertEquals(5000L + i * 1000000L, clock.waits.get(i).longValue());
+		}
+		assertEquals(5000L + 99000000L, clock.now);
+	}
+
+	public void testPaceDoesNotCatchUpAfterLongLag() {
+		StepClock clock = new StepClock();
+		Pacer pacer = new Pacer();
+		pacer.start(clock, 0L, 10000000.0);
+		clock.now += 200000000L;
+
+		// 200 ms behind: no wait, and pacing from here on rather than
+		// running flat out for them.
+		long cycles = pacer.pace(0L);
+		assertEquals(0, clock.waits.size());
+		long restart = clock.now;
+		while (cycles < 500000L)
+			cycles = pacer.pace(cycles);
+
+		assertEquals(restart + 10000L * 100L, clock.waits.get(0).longValue());
+		assertEquals(restart + 490000L * 100L, clock.now);
+	}
+
+	public void testPaceWaitsOutShortLag() {
+		StepClock clock = new StepClock();
+		Pacer pacer = new Pacer();
+		pacer.start(clock, 0L, 10000000.0);
+		// 10 ms behind is caught up: the next deadlines stay where they
+		// were.
+		clock.now += 10000000L;
+
+		long cycles = 0L;
+		while (cycles < 200000L)
+			cycles = pacer.pace(cycles);
+		assertEquals(5000L + 190000L * 100L, clock.now);
+	}
+
+	public void testSpeedSettings() {
+		Cpu cpu = new Cpu(new Ram(256), new InputDevice(), new OutputDevice());
+		assertEquals(Cpu.CLOCK_1_79_MHZ, cpu.getClockFrequency());
+		assertEquals(1.0, cpu.getSpeed(), 0.0);
+
+		cpu.setClockFrequency(Cpu.CLOCK_3_58_MHZ);
+		cpu.setSpeed(0.5);
+		assertEquals(Cpu.CLOCK_3_58_MHZ, cpu.getClockFrequency());
+		assertEquals(0.5, cpu.getSpeed(), 0.0);
+
+		try {
+			cpu.setSpeed(0.0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			cpu.setClockFrequency(-1L);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class RunControllerTestCase extends TestCase {
+
+	private Ram ram;
+	private Cpu cpu;
+	private RunController controller;
+	private volatile UnknownOpcodeException failure;
+	private volatile long startCycles;
+
+	protected void setUp() throws Exception {
+		ram = new Ram(65536);
+		cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		cpu.setPacing(false);
+
+		controller = new RunController(cpu);
+		controller.setListener(new RunControlListener() {
+			public void stateChanged(int state) {
+				if (state == RunController.RUNNING)
+					startCycles = cpu.getCycles();
+			}
+
+			public void unknownOpcode(UnknownOpcodeException e) {
+				failure = e;
+			}
+		});
+	}
+
+	protected void tearDown() throws Exception {
+		controller.shutdown();
+		controller.join(5000L);
+	}
+
+	public void testStartAndStop() throws InterruptedException {
+		// 0000: BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x30, (byte) 0x00 });
+
+		startCycles = -1L;
+		controller.start();
+		waitFor(RunController.RUNNING);
+		assertEquals(0L, startCycles);
+		waitForCycles(100000L);
+
+		controller.stop();
+		waitFor(RunController.STOPPED);
+		long cycles = cpu.getCycles();
+		Thread.sleep(50L);
+		assertEquals(cycles, cpu.getCycles());
+
+		startCycles = -1L;
+
+		// Starting again resets.
+		controller.start();
+		waitFor(RunController.RUNNING);
+		assertEquals(0L, startCycles);
+	}
+
+	public void testPauseStepAndResume() throws InterruptedException {
+		// 0000: INC 1, BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x11, (byte) 0x30, (byte) 0x00 });
+
+		controller.start();
+		waitForCycles(100000L);
+		controller.pause();
+		waitFor(RunController.PAUSED);
+
+		long cycles = cpu.getCycles();
+		int r1 = cpu.getR(1);
+		controller.step();
+		controller.step();
+		controller.step();
+		waitForCycles(cycles + 6);
+		waitFor(RunController.PAUSED);
+		assertEquals(cycles + 6, cpu.getCycles());
+		assertTrue(cpu.getR(1) != r1);
+
+		controller.resume();
+		waitForCycles(cycles + 100000L);
+		assertEquals(RunController.RUNNING, controller.getState());
+
+		// Not reset by resume().
+		assertTrue(cpu.getR(1) > 1);
+	}
+
+	public void testIdle() throws InterruptedException {
+		// 0000: IDL
+		ram.setBytes(0, new byte[] { (byte) 0x00 });
+
+		controller.start();
+		waitFor(RunController.IDLE);
+		assertTrue(cpu.isIdle());
+	}
+
+	public void testUnknownOpcode() throws InterruptedException {
+		ram.setBytes(0, new byte[] { (byte) 0x68 });
+
+		controller.start();
+		waitFor(RunController.STOPPED);
+		for (int i = 0; i < 500 && failure == null; i ++) {
+			Thread.sleep(10L);
+		}
+		assertNotNull(failure);
+	}
+
+	public void testStopFromOtherThread() throws InterruptedException {
+		// 0000: BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x30, (byte) 0x00 });
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					cpu.run();
+				} catch (UnknownOpcodeException e) {
+				}
+			}
+		});
+		thread.start();
+		waitForCycles(100000L);
+
+		cpu.stop();
+		thread.join(5000L);
+		assertFalse(thread.isAlive());
+		assertTrue(cpu.isStop());
+	}
+
+	private void waitFor(int state) throws InterruptedException {
+		for (int i = 0; i < 500 && controller.getState() != state; i ++) {
+			Thread.sleep(10L);
+		}
+		assertEquals(state, controller.getState());
+	}
+
+	private void waitForCycles(long cycles) throws InterruptedException {
+		for (int i = 0; i < 500 && cpu.getCycles() < cycles; i ++) {
+			Thread.sleep(10L);
+		}
+		assertTrue(cpu.getCycles() >= cycles);
+	}
+}
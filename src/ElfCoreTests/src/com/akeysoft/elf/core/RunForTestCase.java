@@ -0,0 +1,127 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class RunForTestCase extends TestCase {
+
+	private Ram ram;
+	private Cpu cpu;
+
+	protected void setUp() throws Exception {
+		ram = new Ram(65536);
+		cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+	}
+
+	public void testBudget() {
+		// 0000: INC 1, BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x11, (byte) 0x30, (byte) 0x00 });
+
+		assertEquals(StopReason.BUDGET, cpu.runFor(1001L));
+		assertTrue(cpu.getCycles() >= 1001L);
+		assertTrue(cpu.getCycles() < 1004L);
+
+		long cycles = cpu.getCycles();
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000L));
+		assertTrue(cpu.getCycles() >= cycles + 1000L);
+	}
+
+	public void testIdle() {
+		// 0000: INC 1, IDL
+		ram.setBytes(0, new byte[] { (byte) 0x11, (byte) 0x00 });
+
+		assertEquals(StopReason.IDLE, cpu.runFor(1000L));
+		assertEquals(4L, cpu.getCycles());
+	}
+
+	public void testUnknownOpcodeInEveryEngine() {
+		for (int mode = 0; mode < Cpu.DISPATCH_MODES; mode ++) {
+			// 0000: INC 1, INC 1, ..., 0010: 68
+			for (int address = 0; address < 0x10; address ++) {
+				ram.setByte(address, (byte) 0x11);
+			}
+			ram.setByte(0x10, (byte) 0x68);
+
+			cpu.reset();
+			cpu.setDispatchMode(mode);
+			int reason = cpu.runFor(1000000L);
+
+			String message = "mode " + mode;
+			assertEquals(message, StopReason.UNKNOWN_OPCODE, StopReason.kind(reason));
+			assertEquals(message, 0x10, StopReason.address(reason));
+			assertEquals(message, 0x68, StopReason.opcode(reason));
+			assertEquals(message, 0x10, cpu.getR(0));
+			assertEquals("unknown opcode 68 at 0010", StopReason.toString(reason));
+		}
+	}
+
+	public void testBreakpoint() {
+		// 0000: INC 1, INC 2, BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x11, (byte) 0x12, (byte) 0x30, (byte) 0x00 });
+		cpu.setBreakpoint(0x01, true);
+		assertTrue(cpu.isBreakpoint(0x01));
+
+		int reason = cpu.runFor(1000L);
+		assertEquals(StopReason.at(StopReason.BREAKPOINT, 0x01), reason);
+		assertEquals(1, cpu.getR(1));
+		assertEquals(0, cpu.getR(2));
+
+		// Goes on from the breakpoint, and stops there again.
+		assertEquals(reason, cpu.runFor(1000L));
+		assertEquals(2, cpu.getR(1));
+		assertEquals(1, cpu.getR(2));
+
+		cpu.setBreakpoint(0x01, false);
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000L));
+	}
+
+	public void testInterruptWaitingForIEWithoutBreakpoints() {
+		// 0000: DIS 00, 0002: INC 1, BR 02
+		ram.setBytes(0, new byte[] { (byte) 0x71, (byte) 0x00, (byte) 0x11, (byte) 0x30, (byte) 0x02 });
+		cpu.setBreakpoint(0x02, false);
+		assertFalse(cpu.isBreakpoint(0x02));
+
+		assertEquals(StopReason.BUDGET, cpu.runFor(1L));
+		assertEquals(0, cpu.getIE());
+		cpu.setInterrupt(true);
+
+		// One instruction at a time, with no breakpoints to look at.
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000L));
+		assertTrue(cpu.getR(1) > 0);
+		assertEquals(0, cpu.getIE());
+	}
+
+	public void testStopRequest() throws InterruptedException {
+		// 0000: BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x30, (byte) 0x00 });
+
+		final int[] reason = new int[1];
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				reason[0] = cpu.runFor(Long.MAX_VALUE);
+			}
+		});
+		thread.start();
+		Thread.sleep(100L);
+
+		cpu.stop();
+		thread.join(5000L);
+		assertFalse(thread.isAlive());
+		assertEquals(StopReason.STOP_REQUEST, reason[0]);
+	}
+
+	public void testEventsFire() {
+		// 0000: BR 00
+		ram.setBytes(0, new byte[] { (byte) 0x30, (byte) 0x00 });
+
+		final long[] fired = new long[1];
+		cpu.getScheduler().schedule(501L, new ScheduledEvent() {
+			public void fire(long cycles) {
+				fired[0] = cycles;
+			}
+		});
+
+		assertEquals(StopReason.BUDGET, cpu.runFor(1000L));
+		assertTrue(fired[0] >= 501L);
+		assertTrue(fired[0] < 504L);
+	}
+}
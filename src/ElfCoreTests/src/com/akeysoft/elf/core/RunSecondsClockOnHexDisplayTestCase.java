@@ -15,6 +15,8 @@ public class RunSecondsClockOnHexDisplayTestCase extends TestCase {
 		ram = new Ram(65536);
 		
 		cpu = new Cpu(ram, inputDevice, outputDevice);
+		// Three million cycles at the real speed would take 13 seconds.
+		cpu.setClock(new VirtualClock(cpu));
 	}
 
 	public void testRun() throws UnknownOpcodeException {
@@ -0,0 +1,170 @@
+package com.akeysoft.elf.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SchedulerTestCase extends TestCase {
+
+	private Scheduler scheduler;
+	private List<Long> fired;
+
+	protected void setUp() throws Exception {
+		scheduler = new Scheduler();
+		fired = new ArrayList<Long>();
+	}
+
+	public void testEmpty() {
+		assertEquals(Long.MAX_VALUE, scheduler.next());
+		assertEquals(0, scheduler.size());
+		scheduler.fireDue(Long.MAX_VALUE);
+	}
+
+	public void testFiresInDeadlineOrder() {
+		Random random = new Random(1802L);
+		long[] deadlines = new long[500];
+		for (int i = 0; i < deadlines.length; i ++) {
+			deadlines[i] = random.nextInt(100000);
+			scheduler.schedule(deadlines[i], new Recorder(deadlines[i]));
+		}
+
+		Arrays.sort(deadlines);
+		assertEquals(deadlines[0], scheduler.next());
+
+		// Nothing before its deadline.
+		scheduler.fireDue(deadlines[0] - 1);
+		assertEquals(0, fired.size());
+
+		scheduler.fireDue(deadlines[250]);
+		assertTrue(fired.size() > 250);
+		scheduler.fireDue(Long.MAX_VALUE);
+
+		assertEquals(deadlines.length, fired.size());
+		for (int i = 0; i < deadlines.length; i ++) {
+			assertEquals(deadlines[i], fired.get(i).longValue());
+		}
+		assertEquals(Long.MAX_VALUE, scheduler.next());
+	}
+
+	public void testCancel() {
+		Recorder a = new Recorder(10);
+		Recorder b = new Recorder(20);
+		scheduler.schedule(10, a);
+		scheduler.schedule(20, b);
+		scheduler.schedule(30, a);
+		scheduler.schedule(5, b);
+
+		scheduler.cancel(b);
+		assertEquals(2, scheduler.size());
+		assertEquals(10, scheduler.next());
+
+		scheduler.fireDue(100);
+		assertEquals(2, fired.size());
+	}
+
+	public void testCancelDropsEveryFiring() {
+		Random random = new Random(1802L);
+		final int[] late = new int[1];
+		ScheduledEvent cancelled = new ScheduledEvent() {
+			public void fire(long cycles) {
+				late[0] ++;
+			}
+		};
+
+		int others = 0;
+		for (int i = 0; i < 200; i ++) {
+			if (random.nextInt(3) == 0) {
+				scheduler.schedule(random.nextInt(1000), new Recorder(0));
+				others ++;
+			} else {
+				scheduler.schedule(random.nextInt(1000), cancelled);
+			}
+		}
+		scheduler.schedule(100, cancelled);
+		scheduler.schedule(100, cancelled);
+
+		scheduler.cancel(cancelled);
+		assertEquals(others, scheduler.size());
+
+		long last = -1;
+		while (scheduler.size() > 0) {
+			long next = scheduler.next();
+			assertTrue(next >= last);
+			last = next;
+			scheduler.fireDue(next);
+		}
+		assertEquals(0, late[0]);
+		assertEquals(others, fired.size());
+	}
+
+	public void testEventSchedulesEvent() {
+		scheduler.schedule(10, new ScheduledEvent() {
+			public void fire(long cycles) {
+				fired.add(cycles);
+				// Already due, and not yet.
+				scheduler.schedule(cycles - 5, new Recorder(15));
+				scheduler.schedule(cycles + 40, new Recorder(60));
+			}
+		});
+
+		scheduler.fireDue(20);
+		assertEquals(2, fired.size());
+		assertEquals(60, scheduler.next());
+	}
+
+	public void testEventsFireAtTheSameStepInEveryEngine() throws UnknownOpcodeException {
+		byte[] image = SecondsClockTomPittman.IMAGE;
+
+		// The first instruction boundary at or past the deadline.
+		long deadline = 100001L;
+		Cpu reference = new Cpu(new Ram(65536), new InputDevice(), new OutputDevice());
+		reference.setDispatchMode(Cpu.DISPATCH_SWITCH);
+		reference.ram.setBytes(0, image);
+		while (reference.getCycles() < deadline)
+			reference.step();
+
+		int[] modes = new int[] {
+			Cpu.DISPATCH_SWITCH, Cpu.DISPATCH_PREDECODED, Cpu.DISPATCH_BLOCKS,
+			Cpu.DISPATCH_REGIONS, Cpu.DISPATCH_FUSED, Cpu.DISPATCH_TIERED, Cpu.DISPATCH_TRACED
+		};
+		for (int i = 0; i < modes.length; i ++) {
+			final Cpu cpu = new Cpu(new Ram(65536), new InputDevice(), new OutputDevice());
+			cpu.setDispatchMode(modes[i]);
+			cpu.setCompileThreshold(2);
+			cpu.setPacing(false);
+			cpu.setStopAfterCycles(200000L);
+			cpu.ram.setBytes(0, image);
+
+			final long[] seen = new long[2];
+			cpu.getScheduler().schedule(deadline, new ScheduledEvent() {
+				public void fire(long cycles) {
+					seen[0] = cycles;
+					seen[1] = cpu.getR(cpu.getP());
+				}
+			});
+			cpu.run();
+
+			String message = "dispatch mode " + modes[i];
+			assertEquals(message, reference.getCycles(), seen[0]);
+			assertEquals(message, reference.getR(reference.getP()), seen[1]);
+			// run() leaves nothing of its own behind.
+			assertEquals(message, 0, cpu.getScheduler().size());
+		}
+	}
+
+	private class Recorder implements ScheduledEvent {
+		private long deadline;
+
+		Recorder(long deadline) {
+			this.deadline = deadline;
+		}
+
+		public void fire(long cycles) {
+			assertTrue(cycles >= this.deadline);
+			fired.add(this.deadline);
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package com.akeysoft.elf.core;
+
+// Generated by CosTranslator from Seconds Clock - Tom Pittman.cos. Do not edit.
+public class SecondsClockTomPittman extends Cpu {
+
+	static final byte[] IMAGE = new byte[] {
+		(byte) 0x90, (byte) 0xb1, (byte) 0xb2, (byte) 0xb3, (byte) 0xf8, (byte) 0x1b, (byte) 0xa1, (byte) 0xf8,
+		(byte) 0xff, (byte) 0xa2, (byte) 0xf8, (byte) 0x0f, (byte) 0xa3, (byte) 0x70, (byte) 0x23, (byte) 0x69,
+		(byte) 0x30, (byte) 0xac, (byte) 0x12, (byte) 0x42, (byte) 0xf6, (byte) 0x42, (byte) 0xb7, (byte) 0x42,
+		(byte) 0xa7, (byte) 0x42, (byte) 0x70, (byte) 0xc4, (byte) 0x22, (byte) 0x78, (byte) 0x22, (byte) 0x73,
+		(byte) 0x87, (byte) 0x73, (byte) 0x97, (byte) 0x73, (byte) 0x7e, (byte) 0x73, (byte) 0xf8, (byte) 0xc8,
+		(byte) 0x34, (byte) 0x28, (byte) 0xa0, (byte) 0xa0, (byte) 0xb7, (byte) 0xf8, (byte) 0x0b, (byte) 0xa7,
+		(byte) 0x97, (byte) 0xa0, (byte) 0x27, (byte) 0x97, (byte) 0xa0, (byte) 0xa0, (byte) 0x87, (byte) 0x3a,
+		(byte) 0x32, (byte) 0x80, (byte) 0x3c, (byte) 0x2a, (byte) 0xa0, (byte) 0x34, (byte) 0x3c, (byte) 0x90,
+		(byte) 0xb7, (byte) 0xf8, (byte) 0xc7, (byte) 0xa7, (byte) 0x07, (byte) 0xfc, (byte) 0x01, (byte) 0x57,
+		(byte) 0xff, (byte) 0x3d, (byte) 0x3b, (byte) 0x12, (byte) 0xe7, (byte) 0x73, (byte) 0xf0, (byte) 0xfc,
+		(byte) 0x03, (byte) 0x57, (byte) 0x3b, (byte) 0x69, (byte) 0xf8, (byte) 0xe2, (byte) 0x73, (byte) 0xf0,
+		(byte) 0xfc, (byte) 0x03, (byte) 0x57, (byte) 0xfc, (byte) 0x0c, (byte) 0x3b, (byte) 0x62, (byte) 0xf8,
+		(byte) 0xe2, (byte) 0x57, (byte) 0xf8, (byte) 0xc8, (byte) 0x30, (byte) 0x6b, (byte) 0xf8, (byte) 0xc6,
+		(byte) 0xa7, (byte) 0xf8, (byte) 0xcc, (byte) 0xa0, (byte) 0x47, (byte) 0xfc, (byte) 0xac, (byte) 0xa7,
+		(byte) 0x47, (byte) 0x52, (byte) 0xe2, (byte) 0xf0, (byte) 0xfe, (byte) 0x52, (byte) 0x75, (byte) 0x50,
+		(byte) 0x10, (byte) 0x80, (byte) 0xfa, (byte) 0x03, (byte) 0x3a, (byte) 0x73, (byte) 0x10, (byte) 0x10,
+		(byte) 0x10, (byte) 0x10, (byte) 0xf0, (byte) 0x3a, (byte) 0x73, (byte) 0x80, (byte) 0xff, (byte) 0xf8,
+		(byte) 0x3b, (byte) 0x70, (byte) 0x32, (byte) 0x66, (byte) 0x30, (byte) 0x12, (byte) 0xda, (byte) 0xaa,
+		(byte) 0xdf, (byte) 0xd9, (byte) 0xdd, (byte) 0x8f, (byte) 0x9e, (byte) 0xdb, (byte) 0x8f, (byte) 0x9e,
+		(byte) 0xde, (byte) 0x9f, (byte) 0xea, (byte) 0xa8, (byte) 0xef, (byte) 0x8b, (byte) 0x9e, (byte) 0x9f,
+		(byte) 0xcb, (byte) 0x9a, (byte) 0xdf, (byte) 0x8e, (byte) 0xdb, (byte) 0xbf, (byte) 0xda, (byte) 0xda,
+		(byte) 0xdf, (byte) 0xda, (byte) 0xce, (byte) 0xdf, (byte) 0xe7, (byte) 0xa7, (byte) 0x3b, (byte) 0xb1,
+		(byte) 0x17, (byte) 0x60, (byte) 0x7c, (byte) 0x01, (byte) 0x3a, (byte) 0xb1, (byte) 0xe2, (byte) 0x87,
+		(byte) 0x22, (byte) 0x52, (byte) 0x64, (byte) 0x32, (byte) 0xbf, (byte) 0x3f, (byte) 0xbd, (byte) 0x37,
+		(byte) 0xbf, (byte) 0x6c, (byte) 0xfe, (byte) 0x30, (byte) 0xac, (byte) 0xe2, (byte) 0xe2, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+		(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00
+	};
+
+	private static final int[] KEYS = new int[] {
+		0x00000, 0x00001, 0x00002, 0x00003, 0x00004, 0x00006, 0x00007, 0x00009,
+		0x0000a, 0x0000c, 0x0000d, 0x3000f, 0x30010, 0x300ac, 0x300ad, 0x300ae,
+		0x300b0, 0x300b1, 0x300b2, 0x300b4, 0x300b6, 0x300b7, 0x300b8, 0x300b9,
+		0x300ba, 0x300bb, 0x300bd, 0x300bf, 0x300c1, 0x300c2, 0x300c3
+	};
+
+	private static final int[] CHUNK_STARTS = new int[] { 0 };
+
+	public SecondsClockTomPittman(MemoryBus ram, InputDevice inputDevice, OutputDevice outputDevice) {
+		super(ram, inputDevice, outputDevice);
+		this.setTranslation(IMAGE, KEYS, CHUNK_STARTS);
+	}
+
+	boolean runTranslatedChunk(int chunk, long cycleLimit) {
+		switch (chunk) {
+		case 0:
+			return this.chunk0(cycleLimit);
+		default:
+			return false;
+		}
+	}
+
+	@SuppressWarnings("fallthrough")
+	private boolean chunk0(long cycleLimit) {
+		MemoryBus ram = this.ram;
+		Translation translation = this.translation;
+		int[] r = this.r;
+		int p = this.p;
+		int x = this.x;
+		int d = this.d;
+		int df = this.df;
+		long cycles = this.cycles;
+		long start = cycles;
+		int pc = r[p];
+		int sum;
+		
+		run:
+		while (true) {
+			switch ((p << 16) | pc) {
+			case 0x00000: // 0000: 90 GHI 0
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0000;
+					break run;
+				}
+				cycles += 2;
+				r[0] = 0x0001;
+				d = (r[0] >> 8) & 0xFF;
+				
+			case 0x00001: // 0001: b1 PHI 1
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0001;
+					break run;
+				}
+				cycles += 2;
+				r[1] = (r[1] & 0x00FF) | (d << 8);
+				
+			case 0x00002: // 0002: b2 PHI 2
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0002;
+					break run;
+				}
+				cycles += 2;
+				r[2] = (r[2] & 0x00FF) | (d << 8);
+				
+			case 0x00003: // 0003: b3 PHI 3
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0003;
+					break run;
+				}
+				cycles += 2;
+				r[3] = (r[3] & 0x00FF) | (d << 8);
+				
+			case 0x00004: // 0004: f8 1b LDI 1b
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0004;
+					break run;
+				}
+				cycles += 2;
+				d = 0x1b;
+				
+			case 0x00006: // 0006: a1 PLO 1
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0006;
+					break run;
+				}
+				cycles += 2;
+				r[1] = (r[1] & 0xFF00) | d;
+				
+			case 0x00007: // 0007: f8 ff LDI ff
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0007;
+					break run;
+				}
+				cycles += 2;
+				d = 0xff;
+				
+			case 0x00009: // 0009: a2 PLO 2
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0009;
+					break run;
+				}
+				cycles += 2;
+				r[2] = (r[2] & 0xFF00) | d;
+				
+			case 0x0000a: // 000a: f8 0f LDI 0f
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x000a;
+					break run;
+				}
+				cycles += 2;
+				d = 0x0f;
+				
+			case 0x0000c: // 000c: a3 PLO 3
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x000c;
+					break run;
+				}
+				cycles += 2;
+				r[3] = (r[3] & 0xFF00) | d;
+				
+			case 0x0000d: // 000d: 70 RET
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x000d;
+					break run;
+				}
+				cycles += 2;
+				r[0] = 0x000e;
+				sum = ram.getUnsignedByte(r[x]);
+				r[x] = (r[x] + 1) & 0xFFFF;
+				p = sum & 0x0F;
+				x = sum >> 4;
+				this.ie = 1;
+				pc = r[p];
+				continue run;
+				
+			case 0x3000f: // 000f: 69 INP 1
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x000f;
+					break run;
+				}
+				cycles += 2;
+				r[3] = 0x0010;
+				sum = this.inputDevice.getPort(0);
+				ram.setByte(r[x], (byte) sum);
+				d = sum & 0xFF;
+				if (!translation.isIntact()) {
+					pc = r[3];
+					break run;
+				}
+				
+			case 0x30010: // 0010: 30 ac BR ac
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x0010;
+					break run;
+				}
+				cycles += 2;
+				pc = 0x00ac;
+				continue run;
+				
+			case 0x300ac: // 00ac: e7 SEX 7
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00ac;
+					break run;
+				}
+				cycles += 2;
+				x = 7;
+				
+			case 0x300ad: // 00ad: a7 PLO 7
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00ad;
+					break run;
+				}
+				cycles += 2;
+				r[7] = (r[7] & 0xFF00) | d;
+				
+			case 0x300ae: // 00ae: 3b b1 BNF b1
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00ae;
+					break run;
+				}
+				cycles += 2;
+				if (df == 0) {
+					pc = 0x00b1;
+					continue run;
+				}
+				
+			case 0x300b0: // 00b0: 17 INC 7
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b0;
+					break run;
+				}
+				cycles += 2;
+				r[7] = (r[7] + 1) & 0xFFFF;
+				
+			case 0x300b1: // 00b1: 60 IRX
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b1;
+					break run;
+				}
+				cycles += 2;
+				r[3] = 0x00b2;
+				r[x] = (r[x] + 1) & 0xFFFF;
+				if (r[3] != 0x00b2) {
+					pc = r[3];
+					continue run;
+				}
+				
+			case 0x300b2: // 00b2: 7c 01 ADCI 01
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b2;
+					break run;
+				}
+				cycles += 2;
+				sum = d + 0x01 + df;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				
+			case 0x300b4: // 00b4: 3a b1 BNZ b1
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b4;
+					break run;
+				}
+				cycles += 2;
+				if (d != 0) {
+					pc = 0x00b1;
+					continue run;
+				}
+				
+			case 0x300b6: // 00b6: e2 SEX 2
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b6;
+					break run;
+				}
+				cycles += 2;
+				x = 2;
+				
+			case 0x300b7: // 00b7: 87 GLO 7
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b7;
+					break run;
+				}
+				cycles += 2;
+				d = r[7] & 0xFF;
+				
+			case 0x300b8: // 00b8: 22 DEC 2
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b8;
+					break run;
+				}
+				cycles += 2;
+				r[2] = (r[2] - 1) & 0xFFFF;
+				
+			case 0x300b9: // 00b9: 52 STR 2
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00b9;
+					break run;
+				}
+				cycles += 2;
+				ram.setByte(r[2], (byte) d);
+				if (!translation.isIntact()) {
+					pc = 0x00ba;
+					break run;
+				}
+				
+			case 0x300ba: // 00ba: 64 OUT 4
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00ba;
+					break run;
+				}
+				cycles += 2;
+				r[3] = 0x00bb;
+				this.outputDevice.setPort(3, ram.getByte(r[x]));
+				r[x] = (r[x] + 1) & 0xFFFF;
+				if (r[3] != 0x00bb) {
+					pc = r[3];
+					continue run;
+				}
+				
+			case 0x300bb: // 00bb: 32 bf BZ bf
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00bb;
+					break run;
+				}
+				cycles += 2;
+				if (d == 0) {
+					pc = 0x00bf;
+					continue run;
+				}
+				
+			case 0x300bd: // 00bd: 3f bd BN4 bd
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00bd;
+					break run;
+				}
+				cycles += 2;
+				if (!this.ef[3]) {
+					pc = 0x00bd;
+					continue run;
+				}
+				
+			case 0x300bf: // 00bf: 37 bf B4 bf
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00bf;
+					break run;
+				}
+				cycles += 2;
+				if (this.ef[3]) {
+					pc = 0x00bf;
+					continue run;
+				}
+				
+			case 0x300c1: // 00c1: 6c INP 4
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00c1;
+					break run;
+				}
+				cycles += 2;
+				r[3] = 0x00c2;
+				sum = this.inputDevice.getPort(3);
+				ram.setByte(r[x], (byte) sum);
+				d = sum & 0xFF;
+				if (!translation.isIntact()) {
+					pc = r[3];
+					break run;
+				}
+				
+			case 0x300c2: // 00c2: fe SHL
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00c2;
+					break run;
+				}
+				cycles += 2;
+				sum = d << 1;
+				d = sum & 0xFF;
+				df = sum >> 8;
+				
+			case 0x300c3: // 00c3: 30 ac BR ac
+				if (cycles + 2 > cycleLimit) {
+					pc = 0x00c3;
+					break run;
+				}
+				cycles += 2;
+				pc = 0x00ac;
+				continue run;
+				
+			default:
+				break run;
+			}
+		}
+		
+		r[p] = pc;
+		this.p = p;
+		this.x = x;
+		this.d = d;
+		this.df = df;
+		this.cycles = cycles;
+		
+		return cycles != start;
+	}
+}
@@ -0,0 +1,72 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class SparseRamTestCase extends TestCase {
+
+	public void testAllocatesOnFirstChange() {
+		SparseRam ram = new SparseRam(0x10000);
+		assertEquals(0x10000, ram.getSize());
+		assertEquals(0, ram.getAllocatedBytes());
+		assertEquals(0, ram.getByte(0x1234));
+
+		// Zeros change nothing.
+		ram.setByte(0x1234, (byte) 0);
+		ram.fill(0x2000, 0x300, (byte) 0);
+		ram.setBytes(0x3000, new byte[0x200]);
+		assertEquals(0, ram.getAllocatedBytes());
+
+		ram.setByte(0x1234, (byte) 0x80);
+		assertEquals(0x80, ram.getUnsignedByte(0x1234));
+		assertEquals(SparseRam.PAGE_SIZE, ram.getAllocatedBytes());
+		// The other pages still read zero.
+		assertEquals(0, ram.getByte(0x1334));
+		assertEquals(0, ram.getByte(0x0034));
+
+		ram.setMp(true);
+		ram.setByte(0x5000, (byte) 1);
+		assertEquals(SparseRam.PAGE_SIZE, ram.getAllocatedBytes());
+	}
+
+	public void testMatchesRam() {
+		MemoryBus[] buses = { new SparseRam(0x1000), new Ram(0x1000) };
+		for (int i = 0; i < buses.length; i ++) {
+			MemoryBus bus = buses[i];
+			byte[] values = new byte[0x180];
+			for (int j = 0; j < values.length; j ++) {
+				values[j] = (byte) (j + 1);
+			}
+			bus.setBytes(0x0C0, values, 0, values.length);
+			bus.fill(0x5F0, 0x20, (byte) 9);
+			bus.copy(0x0C0, 0x0D0, 0x40);
+			// Cut at the end of memory.
+			bus.setBytes(0xFFE, new byte[] { 7, 7, 7, 7 });
+		}
+
+		byte[] expected = new byte[0x1000];
+		byte[] actual = new byte[0x1000];
+		buses[1].getBytes(0, expected, 0, expected.length);
+		buses[0].getBytes(0, actual, 0, actual.length);
+		for (int i = 0; i < expected.length; i ++) {
+			assertEquals("at " + i, expected[i], actual[i]);
+		}
+		assertEquals(6 * SparseRam.PAGE_SIZE, ((SparseRam) buses[0]).getAllocatedBytes());
+	}
+
+	public void testCodeWrittenToFreshPage() {
+		SparseRam ram = new SparseRam(0x10000);
+		// 0000: LDI 10, PHI 3, LDI 00, PLO 3, SEP 3. 1000 starts as IDL,
+		// reading zero.
+		ram.setBytes(0, new byte[] {
+				(byte) 0xF8, (byte) 0x10, (byte) 0xB3, (byte) 0xF8, (byte) 0x00, (byte) 0xA3, (byte) 0xD3
+		});
+		Cpu cpu = new Cpu(ram, new InputDevice(), new OutputDevice());
+		assertEquals(StopReason.IDLE, cpu.runFor(1000));
+
+		// 1000: INC 4, IDL
+		ram.setBytes(0x1000, new byte[] { (byte) 0x14, (byte) 0x00 });
+		cpu.reset();
+		assertEquals(StopReason.IDLE, cpu.runFor(1000));
+		assertEquals(1, cpu.getR(4));
+	}
+}
@@ -0,0 +1,66 @@
+package com.akeysoft.elf.core;
+
+import junit.framework.TestCase;
+
+public class VirtualClockTestCase extends TestCase {
+
+	public void testTimeFollowsCycles() throws UnknownOpcodeException {
+		Cpu cpu = newCpu();
+		VirtualClock clock = new VirtualClock(cpu);
+		cpu.setClock(clock);
+		assertEquals(0L, clock.nanoTime());
+
+		cpu.setStopAfterCycles(1790000L / 8);
+		cpu.run();
+		assertEquals(1000000000L, clock.nanoTime(), 10000L);
+
+		cpu.setClockFrequency(Cpu.CLOCK_3_58_MHZ);
+		assertEquals(500000000L, clock.nanoTime(), 10000L);
+	}
+
+	public void testPacedRunDoesNotWait() throws UnknownOpcodeException {
+		// Ten seconds of the real machine, at half speed.
+		Cpu cpu = newCpu();
+		cpu.setClock(new VirtualClock(cpu));
+		cpu.setSpeed(0.5);
+		cpu.setStopAfterCycles(2237500L);
+
+		long start = System.nanoTime();
+		cpu.run();
+		long elapsedMs = (System.nanoTime() - start) / 1000000L;
+
+		assertTrue(cpu.getCycles() > 2237500L);
+		assertTrue("elapsed " + elapsedMs + " ms", elapsedMs < 5000L);
+	}
+
+	public void testRunsAreReproducible() throws UnknownOpcodeException {
+		Ram[] rams = new Ram[2];
+		Cpu[] cpus = new Cpu[2];
+		for (int i = 0; i < cpus.length; i ++) {
+			rams[i] = new Ram(65536);
+			rams[i].setBytes(0, SecondsClockTomPittman.IMAGE);
+			cpus[i] = new Cpu(rams[i], new InputDevice(), new OutputDevice());
+			cpus[i].setClock(new VirtualClock(cpus[i]));
+			cpus[i].setStopAfterCycles(1000003L);
+			cpus[i].run();
+		}
+
+		assertEquals(cpus[0].getCycles(), cpus[1].getCycles());
+		assertEquals(cpus[0].getD(), cpus[1].getD());
+		assertEquals(cpus[0].getDF(), cpus[1].getDF());
+		assertEquals(cpus[0].getP(), cpus[1].getP());
+		assertEquals(cpus[0].getX(), cpus[1].getX());
+		for (int i = 0; i < 16; i ++) {
+			assertEquals(cpus[0].getR(i), cpus[1].getR(i));
+		}
+		for (int address = 0; address < 0x100; address ++) {
+			assertEquals(rams[0].getByte(address), rams[1].getByte(address));
+		}
+	}
+
+	private static Cpu newCpu() {
+		Ram ram = new Ram(65536);
+		ram.setBytes(0, SecondsClockTomPittman.IMAGE);
+		return new Cpu(ram, new InputDevice(), new OutputDevice());
+	}
+}